@@ -0,0 +1,135 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.petrinator.auxiliar;
+
+import org.petrinator.editor.Root;
+import org.petrinator.petrinet.Transition;
+
+import javax.swing.*;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/*
+ * @brief Animates the remaining time of the timed transitions that are waiting to fire
+ * @detail A single Swing timer updates every active countdown once per frame, so there is no thread
+ * per firing. Countdowns are kept in a heap by the instant they end, so the finished ones are dropped
+ * from the top, and only the area of the label of each transition is repainted; Swing merges those
+ * areas into a single paint per frame. The timer stops while there is nothing to animate.
+ */
+public class CountdownAnimator
+{
+    private static final int FRAME_MILLIS = 16;
+
+    /*
+     * Area around the "N ms" label drawn by Transition, relative to its center and bottom
+     */
+    private static final int LABEL_HALF_WIDTH = 50;
+    private static final int LABEL_TOP = 50;
+    private static final int LABEL_HEIGHT = 20;
+
+    private final Root root;
+    private final Timer timer;
+    private final PriorityQueue<Countdown> heap = new PriorityQueue<>((a, b) -> Long.compare(a.end, b.end));
+    private final Map<Transition, Countdown> active = new HashMap<>();
+
+    private static class Countdown
+    {
+        final Transition transition;
+        final long end;
+
+        Countdown(Transition transition, long end)
+        {
+            this.transition = transition;
+            this.end = end;
+        }
+    }
+
+    public CountdownAnimator(Root root)
+    {
+        this.root = root;
+        this.timer = new Timer(FRAME_MILLIS, e -> tick());
+        this.timer.setCoalesce(true);
+    }
+
+    /*
+     * @brief Starts showing the time left for a transition to fire, replacing any countdown it had
+     * @param millis time until the transition fires
+     */
+    public synchronized void start(Transition transition, int millis)
+    {
+        Countdown countdown = new Countdown(transition, System.nanoTime() + millis * 1000000L);
+        // The replaced countdown stays in the heap until it ends, it is ignored then
+        active.put(transition, countdown);
+        heap.add(countdown);
+        transition.setTime(millis);
+        if(!timer.isRunning())
+            timer.start();
+    }
+
+    /*
+     * @brief Drops all the countdowns, e.g. when the simulation is stopped
+     */
+    public synchronized void clear()
+    {
+        for(Countdown countdown : active.values())
+        {
+            countdown.transition.setTime(0);
+            repaint(countdown.transition);
+        }
+        active.clear();
+        heap.clear();
+        timer.stop();
+    }
+
+    private synchronized void tick()
+    {
+        long now = System.nanoTime();
+
+        while(!heap.isEmpty() && heap.peek().end <= now)
+        {
+            Countdown countdown = heap.poll();
+            if(active.get(countdown.transition) == countdown)
+            {
+                active.remove(countdown.transition);
+                countdown.transition.setTime(0);
+                repaint(countdown.transition);
+            }
+        }
+
+        for(Countdown countdown : active.values())
+        {
+            int left = (int) ((countdown.end - now) / 1000000L);
+            if(left != countdown.transition.getTime())
+            {
+                countdown.transition.setTime(left);
+                repaint(countdown.transition);
+            }
+        }
+
+        if(heap.isEmpty())
+            timer.stop();
+    }
+
+    private void repaint(Transition transition)
+    {
+        Point center = transition.getCenter();
+        root.repaintCanvas(new Rectangle(center.x - LABEL_HALF_WIDTH, transition.getEnd().y - LABEL_TOP,
+                2 * LABEL_HALF_WIDTH, LABEL_HEIGHT));
+    }
+}
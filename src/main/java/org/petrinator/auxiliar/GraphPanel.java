@@ -20,22 +20,28 @@
 package org.petrinator.auxiliar;
 
 import org.petrinator.editor.Root;
+import org.petrinator.simulation.HistoryDownsampler;
+import org.petrinator.simulation.PlaceHistory;
 
 import java.awt.BasicStroke;
+import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.Dimension;
+import java.awt.FlowLayout;
 import java.awt.FontMetrics;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
-import java.awt.Point;
 import java.awt.RenderingHints;
 import java.awt.Stroke;
-import java.awt.geom.AffineTransform;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import javax.swing.*;
 
+/*
+ * @brief Draws the token history of up to five places over simulated time
+ * @detail Histories can hold millions of changes, so every series is reduced to a few points
+ * per pixel column (min/max or LTTB) when the size of the panel changes, and only those are drawn.
+ */
 public class GraphPanel extends JPanel
 {
     private int width = 600;
@@ -48,15 +54,21 @@ public class GraphPanel extends JPanel
     private static final Stroke GRAPH_STROKE = new BasicStroke(2f);
     private int pointWidth = 4;
     private int numberYDivisions = 10;
-    private List<List<Double>> vectors;
+    private List<PlaceHistory> series;
+    private double endTime;
     private List<Color> colors = new ArrayList<Color>();
     private List<String> names = new ArrayList<String>();
 
-    public GraphPanel(Root root, List<List<Double>> vectors, List<String> names)
+    private boolean lttb = false;
+    private List<HistoryDownsampler.Points> points = new ArrayList<HistoryDownsampler.Points>();
+    private int pointsWidth = -1;
+
+    public GraphPanel(Root root, List<PlaceHistory> series, List<String> names, double endTime)
     {
-        this.vectors = vectors;
+        this.series = series;
         this.names = names;
         this.root = root;
+        this.endTime = endTime;
         colors.add(new Color(25, 7, 99));
         colors.add(new Color(180,4,5));
         colors.add(new Color(0, 150, 39));
@@ -73,12 +85,43 @@ public class GraphPanel extends JPanel
         this.setPreferredSize(new Dimension(width, heigth));
         JDialog frame = new JDialog(root.getParentFrame(), "Places history");
         frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
-        frame.getContentPane().add(this);
+        frame.getContentPane().setLayout(new BorderLayout());
+        frame.getContentPane().add(this, BorderLayout.CENTER);
+
+        JComboBox<String> downsampling = new JComboBox<String>(new String[] {"Min/max", "LTTB"});
+        downsampling.addActionListener(e ->
+        {
+            lttb = downsampling.getSelectedIndex() == 1;
+            pointsWidth = -1;
+            repaint();
+        });
+        JPanel options = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        options.add(new JLabel("Downsampling: "));
+        options.add(downsampling);
+        frame.getContentPane().add(options, BorderLayout.SOUTH);
+
         frame.pack();
         frame.setLocationRelativeTo(null);
         frame.setVisible(true);
     }
 
+    /*
+     * @brief Reduces every series to the points that can be seen at the given plot width
+     */
+    private void downsample(int plotWidth)
+    {
+        points.clear();
+        int buckets = Math.max(1, plotWidth);
+        for(PlaceHistory history : series)
+        {
+            HistoryDownsampler.Points reduced = HistoryDownsampler.minMax(history, 0, endTime, buckets);
+            if(lttb)
+                reduced = HistoryDownsampler.lttb(reduced, 2 * buckets);
+            points.add(reduced);
+        }
+        pointsWidth = plotWidth;
+    }
+
     @Override
     protected void paintComponent(Graphics g)
     {
@@ -86,12 +129,16 @@ public class GraphPanel extends JPanel
         Graphics2D g2 = (Graphics2D) g;
         g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
 
-        double xScale = ((double) getWidth()-shiftLeft - (2 * padding) - labelPadding) / (Collections.max(vectors.get(0)));
-        double yScale = ((double) getHeight() - 2 * padding - labelPadding) / (getMaxScore() - getMinScore());
+        int plotWidth = getWidth()-shiftLeft - (2 * padding) - labelPadding;
+        if(plotWidth != pointsWidth)
+            downsample(plotWidth);
+
+        double xScale = ((double) plotWidth) / (endTime > 0 ? endTime : 1);
+        double yScale = ((double) getHeight() - 2 * padding - labelPadding) / Math.max(1, getMaxScore() - getMinScore());
 
         // Draw white background
         g2.setColor(Color.WHITE);
-        g2.fillRect(padding + labelPadding, padding, getWidth()-shiftLeft - (2 * padding) - labelPadding, getHeight() - 2 * padding - labelPadding);
+        g2.fillRect(padding + labelPadding, padding, plotWidth, getHeight() - 2 * padding - labelPadding);
         g2.setColor(Color.BLACK);
 
         // Create hatch marks and grid lines for y axis.
@@ -101,50 +148,41 @@ public class GraphPanel extends JPanel
             int x1 = pointWidth + padding + labelPadding;
             int y0 = getHeight() - ((i * (getHeight() - padding * 2 - labelPadding)) / numberYDivisions + padding + labelPadding);
             int y1 = y0;
-            if (vectors.get(1).size() > 0)
-            {
-                g2.setColor(gridColor);
-                g2.drawLine(padding + labelPadding + 1 + pointWidth, y0, getWidth()-shiftLeft - padding, y1);
-                g2.setColor(Color.BLACK);
-                String yLabel = ((int) ((getMinScore() + (getMaxScore() - getMinScore()) * ((i * 1.0) / numberYDivisions)) * 100)) / 100.0 + "";
-                FontMetrics metrics = g2.getFontMetrics();
-                int labelWidth = metrics.stringWidth(yLabel);
-                g2.drawString(yLabel, x0 - labelWidth - 5, y0 + (metrics.getHeight() / 2) - 3);
-            }
+            g2.setColor(gridColor);
+            g2.drawLine(padding + labelPadding + 1 + pointWidth, y0, getWidth()-shiftLeft - padding, y1);
+            g2.setColor(Color.BLACK);
+            String yLabel = ((int) ((getMinScore() + Math.max(1, getMaxScore() - getMinScore()) * ((i * 1.0) / numberYDivisions)) * 100)) / 100.0 + "";
+            FontMetrics metrics = g2.getFontMetrics();
+            int labelWidth = metrics.stringWidth(yLabel);
+            g2.drawString(yLabel, x0 - labelWidth - 5, y0 + (metrics.getHeight() / 2) - 3);
             g2.drawLine(x0, y0, x1, y1);
         }
 
-        // For x axis
+        // For x axis, evenly spaced simulated times
         int numberXDivisions = 15;
-        if(vectors.get(0).size() < numberXDivisions)
-            numberXDivisions = vectors.get(0).size();
-
-        for (int i = 0; i < numberXDivisions; i++) {
-            if (vectors.get(1).size() > 1) {
-                int x0 = i * (getWidth()-shiftLeft - padding * 2 - labelPadding) / (numberXDivisions-1) + padding + labelPadding;
-                int x1 = x0;
-                int y0 = getHeight() - padding - labelPadding;
-                int y1 = y0 - pointWidth;
-                if ((i % ((int) ((numberXDivisions / 20.0)) + 1)) == 0) {
-                    g2.setColor(gridColor);
-                    g2.drawLine(x0, getHeight() - padding - labelPadding - 1 - pointWidth, x1, padding);
-                    g2.setColor(Color.BLACK);
-                    String xLabel = vectors.get(0).get(i) + "";
-                    FontMetrics metrics = g2.getFontMetrics();
-                    int labelWidth = metrics.stringWidth(xLabel);
-                    g2.drawString(xLabel, x0 - labelWidth / 2, y0 + metrics.getHeight() + 3);
-
-                    if(i == numberXDivisions - 1)
-                    {
-                        g2.drawString("[s]", x0 - labelWidth / 2 + 35, y0 + metrics.getHeight() + 3);
-                    }
-                    else if(i == 3)
-                    {
-                        g2.drawString("[tokens vs. seconds]", x0 - labelWidth / 2 + 50, y0 + metrics.getHeight() + 22);
-                    }
-                }
-                g2.drawLine(x0, y0, x1, y1);
+        for (int i = 0; i < numberXDivisions; i++)
+        {
+            int x0 = i * plotWidth / (numberXDivisions-1) + padding + labelPadding;
+            int x1 = x0;
+            int y0 = getHeight() - padding - labelPadding;
+            int y1 = y0 - pointWidth;
+            g2.setColor(gridColor);
+            g2.drawLine(x0, getHeight() - padding - labelPadding - 1 - pointWidth, x1, padding);
+            g2.setColor(Color.BLACK);
+            String xLabel = roundDouble(endTime * i / (numberXDivisions - 1)) + "";
+            FontMetrics metrics = g2.getFontMetrics();
+            int labelWidth = metrics.stringWidth(xLabel);
+            g2.drawString(xLabel, x0 - labelWidth / 2, y0 + metrics.getHeight() + 3);
+
+            if(i == numberXDivisions - 1)
+            {
+                g2.drawString("[s]", x0 - labelWidth / 2 + 35, y0 + metrics.getHeight() + 3);
             }
+            else if(i == 3)
+            {
+                g2.drawString("[tokens vs. seconds]", x0 - labelWidth / 2 + 50, y0 + metrics.getHeight() + 22);
+            }
+            g2.drawLine(x0, y0, x1, y1);
         }
 
         // Create x and y axes
@@ -153,68 +191,39 @@ public class GraphPanel extends JPanel
 
         int count = 35;
 
-        // Draw the dots and lines according to the arrays in the vectors list
-        for(int k = 1; k < vectors.size(); k++)
+        // Draw every series as a squared wave: the tokens stay until the next change
+        for(int k = 0; k < points.size(); k++)
         {
-            List<Point> graphPoints = new ArrayList<>();
-            for (int i = 0; i < vectors.get(k).size(); i++)
-            {
-                int x1 = (int) (vectors.get(0).get(i) * xScale + padding + labelPadding);
-                int y1 = (int) ((getMaxScore() - vectors.get(k).get(i)) * yScale + padding);
-
-                if(i != 0) // Add point to get a squared wave
-                {
-                    int y2 = (int) ((getMaxScore() - vectors.get(k).get(i-1)) * yScale + padding); // The point has the same x position as the new one and the same y position as the last one.
-                    graphPoints.add(new Point(x1,y2));
-                }
-
-                graphPoints.add(new Point(x1, y1)); // Add normal point
-            }
+            HistoryDownsampler.Points p = points.get(k);
 
             Stroke oldStroke = g2.getStroke();
-            g2.setColor(colors.get((k-1)%5));
+            g2.setColor(colors.get(k%5));
             g2.setStroke(GRAPH_STROKE);
-            for (int i = 0; i < graphPoints.size() - 1; i++) {
-                int x1 = graphPoints.get(i).x;
-                int y1 = graphPoints.get(i).y;
-                int x2 = graphPoints.get(i + 1).x;
-                int y2 = graphPoints.get(i + 1).y;
-                g2.drawLine(x1, y1, x2, y2);
-
-                if(i == graphPoints.size()-2)
-                {
-                    g2.drawString(names.get(k), x2+33, count);
-                    g2.fillRect(x2+15, count-10, 8, 8);
-                    count += 20;
-                }
-                //g2.drawString(names.get(k), x2+6, y2+5);
+            int x2 = 0;
+            for (int i = 0; i < p.size() - 1; i++)
+            {
+                int x1 = (int) (p.getX(i) * xScale + padding + labelPadding);
+                int y1 = (int) ((getMaxScore() - p.getY(i)) * yScale + padding);
+                x2 = (int) (p.getX(i + 1) * xScale + padding + labelPadding);
+                int y2 = (int) ((getMaxScore() - p.getY(i + 1)) * yScale + padding);
+                g2.drawLine(x1, y1, x2, y1);
+                g2.drawLine(x2, y1, x2, y2);
             }
 
+            g2.drawString(names.get(k), x2+33, count);
+            g2.fillRect(x2+15, count-10, 8, 8);
+            count += 20;
 
             g2.setStroke(oldStroke);
-            g2.setColor(colors.get((k-1)%5));
-            for (int i = 0; i < graphPoints.size(); i++) {
-                int x = graphPoints.get(i).x - pointWidth / 2;
-                int y = graphPoints.get(i).y - pointWidth / 2;
-                int ovalW = pointWidth;
-                int ovalH = pointWidth;
-                // g2.fillOval(x, y, ovalW, ovalH); // Draw circle on each point
-            }
         }
     }
 
     private double getMinScore()
     {
         double minScore = Double.MAX_VALUE;
-        for(List<Double> vector : vectors)
+        for(PlaceHistory history : series)
         {
-            if(vectors.indexOf(vector) != 0)
-            {
-                for (Double score : vector)
-                {
-                    minScore = Math.min(minScore, score);
-                }
-            }
+            minScore = Math.min(minScore, history.getMinTokens());
         }
         return minScore;
     }
@@ -233,16 +242,15 @@ public class GraphPanel extends JPanel
     private double getMaxScore()
     {
         double maxScore = Double.MIN_VALUE;
-        for(List<Double> vector : vectors)
+        for(PlaceHistory history : series)
         {
-            if(vectors.indexOf(vector) != 0)
-            {
-                for (Double score : vector)
-                {
-                    maxScore = Math.max(maxScore, score);
-                }
-            }
+            maxScore = Math.max(maxScore, history.getMaxTokens());
         }
         return maxScore;
     }
-}
\ No newline at end of file
+
+    private static double roundDouble(double value)
+    {
+        return Math.round(value * 100) / 100.0;
+    }
+}
@@ -0,0 +1,302 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.petrinator.auxiliar;
+
+import net.miginfocom.swing.MigLayout;
+import org.petrinator.editor.Root;
+import org.petrinator.petrinet.Marking;
+import org.petrinator.petrinet.Node;
+import org.petrinator.petrinet.Place;
+import org.petrinator.simulation.TraceReplay;
+
+import javax.swing.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.BooleanSupplier;
+
+/*
+ * @brief Plays a trace of the built-in engine on the net being edited
+ * @detail A Swing timer advances the replay once per frame, by the simulated time (or number of firings,
+ * for untimed nets) that corresponds to the wall time elapsed and the chosen speed, and then copies the
+ * marking to the editor and repaints once, however many events were applied. The slider seeks to any
+ * event through the checkpoints of the TraceReplay.
+ */
+public class ReplayDialog
+{
+    private static final int FRAME_MILLIS = 16;
+    private static final int SLIDER_STEPS = 1000;
+    // At "Max" speed, events applied per frame so the editor stays responsive
+    private static final int MAX_EVENTS_PER_FRAME = 1 << 16;
+
+    private static final String[] SPEEDS = {"x0.1", "x0.25", "x0.5", "x1", "x2", "x5", "x10", "x100", "x1000", "Max"};
+    private static final double[] FACTORS = {0.1, 0.25, 0.5, 1, 2, 5, 10, 100, 1000, Double.POSITIVE_INFINITY};
+
+    private final Root root;
+    private final TraceReplay replay;
+    private final Place[] places;
+    private final int[] shown;
+    private final boolean timed;
+    private final double eventsPerSecond;
+    private final BooleanSupplier stopRequested;
+    private final CountDownLatch closed = new CountDownLatch(1);
+
+    private JDialog dialog;
+    private JButton playButton;
+    private JComboBox<String> speedBox;
+    private JSlider slider;
+    private JLabel status;
+    private Timer timer;
+
+    private boolean playing = false;
+    private boolean updatingSlider = false;
+    private double clock;
+    private double pendingEvents;
+    private long lastTick;
+
+    /*
+     * @param replay the replay, over the compiled form of the net in the editor
+     * @param eventsPerSecond firings per second at speed x1 for nets without timed transitions
+     * @param stopRequested tells if the stop button of the editor has been pressed
+     */
+    public ReplayDialog(Root root, TraceReplay replay, double eventsPerSecond, BooleanSupplier stopRequested)
+    {
+        this.root = root;
+        this.replay = replay;
+        this.timed = replay.getNet().anyTimed();
+        this.eventsPerSecond = eventsPerSecond;
+        this.stopRequested = stopRequested;
+
+        List<Node> sorted = root.getDocument().petriNet.getSortedPlaces();
+        places = new Place[sorted.size()];
+        shown = new int[places.length];
+        for(int p = 0; p < places.length; p++)
+        {
+            places[p] = (Place) sorted.get(p);
+            shown[p] = -1;
+        }
+    }
+
+    /*
+     * @brief Opens the dialog and starts playing from the first event
+     */
+    public void play()
+    {
+        SwingUtilities.invokeLater(this::build);
+    }
+
+    /*
+     * @brief Skips the replay, just sets the marking of the editor to the one after the last event
+     */
+    public void showFinalMarking()
+    {
+        SwingUtilities.invokeLater(() ->
+        {
+            replay.seek(replay.getEventCount());
+            copyMarking();
+            root.refreshAll();
+            closed.countDown();
+        });
+    }
+
+    private void build()
+    {
+        dialog = new JDialog(root.getParentFrame(), "Replay", false);
+        dialog.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+        dialog.addWindowListener(new WindowAdapter()
+        {
+            @Override
+            public void windowClosed(WindowEvent e)
+            {
+                close();
+            }
+        });
+
+        JPanel panel = new JPanel(new MigLayout("", "[][grow][]", ""));
+
+        JButton startButton = new JButton("|<");
+        startButton.addActionListener(e -> seek(0));
+        playButton = new JButton("Play");
+        playButton.addActionListener(e -> setPlaying(!playing));
+        JButton endButton = new JButton(">|");
+        endButton.addActionListener(e -> seek(replay.getEventCount()));
+
+        speedBox = new JComboBox<String>(SPEEDS);
+        speedBox.setSelectedIndex(3);
+
+        slider = new JSlider(0, SLIDER_STEPS, 0);
+        slider.addChangeListener(e ->
+        {
+            if(!updatingSlider)
+                seek(Math.round(replay.getEventCount() * (double) slider.getValue() / SLIDER_STEPS));
+        });
+
+        status = new JLabel();
+
+        panel.add(startButton, "split 3");
+        panel.add(playButton);
+        panel.add(endButton);
+        panel.add(slider, "growx");
+        panel.add(speedBox, "wrap");
+        panel.add(status, "span, growx");
+
+        dialog.getContentPane().add(panel);
+        dialog.pack();
+        dialog.setLocationRelativeTo(root.getParentFrame());
+        dialog.setVisible(true);
+
+        timer = new Timer(FRAME_MILLIS, e -> tick());
+        timer.start();
+        show(0);
+        setPlaying(true);
+    }
+
+    /*
+     * @brief Blocks the calling thread until the dialog is closed or the simulation is stopped
+     */
+    public void waitUntilClosed()
+    {
+        try
+        {
+            closed.await();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void close()
+    {
+        if(timer != null)
+            timer.stop();
+        if(dialog != null && dialog.isDisplayable())
+            dialog.dispose();
+        root.refreshAll();
+        closed.countDown();
+    }
+
+    private void setPlaying(boolean play)
+    {
+        if(play && replay.isAtEnd())
+            seek(0);
+        playing = play;
+        playButton.setText(play ? "Pause" : "Play");
+        clock = replay.getTime();
+        pendingEvents = 0;
+        lastTick = System.nanoTime();
+    }
+
+    private void seek(long events)
+    {
+        replay.seek(events);
+        clock = replay.getTime();
+        pendingEvents = 0;
+        show(0);
+    }
+
+    /*
+     * @brief Advances the replay by the time elapsed since the last frame and shows the result
+     */
+    private void tick()
+    {
+        if(stopRequested.getAsBoolean())
+        {
+            close();
+            return;
+        }
+
+        long now = System.nanoTime();
+        double elapsed = (now - lastTick) / 1e9;
+        lastTick = now;
+        if(!playing)
+            return;
+
+        double factor = FACTORS[speedBox.getSelectedIndex()];
+        long before = replay.getPosition();
+        if(factor == Double.POSITIVE_INFINITY)
+        {
+            for(int i = 0; i < MAX_EVENTS_PER_FRAME && replay.step(); i++);
+            clock = replay.getTime();
+        }
+        else if(timed)
+        {
+            clock += elapsed * factor;
+            replay.advanceTo(clock);
+        }
+        else
+        {
+            pendingEvents += elapsed * factor * eventsPerSecond;
+            long events = (long) pendingEvents;
+            pendingEvents -= events;
+            for(long i = 0; i < events && replay.step(); i++);
+        }
+
+        show(replay.getPosition() - before);
+
+        if(replay.isAtEnd())
+        {
+            playing = false;
+            playButton.setText("Play");
+        }
+    }
+
+    /*
+     * @brief Copies the places that changed to the marking of the editor and repaints, once per frame
+     * @param applied events applied since the last frame
+     */
+    private void show(long applied)
+    {
+        boolean changed = copyMarking();
+
+        // With several events per frame only the count is worth logging
+        if(applied == 1 && replay.getLastTransition() >= 0)
+            root.getEventList().addEvent(replay.getNet().getTransitionLabel(replay.getLastTransition()) + " was fired!");
+
+        updatingSlider = true;
+        long count = Math.max(1, replay.getEventCount());
+        slider.setValue((int) (SLIDER_STEPS * replay.getPosition() / count));
+        updatingSlider = false;
+
+        status.setText("Event " + replay.getPosition() + " of " + replay.getEventCount()
+                + (timed ? String.format(",  t = %.3f of %.3f s", replay.getTime(), replay.getEndTime()) : ""));
+
+        if(changed || applied > 0)
+            root.repaintCanvas();
+    }
+
+    /*
+     * @brief Sets the tokens of the places that changed since the last call in the marking of the editor
+     * @return true if any place changed
+     */
+    private boolean copyMarking()
+    {
+        Marking marking = root.getDocument().petriNet.getInitialMarking();
+        boolean changed = false;
+        for(int p = 0; p < places.length; p++)
+        {
+            int tokens = replay.getTokens(p);
+            if(tokens != shown[p])
+            {
+                marking.setTokens(places[p], tokens);
+                shown[p] = tokens;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+}
@@ -24,6 +24,7 @@ import java.awt.Font;
 import java.awt.Frame;
 import java.awt.Image;
 import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.event.*;
 import java.io.File;
 import java.util.*;
@@ -363,6 +364,14 @@ public class Root implements WindowListener, ListSelectionListener, SelectionCha
         canvas.repaint();
     }
 
+    /**
+     * Repaints only the given area of the canvas, in the coordinates of the
+     * elements of the net.
+     */
+    public void repaintCanvas(Rectangle area) {
+        canvas.repaint(area.x + canvas.getTranslationX(), area.y + canvas.getTranslationY(), area.width, area.height);
+    }
+
     private void enableOnlyPossibleActions() {
         boolean isDeletable = clickedElement != null
                 && !(clickedElement instanceof ReferencePlace)
@@ -0,0 +1,750 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.petrinator.editor;
+
+import org.petrinator.editor.filechooser.FileType;
+import org.petrinator.editor.filechooser.FileTypeException;
+import org.petrinator.editor.filechooser.PflowFileType;
+import org.petrinator.editor.filechooser.PipePnmlFileType;
+import org.petrinator.editor.filechooser.ViptoolPnmlFileType;
+import org.petrinator.petrinet.Document;
+import org.petrinator.simulation.Checkpoint;
+import org.petrinator.simulation.Checkpointer;
+import org.petrinator.simulation.CompiledNet;
+import org.petrinator.simulation.ImportanceFunction;
+import org.petrinator.simulation.MetricsRegistry;
+import org.petrinator.simulation.NetSpec;
+import org.petrinator.simulation.RandomStream;
+import org.petrinator.simulation.ReplicationRunner;
+import org.petrinator.simulation.RunAccumulators;
+import org.petrinator.simulation.RunStatistics;
+import org.petrinator.simulation.SimulationEngine;
+import org.petrinator.simulation.SimulationListener;
+import org.petrinator.simulation.SimulationMetrics;
+import org.petrinator.simulation.SplittingResult;
+import org.petrinator.simulation.SplittingRunner;
+import org.petrinator.simulation.SteadyStateResult;
+import org.petrinator.simulation.SteadyStateRunner;
+import org.petrinator.simulation.policy.ChoiceLog;
+import org.petrinator.simulation.policy.ConflictPolicies;
+import org.petrinator.simulation.policy.ConflictPolicy;
+import org.petrinator.simulation.policy.RecordingPolicy;
+import org.petrinator.simulation.policy.ReplayPolicy;
+import org.petrinator.simulation.server.JobSpec;
+import org.petrinator.simulation.server.ResultSpec;
+import org.petrinator.simulation.server.SimulationClient;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Runs a simulation in the built-in engine from the command line, without
+ * the editor:
+ *
+ *   java -Djava.awt.headless=true -cp petrinator.jar org.petrinator.editor.SimulationMain
+ *        [options] net.pflow|net.pnml|net.xml
+ *
+ * The net is loaded with the same file types the editor opens and imports.
+ * Statistics are written as CSV, one row per place and transition, and the
+ * trace of a single run, if asked for, as one "transition,time" row per
+ * firing. Nothing here uses AWT, so it runs on headless machines.
+ */
+public class SimulationMain {
+
+    /** Name of the metrics of a single run in MetricsRegistry.getShared() */
+    public static final String METRICS_NAME = "command line";
+
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "Usage: SimulationMain [options] <net.pflow|net.pnml|net.xml>",
+            "  -n, --firings N        stop after N firings (default 10000 without -t)",
+            "  -t, --time T           stop at simulated time T, in seconds",
+            "  -r, --replications R   independent replications (default 1)",
+            "  -s, --seed S           seed, random if not given",
+            "  -p, --policy NAME      conflicts between immediate transitions: "
+                    + "random, weighted, priority or round-robin (default random)",
+            "  -o, --statistics FILE  statistics CSV (default <net>-statistics.csv)",
+            "      --trace FILE       trace CSV of a single run",
+            "      --choices FILE     records the choices of a single run",
+            "      --replay FILE      replays the choices of a recorded run",
+            "      --metrics FILE     engine metrics of a single run, as JSON",
+            "      --summary FILE     token and firing interval statistics of a single run: "
+                    + "std dev, min, max and quantiles (CSV)",
+            "      --checkpoint FILE  saves a single run now and then, and when it ends, to resume it",
+            "      --checkpoint-interval S  seconds between checkpoints (default 60)",
+            "      --resume FILE      goes on with the run of a checkpoint of the same net and initial marking, "
+                    + "with its seed, policy and limits unless -n or -t are given",
+            "      --guard NAME       the guard NAME is true at the start, may be repeated "
+                    + "(guards are false otherwise)",
+            "      --threads N        threads for replications",
+            "      --steady-state X   single run until the mean tokens of place X (or throughput of "
+                    + "transition X) is precise, after an MSER-5 warm-up",
+            "      --precision R      relative half width for --steady-state (default 0.05)",
+            "      --interval L       first observation interval for --steady-state, in seconds "
+                    + "or firings (default 1)",
+            "      --importance F     estimates the probability that the importance F, e.g. "
+                    + "\"2*Failed + Queue\", reaches the last level before the limits, by splitting",
+            "      --levels L,...     increasing importance levels for --importance",
+            "      --trials N         trials from every level for --importance (default 1000)",
+            "      --batch K          simulates K replications at once, for nets with only "
+                    + "exponential timed transitions and the random policy",
+            "      --server URL       runs the replications on a SimulationServer",
+            "  -h, --help             shows this help");
+
+    private long maxFirings = 10000;
+    private double maxTime = Double.POSITIVE_INFINITY;
+    private int replications = 1;
+    private Long seed;
+    private String policy = ConflictPolicies.RANDOM;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int batch = 0;
+    private File netFile;
+    private File statisticsFile;
+    private File traceFile;
+    private File choicesFile;
+    private File replayFile;
+    private File metricsFile;
+    private File summaryFile;
+    private File checkpointFile;
+    private long checkpointInterval = Checkpointer.DEFAULT_INTERVAL;
+    private File resumeFile;
+    private boolean limitsGiven;
+    private boolean policyGiven;
+    private String steadyState;
+    private double precision = 0.05;
+    private double interval = 1;
+    private String importance;
+    private double[] levels;
+    private int trials = 1000;
+    private String server;
+    private final List<String> guards = new ArrayList<>();
+
+    public static void main(String[] args) {
+        SimulationMain main = new SimulationMain();
+        try {
+            if (!main.parse(args)) {
+                System.out.println(USAGE);
+                return;
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+        try {
+            main.run();
+        } catch (FileTypeException | IOException | UncheckedIOException | IllegalArgumentException
+                | IllegalStateException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Reads the options.
+     *
+     * @return false if only the help was asked for
+     * @throws IllegalArgumentException if the options are not valid
+     */
+    boolean parse(String[] args) {
+        boolean firingsGiven = false;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "-h":
+                case "--help":
+                    return false;
+                case "-n":
+                case "--firings":
+                    maxFirings = Long.parseLong(value(args, ++i, arg));
+                    firingsGiven = true;
+                    break;
+                case "-t":
+                case "--time":
+                    maxTime = Double.parseDouble(value(args, ++i, arg));
+                    break;
+                case "-r":
+                case "--replications":
+                    replications = Integer.parseInt(value(args, ++i, arg));
+                    break;
+                case "-s":
+                case "--seed":
+                    seed = Long.parseLong(value(args, ++i, arg));
+                    break;
+                case "-p":
+                case "--policy":
+                    policy = policyName(value(args, ++i, arg));
+                    policyGiven = true;
+                    break;
+                case "-o":
+                case "--statistics":
+                    statisticsFile = new File(value(args, ++i, arg));
+                    break;
+                case "--trace":
+                    traceFile = new File(value(args, ++i, arg));
+                    break;
+                case "--choices":
+                    choicesFile = new File(value(args, ++i, arg));
+                    break;
+                case "--replay":
+                    replayFile = new File(value(args, ++i, arg));
+                    break;
+                case "--metrics":
+                    metricsFile = new File(value(args, ++i, arg));
+                    break;
+                case "--steady-state":
+                    steadyState = value(args, ++i, arg);
+                    break;
+                case "--precision":
+                    precision = Double.parseDouble(value(args, ++i, arg));
+                    break;
+                case "--interval":
+                    interval = Double.parseDouble(value(args, ++i, arg));
+                    break;
+                case "--importance":
+                    importance = value(args, ++i, arg);
+                    break;
+                case "--levels":
+                    levels = levels(value(args, ++i, arg));
+                    break;
+                case "--trials":
+                    trials = Integer.parseInt(value(args, ++i, arg));
+                    break;
+                case "--checkpoint":
+                    checkpointFile = new File(value(args, ++i, arg));
+                    break;
+                case "--checkpoint-interval":
+                    checkpointInterval = Math.round(Double.parseDouble(value(args, ++i, arg)) * 1000);
+                    break;
+                case "--resume":
+                    resumeFile = new File(value(args, ++i, arg));
+                    break;
+                case "--summary":
+                    summaryFile = new File(value(args, ++i, arg));
+                    break;
+                case "--guard":
+                    guards.add(value(args, ++i, arg));
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(value(args, ++i, arg));
+                    break;
+                case "--batch":
+                    batch = Integer.parseInt(value(args, ++i, arg));
+                    break;
+                case "--server":
+                    server = value(args, ++i, arg);
+                    break;
+                default:
+                    if (arg.startsWith("-") || netFile != null) {
+                        throw new IllegalArgumentException("Unexpected argument " + arg);
+                    }
+                    netFile = new File(arg);
+            }
+        }
+
+        if (netFile == null) {
+            throw new IllegalArgumentException("No net given");
+        }
+        if (maxFirings < 1 || !(maxTime > 0)) {
+            throw new IllegalArgumentException("The firings and the time must be positive");
+        }
+        limitsGiven = firingsGiven || maxTime != Double.POSITIVE_INFINITY;
+        // A time limit alone, or the precision of a steady state run, is not cut short by the default firings
+        if (!firingsGiven && (maxTime != Double.POSITIVE_INFINITY || steadyState != null)) {
+            maxFirings = Long.MAX_VALUE;
+        }
+        if (replications < 1) {
+            throw new IllegalArgumentException("At least one replication is needed");
+        }
+        if (batch < 0) {
+            throw new IllegalArgumentException("The batch size cannot be negative");
+        }
+        if ((replications > 1 || server != null || batch > 0) && (traceFile != null || choicesFile != null
+                || replayFile != null || metricsFile != null || summaryFile != null)) {
+            throw new IllegalArgumentException("Traces, choices, metrics and summaries are only for a single local run");
+        }
+        if ((checkpointFile != null || resumeFile != null) && (replications > 1 || server != null || batch > 0
+                || steadyState != null || importance != null || choicesFile != null || replayFile != null)) {
+            throw new IllegalArgumentException("Checkpoints are for a single local run, without choices");
+        }
+        if (resumeFile != null && (seed != null || policyGiven)) {
+            throw new IllegalArgumentException("A resumed run keeps the seed and the policy of its checkpoint");
+        }
+        if (checkpointInterval < 0) {
+            throw new IllegalArgumentException("The checkpoint interval cannot be negative");
+        }
+        // A resumed run goes on saving to its checkpoint
+        if (checkpointFile == null) {
+            checkpointFile = resumeFile;
+        }
+        if (steadyState != null && (replications > 1 || server != null || batch > 0 || traceFile != null
+                || choicesFile != null || replayFile != null)) {
+            throw new IllegalArgumentException("A steady state run is a single local run, without traces or choices");
+        }
+        if (importance != null && (replications > 1 || server != null || batch > 0 || steadyState != null
+                || traceFile != null || choicesFile != null || replayFile != null || metricsFile != null
+                || summaryFile != null)) {
+            throw new IllegalArgumentException("Splitting is a local estimate of its own, without other modes or outputs");
+        }
+        if ((importance == null) != (levels == null)) {
+            throw new IllegalArgumentException("--importance and --levels go together");
+        }
+        if (statisticsFile == null) {
+            String name = netFile.getName();
+            int dot = name.lastIndexOf('.');
+            statisticsFile = new File(netFile.getAbsoluteFile().getParentFile(),
+                    (dot > 0 ? name.substring(0, dot) : name) + "-statistics.csv");
+        }
+        return true;
+    }
+
+    private static String value(String[] args, int i, String option) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException(option + " needs a value");
+        }
+        return args[i];
+    }
+
+    private static double[] levels(String option) {
+        String[] values = option.split(",");
+        double[] levels = new double[values.length];
+        for (int k = 0; k < values.length; k++) {
+            levels[k] = Double.parseDouble(values[k].trim());
+        }
+        return levels;
+    }
+
+    private static String policyName(String option) {
+        for (String name : ConflictPolicies.NAMES) {
+            if (name.equalsIgnoreCase(option) || name.replace(' ', '-').toLowerCase(Locale.ROOT)
+                    .startsWith(option.toLowerCase(Locale.ROOT))) {
+                return name;
+            }
+        }
+        throw new IllegalArgumentException("Unknown policy " + option);
+    }
+
+    void run() throws FileTypeException, IOException {
+        long start = System.currentTimeMillis();
+        CompiledNet net = CompiledNet.compile(load(netFile).petriNet).withInitialGuards(guards);
+        System.out.println(netFile.getName() + ": " + net.getPlaceCount() + " places, "
+                + net.getTransitionCount() + " transitions, loaded in "
+                + (System.currentTimeMillis() - start) + " ms");
+        for (String guard : net.getUnsetGuards()) {
+            System.err.println("Warning: the guard " + guard + " is never set, the transitions that need it "
+                    + "never fire (use --guard " + guard + ")");
+        }
+
+        if (importance != null) {
+            runSplitting(net);
+        } else if (steadyState != null) {
+            runSteadyState(net);
+        } else if (replications > 1 || server != null || batch > 0) {
+            runReplications(net);
+        } else {
+            runSingle(net);
+        }
+        System.out.println("Statistics written to " + statisticsFile);
+    }
+
+    /**
+     * Loads a net with the file type for its extension, among those the
+     * editor opens and imports.
+     */
+    static Document load(File file) throws FileTypeException {
+        List<FileType> fileTypes = Arrays.asList(new PflowFileType(), new ViptoolPnmlFileType(),
+                new PipePnmlFileType());
+        FileType fileType = FileType.getAcceptingFileType(file, fileTypes);
+        if (fileType == null) {
+            throw new FileTypeException("Unknown file type of " + file);
+        }
+        return fileType.load(file);
+    }
+
+    private void runSingle(CompiledNet net) throws IOException {
+        ChoiceLog choices = null;
+        ConflictPolicy conflictPolicy = null;
+        if (replayFile != null) {
+            choices = ChoiceLog.read(replayFile);
+            seed = choices.getSeed();
+            conflictPolicy = new ReplayPolicy(choices);
+        }
+        Checkpoint resumed = null;
+        if (resumeFile != null) {
+            resumed = Checkpoint.read(resumeFile);
+            seed = resumed.getSeed();
+            policy = resumed.getPolicy();
+            if (!limitsGiven) {
+                maxFirings = resumed.getMaxFirings();
+                maxTime = resumed.getMaxTime();
+            }
+        }
+        long runSeed = seed != null ? seed : System.nanoTime();
+
+        // As in the editor, the policy always gets the first split so replays get the same delays
+        RandomStream random = new RandomStream(runSeed);
+        RandomStream policyRandom = random.split();
+        if (conflictPolicy == null) {
+            conflictPolicy = ConflictPolicies.create(policy, policyRandom);
+            if (choicesFile != null) {
+                choices = new ChoiceLog(runSeed, policy, net.getTransitionCount());
+                conflictPolicy = new RecordingPolicy(conflictPolicy, choices);
+            }
+        }
+
+        SimulationEngine engine = new SimulationEngine(net, random, conflictPolicy);
+        // Published while running, for JConsole
+        SimulationMetrics metrics = new SimulationMetrics(net);
+        engine.setMetrics(metrics);
+        MetricsRegistry.getShared().register(METRICS_NAME, metrics);
+        RunStatistics statistics = new RunStatistics(net);
+        statistics.start(engine.getTime(), engine.getMarking());
+        engine.addListener(statistics);
+        RunAccumulators summary = null;
+        if (summaryFile != null) {
+            summary = new RunAccumulators(net);
+            summary.start(engine.getTime(), engine.getMarking());
+            engine.addListener(summary);
+        }
+        if (resumed != null) {
+            resumed.restore(engine, random, policyRandom);
+            // A checkpoint without them, from the editor or without --summary, collects from here on
+            if (!resumed.restore(statistics)) {
+                statistics.start(engine.getTime(), engine.getMarking());
+            }
+            if (summary != null && !resumed.restore(summary)) {
+                summary.start(engine.getTime(), engine.getMarking());
+            }
+            System.out.println("Resumed from " + resumeFile + " at simulated time " + resumed.getTime() + " s, after "
+                    + resumed.getFirings() + " firings");
+        }
+
+        TraceWriter trace = null;
+        Checkpointer checkpointer = null;
+        long start = System.currentTimeMillis();
+        try {
+            if (traceFile != null) {
+                trace = new TraceWriter(net, traceFile, resumed != null ? resumed.getTraceOffset() : 0);
+                engine.addListener(trace);
+            }
+            if (checkpointFile != null) {
+                final TraceWriter traceWriter = trace;
+                final RunAccumulators accumulators = summary;
+                checkpointer = new Checkpointer(() -> {
+                    Checkpoint checkpoint = new Checkpoint(engine, random, policyRandom);
+                    checkpoint.setSeed(runSeed);
+                    checkpoint.setPolicy(policy);
+                    checkpoint.setLimits(maxFirings, maxTime);
+                    checkpoint.setStatistics(statistics);
+                    if (accumulators != null) {
+                        checkpoint.setSummary(accumulators);
+                    }
+                    if (traceWriter != null) {
+                        checkpoint.setTraceOffset(traceWriter.offset());
+                    }
+                    checkpoint.write(checkpointFile);
+                });
+                checkpointer.setInterval(checkpointInterval);
+                checkpointer.run(engine, maxFirings, maxTime, () -> false);
+            } else {
+                engine.run(maxFirings, maxTime);
+            }
+        } finally {
+            if (trace != null) {
+                trace.close();
+            }
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        statistics.finish(engine.getTime());
+
+        System.out.println("Seed " + runSeed + ", conflicts: "
+                + (replayFile != null ? "replayed from " + replayFile : policy));
+        System.out.println(statistics.getFirings() + " firings in " + elapsed + " ms, simulated time "
+                + engine.getTime() + " s" + (engine.isBlocked() ? ", net blocked" : ""));
+        if (engine.getClosureFirings() > 0) {
+            System.out.println(engine.getClosureFirings() + " automatic firings, at most "
+                    + engine.getLongestClosure() + " after a single event");
+        }
+
+        if (choicesFile != null) {
+            choices.write(choicesFile);
+            System.out.println(choices.size() + " choices written to " + choicesFile);
+        }
+        if (trace != null) {
+            System.out.println("Trace written to " + traceFile);
+        }
+        if (checkpointer != null) {
+            System.out.println(checkpointer.getSaved() + " checkpoints written to " + checkpointFile);
+        }
+        if (summary != null) {
+            summary.finish(engine.getTime());
+            try (Writer out = writer(summaryFile)) {
+                summary.writeCsv(out);
+            }
+            System.out.println("Summary written to " + summaryFile);
+        }
+        if (metricsFile != null) {
+            try (Writer out = writer(metricsFile)) {
+                out.write(metrics.toJson());
+            }
+            System.out.println("Metrics written to " + metricsFile);
+        }
+
+        double[] meanTokens = statistics.getMeanTokens();
+        double[] throughput = statistics.getThroughput();
+        try (PrintWriter out = csv(statisticsFile)) {
+            out.println("element,label,mean tokens or throughput,firings");
+            for (int p = 0; p < net.getPlaceCount(); p++) {
+                out.println("place," + quote(net.getPlaceLabel(p)) + "," + meanTokens[p] + ",");
+            }
+            for (int t = 0; t < net.getTransitionCount(); t++) {
+                out.println("transition," + quote(net.getTransitionLabel(t)) + "," + throughput[t] + ","
+                        + statistics.getFirings(t));
+            }
+        }
+    }
+
+    private void runReplications(CompiledNet net) throws IOException {
+        ResultSpec result;
+        if (server != null) {
+            JobSpec job = new JobSpec();
+            job.net = NetSpec.of(net);
+            job.firings = maxFirings;
+            job.time = maxTime == Double.POSITIVE_INFINITY ? null : maxTime;
+            job.replications = replications;
+            job.seed = seed;
+            job.policy = policy;
+            job.batch = batch;
+            result = new SimulationClient(server).run(job);
+            System.out.println("Simulated on " + server);
+        } else {
+            ReplicationRunner runner = new ReplicationRunner(net);
+            runner.setReplications(replications);
+            runner.setMaxFirings(maxFirings);
+            runner.setMaxTime(maxTime);
+            runner.setThreads(threads);
+            runner.setConflictPolicy(policy);
+            runner.setBatchSize(batch);
+            if (seed != null) {
+                runner.setSeed(seed);
+            }
+            if (batch > 0 && !runner.isBatched()) {
+                System.out.println("The net or the policy cannot be batched, running one engine per replication");
+            }
+            try {
+                result = ResultSpec.of(runner.run());
+            } finally {
+                runner.shutdown();
+            }
+        }
+
+        if (result.requested > result.replications) {
+            System.out.println("Interrupted, only " + result.replications + " of " + result.requested
+                    + " replications completed");
+        }
+        System.out.println(result.replications + " replications, master seed " + result.seed
+                + ", conflicts: " + policy);
+        System.out.println(result.totalFirings + " firings in " + result.elapsedMillis + " ms");
+
+        writeResult(result);
+    }
+
+    /**
+     * Runs until the target is precise and writes the batch means of all
+     * the places and transitions.
+     */
+    private void runSteadyState(CompiledNet net) throws IOException {
+        SteadyStateRunner runner = new SteadyStateRunner(net);
+        int place = net.indexOfPlace(steadyState);
+        if (place >= 0) {
+            runner.setTargetPlace(place);
+        } else {
+            int transition = net.indexOfTransition(steadyState);
+            if (transition < 0) {
+                throw new IllegalArgumentException("No place or transition " + steadyState);
+            }
+            runner.setTargetTransition(transition);
+        }
+        runner.setRelativePrecision(precision);
+        runner.setInterval(interval);
+        runner.setMaxFirings(maxFirings);
+        runner.setMaxTime(maxTime);
+        runner.setConflictPolicy(policy);
+        if (seed != null) {
+            runner.setSeed(seed);
+        }
+        SteadyStateResult result = runner.run();
+
+        String unit = net.anyTimed() ? " s" : " firings";
+        System.out.println("Seed " + runner.getSeed() + ", conflicts: " + policy);
+        System.out.println(result.getFirings() + " firings in " + result.getElapsedMillis() + " ms, simulated time "
+                + result.getTime() + " s");
+        switch (result.getStop()) {
+            case PRECISE:
+                System.out.println("Stopped when " + result.getTargetLabel() + " reached the precision");
+                break;
+            case LIMIT:
+                System.out.println("Stopped at the limit before " + result.getTargetLabel() + " reached the precision");
+                break;
+            case BLOCKED:
+                System.out.println("Stopped because the net is blocked");
+                break;
+        }
+        if (result.getBatches() == null) {
+            throw new IllegalStateException("The warm-up did not end, or the run was too short after it");
+        }
+        System.out.println("Warm-up " + result.getWarmup() + unit + ", " + result.getObservations()
+                + " observations of " + result.getInterval() + unit + " in "
+                + result.getBatches().getReplications() + " batches");
+        System.out.println(result.getTargetLabel() + ": " + result.getTargetMean() + " +- "
+                + result.getTargetHalfWidth());
+        writeResult(ResultSpec.of(result.getBatches()));
+    }
+
+    /**
+     * Estimates the probability of reaching the last importance level and
+     * writes the probability of every level given the one before.
+     */
+    private void runSplitting(CompiledNet net) throws IOException {
+        SplittingRunner runner = new SplittingRunner(net, ImportanceFunction.parse(importance, net));
+        runner.setLevels(levels);
+        runner.setTrials(trials);
+        runner.setMaxFirings(maxFirings);
+        runner.setMaxTime(maxTime);
+        runner.setConflictPolicy(policy);
+        if (seed != null) {
+            runner.setSeed(seed);
+        }
+        SplittingResult result = runner.run();
+
+        System.out.println("Seed " + runner.getSeed() + ", conflicts: " + policy);
+        System.out.println(result.getFirings() + " firings in " + result.getElapsedMillis() + " ms, "
+                + result.getTrials() + " trials from each of " + result.getStages() + " levels");
+        if (result.getStages() < levels.length) {
+            System.out.println("Level " + levels[result.getStages()] + " was never reached");
+        }
+        System.out.println("P(" + result.getImportance() + " >= " + levels[levels.length - 1] + ") = "
+                + result.getProbability() + ", relative error " + result.getRelativeError());
+
+        try (PrintWriter out = csv(statisticsFile)) {
+            out.println("level,importance,trials,successes,probability from the level before");
+            for (int k = 0; k < result.getStages(); k++) {
+                out.println((k + 1) + "," + levels[k] + "," + result.getTrials() + "," + result.getSuccesses(k) + ","
+                        + result.getLevelProbability(k));
+            }
+        }
+    }
+
+    private void writeResult(ResultSpec result) throws IOException {
+        try (PrintWriter out = csv(statisticsFile)) {
+            out.println("element,label,mean tokens or throughput,half width (" + result.confidence + ")");
+            for (ResultSpec.Measure place : result.places) {
+                out.println("place," + quote(place.label) + "," + place.mean + "," + place.halfWidth);
+            }
+            for (ResultSpec.Measure transition : result.transitions) {
+                out.println("transition," + quote(transition.label) + "," + transition.mean + ","
+                        + transition.halfWidth);
+            }
+        }
+    }
+
+    private static PrintWriter csv(File file) throws IOException {
+        return new PrintWriter(writer(file));
+    }
+
+    private static Writer writer(File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8),
+                1 << 16);
+    }
+
+    private static String quote(String label) {
+        if (label.indexOf(',') < 0 && label.indexOf('"') < 0) {
+            return label;
+        }
+        return '"' + label.replace("\"", "\"\"") + '"';
+    }
+
+    /**
+     * Streams the firings to a CSV file as they happen, so traces of any
+     * length take no memory.
+     */
+    private static class TraceWriter implements SimulationListener {
+
+        private final FileOutputStream stream;
+        private final Writer out;
+        private final String[] labels;
+
+        /**
+         * @param offset bytes of the file to keep, from the run of a checkpoint, or 0 for a new trace
+         */
+        TraceWriter(CompiledNet net, File file, long offset) throws IOException {
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (parent != null) {
+                parent.mkdirs();
+            }
+            this.stream = new FileOutputStream(file, offset > 0);
+            if (offset > 0) {
+                // Events written after the checkpoint are fired again
+                stream.getChannel().truncate(offset);
+            }
+            this.out = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), 1 << 16);
+            this.labels = new String[net.getTransitionCount()];
+            for (int t = 0; t < labels.length; t++) {
+                labels[t] = quote(net.getTransitionLabel(t));
+            }
+            if (offset == 0) {
+                out.write("transition,time\n");
+            }
+        }
+
+        /**
+         * Writes what is buffered and returns the length of the file.
+         */
+        long offset() throws IOException {
+            out.flush();
+            return stream.getChannel().position();
+        }
+
+        @Override
+        public void transitionFired(int transition, double time, int[] marking) {
+            try {
+                out.write(labels[transition]);
+                out.write(',');
+                out.write(Double.toString(time));
+                out.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not write the trace", e);
+            }
+        }
+
+        void close() throws IOException {
+            out.close();
+        }
+    }
+}
@@ -24,6 +24,8 @@ import net.miginfocom.swing.MigLayout;
 import org.petrinator.auxiliar.GraphPanel;
 import org.petrinator.editor.Root;
 import org.petrinator.petrinet.Place;
+import org.petrinator.simulation.MarkingHistory;
+import org.petrinator.simulation.PlaceHistory;
 import org.petrinator.util.GraphicsTools;
 import javax.swing.*;
 import java.awt.event.ActionEvent;
@@ -46,7 +48,8 @@ public class GraphMultiplePlacesAction extends AbstractAction
     @Override
     public void actionPerformed(ActionEvent e)
     {
-        if(SimulateAction.instants.size() < 2) // Only one firing cannot be displayed
+        MarkingHistory history = SimulateAction.history;
+        if(history == null || history.getEndTime() <= 0) // Only one firing cannot be displayed
         {
             JOptionPane.showMessageDialog(null, "Simulation must be run before graph can be displayed.");
             return;
@@ -108,16 +111,24 @@ public class GraphMultiplePlacesAction extends AbstractAction
             return;
         }
 
-        java.util.List<java.util.List<Double>> vectors = new ArrayList<java.util.List<Double>>();
-        vectors.add(SimulateAction.instants);
+        java.util.List<PlaceHistory> series = new ArrayList<PlaceHistory>();
+        java.util.List<String> labels = new ArrayList<String>();
         for(String label : resultPlaces)
         {
-            vectors.add((root.getDocument().petriNet.getCurrentSubnet().getPlace(label)).getValues());
+            // Places added after the simulation have no history
+            if(history.getPlace(label) != null)
+            {
+                series.add(history.getPlace(label));
+                labels.add(label);
+            }
+        }
+        if(series.isEmpty())
+        {
+            JOptionPane.showMessageDialog(null, "Simulation must be run before graph can be displayed.");
+            return;
         }
 
-        resultPlaces.add(0, "");
-
-        GraphPanel mainPanel = new GraphPanel(root, vectors, resultPlaces);
+        GraphPanel mainPanel = new GraphPanel(root, series, labels, history.getEndTime());
     }
 
     private String [] getChoices(Root root)
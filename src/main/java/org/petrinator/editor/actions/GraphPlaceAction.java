@@ -25,6 +25,8 @@ import org.petrinator.editor.Root;
 import org.petrinator.petrinet.Element;
 import org.petrinator.petrinet.Place;
 import org.petrinator.petrinet.TransitionNode;
+import org.petrinator.simulation.MarkingHistory;
+import org.petrinator.simulation.PlaceHistory;
 import org.petrinator.util.GraphicsTools;
 
 import javax.swing.*;
@@ -55,20 +57,20 @@ public class GraphPlaceAction extends AbstractAction
     {
         Place clickedPlace = (Place) root.getClickedElement();
 
-        if(clickedPlace.getValues().size() < 2 || SimulateAction.instants.size() < 2) // Only one firing cannot be displayed
+        MarkingHistory history = SimulateAction.history;
+        PlaceHistory placeHistory = history == null ? null : history.getPlace(clickedPlace.getLabel());
+        if(placeHistory == null || history.getEndTime() <= 0) // Only one firing cannot be displayed
         {
             JOptionPane.showMessageDialog(null, "Simulation must be run before graph can be displayed.");
             return;
         }
 
-        java.util.List<java.util.List<Double>> vectors = new ArrayList<java.util.List<Double>>();
-        vectors.add(SimulateAction.instants);
-        vectors.add(clickedPlace.getValues());
+        java.util.List<PlaceHistory> series = new ArrayList<PlaceHistory>();
+        series.add(placeHistory);
 
         ArrayList<String> labels = new ArrayList<String>();
-        labels.add("");
         labels.add(clickedPlace.getLabel());
 
-        GraphPanel mainPanel = new GraphPanel(root, vectors, labels);
+        GraphPanel mainPanel = new GraphPanel(root, series, labels, history.getEndTime());
     }
 }
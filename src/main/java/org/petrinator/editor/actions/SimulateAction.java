@@ -27,6 +27,33 @@ import org.petrinator.petrinet.*;
 import org.petrinator.util.GraphicsTools;
 import org.petrinator.editor.commands.FireTransitionCommand;
 import org.petrinator.auxiliar.*;
+import org.petrinator.simulation.Checkpoint;
+import org.petrinator.simulation.Checkpointer;
+import org.petrinator.simulation.CompiledNet;
+import org.petrinator.simulation.EventTrace;
+import org.petrinator.simulation.ImportanceFunction;
+import org.petrinator.simulation.MarkingHistory;
+import org.petrinator.simulation.MetricsRegistry;
+import org.petrinator.simulation.NetSpec;
+import org.petrinator.simulation.RandomStream;
+import org.petrinator.simulation.ReplicationResult;
+import org.petrinator.simulation.ReplicationRunner;
+import org.petrinator.simulation.RunAccumulators;
+import org.petrinator.simulation.SimulationEngine;
+import org.petrinator.simulation.SimulationMetrics;
+import org.petrinator.simulation.SplittingResult;
+import org.petrinator.simulation.SplittingRunner;
+import org.petrinator.simulation.TraceReplay;
+import org.petrinator.simulation.policy.ChoiceLog;
+import org.petrinator.simulation.policy.ConflictPolicies;
+import org.petrinator.simulation.policy.ConflictPolicy;
+import org.petrinator.simulation.policy.RecordingPolicy;
+import org.petrinator.simulation.policy.ReplayPolicy;
+import org.petrinator.simulation.server.JobSpec;
+import org.petrinator.simulation.server.ResultSpec;
+import org.petrinator.simulation.server.SimulationClient;
+import org.petrinator.simulation.stats.TimeWeighted;
+import org.petrinator.simulation.stats.Welford;
 
 import java.awt.event.*;
 import java.util.*;
@@ -45,6 +72,10 @@ import org.unc.lac.javapetriconcurrencymonitor.petrinets.factory.PetriNetFactory
 import net.miginfocom.swing.MigLayout;
 import javax.swing.*;
 import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.util.List;
 
 /**
@@ -60,17 +91,47 @@ public class SimulateAction extends AbstractAction
 {
     private Root root;
     private List<FileType> fileTypes;
-    protected static boolean stop = false;
+    // Read by the engine thread between slices of firings
+    protected static volatile boolean stop = false;
     ActionEvent e;
-    public static List<Double> instants = new ArrayList<Double>();
-    private boolean running = false;
+    public static volatile MarkingHistory history;
+    /*
+     * Marking and history kept by the replay, in the order of the compiled net
+     */
+    private CompiledNet replayNet;
+    private int[] replayMarking;
+    private MarkingHistory replayHistory;
+    /*
+     * Choices among enabled immediate transitions of the last run in the built-in engine, to replay it
+     */
+    private static final String REPLAY_CHOICES = "Replay last run";
+    private final File choicesFile = new File("tmp/Simulation_Choices.bin");
+    /*
+     * Metrics of the last run in the built-in engine, also published over JMX under this name while it runs
+     */
+    private static final String METRICS_NAME = "editor";
+    private final File metricsFile = new File("tmp/Simulation_Metrics.json");
+    private final File statisticsFile = new File("tmp/Simulation_Statistics.csv");
+    private final File checkpointFile = new File("tmp/Simulation_Checkpoint.bin");
+    private final CountdownAnimator countdowns;
+    /*
+     * Kinds of remote server: the CUDA server of the monitor, or a SimulationServer running the built-in engine
+     */
+    private static final String CUDA_SERVER = "CUDA server";
+    private static final String SIMULATION_SERVER = "Petrinator simulation server";
     private String serverIP = "";
+    private String defaultServer = CUDA_SERVER;
     private String defaultIP = "localhost";
     private String defaultPort = "8080";
+    /*
+     * Guards true at the start of a run in the built-in engine, separated by commas
+     */
+    private String initialGuards = "";
 
     public SimulateAction(Root root, List<FileType> fileTypes) {
         this.root = root;
         this.fileTypes = fileTypes;
+        this.countdowns = new CountdownAnimator(root);
         String name = "Simulate";
         putValue(NAME, name);
         putValue(SMALL_ICON, GraphicsTools.getIcon("pneditor/play16.png"));
@@ -122,11 +183,31 @@ public class SimulateAction extends AbstractAction
         int timeBetweenTransitions = 10;
         boolean skipGraphicalFire = false;
         boolean cudaServer = false;
+        boolean simulationServer = false;
+        boolean builtInEngine = true;
+        int replications = 1;
+        long seed = System.nanoTime();
+        String conflictPolicy = ConflictPolicies.RANDOM;
+        String importance = null;
+        double[] levels = null;
+        int trials = 1000;
+        boolean resume = false;
 
         JTextField numberTF = new JTextField(8);
+        JTextField replicationsTF = new JTextField(8);
+        JTextField seedTF = new JTextField(8);
         JTextField timeTF = new JTextField(8);
         JCheckBox skipCheck = new JCheckBox();
+        JCheckBox engineCheck = new JCheckBox();
+        JCheckBox resumeCheck = new JCheckBox();
+        JComboBox<String> policyBox = new JComboBox<String>(ConflictPolicies.NAMES);
+        policyBox.addItem(REPLAY_CHOICES);
+        JTextField importanceTF = new JTextField(16);
+        JTextField levelsTF = new JTextField(16);
+        JTextField trialsTF = new JTextField(8);
+        JTextField guardsTF = new JTextField(16);
         JCheckBox serverCheck = new JCheckBox();
+        JComboBox<String> serverBox = new JComboBox<String>(new String[]{CUDA_SERVER, SIMULATION_SERVER});
         JTextField ipTF = new JTextField(16);
         JTextField portTF = new JTextField(6);
 
@@ -150,15 +231,57 @@ public class SimulateAction extends AbstractAction
         myPanel.add(new JLabel ("    "));
         myPanel.add(skipCheck, "wrap");
 
+        myPanel.add(new JLabel("Use built-in simulation engine: "));
+        myPanel.add(new JLabel ("    "));
+        myPanel.add(engineCheck, "wrap");
+
+        myPanel.add(new JLabel("Resume from the last checkpoint: "));
+        myPanel.add(new JLabel ("    "));
+        myPanel.add(resumeCheck, "wrap");
+
+        myPanel.add(new JLabel("Independent replications: "));
+        myPanel.add(new JLabel ("    "));
+        myPanel.add(replicationsTF, "wrap");
+
+        myPanel.add(new JLabel("Seed (empty for random): "));
+        myPanel.add(new JLabel ("    "));
+        myPanel.add(seedTF, "wrap");
+
+        myPanel.add(new JLabel("Conflicts between immediate transitions: "));
+        myPanel.add(new JLabel ("    "));
+        myPanel.add(policyBox, "wrap");
+
+        myPanel.add(new JLabel("Guards true at the start (comma separated): "));
+        myPanel.add(new JLabel ("    "));
+        myPanel.add(guardsTF, "wrap");
+
+        myPanel.add(new JLabel("\n"), "wrap");
+
+        myPanel.add(new JLabel("Rare event importance (empty for none): "));
+        myPanel.add(new JLabel ("    "));
+        myPanel.add(importanceTF, "wrap");
+
+        myPanel.add(new JLabel("Importance levels (the last one is the event): "));
+        myPanel.add(new JLabel ("    "));
+        myPanel.add(levelsTF, "wrap");
+
+        myPanel.add(new JLabel("Trials per level: "));
+        myPanel.add(new JLabel ("    "));
+        myPanel.add(trialsTF, "wrap");
+
         myPanel.add(new JLabel("\n"), "wrap");
 
         myPanel.add(new JLabel("\nExcecute simulation in a remote server: "));
         myPanel.add(new JLabel ("    "));
         myPanel.add(serverCheck, "wrap");
 
+        JLabel serverLabel = new JLabel("Server: ");
         JLabel ipLabel = new JLabel("Server IP: ");
         JLabel portLabel = new JLabel("Port: ");
 
+        myPanel.add(serverLabel);
+        myPanel.add(new JLabel ("    "));
+        myPanel.add(serverBox, "wrap");
         myPanel.add(ipLabel);
         myPanel.add(new JLabel ("    "));
         myPanel.add(ipTF,"wrap");
@@ -166,30 +289,57 @@ public class SimulateAction extends AbstractAction
         myPanel.add(new JLabel ("    "));
         myPanel.add(portTF, "wrap");
 
+        serverBox.setVisible(false);
+        serverLabel.setVisible(false);
         ipTF.setVisible(false);
         ipLabel.setVisible(false);
         portTF.setVisible(false);
         portLabel.setVisible(false);
 
+        /*
+         * The PetriMonitor stays the default, the built-in engine and its options are opt-in
+         */
+        engineCheck.setSelected(false);
+        resumeCheck.setEnabled(false);
+        policyBox.setEnabled(false);
+        importanceTF.setEnabled(false);
+        levelsTF.setEnabled(false);
+        trialsTF.setEnabled(false);
+        guardsTF.setEnabled(false);
+        guardsTF.setText(initialGuards);
+        replicationsTF.setText("1");
+        trialsTF.setText("1000");
         timeTF.setText("1000");
         numberTF.setText("10");
         ipTF.setText(defaultIP);
         portTF.setText(defaultPort);
+        serverBox.setSelectedItem(defaultServer);
 
-        serverCheck.addActionListener(actionEvent -> {
-            if(serverCheck.isSelected()){
-                ipTF.setVisible(true);
-                ipLabel.setVisible(true);
-                portTF.setVisible(true);
-                portLabel.setVisible(true);
-            }
-            else {
-                ipTF.setVisible(false);
-                ipLabel.setVisible(false);
-                portTF.setVisible(false);
-                portLabel.setVisible(false);
-            }
-        });
+        /*
+         * The conflicts and guards apply to the built-in engine, here or in a simulation server,
+         * resuming and rare events only to the built-in engine here
+         */
+        ActionListener updateOptions = actionEvent -> {
+            boolean remote = serverCheck.isSelected();
+            boolean local = engineCheck.isSelected() && !remote;
+            boolean engine = local || (remote && SIMULATION_SERVER.equals(serverBox.getSelectedItem()));
+            engineCheck.setEnabled(!remote);
+            policyBox.setEnabled(engine);
+            guardsTF.setEnabled(engine);
+            resumeCheck.setEnabled(local && checkpointFile.exists());
+            importanceTF.setEnabled(local);
+            levelsTF.setEnabled(local);
+            trialsTF.setEnabled(local);
+            serverBox.setVisible(remote);
+            serverLabel.setVisible(remote);
+            ipTF.setVisible(remote);
+            ipLabel.setVisible(remote);
+            portTF.setVisible(remote);
+            portLabel.setVisible(remote);
+        };
+        engineCheck.addActionListener(updateOptions);
+        serverCheck.addActionListener(updateOptions);
+        serverBox.addActionListener(updateOptions);
 
         int result = JOptionPane.CANCEL_OPTION;
 
@@ -203,12 +353,79 @@ public class SimulateAction extends AbstractAction
                 int _time = Integer.parseInt(timeTF.getText());
 
                 skipGraphicalFire = skipCheck.isSelected();
-                cudaServer = serverCheck.isSelected();
+                cudaServer = serverCheck.isSelected() && CUDA_SERVER.equals(serverBox.getSelectedItem());
+                simulationServer = serverCheck.isSelected() && SIMULATION_SERVER.equals(serverBox.getSelectedItem());
+                builtInEngine = engineCheck.isSelected() && !serverCheck.isSelected();
+                replications = Integer.parseInt(replicationsTF.getText());
+                if(!seedTF.getText().trim().isEmpty())
+                    seed = Long.parseLong(seedTF.getText().trim());
+                conflictPolicy = (String) policyBox.getSelectedItem();
+                resume = resumeCheck.isSelected() && resumeCheck.isEnabled();
+
+                if(replications < 1 || (replications > 1 && !builtInEngine && !simulationServer)){
+                    JOptionPane.showMessageDialog(null, "Replications must be at least 1, and more than one need the built-in engine.", "Invalid Input!", JOptionPane.WARNING_MESSAGE, null);
+                    return;
+                }
+
+                if(REPLAY_CHOICES.equals(conflictPolicy) && (replications > 1 || simulationServer)){
+                    JOptionPane.showMessageDialog(null, "Only a single run on this machine can be replayed.", "Invalid Input!", JOptionPane.WARNING_MESSAGE, null);
+                    return;
+                }
+
+                if(resume && (!builtInEngine || replications > 1 || REPLAY_CHOICES.equals(conflictPolicy) || !importanceTF.getText().trim().isEmpty()))
+                {
+                    JOptionPane.showMessageDialog(null, "Only a single run in the built-in engine can be resumed,\nwith the seed and conflicts of its checkpoint.", "Invalid Input!", JOptionPane.WARNING_MESSAGE, null);
+                    return;
+                }
 
-                if(cudaServer){
+                if(!importanceTF.getText().trim().isEmpty())
+                {
+                    importance = importanceTF.getText().trim();
+                    String[] values = levelsTF.getText().split(",");
+                    levels = new double[values.length];
+                    try
+                    {
+                        for(int k = 0; k < values.length; k++)
+                            levels[k] = Double.parseDouble(values[k].trim());
+                        trials = Integer.parseInt(trialsTF.getText().trim());
+                    }
+                    catch(NumberFormatException e1)
+                    {
+                        JOptionPane.showMessageDialog(null, "The levels must be increasing numbers separated by commas, and the trials a number.", "Invalid Input!", JOptionPane.WARNING_MESSAGE, null);
+                        return;
+                    }
+                    if(!builtInEngine || replications > 1 || REPLAY_CHOICES.equals(conflictPolicy) || trials < 1)
+                    {
+                        JOptionPane.showMessageDialog(null, "Rare events are estimated by the built-in engine alone,\nwithout replications or replays, and with at least one trial.", "Invalid Input!", JOptionPane.WARNING_MESSAGE, null);
+                        return;
+                    }
+                }
+
+                if(builtInEngine || simulationServer)
+                {
+                    List<String> unset;
+                    try
+                    {
+                        initialGuards = guardsTF.getText().trim();
+                        unset = compileWithGuards().getUnsetGuards();
+                    }
+                    catch(IllegalArgumentException e1)
+                    {
+                        JOptionPane.showMessageDialog(null, e1.getMessage(), "Invalid Input!", JOptionPane.WARNING_MESSAGE, null);
+                        return;
+                    }
+                    // Nothing sets guards while the engine runs, so the transitions that need these never fire
+                    if(!unset.isEmpty() && JOptionPane.showConfirmDialog(root.getParentFrame(), "The guards " + String.join(", ", unset)
+                            + " are false and never set,\nso the transitions that need them never fire. Simulate anyway?", "Guards",
+                            JOptionPane.OK_CANCEL_OPTION, JOptionPane.WARNING_MESSAGE) != JOptionPane.OK_OPTION)
+                        return;
+                }
+
+                if(serverCheck.isSelected()){
                     serverIP = String.format("http://%s:%s", ipTF.getText(), portTF.getText());
                     defaultIP = ipTF.getText();
                     defaultPort=portTF.getText();
+                    defaultServer = (String) serverBox.getSelectedItem();
                 }
 
                 if(_transitions < numberOfTransitions || _time < timeBetweenTransitions){
@@ -241,16 +458,51 @@ public class SimulateAction extends AbstractAction
          */
         final boolean skip = skipGraphicalFire;
         final boolean cuda = cudaServer;
+        final boolean server = simulationServer;
+        final boolean engine = builtInEngine;
         final int number = numberOfTransitions;
         final int time = timeBetweenTransitions;
+        final int runs = replications;
+        final long masterSeed = seed;
+        final String policyName = conflictPolicy;
+        final String importanceFunction = importance;
+        final double[] importanceLevels = levels;
+        final int levelTrials = trials;
+        final boolean resumeRun = resume;
 
         Thread t = new Thread(new Runnable()
         {
             @Override
             public void run()
             {
-                runInMonitor(number, time, skip, cuda);
-                root.enableAfterStop();
+                try
+                {
+                    if(importanceFunction != null)
+                        runSplitting(number, importanceFunction, importanceLevels, levelTrials, masterSeed, policyName);
+                    else if(server)
+                        runOnServer(number, runs, masterSeed, policyName);
+                    else if(runs > 1)
+                        runReplications(number, runs, masterSeed, policyName);
+                    else if(engine)
+                        runInEngine(number, time, skip, masterSeed, policyName, resumeRun);
+                    else
+                        runInMonitor(number, time, skip, cuda);
+                }
+                catch(IllegalArgumentException e1)
+                {
+                    // Thrown by the built-in engine for transitions with invalid distribution parameters
+                    JOptionPane.showMessageDialog(root.getParentFrame(), "Invalid transition behavior.\n\n" + e1.getMessage(), "Error", JOptionPane.ERROR_MESSAGE, null);
+                }
+                catch(RuntimeException e1)
+                {
+                    // A livelock of automatic transitions in the replications or the splitting, or any other failure of the run
+                    JOptionPane.showMessageDialog(root.getParentFrame(), "The simulation stopped.\n\n" + e1.getMessage(), "Error", JOptionPane.ERROR_MESSAGE, null);
+                }
+                finally
+                {
+                    // The editor stays locked until this is called, whatever happened to the run
+                    root.enableAfterStop();
+                }
             }
         });
         t.start();
@@ -384,24 +636,607 @@ public class SimulateAction extends AbstractAction
         if(simTime != -1)
             JOptionPane.showMessageDialog(root.getParentFrame(), "Tiempo de simulacion: " + simTime + " ms");
 
+        playEvents(monitor.getListOfEvents(), timeBetweenTransitions, numberOfTransitions, skipGraphicalFire);
+    }
+
+    /*
+     * @brief Runs the simulation in the built-in discrete event engine, in this thread, and then plays it
+     * @detail The engine fires in simulated time, so no thread per transition is needed and the
+     * run takes a fraction of the time. The events are recorded in the same format as the monitor ones.
+     * The choices of the conflict policy are saved with the seed, so the run can be replayed exactly.
+     * Unless replaying, a checkpoint is saved every minute and when the run ends or the stop button
+     * is pressed, and a later run can resume from it. The replay and the history of a resumed run
+     * start at the checkpoint, and its choices are not recorded.
+     * @param numberOfTransitions firings of the whole run, those before the checkpoint included
+     * @param conflictPolicy one of ConflictPolicies.NAMES, or REPLAY_CHOICES to repeat the last run
+     * @param resume goes on with the run of the last checkpoint, with its seed and policy
+     */
+    private void runInEngine(int numberOfTransitions, int timeBetweenTransitions, boolean skipGraphicalFire, long seed, String conflictPolicy, boolean resume)
+    {
+        CompiledNet net = compileWithGuards();
+
+        Checkpoint resumed = null;
+        if(resume)
+        {
+            try
+            {
+                resumed = Checkpoint.read(checkpointFile);
+            }
+            catch (IOException e1)
+            {
+                JOptionPane.showMessageDialog(root.getParentFrame(), "There is no checkpoint to resume.\n\n" + e1.getMessage(), "Error", JOptionPane.ERROR_MESSAGE, null);
+                return;
+            }
+            seed = resumed.getSeed();
+            conflictPolicy = resumed.getPolicy();
+            // The editor shows where the last run stopped, the checkpoint knows where the run started
+            try
+            {
+                net = net.withInitialMarking(resumed.getInitialMarking());
+            }
+            catch (IllegalArgumentException e1)
+            {
+                JOptionPane.showMessageDialog(root.getParentFrame(), "The checkpoint cannot be resumed.\n\n" + e1.getMessage(), "Error", JOptionPane.ERROR_MESSAGE, null);
+                return;
+            }
+        }
+
+        ChoiceLog choices;
+        ConflictPolicy policy;
+        if(REPLAY_CHOICES.equals(conflictPolicy))
+        {
+            try
+            {
+                choices = ChoiceLog.read(choicesFile);
+            }
+            catch (IOException e1)
+            {
+                JOptionPane.showMessageDialog(root.getParentFrame(), "There is no run to replay.\n\n" + e1.getMessage(), "Error", JOptionPane.ERROR_MESSAGE, null);
+                return;
+            }
+            seed = choices.getSeed();
+            policy = new ReplayPolicy(choices);
+        }
+        else
+        {
+            choices = new ChoiceLog(seed, conflictPolicy, net.getTransitionCount());
+            policy = null;
+        }
+
         /*
-         * We fire the net graphically
+         * The policy gets the first stream split from the seed, whether it uses it or not, so the delays are the same when replaying
          */
-        running = true;
-        instants.clear();
-        for(Place place : root.getDocument().petriNet.getRootSubnet().getPlaces())
+        RandomStream random = new RandomStream(seed);
+        RandomStream policyRandom = random.split();
+        if(policy == null && resumed != null)
+            policy = ConflictPolicies.create(conflictPolicy, policyRandom);
+        else if(policy == null)
+            policy = new RecordingPolicy(ConflictPolicies.create(conflictPolicy, policyRandom), choices);
+        SimulationEngine engine = new SimulationEngine(net, random, policy);
+        if(resumed != null)
+        {
+            try
+            {
+                resumed.restore(engine, random, policyRandom);
+            }
+            catch (IllegalArgumentException e1)
+            {
+                JOptionPane.showMessageDialog(root.getParentFrame(), "The checkpoint cannot be resumed.\n\n" + e1.getMessage(), "Error", JOptionPane.ERROR_MESSAGE, null);
+                return;
+            }
+        }
+        SimulationMetrics metrics = new SimulationMetrics(net);
+        engine.setMetrics(metrics);
+        MetricsRegistry.getShared().register(METRICS_NAME, metrics);
+        EventTrace trace = new EventTrace();
+        engine.addListener(trace);
+
+        /*
+         * The history is recorded while simulating, untimed nets are drawn one firing every timeBetweenTransitions
+         */
+        MarkingHistory runHistory = new MarkingHistory(net);
+        final boolean timed = net.anyTimed();
+        final double step = timeBetweenTransitions / 1000.0;
+        final int[] startMarking = engine.getMarking();
+        runHistory.start(timed ? engine.getTime() : engine.getFirings() * step, startMarking);
+        engine.addListener((transition, time, marking) ->
+                runHistory.transitionFired(transition, timed ? time : engine.getFirings() * step, marking));
+        RunAccumulators statistics = new RunAccumulators(net);
+        statistics.start(engine.getTime(), engine.getMarking());
+        engine.addListener(statistics);
+
+        System.out.println("Simulation");
+        System.out.println(" > Seed " + seed + ", conflicts: " + choices.getPolicy());
+        if(resumed != null)
+        {
+            // A checkpoint of the command line without --summary has no accumulators, they start here
+            try
+            {
+                resumed.restore(statistics);
+            }
+            catch (IOException e1)
+            {
+                System.out.println(" > Could not resume the statistics: " + e1.getMessage());
+            }
+            System.out.println(" > Resumed at simulated time " + engine.getTime() + " s, after " + engine.getFirings() + " firings");
+        }
+        System.out.println(" > Started firing");
+
+        long start = System.currentTimeMillis();
+        long before = engine.getFirings();
+        long fired;
+        try
+        {
+            try
+            {
+                if(REPLAY_CHOICES.equals(conflictPolicy))
+                    fired = engine.run(numberOfTransitions);
+                else
+                {
+                    final long runSeed = seed;
+                    final String policyName = conflictPolicy;
+                    Checkpointer checkpointer = new Checkpointer(() ->
+                    {
+                        try
+                        {
+                            Checkpoint checkpoint = new Checkpoint(engine, random, policyRandom);
+                            checkpoint.setSeed(runSeed);
+                            checkpoint.setPolicy(policyName);
+                            checkpoint.setLimits(numberOfTransitions, Double.POSITIVE_INFINITY);
+                            checkpoint.setSummary(statistics);
+                            checkpoint.setTraceOffset(engine.getFirings());
+                            checkpoint.write(checkpointFile);
+                        }
+                        catch (IOException e1)
+                        {
+                            System.out.println(" > Could not save the checkpoint: " + e1.getMessage());
+                        }
+                    });
+                    if(!checkpointer.run(engine, numberOfTransitions, Double.POSITIVE_INFINITY, () -> stop))
+                        System.out.println(" > Stopped by the user, the run can be resumed from " + checkpointFile);
+                    fired = engine.getFirings() - before;
+                }
+            }
+            catch (IOException e1)
+            {
+                // Not thrown, the saver above reports its own errors and the run goes on
+                throw new UncheckedIOException(e1);
+            }
+            catch (IllegalStateException e1)
+            {
+                // Thrown on a livelock of automatic transitions, or by the replay policy when the net changed since the run was recorded
+                trace.close();
+                JOptionPane.showMessageDialog(root.getParentFrame(), "The simulation stopped.\n\n" + e1.getMessage(), "Error", JOptionPane.ERROR_MESSAGE, null);
+                return;
+            }
+            catch (RuntimeException e1)
+            {
+                trace.close();
+                throw e1;
+            }
+        }
+        finally
+        {
+            // The metrics are published over JMX only while running, and what was recorded is kept whatever ended the run
+            try
+            {
+                MetricsRegistry.getShared().writeJson(metricsFile);
+                System.out.println(" > " + String.format("%.0f", metrics.getMeanFiringsPerSecond()) + " firings/s, "
+                        + metrics.getConflicts() + " conflicts, metrics saved in " + metricsFile);
+            }
+            catch (IOException e1)
+            {
+                System.out.println(" > Could not save the metrics: " + e1.getMessage());
+            }
+            MetricsRegistry.getShared().unregister(METRICS_NAME);
+            replayHistory = runHistory;
+            publishHistory();
+        }
+        long simTime = System.currentTimeMillis() - start;
+
+        if(resumed != null)
+            System.out.println(" > The choices of a resumed run are not recorded");
+        else if(!REPLAY_CHOICES.equals(conflictPolicy))
+        {
+            try
+            {
+                choicesFile.getParentFile().mkdirs();
+                choices.write(choicesFile);
+                System.out.println(" > " + choices.size() + " choices saved in " + choicesFile + " (" + choices.getByteCount() + " bytes)");
+            }
+            catch (IOException e1)
+            {
+                System.out.println(" > Could not save the choices: " + e1.getMessage());
+            }
+        }
+
+        statistics.finish(engine.getTime());
+        statisticsFile.getParentFile().mkdirs();
+        try (Writer out = new FileWriter(statisticsFile))
+        {
+            statistics.writeCsv(out);
+            System.out.println(" > Statistics saved in " + statisticsFile);
+        }
+        catch (IOException e1)
+        {
+            System.out.println(" > Could not save the statistics: " + e1.getMessage());
+        }
+        showStatistics(statistics);
+
+        if(engine.getFirings() < numberOfTransitions && engine.isBlocked())
+        {
+            if(fired == 0)
+                JOptionPane.showMessageDialog(root.getParentFrame(), "The net is blocked.\n\nNo transition is enabled in the current marking.");
+            else
+                JOptionPane.showMessageDialog(root.getParentFrame(), "The net is blocked, " + fired + " transitions were fired.");
+            System.out.println(" > Net blocked");
+        }
+        System.out.println(" > " + fired + " transitions fired in " + simTime + " ms, simulated time " + engine.getTime() + " s");
+        if(engine.getClosureFirings() > 0)
+            System.out.println(" > " + engine.getClosureFirings() + " automatic firings, at most " + engine.getLongestClosure() + " after a single event");
+
+        new TokenSelectToolAction(root).actionPerformed(e);
+        try
+        {
+            /*
+             * The replay repaints once per frame and can seek, instead of firing every event graphically
+             */
+            TraceReplay replay = new TraceReplay(net, startMarking, trace, TraceReplay.DEFAULT_INTERVAL);
+            ReplayDialog player = new ReplayDialog(root, replay, 1000.0 / Math.max(1, timeBetweenTransitions), this::stopRequested);
+            if(skipGraphicalFire)
+                player.showFinalMarking();
+            else
+                player.play();
+            player.waitUntilClosed();
+        }
+        finally
+        {
+            trace.close();
+        }
+        new SelectionSelectToolAction(root).actionPerformed(e);
+        System.out.println(" > Simulation ended");
+    }
+
+    /*
+     * @brief Runs independent replications in the built-in engine and shows their statistics
+     * @param numberOfTransitions firings of every replication
+     * @param replications number of runs
+     * @param seed master seed, the same seed gives the same results
+     * @param conflictPolicy one of ConflictPolicies.NAMES
+     */
+    private void runReplications(int numberOfTransitions, int replications, long seed, String conflictPolicy)
+    {
+        CompiledNet net = compileWithGuards();
+        ReplicationRunner runner = new ReplicationRunner(net);
+        runner.setReplications(replications);
+        runner.setMaxFirings(numberOfTransitions);
+        runner.setSeed(seed);
+        runner.setConflictPolicy(conflictPolicy);
+
+        ProgressBarDialog dialog = new ProgressBarDialog(root, "Simulating...");
+        dialog.show(true);
+        ReplicationResult result;
+        try
+        {
+            result = runner.run();
+        }
+        finally
+        {
+            runner.shutdown();
+            dialog.show(false);
+        }
+
+        showReplications(replicationsToHtml(ResultSpec.of(result), net.anyTimed(), conflictPolicy));
+    }
+
+    /*
+     * @brief Runs independent replications in a SimulationServer and shows their statistics
+     * @detail The net goes to the server at serverIP as JSON, with the guards set in the dialog
+     * @param numberOfTransitions firings of every replication
+     * @param replications number of runs
+     * @param seed master seed, the same seed gives the same results
+     * @param conflictPolicy one of ConflictPolicies.NAMES
+     */
+    private void runOnServer(int numberOfTransitions, int replications, long seed, String conflictPolicy)
+    {
+        CompiledNet net = compileWithGuards();
+        JobSpec job = new JobSpec();
+        job.net = NetSpec.of(net);
+        job.firings = (long) numberOfTransitions;
+        job.replications = replications;
+        job.seed = seed;
+        job.policy = conflictPolicy;
+
+        ProgressBarDialog dialog = new ProgressBarDialog(root, "Simulating in " + serverIP + "...");
+        dialog.show(true);
+        ResultSpec result;
+        try
+        {
+            result = new SimulationClient(serverIP).run(job);
+        }
+        catch (IOException e1)
+        {
+            JOptionPane.showMessageDialog(root.getParentFrame(), "The simulation server failed.\n\n" + e1.getMessage(), "Error", JOptionPane.ERROR_MESSAGE, null);
+            return;
+        }
+        finally
+        {
+            dialog.show(false);
+        }
+
+        showReplications(replicationsToHtml(result, net.anyTimed(), conflictPolicy));
+    }
+
+    /*
+     * @brief Shows the statistics of a set of replications in a scrollable pane
+     */
+    private void showReplications(String html)
+    {
+        JEditorPane pane = new JEditorPane("text/html", html);
+        pane.setEditable(false);
+        pane.setCaretPosition(0);
+        JScrollPane scroller = new JScrollPane(pane);
+        scroller.setPreferredSize(new java.awt.Dimension(500, 400));
+        JOptionPane.showMessageDialog(root.getParentFrame(), scroller, "Replications", JOptionPane.PLAIN_MESSAGE);
+    }
+
+    /*
+     * @brief Estimates the probability of a rare event by importance splitting and shows it
+     * @param numberOfTransitions firings after which a trajectory gives up
+     * @param importance expression over the place labels, such as "2*Failed + Queue"
+     * @param levels increasing importance levels, the rare event is reaching the last one
+     * @param trials trials run from every level
+     * @param seed the same seed gives the same estimate
+     * @param conflictPolicy one of ConflictPolicies.NAMES
+     */
+    private void runSplitting(int numberOfTransitions, String importance, double[] levels, int trials, long seed, String conflictPolicy)
+    {
+        CompiledNet net = compileWithGuards();
+        SplittingRunner runner;
+        try
+        {
+            runner = new SplittingRunner(net, ImportanceFunction.parse(importance, net));
+            runner.setLevels(levels);
+        }
+        catch (IllegalArgumentException e1)
         {
-            place.clearValues();
+            JOptionPane.showMessageDialog(root.getParentFrame(), "Invalid rare event.\n\n" + e1.getMessage(), "Error", JOptionPane.ERROR_MESSAGE, null);
+            return;
         }
-        analyzePlaces(timeBetweenTransitions);
-        fireGraphically(monitor.getListOfEvents(), timeBetweenTransitions, numberOfTransitions, skipGraphicalFire);
+        runner.setTrials(trials);
+        runner.setMaxFirings(numberOfTransitions);
+        runner.setSeed(seed);
+        runner.setConflictPolicy(conflictPolicy);
+
+        ProgressBarDialog dialog = new ProgressBarDialog(root, "Simulating...");
+        dialog.show(true);
+        SplittingResult result;
+        try
+        {
+            result = runner.run();
+        }
+        finally
+        {
+            dialog.show(false);
+        }
+
+        JEditorPane pane = new JEditorPane("text/html", splittingToHtml(result, conflictPolicy));
+        pane.setEditable(false);
+        pane.setCaretPosition(0);
+        JScrollPane scroller = new JScrollPane(pane);
+        scroller.setPreferredSize(new java.awt.Dimension(500, 400));
+        JOptionPane.showMessageDialog(root.getParentFrame(), scroller, "Rare event", JOptionPane.PLAIN_MESSAGE);
+    }
+
+    /*
+     * @brief Formats the estimate of a rare event and the probability of every level as html
+     */
+    private String splittingToHtml(SplittingResult result, String conflictPolicy)
+    {
+        double[] levels = result.getLevels();
+        Object[] rows = new Object[4 * (levels.length + 1)];
+        rows[0] = "Level";
+        rows[1] = "Importance";
+        rows[2] = "Trials that reached it";
+        rows[3] = "Probability from the level before";
+        for(int k = 0; k < levels.length; k++)
+        {
+            rows[4 * (k + 1)] = k + 1;
+            rows[4 * (k + 1) + 1] = levels[k];
+            rows[4 * (k + 1) + 2] = k < result.getStages() ? result.getSuccesses(k) + " / " + result.getTrials() : "-";
+            rows[4 * (k + 1) + 3] = k < result.getStages() ? format(result.getLevelProbability(k)) : "-";
+        }
+
+        return "<html><head>" + ResultsHTMLPane.HTML_STYLE + "</head><body>"
+                + "<h2>P(" + result.getImportance() + " &ge; " + levels[levels.length - 1] + ") = "
+                + String.format("%.4e", result.getProbability()) + "</h2>"
+                + "Relative error: " + format(result.getRelativeError())
+                + "<h3>Levels</h3>" + ResultsHTMLPane.makeTable(rows, 4, false, true, true, true)
+                + "<br>Seed: " + result.getSeed()
+                + "<br>Conflicts between immediate transitions: " + conflictPolicy
+                + "<br>" + result.getFirings() + " firings in " + result.getElapsedMillis() + " ms"
+                + "</body></html>";
+    }
+
+    /*
+     * @brief Shows the statistics of a run in the built-in engine, in a dialog that does not block the replay
+     */
+    private void showStatistics(RunAccumulators statistics)
+    {
+        JEditorPane pane = new JEditorPane("text/html", statisticsToHtml(statistics));
+        pane.setEditable(false);
+        pane.setCaretPosition(0);
+        JScrollPane scroller = new JScrollPane(pane);
+        scroller.setPreferredSize(new java.awt.Dimension(600, 400));
+        SwingUtilities.invokeLater(() ->
+        {
+            JDialog dialog = new JOptionPane(scroller, JOptionPane.PLAIN_MESSAGE).createDialog(root.getParentFrame(), "Statistics");
+            dialog.setModal(false);
+            dialog.setVisible(true);
+        });
+    }
+
+    /*
+     * @brief Formats the online statistics of a run as html tables
+     * @detail Token statistics are weighted by simulated time, or by firings for nets without timed transitions
+     */
+    private String statisticsToHtml(RunAccumulators statistics)
+    {
+        CompiledNet net = statistics.getNet();
+        String unit = statistics.isTimed() ? " [s]" : " [firings]";
+
+        Object[] places = new Object[5 * (net.getPlaceCount() + 1)];
+        places[0] = "Place";
+        places[1] = "Average tokens";
+        places[2] = "Std. dev.";
+        places[3] = "Min";
+        places[4] = "Max";
+        for(int p = 0; p < net.getPlaceCount(); p++)
+        {
+            TimeWeighted tokens = statistics.getTokens(p);
+            places[5 * (p + 1)] = net.getPlaceLabel(p);
+            places[5 * (p + 1) + 1] = String.format("%.5f", tokens.getMean());
+            places[5 * (p + 1) + 2] = String.format("%.5f", tokens.getStandardDeviation());
+            places[5 * (p + 1) + 3] = String.format("%.0f", tokens.getMin());
+            places[5 * (p + 1) + 4] = String.format("%.0f", tokens.getMax());
+        }
+
+        int columns = 6 + RunAccumulators.QUANTILES.length;
+        Object[] transitions = new Object[columns * (net.getTransitionCount() + 1)];
+        transitions[0] = "Transition";
+        transitions[1] = "Firings";
+        transitions[2] = "Mean interval" + unit;
+        transitions[3] = "Std. dev.";
+        transitions[4] = "Min";
+        transitions[5] = "Max";
+        for(int q = 0; q < RunAccumulators.QUANTILES.length; q++)
+            transitions[6 + q] = "P" + Math.round(RunAccumulators.QUANTILES[q] * 100);
+        for(int t = 0; t < net.getTransitionCount(); t++)
+        {
+            Welford intervals = statistics.getIntervals(t);
+            int row = columns * (t + 1);
+            transitions[row] = net.getTransitionLabel(t);
+            transitions[row + 1] = intervals.getCount();
+            transitions[row + 2] = format(intervals.getMean());
+            transitions[row + 3] = format(intervals.getStandardDeviation());
+            transitions[row + 4] = format(intervals.getMin());
+            transitions[row + 5] = format(intervals.getMax());
+            for(int q = 0; q < RunAccumulators.QUANTILES.length; q++)
+                transitions[row + 6 + q] = format(statistics.getQuantile(t, q).getQuantile());
+        }
+
+        return "<html><head>" + ResultsHTMLPane.HTML_STYLE + "</head><body>"
+                + "<h3>Places</h3>" + ResultsHTMLPane.makeTable(places, 5, false, true, true, true)
+                + "<h3>Transitions</h3>" + ResultsHTMLPane.makeTable(transitions, columns, false, true, true, true)
+                + "<br>Percentiles of the intervals are P-square estimates."
+                + "<br>Exported to " + statisticsFile.getPath()
+                + "</body></html>";
+    }
+
+    private static String format(double value)
+    {
+        return Double.isNaN(value) ? "-" : String.format("%.5f", value);
+    }
+
+    /*
+     * @brief Formats the statistics of a set of replications as html tables
+     */
+    private String replicationsToHtml(ResultSpec result, boolean timed, String conflictPolicy)
+    {
+        String confidence = Math.round(result.confidence * 100) + "%";
+
+        Object[] places = new Object[3 * (result.places.length + 1)];
+        places[0] = "Place";
+        places[1] = "Average number of tokens";
+        places[2] = "\u00B1 (" + confidence + ")";
+        for(int p = 0; p < result.places.length; p++)
+        {
+            places[3 * (p + 1)] = result.places[p].label;
+            places[3 * (p + 1) + 1] = String.format("%.5f", result.places[p].mean);
+            places[3 * (p + 1) + 2] = String.format("%.5f", result.places[p].halfWidth);
+        }
+
+        Object[] transitions = new Object[3 * (result.transitions.length + 1)];
+        transitions[0] = "Transition";
+        transitions[1] = timed ? "Throughput [1/s]" : "Share of firings";
+        transitions[2] = "\u00B1 (" + confidence + ")";
+        for(int t = 0; t < result.transitions.length; t++)
+        {
+            transitions[3 * (t + 1)] = result.transitions[t].label;
+            transitions[3 * (t + 1) + 1] = String.format("%.5f", result.transitions[t].mean);
+            transitions[3 * (t + 1) + 2] = String.format("%.5f", result.transitions[t].halfWidth);
+        }
+
+        return "<html><head>" + ResultsHTMLPane.HTML_STYLE + "</head><body>"
+                + "<h2>" + result.replications + " independent replications</h2>"
+                + (result.requested <= result.replications ? "" : "Interrupted, only " + result.replications + " of "
+                        + result.requested + " replications completed and are aggregated<br>")
+                + "<h3>Places</h3>" + ResultsHTMLPane.makeTable(places, 3, false, true, true, true)
+                + "<h3>Transitions</h3>" + ResultsHTMLPane.makeTable(transitions, 3, false, true, true, true)
+                + "<br>Master seed: " + result.seed
+                + "<br>Conflicts between immediate transitions: " + conflictPolicy
+                + "<br>Simulated time per replication: " + String.format("%.3f", result.meanDuration) + " s"
+                + "<br>" + result.totalFirings + " firings in " + result.elapsedMillis + " ms"
+                + "</body></html>";
+    }
+
+    /*
+     * @brief Fires the recorded events within our editor and samples the places while doing it
+     * @param listOfEvents the events, in the monitor format
+     */
+    private void playEvents(ArrayList<String[]> listOfEvents, int timeBetweenTransitions, int numberOfTransitions, boolean skipGraphicalFire)
+    {
+        /*
+         * We fire the net graphically
+         */
+        startHistory(CompiledNet.compile(root.getDocument().getPetriNet()));
+        fireGraphically(listOfEvents, timeBetweenTransitions, numberOfTransitions, skipGraphicalFire);
         new SelectionSelectToolAction(root).actionPerformed(e);
 
-        running = false;
+        publishHistory();
         System.out.println(" > Simulation ended");
         //root.enableAfterStop();
     }
 
+    /*
+     * @brief Compiles the net being edited, with the guards of the dialog true at the start
+     * @throws IllegalArgumentException if a behavior is malformed or no transition has one of the guards
+     */
+    private CompiledNet compileWithGuards()
+    {
+        List<String> names = new ArrayList<String>();
+        for(String name : initialGuards.split(","))
+        {
+            if(!name.trim().isEmpty())
+                names.add(name.trim());
+        }
+        return CompiledNet.compile(root.getDocument().getPetriNet()).withInitialGuards(names);
+    }
+
+    /*
+     * @brief Starts recording the history of the places from the current marking
+     * @detail Places are recorded only when a firing changes them, stamped with simulated time
+     */
+    private void startHistory(CompiledNet net)
+    {
+        replayNet = net;
+        replayMarking = net.getInitialMarking();
+        replayHistory = new MarkingHistory(net);
+    }
+
+    /*
+     * @brief Makes the history of the last replay the one graphs show
+     */
+    private void publishHistory()
+    {
+        if(history != null)
+            history.close();
+        history = replayHistory;
+        replayHistory = null;
+        for(Place place : root.getDocument().getPetriNet().getRootSubnet().getPlacesRecursively())
+            place.setHistory(history == null ? null : history.getPlace(place.getLabel()));
+    }
+
     /*
      * @brief Creates a thread that tries to fire one given transition
      * @param m the monitor that holds our petri net
@@ -437,23 +1272,24 @@ public class SimulateAction extends AbstractAction
      */
     void fireGraphically(ArrayList<String[]> listOfEvents, int timeBetweenTransitions, int numberOfTransitions, boolean skipGraphicalFire){
 
+        HashMap<String, Integer> indexes = new HashMap<String, Integer>();
+        for(int t = 0; t < replayNet.getTransitionCount(); t++)
+            indexes.put(replayNet.getTransitionId(t), t);
+        boolean timed = replayNet.anyTimed();
+
         int i = 0;
+        double instant = 0;
         for(String[] event : listOfEvents)
         {
             /*
              * Check if stop button has been pressed
              */
-            if(stop)
+            if(stopRequested())
             {
-                stop = false;
-                setEnabled(true);
                 listOfEvents.clear();
-                System.out.println(" > Simulation stopped by user");
                 return;
             }
 
-            System.out.println(Arrays.toString(event));
-
             double time = 0;
             try
             {
@@ -463,148 +1299,105 @@ public class SimulateAction extends AbstractAction
 
 
             Transition transition = root.getDocument().petriNet.getRootSubnet().getTransition(event[PetriMonitor.TID]);
-            Marking marking = root.getDocument().petriNet.getInitialMarking();
+            // Untimed nets are drawn one firing every timeBetweenTransitions
+            instant = timed ? instant + time / 1000 : (double) (i + 1) * timeBetweenTransitions / 1000;
 
-            if(!skipGraphicalFire)
-                root.getEventList().addEvent((transition.getLabel() + " was fired!"));
+            if(!fireEvent(transition, indexes.get(event[PetriMonitor.TID]), time, instant, ++i, timeBetweenTransitions, numberOfTransitions, skipGraphicalFire))
+                return;
+        }
+        if(skipGraphicalFire){
+            root.refreshAll();
+        }
 
-            if(transition.isTimed())
-            {
-                transition.setTime((int) time);
-                transition.setWaiting(true);
+    }
 
-                if(!skipGraphicalFire) {
-                    countDown(transition);
+    /*
+     * @brief Checks if the stop button has been pressed, and if so gets ready for the next simulation
+     */
+    private boolean stopRequested()
+    {
+        if(stop)
+        {
+            stop = false;
+            setEnabled(true);
+            countdowns.clear();
+            System.out.println(" > Simulation stopped by user");
+            return true;
+        }
+        return false;
+    }
 
-                    try {
-                        System.out.println("Sleeping " + (int) time);
-                        Thread.sleep((int) time);
-                    } catch (InterruptedException e1) {
-                        e1.printStackTrace();
-                    }
-                }
-                transition.setWaiting(false);
-            }
+    /*
+     * @brief Fires one transition within our editor, waiting for it first if it's timed
+     * @param index the index of the transition in the compiled net of the replay
+     * @param time milliseconds a timed transition waits before firing
+     * @param instant simulated time of the firing, for the history of the places
+     * @param fired number of events performed so far, this one included
+     * @return false if no more events should be performed
+     */
+    private boolean fireEvent(Transition transition, int index, double time, double instant, int fired, int timeBetweenTransitions, int numberOfTransitions, boolean skipGraphicalFire)
+    {
+        Marking marking = root.getDocument().petriNet.getInitialMarking();
 
-            FireTransitionCommand fire = new FireTransitionCommand(transition, marking);
-            fire.execute();
+        if(!skipGraphicalFire)
+            root.getEventList().addEvent((transition.getLabel() + " was fired!"));
 
-            if(!skipGraphicalFire)
-                root.refreshAll();
+        if(transition.isTimed())
+        {
+            transition.setTime((int) time);
+            transition.setWaiting(true);
 
-            /*
-             * Maybe, if several threads executed multiple transitions concurrently,
-             * there are more events than "numberOfTransitions" specified.
-             * Let's make sure we won't fire more than "numberOfTransitions"
-             */
-            if(++i >= numberOfTransitions)
-            {
-                setEnabled(true);
-                return;
-            }
+            if(!skipGraphicalFire) {
+                countdowns.start(transition, (int) time);
 
-            if(!skipGraphicalFire){
-                if(!root.getDocument().petriNet.getRootSubnet().anyStochastic())
-                {
-                    try
-                    {
-                        Thread.sleep(timeBetweenTransitions);
-                    } catch (InterruptedException e1) {
-                        e1.printStackTrace();
-                    }
-                }
-                else
-                {
-                    try
-                    {
-                        Thread.sleep(50);
-                    } catch (InterruptedException e1) {
-                        e1.printStackTrace();
-                    }
+                try {
+                    Thread.sleep((int) time);
+                } catch (InterruptedException e1) {
+                    e1.printStackTrace();
                 }
             }
+            transition.setWaiting(false);
         }
-        if(skipGraphicalFire){
+
+        FireTransitionCommand fire = new FireTransitionCommand(transition, marking);
+        fire.execute();
+        replayNet.fire(index, replayMarking);
+        replayHistory.transitionFired(index, instant, replayMarking);
+
+        if(!skipGraphicalFire)
             root.refreshAll();
-        }
 
-    }
+        /*
+         * Maybe, if several threads executed multiple transitions concurrently,
+         * there are more events than "numberOfTransitions" specified.
+         * Let's make sure we won't fire more than "numberOfTransitions"
+         */
+        if(fired >= numberOfTransitions)
+        {
+            setEnabled(true);
+            return false;
+        }
 
-    public void countDown(Transition t)
-    {
-        Thread thread = new Thread(new Runnable() {
-            @Override
-            public void run()
+        if(!skipGraphicalFire){
+            if(!root.getDocument().petriNet.getRootSubnet().anyStochastic())
             {
-                long begin = System.currentTimeMillis();
-
-                while(t.getTime()>1)
+                try
                 {
-                    try
-                    {
-                        root.repaintCanvas();
-                        Thread.sleep(5);
-                        t.setTime((int) (t.getTime()-(System.currentTimeMillis()-begin)));
-                        begin = System.currentTimeMillis();
-                    } catch (IllegalTransitionFiringError | IllegalArgumentException | InterruptedException e) {
-                        e.printStackTrace();
-                    }
+                    Thread.sleep(timeBetweenTransitions);
+                } catch (InterruptedException e1) {
+                    e1.printStackTrace();
                 }
             }
-        });
-        thread.start();
-    }
-
-    public void analyzePlaces(int timeBetweenTransitions)
-    {
-        Thread thread = new Thread(new Runnable() {
-            @Override
-            public void run()
+            else
             {
-                double time = 0;
-                int timeToSleep = 0;
-
-                if(root.getDocument().petriNet.getRootSubnet().anyStochastic())
-                {
-                    timeToSleep = 500;
-                }
-                else
-                {
-                    timeToSleep = timeBetweenTransitions;
-                }
-
-                while(running)
+                try
                 {
-                    Marking marking = root.getDocument().petriNet.getInitialMarking();
-                    Set<Place> places = root.getDocument().petriNet.getRootSubnet().getPlaces();
-
-                    for(Place place : places)
-                    {
-                        place.addValue(marking.getTokens(place));
-                    }
-
-                    instants.add(time);
-
-                    time += (double) timeToSleep / 1000;
-                    time = roundDouble(time);
-
-                    try
-                    {
-                        Thread.sleep(timeToSleep);
-                    } catch (InterruptedException e1) {
-                        e1.printStackTrace();
-                    }
+                    Thread.sleep(50);
+                } catch (InterruptedException e1) {
+                    e1.printStackTrace();
                 }
             }
-        });
-        thread.start();
-    }
-
-    public static double roundDouble(double value)
-    {
-        long factor = (long) Math.pow(10, 2);
-        value = value * factor;
-        long tmp = Math.round(value);
-        return (double) tmp / factor;
+        }
+        return true;
     }
 }
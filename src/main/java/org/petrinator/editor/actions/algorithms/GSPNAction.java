@@ -21,28 +21,38 @@
 package org.petrinator.editor.actions.algorithms;
 
 import org.petrinator.editor.Root;
+import org.petrinator.editor.actions.algorithms.gspn.GSPNMeasures;
+import org.petrinator.editor.actions.algorithms.gspn.GSPNModel;
+import org.petrinator.editor.actions.algorithms.gspn.GSPNReportWriter;
+import org.petrinator.editor.actions.algorithms.gspn.GSPNResultsCache;
+import org.petrinator.editor.actions.algorithms.gspn.GeneratorMatrix;
+import org.petrinator.editor.actions.algorithms.gspn.RateSweep;
+import org.petrinator.editor.actions.algorithms.gspn.SolverResult;
+import org.petrinator.editor.actions.algorithms.gspn.SparseSteadyStateSolver;
+import org.petrinator.editor.actions.algorithms.gspn.TangibleStateSpace;
+import org.petrinator.editor.actions.algorithms.gspn.TransientResult;
+import org.petrinator.editor.actions.algorithms.gspn.TransientSolver;
 import org.petrinator.editor.filechooser.*;
 import java.text.DecimalFormat;
 
+import org.petrinator.petrinet.PetriNetException;
+
 import org.petrinator.util.GraphicsTools;
-import pipe.calculations.StateSpaceGenerator;
-import pipe.calculations.SteadyStateSolver;
-import pipe.calculations.myTree;
 import pipe.gui.widgets.ButtonBar;
 import pipe.gui.widgets.EscapableDialog;
 import pipe.gui.widgets.ResultsHTMLPane;
-import pipe.views.MarkingView;
 import pipe.views.PetriNetView;
+import net.miginfocom.swing.MigLayout;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.File;
-import java.util.Date;
-import pipe.modules.gspn.GSPNNew;
-import pipe.exceptions.*;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
 import java.io.IOException;
-import java.util.LinkedList;
 
 /**
  * @author Joaquin Felici <joaquinfelici at gmail.com>
@@ -52,6 +62,10 @@ public class GSPNAction extends AbstractAction
     private Root root;
     private static final String MODULE_NAME = "GSPN Analysis";
     private final File output = new File("tmp/GSPN_Analysis.html");
+    private final File sweepOutput = new File("tmp/GSPN_Sweep.csv");
+    private final File statesCsv = new File("tmp/GSPN_States.csv");
+    private final File statesBinary = new File("tmp/GSPN_States.bin");
+    private final GSPNResultsCache cache = new GSPNResultsCache(new File("tmp/gspn-cache"));
     private PetriNetView pnmlData;
     private ResultsHTMLPane results;
 
@@ -99,6 +113,9 @@ public class GSPNAction extends AbstractAction
         results = new ResultsHTMLPane(pnmlData.getPNMLName());
         contentPane.add(results);
         contentPane.add(new ButtonBar("Analyse GSPN", runAnalysis, guiDialog.getRootPane()));
+        contentPane.add(new ButtonBar("Sparse solver...", runSparseAnalysis, guiDialog.getRootPane()));
+        contentPane.add(new ButtonBar("Transient...", runTransientAnalysis, guiDialog.getRootPane()));
+        contentPane.add(new ButtonBar("Rate sweep...", runRateSweep, guiDialog.getRootPane()));
         guiDialog.pack();
         guiDialog.setLocationRelativeTo(root.getParentFrame());
         guiDialog.setVisible(true);
@@ -125,151 +142,457 @@ public class GSPNAction extends AbstractAction
                 @Override
                 protected Object doInBackground()
                 {
-                    long start = new Date().getTime();
-                    long efinished;
-                    long ssdfinished;
-                    long allfinished;
-                    double explorationtime;
-                    double steadystatetime;
-                    double totaltime;
-
-                    PetriNetView sourceDataLayer = new PetriNetView("tmp/tmp.pnml");
-                    boolean bounded = false;
-
                     /*
-                     * Check if petri net is bounded
+                     * The tangible state space and the sparse solver with their default settings, the same
+                     * as the sparse button, so that a net whose rates changed reuses its state space
                      */
-                    LinkedList<MarkingView>[] markings = sourceDataLayer.getCurrentMarkingVector();
-                    int[] markup = new int[markings.length];
-                    for(int k = 0; k < markings.length; k++)
+                    results.setVisibleProgressBar(true);
+                    results.setStringProgressBar("State Space exploration...");
+                    results.setIndeterminateProgressBar(true);
+                    results.setText(analyseSparse(new SparseSteadyStateSolver()));
+                    return null;
+                }
+
+                @Override
+                protected void done()
+                {
+                    super.done();
+                    results.setVisibleProgressBar(false);
+
+                    if(arg0.getSource() instanceof JButton)
                     {
-                        markup[k] = markings[k].getFirst().getCurrentMarking();
+                        ((JButton) arg0.getSource()).setEnabled(true);
                     }
-                    try
-                    {
-                        myTree tree = new myTree(sourceDataLayer, markup);
-                        bounded = !tree.foundAnOmega;
-                    } catch(TreeTooBigException e)
+
+                }
+            };
+            sw.execute();
+        }
+    };
+
+    /**
+     * Sparse solver button click handler. Asks for the solver settings and
+     * analyses the net being edited without going through PIPE.
+     */
+    private final ActionListener runSparseAnalysis = new ActionListener() {
+
+        public void actionPerformed(final ActionEvent arg0)
+        {
+            SparseSteadyStateSolver solver = askSolverSettings();
+            if(solver == null)
+            {
+                return;
+            }
+
+            if (arg0.getSource() instanceof JButton)
+            {
+                ((JButton) arg0.getSource()).setEnabled(false);
+            }
+            results.setText("");
+
+            SwingWorker sw = new SwingWorker()
+            {
+                @Override
+                protected Object doInBackground()
+                {
+                    results.setVisibleProgressBar(true);
+                    results.setStringProgressBar("State Space exploration...");
+                    results.setIndeterminateProgressBar(true);
+                    results.setText(analyseSparse(solver));
+                    return null;
+                }
+
+                @Override
+                protected void done()
+                {
+                    super.done();
+                    results.setVisibleProgressBar(false);
+
+                    if(arg0.getSource() instanceof JButton)
                     {
-                        e.printStackTrace();
+                        ((JButton) arg0.getSource()).setEnabled(true);
                     }
+                }
+            };
+            sw.execute();
+        }
+    };
 
-                    // This will be used to store the reachability graph data
-                    File reachabilityGraph = new File("results.rg");
+    /*
+     * @brief Tells why the model cannot be analysed as a GSPN, if it cannot
+     * @param model the net being analysed
+     * @return the reason as html, or null if it can be analysed
+     */
+    private String notAnalysable(GSPNModel model)
+    {
+        if(!model.hasTimedTransitions())
+        {
+            return "This Petri net has no timed transitions, so GSPN analysis cannot be performed.";
+        }
+        int t = model.getNonExponentialTransition();
+        if(t >= 0)
+        {
+            return "Transition " + model.getTransitionLabels()[t] + " has a " + model.getDistribution(t)
+                    + " delay, so GSPN analysis cannot be performed. It needs exponential timed transitions.";
+        }
+        return null;
+    }
+
+    /*
+     * @brief Shows a dialog to choose the iterative method and its convergence settings
+     * @return the configured solver, or null if the user cancelled or typed invalid values
+     */
+    private SparseSteadyStateSolver askSolverSettings()
+    {
+        SparseSteadyStateSolver solver = new SparseSteadyStateSolver();
+
+        JComboBox<SparseSteadyStateSolver.Method> methodCB = new JComboBox<>(SparseSteadyStateSolver.Method.values());
+        JTextField toleranceTF = new JTextField(Double.toString(solver.getTolerance()), 8);
+        JTextField iterationsTF = new JTextField(Integer.toString(solver.getMaxIterations()), 8);
+        JTextField relaxationTF = new JTextField(Double.toString(solver.getRelaxation()), 8);
+        JTextField dampingTF = new JTextField(Double.toString(solver.getDamping()), 8);
+        JTextField threadsTF = new JTextField(Integer.toString(solver.getThreads()), 8);
+
+        JPanel myPanel = new JPanel();
+        myPanel.setLayout(new MigLayout());
+        myPanel.add(new JLabel("Method: "));
+        myPanel.add(methodCB, "wrap");
+        myPanel.add(new JLabel("Tolerance: "));
+        myPanel.add(toleranceTF, "wrap");
+        myPanel.add(new JLabel("Max. iterations: "));
+        myPanel.add(iterationsTF, "wrap");
+        myPanel.add(new JLabel("Relaxation (SOR): "));
+        myPanel.add(relaxationTF, "wrap");
+        myPanel.add(new JLabel("Damping (Jacobi): "));
+        myPanel.add(dampingTF, "wrap");
+        myPanel.add(new JLabel("Threads (Jacobi): "));
+        myPanel.add(threadsTF, "wrap");
+
+        int result = JOptionPane.showConfirmDialog(root.getParentFrame(), myPanel, "Steady state solver", JOptionPane.OK_CANCEL_OPTION, JOptionPane.QUESTION_MESSAGE);
+        if(result != JOptionPane.OK_OPTION)
+        {
+            return null;
+        }
+
+        try
+        {
+            solver.setMethod((SparseSteadyStateSolver.Method) methodCB.getSelectedItem());
+            solver.setTolerance(Double.parseDouble(toleranceTF.getText()));
+            solver.setMaxIterations(Integer.parseInt(iterationsTF.getText()));
+            solver.setRelaxation(Double.parseDouble(relaxationTF.getText()));
+            solver.setDamping(Double.parseDouble(dampingTF.getText()));
+            solver.setThreads(Integer.parseInt(threadsTF.getText()));
+        }
+        catch(NumberFormatException e)
+        {
+            JOptionPane.showMessageDialog(null, "Invalid number.");
+            return null;
+        }
+        catch(IllegalArgumentException e)
+        {
+            JOptionPane.showMessageDialog(null, e.getMessage() + ".");
+            return null;
+        }
+        return solver;
+    }
+
+    /*
+     * @brief Generates the tangible state space of the current net and solves its steady state
+     * @param solver the iterative solver to use
+     * @return the results formatted as html
+     */
+    private String analyseSparse(SparseSteadyStateSolver solver)
+    {
+        String s = "<h2>GSPN Steady State Analysis Results</h2>";
+        GSPNModel model = GSPNModel.fromPetriNet(root.getDocument().getPetriNet());
+
+        String reason = notAnalysable(model);
+        if(reason != null)
+        {
+            return s + reason;
+        }
+
+        try
+        {
+            long start = System.currentTimeMillis();
+            boolean reused = cache.hasStateSpace(model);
+            TangibleStateSpace stateSpace = cache.getStateSpace(model);
+            long explored = System.currentTimeMillis();
+
+            // The cached state space may come from a net with other rates, take them from the current one
+            GeneratorMatrix q = new GeneratorMatrix(stateSpace, model.getRates());
+            double[] distribution = cache.getSolution(model);
+            SolverResult solution = null;
+            if(distribution == null || distribution.length != stateSpace.getStateCount())
+            {
+                results.setStringProgressBar("Solving the steady state ...");
+                double[] warmStart = cache.getWarmStart(model);
+                if(warmStart != null && warmStart.length == stateSpace.getStateCount())
+                {
+                    solution = solver.solve(q, warmStart);
+                }
+                else
+                {
+                    solution = solver.solve(q);
+                }
+                distribution = solution.getDistribution();
+                if(solution.hasConverged())
+                {
+                    cache.putSolution(model, distribution);
+                }
+            }
+            GSPNMeasures measures = new GSPNMeasures(q, distribution);
+
+            DecimalFormat f = new DecimalFormat();
+            f.setMaximumFractionDigits(5);
+
+            String info = "<br>Tangible states: " + stateSpace.getStateCount()
+                    + ", vanishing states eliminated: " + stateSpace.getVanishingCount()
+                    + ", generator non-zeros: " + q.getIncoming().getNonZeros();
+            if(reused)
+            {
+                info += "<br>State space reused from a previous analysis of this net";
+            }
+            else
+            {
+                info += "<br>State space exploration took " + f.format((explored - start) / 1000.0) + "s";
+            }
+            if(solution == null)
+            {
+                info += "<br>Steady state distribution reused from a previous analysis of this net";
+            }
+            else
+            {
+                info += "<br>Solver: " + solution.getMethod() + ", " + solution.getIterations() + " iterations, residual "
+                        + String.format("%.3e", solution.getResidual())
+                        + (solution.hasConverged() ? "" : " <b>(did not converge)</b>");
+                info += "<br>Solving the steady state distribution took " + f.format(solution.getElapsedMillis() / 1000.0) + "s";
+            }
+
+            /*
+             * The state probabilities go straight to the files, the pane only shows the most probable ones
+             */
+            results.setStringProgressBar("Writing the report ...");
+            GSPNReportWriter report = new GSPNReportWriter(measures);
+            report.writeHtml(output, s + info);
+            report.writeCsv(statesCsv);
+            report.writeBinary(statesBinary);
+
+            s += measures.toHtml();
+            s += info;
+            s += report.statesPreviewHtml(GSPNReportWriter.DEFAULT_PREVIEW_ROWS);
+            s += "<br>Full report written to " + output.getPath()
+                    + ", state probabilities to " + statesCsv.getPath() + " and " + statesBinary.getPath();
+        }
+        catch(IOException e)
+        {
+            s += "<br>" + e.getMessage();
+        }
+        catch(PetriNetException e)
+        {
+            s += "<br>" + e.getMessage();
+        }
+        catch(OutOfMemoryError e)
+        {
+            s += "<br>Not enough memory. Please use a larger heap size.";
+        }
+        return s;
+    }
+
+    /**
+     * Transient button click handler. Asks for the time points and computes
+     * the state probabilities at each of them by uniformization.
+     */
+    private final ActionListener runTransientAnalysis = new ActionListener() {
 
-                    // This will be used to store the steady state distribution
-                    double[] pi;
+        public void actionPerformed(final ActionEvent arg0)
+        {
+            TransientSolver solver = new TransientSolver();
+            double[] times = askTransientSettings(solver);
+            if(times == null)
+            {
+                return;
+            }
 
-                    String s = "<h2>GSPN Steady State Analysis Results</h2>";
+            if (arg0.getSource() instanceof JButton)
+            {
+                ((JButton) arg0.getSource()).setEnabled(false);
+            }
+            results.setText("");
 
+            SwingWorker sw = new SwingWorker()
+            {
+                @Override
+                protected Object doInBackground()
+                {
                     results.setVisibleProgressBar(true);
-                    results.setIndeterminateProgressBar(false);
+                    results.setStringProgressBar("State Space exploration...");
+                    results.setIndeterminateProgressBar(true);
+                    results.setText(analyseTransient(solver, times));
+                    return null;
+                }
 
-                    for(int i = 0; i < 1; i++)
+                @Override
+                protected void done()
+                {
+                    super.done();
+                    results.setVisibleProgressBar(false);
+
+                    if(arg0.getSource() instanceof JButton)
                     {
-                        if(!sourceDataLayer.hasTimedTransitions())
-                        {
-                            s += "This Petri net has no timed transitions, so GSPN analysis cannot be performed.";
-                            results.setText(s);
-                        }
-                        else if(!bounded)
-                        {
-                            s += "This Petri net does not seem to be bounded, so GSPN analysis cannot be performed.";
-                            results.setText(s);
-                        }
-                        else
-                        {
-                            try
-                            {
-                                results.setStringProgressBar("State Space exploration...");
-                                results.setIndeterminateProgressBar(true);
-
-                                /*
-                                 * Let's create the reachability graph
-                                 */
-                                StateSpaceGenerator.generate(sourceDataLayer, reachabilityGraph, results);
-                                efinished = new Date().getTime();
-                                System.gc();
-
-                                results.setIndeterminateProgressBar(false);
-                                results.setStringProgressBar("Solving the steady state ...");
-                                results.setIndeterminateProgressBar(true);
-
-                                /*
-                                 * Analyse data from reachability graph
-                                 */
-                                pi = SteadyStateSolver.solve(reachabilityGraph);
-
-                                ssdfinished = new Date().getTime();
-                                System.gc();
-
-                                results.setIndeterminateProgressBar(false);
-                                results.setStringProgressBar("Computing and formating resutls ...");
-                                results.setIndeterminateProgressBar(true);
-
-                                /*
-                                 * Now format and display the results nicely
-                                 */
-                                GSPNNew gspn = new GSPNNew();
-                                s += gspn.displayResults(sourceDataLayer, reachabilityGraph, pi, output);
-
-                                allfinished = new Date().getTime();
-                                explorationtime = (efinished - start) / 1000.0;
-                                steadystatetime = (ssdfinished - efinished) / 1000.0;
-                                totaltime = (allfinished - start) / 1000.0;
-                                DecimalFormat f = new DecimalFormat();
-                                f.setMaximumFractionDigits(5);
-
-                                s += "<br>State space exploration took "
-                                        + f.format(explorationtime) + "s";
-                                s += "<br>Solving the steady state distribution took "
-                                        + f.format(steadystatetime) + "s";
-                                s += "<br>Total time was "
-                                        + f.format(totaltime) + "s";
-
-                                results.setEnabled(true);
-                                results.setText(s);//
-                                System.gc();
-                            } catch (OutOfMemoryError e)
-                            {
-                                System.gc();
-                                results.setText("");
-                                s += "Memory error: " + e.getMessage();
-
-                                s += "<br>Not enough memory. Please use a larger heap size."
-                                        + "<br>"
-                                        + "<br>Note:"
-                                        + "<br>The Java heap size can be specified with the -Xmx option."
-                                        + "<br>E.g., to use 512MB as heap size, the command line looks like this:"
-                                        + "<br>java -Xmx512m -classpath ...\n";
-                                results.setText(s);
-                                return null;
-                            } catch (TimelessTrapException e) // If we got caught in a timeless trap, let's report it.
-                            {
-                                s += "<br>" + e.getMessage();
-                                results.setText(s);
-                                return null;
-                            } catch (IOException e) // If there was a problem reading or writing files
-                            {
-                                s += "<br>" + e.getMessage();
-                                results.setText(s);
-                                return null;
-                            } catch (MarkingNotIntegerException e)
-                            {
-                                JOptionPane.showMessageDialog(null,
-                                        "Functional arc weight cannot have non-integer value. Please check again.");
-                                sourceDataLayer.restorePlaceViewsMarking();
-                                return null;
-
-                            } catch(Exception e)
-                            {
-                                e.printStackTrace();
-                            }
-
-                            pi = null;
-                        }
+                        ((JButton) arg0.getSource()).setEnabled(true);
                     }
+                }
+            };
+            sw.execute();
+        }
+    };
+
+    /*
+     * @brief Shows a dialog to enter the time points and the accuracy of the transient analysis
+     * @param solver the solver whose settings are filled in
+     * @return the time points in seconds, or null if the user cancelled or typed invalid values
+     */
+    private double[] askTransientSettings(TransientSolver solver)
+    {
+        JTextField timesTF = new JTextField("1, 5, 10", 16);
+        JTextField epsilonTF = new JTextField(Double.toString(solver.getEpsilon()), 8);
+        JTextField threadsTF = new JTextField(Integer.toString(solver.getThreads()), 8);
+
+        JPanel myPanel = new JPanel();
+        myPanel.setLayout(new MigLayout());
+        myPanel.add(new JLabel("Time points (seconds, comma separated): "));
+        myPanel.add(timesTF, "wrap");
+        myPanel.add(new JLabel("Truncation error: "));
+        myPanel.add(epsilonTF, "wrap");
+        myPanel.add(new JLabel("Threads: "));
+        myPanel.add(threadsTF, "wrap");
+
+        int result = JOptionPane.showConfirmDialog(root.getParentFrame(), myPanel, "Transient analysis", JOptionPane.OK_CANCEL_OPTION, JOptionPane.QUESTION_MESSAGE);
+        if(result != JOptionPane.OK_OPTION)
+        {
+            return null;
+        }
+
+        try
+        {
+            String[] fields = timesTF.getText().split(",");
+            double[] times = new double[fields.length];
+            for(int i = 0; i < fields.length; i++)
+            {
+                times[i] = Double.parseDouble(fields[i].trim());
+                if(times[i] < 0)
+                {
+                    throw new NumberFormatException();
+                }
+            }
+            solver.setEpsilon(Double.parseDouble(epsilonTF.getText()));
+            solver.setThreads(Integer.parseInt(threadsTF.getText()));
+            return times;
+        }
+        catch(NumberFormatException e)
+        {
+            JOptionPane.showMessageDialog(null, "Invalid number.");
+            return null;
+        }
+    }
+
+    /*
+     * @brief Generates the tangible state space of the current net and computes its transient distributions
+     * @param solver the uniformization solver to use
+     * @param times the time points in seconds
+     * @return the results formatted as html, one section per time point
+     */
+    private String analyseTransient(TransientSolver solver, double[] times)
+    {
+        String s = "<h2>GSPN Transient Analysis Results</h2>";
+        GSPNModel model = GSPNModel.fromPetriNet(root.getDocument().getPetriNet());
+
+        String reason = notAnalysable(model);
+        if(reason != null)
+        {
+            return s + reason;
+        }
+
+        try
+        {
+            long start = System.currentTimeMillis();
+            TangibleStateSpace stateSpace = cache.getStateSpace(model);
+            long explored = System.currentTimeMillis();
+
+            results.setStringProgressBar("Uniformization ...");
+            GeneratorMatrix q = new GeneratorMatrix(stateSpace, model.getRates());
+            TransientResult solution = solver.solve(q, times);
+
+            DecimalFormat f = new DecimalFormat();
+            f.setMaximumFractionDigits(5);
+
+            for(int i = 0; i < solution.size(); i++)
+            {
+                GSPNMeasures measures = new GSPNMeasures(q, solution.getDistribution(i));
+                s += "<h2>t = " + f.format(solution.getTime(i)) + "s</h2>";
+                s += measures.toHtml();
+            }
+            s += "<br>Tangible states: " + stateSpace.getStateCount()
+                    + ", vanishing states eliminated: " + stateSpace.getVanishingCount()
+                    + ", generator non-zeros: " + q.getIncoming().getNonZeros();
+            s += "<br>Uniformization: " + solution.getSteps() + " matrix-vector products for "
+                    + solution.size() + " time points";
+            s += "<br>State space exploration took " + f.format((explored - start) / 1000.0) + "s";
+            s += "<br>Transient solution took " + f.format(solution.getElapsedMillis() / 1000.0) + "s";
+        }
+        catch(PetriNetException e)
+        {
+            s += "<br>" + e.getMessage();
+        }
+        catch(IllegalArgumentException e)
+        {
+            s += "<br>" + e.getMessage();
+        }
+        catch(OutOfMemoryError e)
+        {
+            s += "<br>Not enough memory. Please use a larger heap size.";
+        }
+        return s;
+    }
+
+    /**
+     * Rate sweep button click handler. Asks for the transitions and rate
+     * values to sweep, solves every point over a single state space and
+     * exports the table as csv.
+     */
+    private final ActionListener runRateSweep = new ActionListener() {
+
+        public void actionPerformed(final ActionEvent arg0)
+        {
+            GSPNModel model = GSPNModel.fromPetriNet(root.getDocument().getPetriNet());
+            String reason = notAnalysable(model);
+            if(reason != null)
+            {
+                JOptionPane.showMessageDialog(null, reason);
+                return;
+            }
+            RateSweep sweep = askSweepSettings(model);
+            if(sweep == null)
+            {
+                return;
+            }
 
+            if (arg0.getSource() instanceof JButton)
+            {
+                ((JButton) arg0.getSource()).setEnabled(false);
+            }
+            results.setText("");
+
+            SwingWorker sw = new SwingWorker()
+            {
+                @Override
+                protected Object doInBackground()
+                {
+                    results.setVisibleProgressBar(true);
+                    results.setStringProgressBar("State Space exploration...");
+                    results.setIndeterminateProgressBar(true);
+                    results.setText(analyseSweep(model, sweep));
                     return null;
                 }
 
@@ -283,10 +606,179 @@ public class GSPNAction extends AbstractAction
                     {
                         ((JButton) arg0.getSource()).setEnabled(true);
                     }
-
                 }
             };
             sw.execute();
         }
     };
-}
\ No newline at end of file
+
+    /*
+     * @brief Shows a dialog to choose one or two timed transitions and the range of rates to sweep
+     * @param model the net being analysed
+     * @return the configured sweep, or null if the user cancelled or typed invalid values
+     */
+    private RateSweep askSweepSettings(GSPNModel model)
+    {
+        List<Integer> timed = new ArrayList<>();
+        List<String> labels = new ArrayList<>();
+        for(int t = 0; t < model.getTransitionCount(); t++)
+        {
+            if(model.isTimed(t))
+            {
+                timed.add(t);
+                labels.add(model.getTransitionLabels()[t]);
+            }
+        }
+        List<String> secondLabels = new ArrayList<>(labels);
+        secondLabels.add(0, "(none)");
+
+        JComboBox<String> firstCB = new JComboBox<>(labels.toArray(new String[0]));
+        JTextField firstFromTF = new JTextField("0.5", 6);
+        JTextField firstToTF = new JTextField("5", 6);
+        JTextField firstStepsTF = new JTextField("10", 6);
+        JComboBox<String> secondCB = new JComboBox<>(secondLabels.toArray(new String[0]));
+        JTextField secondFromTF = new JTextField("0.5", 6);
+        JTextField secondToTF = new JTextField("5", 6);
+        JTextField secondStepsTF = new JTextField("10", 6);
+        JComboBox<SparseSteadyStateSolver.Method> methodCB = new JComboBox<>(SparseSteadyStateSolver.Method.values());
+        JTextField threadsTF = new JTextField(Integer.toString(Runtime.getRuntime().availableProcessors()), 6);
+
+        JPanel myPanel = new JPanel();
+        myPanel.setLayout(new MigLayout());
+        myPanel.add(new JLabel("Transition: "));
+        myPanel.add(firstCB, "wrap");
+        myPanel.add(new JLabel("Rate from: "));
+        myPanel.add(firstFromTF);
+        myPanel.add(new JLabel("to: "));
+        myPanel.add(firstToTF);
+        myPanel.add(new JLabel("values: "));
+        myPanel.add(firstStepsTF, "wrap");
+        myPanel.add(new JLabel("Second transition: "));
+        myPanel.add(secondCB, "wrap");
+        myPanel.add(new JLabel("Rate from: "));
+        myPanel.add(secondFromTF);
+        myPanel.add(new JLabel("to: "));
+        myPanel.add(secondToTF);
+        myPanel.add(new JLabel("values: "));
+        myPanel.add(secondStepsTF, "wrap");
+        myPanel.add(new JLabel("Method: "));
+        myPanel.add(methodCB, "wrap");
+        myPanel.add(new JLabel("Threads: "));
+        myPanel.add(threadsTF, "wrap");
+
+        int result = JOptionPane.showConfirmDialog(root.getParentFrame(), myPanel, "Rate sweep", JOptionPane.OK_CANCEL_OPTION, JOptionPane.QUESTION_MESSAGE);
+        if(result != JOptionPane.OK_OPTION)
+        {
+            return null;
+        }
+
+        try
+        {
+            RateSweep sweep = new RateSweep(model);
+            sweep.setFirst(timed.get(firstCB.getSelectedIndex()), RateSweep.linspace(
+                    Double.parseDouble(firstFromTF.getText()),
+                    Double.parseDouble(firstToTF.getText()),
+                    Integer.parseInt(firstStepsTF.getText())));
+            if(secondCB.getSelectedIndex() > 0)
+            {
+                sweep.setSecond(timed.get(secondCB.getSelectedIndex() - 1), RateSweep.linspace(
+                        Double.parseDouble(secondFromTF.getText()),
+                        Double.parseDouble(secondToTF.getText()),
+                        Integer.parseInt(secondStepsTF.getText())));
+            }
+            sweep.setMethod((SparseSteadyStateSolver.Method) methodCB.getSelectedItem());
+            sweep.setThreads(Integer.parseInt(threadsTF.getText()));
+            return sweep;
+        }
+        catch(IllegalArgumentException e) // Also catches NumberFormatException
+        {
+            JOptionPane.showMessageDialog(null, "Invalid sweep settings: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /*
+     * @brief Solves every point of a rate sweep and writes the table to tmp/GSPN_Sweep.csv
+     * @param model the net being analysed
+     * @param sweep the configured sweep
+     * @return the throughputs of every point formatted as html
+     */
+    private String analyseSweep(GSPNModel model, RateSweep sweep)
+    {
+        String s = "<h2>GSPN Rate Sweep Results</h2>";
+
+        try
+        {
+            long start = System.currentTimeMillis();
+            TangibleStateSpace stateSpace = cache.getStateSpace(model);
+            long explored = System.currentTimeMillis();
+
+            results.setStringProgressBar("Solving " + sweep.getPointCount() + " points ...");
+            List<RateSweep.Point> points = sweep.run(stateSpace);
+            long solved = System.currentTimeMillis();
+
+            try(Writer out = new FileWriter(sweepOutput))
+            {
+                sweep.writeCsv(points, out);
+            }
+
+            DecimalFormat f = new DecimalFormat();
+            f.setMaximumFractionDigits(5);
+
+            String[] labels = model.getTransitionLabels();
+            int columns = model.getTransitionCount() + 1;
+            Object[] table = new Object[columns * (points.size() + 1)];
+            table[0] = "Rates";
+            for(int t = 0; t < labels.length; t++)
+            {
+                table[t + 1] = labels[t];
+            }
+            int row = columns;
+            int unconverged = 0;
+            for(RateSweep.Point point : points)
+            {
+                String rates = "";
+                for(int t = 0; t < labels.length; t++)
+                {
+                    if(point.getRate(t) != model.getRate(t))
+                    {
+                        rates += (rates.isEmpty() ? "" : ", ") + labels[t] + "=" + f.format(point.getRate(t));
+                    }
+                }
+                table[row++] = rates.isEmpty() ? "base" : rates;
+                for(double x : point.getThroughput())
+                {
+                    table[row++] = f.format(x);
+                }
+                if(!point.hasConverged())
+                {
+                    unconverged++;
+                }
+            }
+
+            s += "<h3>Throughput</h3>";
+            s += org.petrinator.auxiliar.ResultsHTMLPane.makeTable(table, columns, false, true, true, true);
+            s += "<br>Tangible states: " + stateSpace.getStateCount() + ", points: " + points.size();
+            if(unconverged > 0)
+            {
+                s += "<br><b>" + unconverged + " points did not converge</b>";
+            }
+            s += "<br>Throughput, utilization and mean tokens of every point written to " + sweepOutput.getPath();
+            s += "<br>State space exploration took " + f.format((explored - start) / 1000.0) + "s";
+            s += "<br>Solving all points took " + f.format((solved - explored) / 1000.0) + "s";
+        }
+        catch(PetriNetException e)
+        {
+            s += "<br>" + e.getMessage();
+        }
+        catch(IOException e)
+        {
+            s += "<br>" + e.getMessage();
+        }
+        catch(OutOfMemoryError e)
+        {
+            s += "<br>Not enough memory. Please use a larger heap size.";
+        }
+        return s;
+    }
+}
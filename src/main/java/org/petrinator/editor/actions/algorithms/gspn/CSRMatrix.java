@@ -0,0 +1,104 @@
+package org.petrinator.editor.actions.algorithms.gspn;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Sparse matrix in compressed sparse row format. Row i holds the entries
+ * colIndex[rowPtr[i]] .. colIndex[rowPtr[i + 1] - 1] with their values.
+ * The sparsity pattern is fixed once built, values may be rewritten in place.
+ */
+public class CSRMatrix {
+
+    private final int rows;
+    private final int cols;
+    final int[] rowPtr;
+    final int[] colIndex;
+    final double[] values;
+
+    CSRMatrix(int rows, int cols, int[] rowPtr, int[] colIndex, double[] values) {
+        this.rows = rows;
+        this.cols = cols;
+        this.rowPtr = rowPtr;
+        this.colIndex = colIndex;
+        this.values = values;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    public int getNonZeros() {
+        return rowPtr[rows];
+    }
+
+    /**
+     * Returns the dot product of a row with a vector.
+     */
+    public double rowDot(int row, double[] x) {
+        double sum = 0;
+        for (int k = rowPtr[row]; k < rowPtr[row + 1]; k++) {
+            sum += values[k] * x[colIndex[k]];
+        }
+        return sum;
+    }
+
+    /**
+     * Computes y = A x for the rows in [fromRow, toRow).
+     */
+    public void multiply(double[] x, double[] y, int fromRow, int toRow) {
+        for (int i = fromRow; i < toRow; i++) {
+            double sum = 0;
+            for (int k = rowPtr[i]; k < rowPtr[i + 1]; k++) {
+                sum += values[k] * x[colIndex[k]];
+            }
+            y[i] = sum;
+        }
+    }
+
+    /**
+     * Computes y = A x.
+     */
+    public void multiply(double[] x, double[] y) {
+        multiply(x, y, 0, rows);
+    }
+
+    /**
+     * Computes y = A x splitting the rows in the given number of chunks, each
+     * one run as a task of the executor. Blocks until all chunks are done.
+     */
+    public void multiply(double[] x, double[] y, ExecutorService executor, int chunks) {
+        if (executor == null || chunks <= 1) {
+            multiply(x, y);
+            return;
+        }
+
+        int chunk = (rows + chunks - 1) / chunks;
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int from = 0; from < rows; from += chunk) {
+            final int begin = from;
+            final int end = Math.min(rows, from + chunk);
+            tasks.add(() -> {
+                multiply(x, y, begin, end);
+                return null;
+            });
+        }
+        try {
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package org.petrinator.editor.actions.algorithms.gspn;
+
+/**
+ * Poisson probabilities for uniformization, truncated following Fox and
+ * Glynn: weights are computed from the mode outwards starting at 1, so
+ * neither underflow nor overflow occurs for large rates, and the left and
+ * right truncation points are chosen so that the neglected mass is below
+ * the requested accuracy.
+ */
+public class FoxGlynn {
+
+    private final int left;
+    private final int right;
+    private final double[] weights;
+
+    /**
+     * @param lambda the Poisson parameter, i.e. uniformization rate times t
+     * @param epsilon the maximum probability mass left out by the truncation
+     */
+    public FoxGlynn(double lambda, double epsilon) {
+        if (lambda < 0 || Double.isNaN(lambda)) {
+            throw new IllegalArgumentException("Poisson parameter must be non-negative: " + lambda);
+        }
+        if (lambda == 0) {
+            left = 0;
+            right = 0;
+            weights = new double[]{1.0};
+            return;
+        }
+
+        int mode = (int) Math.floor(lambda);
+
+        // Right tail: for k > lambda, sum_{i > k} w_i <= w_k * q / (1 - q) with q = lambda / (k + 1)
+        double total = 1.0;
+        double w = 1.0;
+        int k = mode;
+        while (true) {
+            double q = lambda / (k + 1);
+            if (q < 1 && w * q / (1 - q) <= epsilon / 2 * total) {
+                break;
+            }
+            w *= q;
+            k++;
+            total += w;
+        }
+        int r = k;
+
+        // Left tail: for k < lambda, sum_{i < k} w_i <= w_k * q / (1 - q) with q = k / lambda
+        w = 1.0;
+        k = mode;
+        while (k > 0) {
+            double q = k / lambda;
+            if (q < 1 && w * q / (1 - q) <= epsilon / 2 * total) {
+                break;
+            }
+            w *= q;
+            k--;
+            total += w;
+        }
+        int l = k;
+
+        left = l;
+        right = r;
+        weights = new double[r - l + 1];
+        weights[mode - l] = 1.0;
+        for (int i = mode + 1; i <= r; i++) {
+            weights[i - l] = weights[i - 1 - l] * lambda / i;
+        }
+        for (int i = mode - 1; i >= l; i--) {
+            weights[i - l] = weights[i + 1 - l] * (i + 1) / lambda;
+        }
+
+        double sum = 0;
+        for (double weight : weights) {
+            sum += weight;
+        }
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] /= sum;
+        }
+    }
+
+    public int getLeft() {
+        return left;
+    }
+
+    public int getRight() {
+        return right;
+    }
+
+    /**
+     * Returns the normalized Poisson probability of k jumps, or zero outside
+     * the truncation points.
+     */
+    public double getWeight(int k) {
+        if (k < left || k > right) {
+            return 0;
+        }
+        return weights[k - left];
+    }
+}
@@ -0,0 +1,127 @@
+package org.petrinator.editor.actions.algorithms.gspn;
+
+import org.petrinator.auxiliar.ResultsHTMLPane;
+
+import java.text.DecimalFormat;
+
+/**
+ * Performance measures derived from a steady state (or transient)
+ * distribution over the tangible states of a GSPN.
+ */
+public class GSPNMeasures {
+
+    private final TangibleStateSpace stateSpace;
+    private final double[] distribution;
+    private final double[] meanTokens;
+    private final double[] markedProbability;
+    private final double[] throughput;
+
+    public GSPNMeasures(GeneratorMatrix q, double[] distribution) {
+        this.stateSpace = q.getStateSpace();
+        this.distribution = distribution;
+
+        GSPNModel model = stateSpace.getModel();
+        meanTokens = new double[model.getPlaceCount()];
+        markedProbability = new double[model.getPlaceCount()];
+        throughput = new double[model.getTransitionCount()];
+
+        for (int s = 0; s < stateSpace.getStateCount(); s++) {
+            int[] marking = stateSpace.getMarking(s);
+            for (int p = 0; p < marking.length; p++) {
+                meanTokens[p] += distribution[s] * marking[p];
+                if (marking[p] > 0) {
+                    markedProbability[p] += distribution[s];
+                }
+            }
+        }
+
+        // Immediate transitions fire on the way from a timed firing to the next tangible state
+        for (int f = 0; f < stateSpace.getFiringCount(); f++) {
+            int transition = stateSpace.getFiringTransition(f);
+            double flow = distribution[stateSpace.getFiringState(f)] * q.getRate(transition);
+            throughput[transition] += flow;
+            TangibleStateSpace.Resolution resolution = stateSpace.getFiringResolution(f);
+            for (int i = 0; i < resolution.immediateTransitions.length; i++) {
+                throughput[resolution.immediateTransitions[i]] += flow * resolution.immediateCounts[i];
+            }
+        }
+    }
+
+    public TangibleStateSpace getStateSpace() {
+        return stateSpace;
+    }
+
+    public double[] getDistribution() {
+        return distribution;
+    }
+
+    /**
+     * Returns the expected number of tokens of every place.
+     */
+    public double[] getMeanTokens() {
+        return meanTokens;
+    }
+
+    /**
+     * Returns the probability of every place holding at least one token.
+     */
+    public double[] getMarkedProbability() {
+        return markedProbability;
+    }
+
+    /**
+     * Returns the mean number of firings per time unit of every transition.
+     */
+    public double[] getThroughput() {
+        return throughput;
+    }
+
+    /**
+     * Returns the total number of timed firings per time unit.
+     */
+    public double getTotalTimedThroughput() {
+        double total = 0;
+        for (int t = 0; t < throughput.length; t++) {
+            if (stateSpace.getModel().isTimed(t)) {
+                total += throughput[t];
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Formats the place and transition measures as html tables.
+     */
+    public String toHtml() {
+        DecimalFormat f = new DecimalFormat();
+        f.setMaximumFractionDigits(5);
+        GSPNModel model = stateSpace.getModel();
+
+        String[] placeLabels = model.getPlaceLabels();
+        Object[] places = new Object[3 * (placeLabels.length + 1)];
+        places[0] = "Place";
+        places[1] = "Average number of tokens";
+        places[2] = "Probability of being marked";
+        for (int p = 0; p < placeLabels.length; p++) {
+            places[3 * (p + 1)] = placeLabels[p];
+            places[3 * (p + 1) + 1] = f.format(meanTokens[p]);
+            places[3 * (p + 1) + 2] = f.format(markedProbability[p]);
+        }
+
+        String[] transitionLabels = model.getTransitionLabels();
+        Object[] transitions = new Object[3 * (transitionLabels.length + 1)];
+        transitions[0] = "Transition";
+        transitions[1] = "Type";
+        transitions[2] = "Throughput";
+        for (int t = 0; t < transitionLabels.length; t++) {
+            transitions[3 * (t + 1)] = transitionLabels[t];
+            transitions[3 * (t + 1) + 1] = model.isTimed(t) ? "Timed" : "Immediate";
+            transitions[3 * (t + 1) + 2] = f.format(throughput[t]);
+        }
+
+        return "<h3>Places</h3>"
+                + ResultsHTMLPane.makeTable(places, 3, false, true, true, true)
+                + "<h3>Transitions</h3>"
+                + ResultsHTMLPane.makeTable(transitions, 3, false, true, true, true);
+    }
+}
@@ -0,0 +1,304 @@
+package org.petrinator.editor.actions.algorithms.gspn;
+
+import org.petrinator.petrinet.Marking;
+import org.petrinator.petrinet.Node;
+import org.petrinator.petrinet.PetriNet;
+import org.petrinator.petrinet.TransitionNode;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Primitive snapshot of a Petri net used by the GSPN solvers.
+ * Places and transitions follow the order of PetriNet.getSortedPlaces()
+ * and PetriNet.getSortedTransitions(), the same order used by the matrices.
+ * Timed transitions are exponential with rate getRate(), immediate
+ * transitions use getRate() as their firing weight.
+ */
+public class GSPNModel {
+
+    private final int[][] iMinus;
+    private final int[][] iCombined;
+    private final int[][] inhibition;
+    private final int[][] reset;
+    private final int[][] reader;
+    private final int[] initialMarking;
+    private final boolean[] timed;
+    private final double[] rates;
+    private final String[] distributions;
+    private final String[] placeLabels;
+    private final String[] transitionLabels;
+
+    public GSPNModel(int[][] iMinus, int[][] iCombined, int[][] inhibition, int[][] reset, int[][] reader,
+                     int[] initialMarking, boolean[] timed, double[] rates,
+                     String[] placeLabels, String[] transitionLabels) {
+        this(iMinus, iCombined, inhibition, reset, reader, initialMarking, timed, rates,
+                exponential(timed.length), placeLabels, transitionLabels);
+    }
+
+    public GSPNModel(int[][] iMinus, int[][] iCombined, int[][] inhibition, int[][] reset, int[][] reader,
+                     int[] initialMarking, boolean[] timed, double[] rates, String[] distributions,
+                     String[] placeLabels, String[] transitionLabels) {
+        this.iMinus = iMinus;
+        this.iCombined = iCombined;
+        this.inhibition = inhibition;
+        this.reset = reset;
+        this.reader = reader;
+        this.initialMarking = initialMarking;
+        this.timed = timed;
+        this.rates = rates;
+        this.distributions = distributions;
+        this.placeLabels = placeLabels;
+        this.transitionLabels = transitionLabels;
+    }
+
+    /**
+     * Builds the model from the net currently being edited, taking the
+     * current marking as the initial one.
+     */
+    public static GSPNModel fromPetriNet(PetriNet petriNet) {
+        ArrayList<Node> transitions = petriNet.getSortedTransitions();
+        boolean[] timed = new boolean[transitions.size()];
+        double[] rates = new double[transitions.size()];
+        String[] distributions = new String[transitions.size()];
+        for (int t = 0; t < transitions.size(); t++) {
+            TransitionNode transition = (TransitionNode) transitions.get(t);
+            timed[t] = transition.isTimed();
+            rates[t] = transition.getRate();
+            distributions[t] = transition.getDistribution();
+        }
+
+        return new GSPNModel(
+                petriNet.getBackwardsIMatrix(),
+                petriNet.getIncidenceMatrix(),
+                petriNet.getInhibitionMatrix(),
+                petriNet.getResetMatrix(),
+                petriNet.getReaderMatrix(),
+                petriNet.getInitialMarking().getMarkingAsArray()[Marking.CURRENT],
+                timed,
+                rates,
+                distributions,
+                petriNet.getSortedPlacesNames().toArray(new String[0]),
+                petriNet.getSortedTransitionsNames().toArray(new String[0]));
+    }
+
+    /**
+     * Returns a copy of this model with different transition rates. The
+     * structure (matrices, marking and timed flags) is shared.
+     */
+    public GSPNModel withRates(double[] newRates) {
+        if (newRates.length != rates.length) {
+            throw new IllegalArgumentException("Expected " + rates.length + " rates, got " + newRates.length);
+        }
+        return new GSPNModel(iMinus, iCombined, inhibition, reset, reader, initialMarking, timed,
+                newRates.clone(), distributions, placeLabels, transitionLabels);
+    }
+
+    /**
+     * Returns a canonical hash of everything the tangible state space
+     * depends on: the matrices, the initial marking, the timed flags, the
+     * weights of the immediate transitions and the labels. Two models with
+     * the same structure key differ at most in their timed rates and
+     * distributions, so they share the state space.
+     */
+    public String getStructureKey() {
+        return digest(false);
+    }
+
+    /**
+     * Returns a canonical hash of the whole model, the structure key plus
+     * the rate and distribution of every timed transition.
+     */
+    public String getKey() {
+        return digest(true);
+    }
+
+    private String digest(boolean withRates) {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new DigestOutputStream(nullStream(), md))) {
+            out.writeInt(getPlaceCount());
+            out.writeInt(getTransitionCount());
+            for (int[][] matrix : new int[][][]{iMinus, iCombined, inhibition, reset, reader}) {
+                for (int[] row : matrix) {
+                    for (int value : row) {
+                        out.writeInt(value);
+                    }
+                }
+            }
+            for (int tokens : initialMarking) {
+                out.writeInt(tokens);
+            }
+            for (int t = 0; t < timed.length; t++) {
+                out.writeBoolean(timed[t]);
+                if (!timed[t]) {
+                    out.writeDouble(rates[t]);
+                } else if (withRates) {
+                    out.writeDouble(rates[t]);
+                    out.writeUTF(String.valueOf(distributions[t]));
+                }
+            }
+            for (String label : placeLabels) {
+                out.writeUTF(String.valueOf(label));
+            }
+            for (String label : transitionLabels) {
+                out.writeUTF(String.valueOf(label));
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+
+        StringBuilder hex = new StringBuilder();
+        for (byte b : md.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private static OutputStream nullStream() {
+        return new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        };
+    }
+
+    private static String[] exponential(int count) {
+        String[] distributions = new String[count];
+        Arrays.fill(distributions, "Exponential");
+        return distributions;
+    }
+
+    /**
+     * Determines if a transition is enabled in the given marking, taking
+     * into account regular, inhibitor and reader arcs.
+     */
+    boolean isEnabled(int transition, int[] marking) {
+        for (int p = 0; p < marking.length; p++) {
+            if (iMinus[p][transition] > marking[p]) {
+                return false;
+            }
+            if (inhibition[p][transition] > 0 && marking[p] >= inhibition[p][transition]) {
+                return false;
+            }
+            if (reader[p][transition] > marking[p]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the marking reached after firing a transition, in the same
+     * order as Marking.fire() and CompiledNet.fire(): the inputs are
+     * consumed, reset arcs empty their place, and then the outputs are
+     * added, so an output arc back to a reset place leaves its tokens.
+     */
+    int[] fire(int transition, int[] marking) {
+        int[] result = new int[marking.length];
+        for (int p = 0; p < marking.length; p++) {
+            int remaining = marking[p] - iMinus[p][transition];
+            if (reset[p][transition] != 0) {
+                remaining = 0;
+            }
+            // The combined matrix is output minus input
+            result[p] = remaining + iCombined[p][transition] + iMinus[p][transition];
+        }
+        return result;
+    }
+
+    public int getPlaceCount() {
+        return initialMarking.length;
+    }
+
+    public int getTransitionCount() {
+        return timed.length;
+    }
+
+    public boolean isTimed(int transition) {
+        return timed[transition];
+    }
+
+    public boolean hasTimedTransitions() {
+        for (boolean t : timed) {
+            if (t) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public double getRate(int transition) {
+        return rates[transition];
+    }
+
+    public double[] getRates() {
+        return rates.clone();
+    }
+
+    public String getDistribution(int transition) {
+        return distributions[transition];
+    }
+
+    /**
+     * Returns the first timed transition whose delay is not exponential, or
+     * -1 if there is none. The analysis takes every timed transition as
+     * exponential with its rate, so its results would not be those of such
+     * a net.
+     */
+    public int getNonExponentialTransition() {
+        for (int t = 0; t < timed.length; t++) {
+            if (timed[t] && !"Exponential".equals(distributions[t])) {
+                return t;
+            }
+        }
+        return -1;
+    }
+
+    public int[] getInitialMarking() {
+        return initialMarking.clone();
+    }
+
+    public String[] getPlaceLabels() {
+        return placeLabels;
+    }
+
+    public String[] getTransitionLabels() {
+        return transitionLabels;
+    }
+
+    int[][] getBackwardsIMatrix() {
+        return iMinus;
+    }
+
+    int[][] getIncidenceMatrix() {
+        return iCombined;
+    }
+
+    int[][] getInhibitionMatrix() {
+        return inhibition;
+    }
+
+    int[][] getResetMatrix() {
+        return reset;
+    }
+
+    int[][] getReaderMatrix() {
+        return reader;
+    }
+}
@@ -0,0 +1,187 @@
+package org.petrinator.editor.actions.algorithms.gspn;
+
+import org.petrinator.auxiliar.ResultsHTMLPane;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.DecimalFormat;
+import java.util.Locale;
+import java.util.PriorityQueue;
+
+/**
+ * Writes the results of a GSPN analysis without building them in memory.
+ *
+ * The summary (place and transition measures) is small and comes first.
+ * The probability of every tangible state is written row by row straight
+ * to the output, so the size of the state space only affects the size of
+ * the file. For the results pane, statesPreviewHtml() returns just the most
+ * probable states.
+ *
+ * Besides html, the state probabilities can be written as csv or in a
+ * compact binary format for other tools:
+ *
+ *   int magic 'GSPN', int version, int states, int places,
+ *   then for every state its marking (places ints) and probability (double)
+ *
+ * all big-endian as written by DataOutputStream.
+ */
+public class GSPNReportWriter {
+
+    public static final int BINARY_MAGIC = 0x4753504E;
+    public static final int BINARY_VERSION = 1;
+    public static final int DEFAULT_PREVIEW_ROWS = 100;
+
+    private final TangibleStateSpace stateSpace;
+    private final GSPNMeasures measures;
+
+    public GSPNReportWriter(GSPNMeasures measures) {
+        this.measures = measures;
+        this.stateSpace = measures.getStateSpace();
+    }
+
+    /**
+     * Writes a complete html report: the given summary, the measures and the
+     * table of every tangible state with its probability.
+     */
+    public void writeHtml(File file, String summary) throws IOException {
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            out.write("<html><head>");
+            out.write(ResultsHTMLPane.HTML_STYLE);
+            out.write("</head><body>");
+            out.write(summary);
+            out.write(measures.toHtml());
+            out.write("<h3>State probabilities</h3>");
+            writeStatesTable(out, allStates());
+            out.write("</body></html>");
+        }
+    }
+
+    /**
+     * Writes one line per tangible state: its index, its marking and its
+     * probability.
+     */
+    public void writeCsv(File file) throws IOException {
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            StringBuilder line = new StringBuilder("state");
+            for (String place : stateSpace.getModel().getPlaceLabels()) {
+                line.append(',').append(place.replace(',', '_'));
+            }
+            out.write(line.append(",probability\n").toString());
+
+            double[] distribution = measures.getDistribution();
+            for (int s = 0; s < stateSpace.getStateCount(); s++) {
+                line.setLength(0);
+                line.append(s);
+                for (int tokens : stateSpace.getMarking(s)) {
+                    line.append(',').append(tokens);
+                }
+                line.append(',').append(String.format(Locale.ROOT, "%.12g", distribution[s])).append('\n');
+                out.write(line.toString());
+            }
+        }
+    }
+
+    /**
+     * Writes the markings and probabilities in the binary format described
+     * in the class comment.
+     */
+    public void writeBinary(File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(BINARY_MAGIC);
+            out.writeInt(BINARY_VERSION);
+            out.writeInt(stateSpace.getStateCount());
+            out.writeInt(stateSpace.getModel().getPlaceCount());
+
+            double[] distribution = measures.getDistribution();
+            for (int s = 0; s < stateSpace.getStateCount(); s++) {
+                for (int tokens : stateSpace.getMarking(s)) {
+                    out.writeInt(tokens);
+                }
+                out.writeDouble(distribution[s]);
+            }
+        }
+    }
+
+    /**
+     * Returns an html table with at most maxRows states, the most probable
+     * ones, in decreasing order of probability.
+     */
+    public String statesPreviewHtml(int maxRows) {
+        StringBuilder s = new StringBuilder();
+        int shown = Math.min(maxRows, stateSpace.getStateCount());
+        if (shown < stateSpace.getStateCount()) {
+            s.append("<h3>The ").append(shown).append(" most probable of ")
+                    .append(stateSpace.getStateCount()).append(" states</h3>");
+        } else {
+            s.append("<h3>State probabilities</h3>");
+        }
+        try {
+            writeStatesTable(s, mostProbable(shown));
+        } catch (IOException e) {
+            // Appending to a StringBuilder does not throw
+            throw new IllegalStateException(e);
+        }
+        return s.toString();
+    }
+
+    private int[] allStates() {
+        int[] states = new int[stateSpace.getStateCount()];
+        for (int s = 0; s < states.length; s++) {
+            states[s] = s;
+        }
+        return states;
+    }
+
+    /**
+     * Selects the count most probable states with a bounded heap, so the
+     * cost is O(n log count) and no copy of the distribution is sorted.
+     */
+    private int[] mostProbable(int count) {
+        final double[] distribution = measures.getDistribution();
+        PriorityQueue<Integer> heap = new PriorityQueue<>(Math.max(1, count),
+                (a, b) -> Double.compare(distribution[a], distribution[b]));
+        for (int s = 0; s < distribution.length && count > 0; s++) {
+            if (heap.size() < count) {
+                heap.add(s);
+            } else if (distribution[s] > distribution[heap.peek()]) {
+                heap.poll();
+                heap.add(s);
+            }
+        }
+        int[] states = new int[heap.size()];
+        for (int i = states.length - 1; i >= 0; i--) {
+            states[i] = heap.poll();
+        }
+        return states;
+    }
+
+    private void writeStatesTable(Appendable out, int[] states) throws IOException {
+        DecimalFormat f = new DecimalFormat();
+        f.setMaximumFractionDigits(8);
+        double[] distribution = measures.getDistribution();
+
+        out.append("<br><table border=0 cellspacing = 2><tr class=even><td class=empty></td>");
+        for (String place : stateSpace.getModel().getPlaceLabels()) {
+            out.append("<td class=colhead>").append(place).append("</td>");
+        }
+        out.append("<td class=colhead>Probability</td></tr>");
+
+        for (int i = 0; i < states.length; i++) {
+            int s = states[i];
+            out.append("<tr class=").append(i % 2 == 0 ? "odd" : "even").append("><td class=rowhead>M")
+                    .append(String.valueOf(s)).append("</td>");
+            for (int tokens : stateSpace.getMarking(s)) {
+                out.append("<td class=cell>").append(String.valueOf(tokens)).append("</td>");
+            }
+            out.append("<td class=cell>").append(f.format(distribution[s])).append("</td></tr>");
+        }
+        out.append("</table>");
+    }
+}
@@ -0,0 +1,249 @@
+package org.petrinator.editor.actions.algorithms.gspn;
+
+import org.petrinator.petrinet.PetriNetException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache of GSPN analysis results so that analysing an unchanged net again
+ * does not redo the state space generation nor the solution.
+ *
+ * Entries are looked up with the canonical hashes of GSPNModel. State spaces
+ * are kept by structure key, so a net whose timed rates changed reuses its
+ * state space and only needs to be solved again. Steady state distributions
+ * are kept by full key; reports are not cached, they are rendered again from
+ * the distribution. Everything lives in memory with LRU eviction;
+ * distributions can also be stored in a directory so they survive the
+ * application. The directory keeps at most a bounded number of entries, the
+ * least recently used are deleted first, and entries older than the maximum
+ * age are ignored and deleted.
+ */
+public class GSPNResultsCache {
+
+    public static final int DEFAULT_STATE_SPACES = 4;
+    public static final int DEFAULT_RESULTS = 64;
+    public static final int DEFAULT_DISK_ENTRIES = 256;
+    public static final long DEFAULT_DISK_AGE = TimeUnit.DAYS.toMillis(30);
+
+    private final Map<String, TangibleStateSpace> stateSpaces;
+    private final Map<String, double[]> solutions;
+    // Most recent solution of every structure, used as a warm start after a rate change
+    private final Map<String, double[]> latestSolutions;
+    private final File directory;
+    private final int maxDiskEntries;
+    private final long maxDiskAge;
+
+    private int hits;
+    private int misses;
+
+    /**
+     * Creates a cache held only in memory.
+     */
+    public GSPNResultsCache() {
+        this(null);
+    }
+
+    /**
+     * @param directory where distributions are also stored, or null to keep
+     *                  them in memory only
+     */
+    public GSPNResultsCache(File directory) {
+        this(directory, DEFAULT_STATE_SPACES, DEFAULT_RESULTS, DEFAULT_DISK_ENTRIES, DEFAULT_DISK_AGE);
+    }
+
+    /**
+     * @param maxDiskEntries most distributions kept in the directory
+     * @param maxDiskAge     milliseconds after which a stored distribution
+     *                       is no longer used
+     */
+    public GSPNResultsCache(File directory, int maxStateSpaces, int maxResults, int maxDiskEntries, long maxDiskAge) {
+        this.directory = directory;
+        this.maxDiskEntries = maxDiskEntries;
+        this.maxDiskAge = maxDiskAge;
+        this.stateSpaces = lru(maxStateSpaces);
+        this.solutions = lru(maxResults);
+        this.latestSolutions = lru(maxStateSpaces);
+    }
+
+    private static <V> Map<String, V> lru(final int capacity) {
+        return new LinkedHashMap<String, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Returns the tangible state space of the model, generating it only if
+     * no model with the same structure was seen before. The rates of the
+     * returned state space's model may differ from the given model, so the
+     * generator must be built with model.getRates().
+     */
+    public TangibleStateSpace getStateSpace(GSPNModel model) throws PetriNetException {
+        String key = model.getStructureKey();
+        synchronized (this) {
+            TangibleStateSpace stateSpace = stateSpaces.get(key);
+            if (stateSpace != null) {
+                hits++;
+                return stateSpace;
+            }
+            misses++;
+        }
+
+        TangibleStateSpace stateSpace = TangibleStateSpace.generate(model);
+        synchronized (this) {
+            stateSpaces.put(key, stateSpace);
+        }
+        return stateSpace;
+    }
+
+    /**
+     * Determines if the state space of a model with this structure is cached.
+     */
+    public synchronized boolean hasStateSpace(GSPNModel model) {
+        return stateSpaces.containsKey(model.getStructureKey());
+    }
+
+    /**
+     * Returns the cached steady state distribution of the model, or null.
+     */
+    public synchronized double[] getSolution(GSPNModel model) {
+        String key = model.getKey();
+        double[] solution = solutions.get(key);
+        if (solution == null && directory != null) {
+            solution = readSolution(new File(directory, key + ".pi"));
+            if (solution != null) {
+                solutions.put(key, solution);
+            }
+        }
+        count(solution != null);
+        return solution == null ? null : solution.clone();
+    }
+
+    /**
+     * Returns the most recent distribution computed for a model with the
+     * same structure, a good initial guess for the iterative solvers, or
+     * null if there is none.
+     */
+    public synchronized double[] getWarmStart(GSPNModel model) {
+        double[] solution = latestSolutions.get(model.getStructureKey());
+        return solution == null ? null : solution.clone();
+    }
+
+    public synchronized void putSolution(GSPNModel model, double[] solution) {
+        String key = model.getKey();
+        solutions.put(key, solution.clone());
+        latestSolutions.put(model.getStructureKey(), solution.clone());
+        if (directory != null) {
+            writeSolution(new File(directory, key + ".pi"), solution);
+            evict();
+        }
+    }
+
+    /**
+     * Removes every entry from memory and from the disk store.
+     */
+    public synchronized void clear() {
+        stateSpaces.clear();
+        solutions.clear();
+        latestSolutions.clear();
+        if (directory != null) {
+            for (File file : storedFiles()) {
+                file.delete();
+            }
+        }
+    }
+
+    public synchronized int getHits() {
+        return hits;
+    }
+
+    public synchronized int getMisses() {
+        return misses;
+    }
+
+    private void count(boolean hit) {
+        if (hit) {
+            hits++;
+        } else {
+            misses++;
+        }
+    }
+
+    private double[] readSolution(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        if (now - file.lastModified() > maxDiskAge) {
+            file.delete();
+            return null;
+        }
+        double[] solution;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            solution = new double[in.readInt()];
+            for (int i = 0; i < solution.length; i++) {
+                solution[i] = in.readDouble();
+            }
+        } catch (IOException e) {
+            // A truncated or corrupt entry is treated as a miss
+            return null;
+        }
+        // The modification time orders the entries for eviction
+        file.setLastModified(now);
+        return solution;
+    }
+
+    /**
+     * Deletes the stored distributions that are too old and, beyond the
+     * maximum number of entries, the least recently used ones.
+     */
+    private void evict() {
+        File[] files = storedFiles();
+        long now = System.currentTimeMillis();
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified).reversed());
+        for (int i = 0; i < files.length; i++) {
+            if (i >= maxDiskEntries || now - files[i].lastModified() > maxDiskAge) {
+                files[i].delete();
+            }
+        }
+    }
+
+    private File[] storedFiles() {
+        // .html entries were written by earlier versions that cached reports
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(".pi") || name.endsWith(".html"));
+        return files == null ? new File[0] : files;
+    }
+
+    private void writeSolution(File file, double[] solution) {
+        try {
+            directory.mkdirs();
+            File temp = File.createTempFile("gspn", ".tmp", directory);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeInt(solution.length);
+                for (double p : solution) {
+                    out.writeDouble(p);
+                }
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            // The disk store is optional, the entry stays in memory
+            e.printStackTrace();
+        }
+    }
+}
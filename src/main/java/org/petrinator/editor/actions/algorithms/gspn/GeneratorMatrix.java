@@ -0,0 +1,192 @@
+package org.petrinator.editor.actions.algorithms.gspn;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Infinitesimal generator Q of the CTMC underlying a tangible state space.
+ * It is stored transposed and without its diagonal: row j of getIncoming()
+ * holds the rates q(i,j) of every state i that can jump to j, and
+ * getExitRate(j) holds -q(j,j). This is the layout the iterative solvers
+ * need to compute pi * Q one state at a time.
+ *
+ * The sparsity pattern depends only on the state space. setRates() rewrites
+ * the numeric values for a new rate vector without touching the pattern.
+ */
+public class GeneratorMatrix {
+
+    private final TangibleStateSpace stateSpace;
+    private final CSRMatrix incoming;
+    private final double[] exitRates;
+
+    // One contribution per (timed firing, target state) pair with target != source
+    private final int[] contributionFiring;
+    private final double[] contributionProbability;
+    private final int[] contributionSlot;
+
+    private double[] rates;
+
+    public GeneratorMatrix(TangibleStateSpace stateSpace) {
+        this(stateSpace, stateSpace.getModel().getRates());
+    }
+
+    public GeneratorMatrix(TangibleStateSpace stateSpace, double[] rates) {
+        this.stateSpace = stateSpace;
+        int n = stateSpace.getStateCount();
+
+        int count = 0;
+        for (int f = 0; f < stateSpace.getFiringCount(); f++) {
+            TangibleStateSpace.Resolution resolution = stateSpace.getFiringResolution(f);
+            for (int i = 0; i < resolution.size(); i++) {
+                if (resolution.getTarget(i) != stateSpace.getFiringState(f)) {
+                    count++;
+                }
+            }
+        }
+
+        contributionFiring = new int[count];
+        contributionProbability = new double[count];
+        contributionSlot = new int[count];
+        int[] contributionRow = new int[count];
+        int[] rowCount = new int[n + 1];
+
+        int c = 0;
+        for (int f = 0; f < stateSpace.getFiringCount(); f++) {
+            TangibleStateSpace.Resolution resolution = stateSpace.getFiringResolution(f);
+            for (int i = 0; i < resolution.size(); i++) {
+                int target = resolution.getTarget(i);
+                if (target != stateSpace.getFiringState(f)) {
+                    contributionFiring[c] = f;
+                    contributionProbability[c] = resolution.getProbability(i);
+                    contributionRow[c] = target;
+                    rowCount[target + 1]++;
+                    c++;
+                }
+            }
+        }
+
+        // Bucket contributions by row, then sort each row by column (source state)
+        int[] rowStart = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            rowStart[i + 1] = rowStart[i] + rowCount[i + 1];
+        }
+        long[] keys = new long[count];
+        int[] fill = Arrays.copyOf(rowStart, n);
+        for (c = 0; c < count; c++) {
+            int source = stateSpace.getFiringState(contributionFiring[c]);
+            keys[fill[contributionRow[c]]++] = ((long) source << 32) | c;
+        }
+
+        int[] rowPtr = new int[n + 1];
+        int[] colIndex = new int[count];
+        int nonZeros = 0;
+        for (int row = 0; row < n; row++) {
+            Arrays.sort(keys, rowStart[row], rowStart[row + 1]);
+            int lastCol = -1;
+            for (int k = rowStart[row]; k < rowStart[row + 1]; k++) {
+                int col = (int) (keys[k] >>> 32);
+                int contribution = (int) keys[k];
+                if (col != lastCol) {
+                    colIndex[nonZeros++] = col;
+                    lastCol = col;
+                }
+                contributionSlot[contribution] = nonZeros - 1;
+            }
+            rowPtr[row + 1] = nonZeros;
+        }
+
+        incoming = new CSRMatrix(n, n, rowPtr, Arrays.copyOf(colIndex, nonZeros), new double[nonZeros]);
+        exitRates = new double[n];
+        setRates(rates);
+    }
+
+    /**
+     * Recomputes the numeric values of the generator for a new vector of
+     * timed transition rates, reusing the sparsity pattern.
+     */
+    public void setRates(double[] rates) {
+        this.rates = rates.clone();
+        Arrays.fill(incoming.values, 0);
+        Arrays.fill(exitRates, 0);
+        for (int c = 0; c < contributionFiring.length; c++) {
+            int firing = contributionFiring[c];
+            double rate = rates[stateSpace.getFiringTransition(firing)] * contributionProbability[c];
+            incoming.values[contributionSlot[c]] += rate;
+            exitRates[stateSpace.getFiringState(firing)] += rate;
+        }
+    }
+
+    public double[] getRates() {
+        return rates.clone();
+    }
+
+    double getRate(int transition) {
+        return rates[transition];
+    }
+
+    public TangibleStateSpace getStateSpace() {
+        return stateSpace;
+    }
+
+    public int getStateCount() {
+        return exitRates.length;
+    }
+
+    public CSRMatrix getIncoming() {
+        return incoming;
+    }
+
+    public double getExitRate(int state) {
+        return exitRates[state];
+    }
+
+    public double getMaxExitRate() {
+        double max = 0;
+        for (double rate : exitRates) {
+            max = Math.max(max, rate);
+        }
+        return max;
+    }
+
+    public boolean hasAbsorbingStates() {
+        for (double rate : exitRates) {
+            if (rate == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Computes y = pi * Q.
+     */
+    public void multiply(double[] pi, double[] y) {
+        incoming.multiply(pi, y);
+        for (int j = 0; j < y.length; j++) {
+            y[j] -= exitRates[j] * pi[j];
+        }
+    }
+
+    /**
+     * Computes y = pi * Q with the sparse product split among the executor
+     * threads.
+     */
+    public void multiply(double[] pi, double[] y, ExecutorService executor, int chunks) {
+        incoming.multiply(pi, y, executor, chunks);
+        for (int j = 0; j < y.length; j++) {
+            y[j] -= exitRates[j] * pi[j];
+        }
+    }
+
+    /**
+     * Returns the L1 norm of pi * Q, which is zero for the steady state
+     * distribution.
+     */
+    public double residual(double[] pi) {
+        double sum = 0;
+        for (int j = 0; j < exitRates.length; j++) {
+            sum += Math.abs(incoming.rowDot(j, pi) - exitRates[j] * pi[j]);
+        }
+        return sum;
+    }
+}
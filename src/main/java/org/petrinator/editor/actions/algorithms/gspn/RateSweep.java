@@ -0,0 +1,318 @@
+package org.petrinator.editor.actions.algorithms.gspn;
+
+import org.petrinator.petrinet.PetriNetException;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Steady state analysis of a GSPN over a grid of values for the rates of
+ * one or two timed transitions.
+ *
+ * The tangible state space does not depend on timed rates, so it is
+ * generated once and shared by every point. The points are split in
+ * contiguous blocks, one per worker thread; each worker keeps its own
+ * generator, rewriting only its numeric values for every rate vector, and
+ * starts the solver from the solution of the previous point of its block,
+ * which is usually very close.
+ */
+public class RateSweep {
+
+    private final GSPNModel model;
+
+    private int firstTransition = -1;
+    private double[] firstValues = new double[0];
+    private int secondTransition = -1;
+    private double[] secondValues = new double[]{Double.NaN};
+
+    private SparseSteadyStateSolver.Method method = SparseSteadyStateSolver.Method.GAUSS_SEIDEL;
+    private double tolerance = 1e-10;
+    private int maxIterations = 10000;
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * @param model the net to analyse, which also gives the rates of the
+     *              transitions that are not swept
+     */
+    public RateSweep(GSPNModel model) {
+        this.model = model;
+    }
+
+    /**
+     * Sets the first swept transition and its rate values.
+     */
+    public void setFirst(int transition, double[] values) {
+        checkTimed(transition);
+        this.firstTransition = transition;
+        this.firstValues = values.clone();
+    }
+
+    /**
+     * Sets the second swept transition, making the sweep a grid of
+     * first x second values. A negative transition sweeps only the first one.
+     */
+    public void setSecond(int transition, double[] values) {
+        if (transition < 0) {
+            this.secondTransition = -1;
+            this.secondValues = new double[]{Double.NaN};
+            return;
+        }
+        checkTimed(transition);
+        this.secondTransition = transition;
+        this.secondValues = values.clone();
+    }
+
+    private void checkTimed(int transition) {
+        if (!model.isTimed(transition)) {
+            // Immediate weights shape the state space itself, they cannot be swept over a shared one
+            throw new IllegalArgumentException("Only timed transitions can be swept: "
+                    + model.getTransitionLabels()[transition]);
+        }
+    }
+
+    public void setMethod(SparseSteadyStateSolver.Method method) {
+        this.method = method;
+    }
+
+    public void setTolerance(double tolerance) {
+        this.tolerance = tolerance;
+    }
+
+    public void setMaxIterations(int maxIterations) {
+        this.maxIterations = maxIterations;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Returns evenly spaced values from first to last, both included.
+     */
+    public static double[] linspace(double first, double last, int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("At least one value is needed");
+        }
+        double[] values = new double[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = count == 1 ? first : first + (last - first) * i / (count - 1);
+        }
+        return values;
+    }
+
+    public int getPointCount() {
+        return firstValues.length * secondValues.length;
+    }
+
+    /**
+     * Generates the state space of the model and solves every point.
+     */
+    public List<Point> run() throws PetriNetException {
+        return run(TangibleStateSpace.generate(model));
+    }
+
+    /**
+     * Solves every point of the sweep over an already generated state space
+     * with the same structure as the model.
+     *
+     * @return the points in row-major order, first transition outermost
+     */
+    public List<Point> run(TangibleStateSpace stateSpace) {
+        if (firstTransition < 0) {
+            throw new IllegalStateException("No transition to sweep");
+        }
+
+        final List<double[]> rateVectors = new ArrayList<>();
+        for (double first : firstValues) {
+            for (double second : secondValues) {
+                double[] rates = model.getRates();
+                rates[firstTransition] = first;
+                if (secondTransition >= 0) {
+                    rates[secondTransition] = second;
+                }
+                rateVectors.add(rates);
+            }
+        }
+
+        final Point[] points = new Point[rateVectors.size()];
+        int workers = Math.max(1, Math.min(threads, points.length));
+        int block = (points.length + workers - 1) / workers;
+
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int from = 0; from < points.length; from += block) {
+            final int begin = from;
+            final int end = Math.min(points.length, from + block);
+            tasks.add(() -> {
+                solveBlock(stateSpace, rateVectors, points, begin, end);
+                return null;
+            });
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        try {
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        List<Point> result = new ArrayList<>();
+        for (Point point : points) {
+            if (point != null) {
+                result.add(point);
+            }
+        }
+        return result;
+    }
+
+    private void solveBlock(TangibleStateSpace stateSpace, List<double[]> rateVectors, Point[] points, int begin, int end) {
+        SparseSteadyStateSolver solver = new SparseSteadyStateSolver(method);
+        solver.setTolerance(tolerance);
+        solver.setMaxIterations(maxIterations);
+        // The points already run in parallel
+        solver.setThreads(1);
+
+        GeneratorMatrix q = null;
+        double[] previous = null;
+        for (int i = begin; i < end && !Thread.currentThread().isInterrupted(); i++) {
+            double[] rates = rateVectors.get(i);
+            if (q == null) {
+                q = new GeneratorMatrix(stateSpace, rates);
+            } else {
+                q.setRates(rates);
+            }
+            SolverResult solution = previous == null ? solver.solve(q) : solver.solve(q, previous);
+            previous = solution.getDistribution();
+            points[i] = new Point(rates, solution, new GSPNMeasures(q, previous));
+        }
+    }
+
+    /**
+     * Writes the sweep as a csv table: the swept rates, the solver outcome,
+     * the throughput of every transition and the utilization (probability of
+     * being marked) and mean tokens of every place.
+     */
+    public void writeCsv(List<Point> points, Writer out) throws IOException {
+        String[] transitions = model.getTransitionLabels();
+        String[] places = model.getPlaceLabels();
+
+        StringBuilder line = new StringBuilder();
+        line.append("rate_").append(csv(transitions[firstTransition]));
+        if (secondTransition >= 0) {
+            line.append(",rate_").append(csv(transitions[secondTransition]));
+        }
+        line.append(",converged,iterations");
+        for (String transition : transitions) {
+            line.append(",throughput_").append(csv(transition));
+        }
+        for (String place : places) {
+            line.append(",utilization_").append(csv(place));
+        }
+        for (String place : places) {
+            line.append(",mean_tokens_").append(csv(place));
+        }
+        out.write(line.append('\n').toString());
+
+        for (Point point : points) {
+            line.setLength(0);
+            line.append(number(point.getRate(firstTransition)));
+            if (secondTransition >= 0) {
+                line.append(',').append(number(point.getRate(secondTransition)));
+            }
+            line.append(',').append(point.hasConverged()).append(',').append(point.getIterations());
+            for (double x : point.getThroughput()) {
+                line.append(',').append(number(x));
+            }
+            for (double u : point.getUtilization()) {
+                line.append(',').append(number(u));
+            }
+            for (double n : point.getMeanTokens()) {
+                line.append(',').append(number(n));
+            }
+            out.write(line.append('\n').toString());
+        }
+        out.flush();
+    }
+
+    private static String number(double value) {
+        return String.format(Locale.ROOT, "%.10g", value);
+    }
+
+    private static String csv(String label) {
+        return label.replace(',', '_').replace('"', '_');
+    }
+
+    /**
+     * Measures of one point of the sweep. The distribution itself is not
+     * kept, so large sweeps over large state spaces fit in memory.
+     */
+    public static class Point {
+
+        private final double[] rates;
+        private final boolean converged;
+        private final int iterations;
+        private final double residual;
+        private final double[] throughput;
+        private final double[] utilization;
+        private final double[] meanTokens;
+
+        Point(double[] rates, SolverResult solution, GSPNMeasures measures) {
+            this.rates = rates;
+            this.converged = solution.hasConverged();
+            this.iterations = solution.getIterations();
+            this.residual = solution.getResidual();
+            this.throughput = measures.getThroughput();
+            this.utilization = measures.getMarkedProbability();
+            this.meanTokens = measures.getMeanTokens();
+        }
+
+        public double getRate(int transition) {
+            return rates[transition];
+        }
+
+        public double[] getRates() {
+            return rates.clone();
+        }
+
+        public boolean hasConverged() {
+            return converged;
+        }
+
+        public int getIterations() {
+            return iterations;
+        }
+
+        public double getResidual() {
+            return residual;
+        }
+
+        public double[] getThroughput() {
+            return throughput;
+        }
+
+        public double[] getUtilization() {
+            return utilization;
+        }
+
+        public double[] getMeanTokens() {
+            return meanTokens;
+        }
+    }
+}
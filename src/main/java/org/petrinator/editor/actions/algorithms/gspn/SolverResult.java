@@ -0,0 +1,59 @@
+package org.petrinator.editor.actions.algorithms.gspn;
+
+/**
+ * Outcome of an iterative steady state solve: the distribution found and
+ * how the iteration went.
+ */
+public class SolverResult {
+
+    private final double[] distribution;
+    private final SparseSteadyStateSolver.Method method;
+    private final int iterations;
+    private final double residual;
+    private final boolean converged;
+    private final long elapsedMillis;
+
+    SolverResult(double[] distribution, SparseSteadyStateSolver.Method method, int iterations,
+                 double residual, boolean converged, long elapsedMillis) {
+        this.distribution = distribution;
+        this.method = method;
+        this.iterations = iterations;
+        this.residual = residual;
+        this.converged = converged;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    /**
+     * Returns the steady state probability of every tangible state.
+     */
+    public double[] getDistribution() {
+        return distribution;
+    }
+
+    /**
+     * Returns the method actually used. It can differ from the requested one
+     * when the chain has absorbing states (see SparseSteadyStateSolver).
+     */
+    public SparseSteadyStateSolver.Method getMethod() {
+        return method;
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * Returns the L1 norm of pi * Q at the last iteration.
+     */
+    public double getResidual() {
+        return residual;
+    }
+
+    public boolean hasConverged() {
+        return converged;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+}
@@ -0,0 +1,256 @@
+package org.petrinator.editor.actions.algorithms.gspn;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Iterative solver for the steady state distribution pi of a CTMC, that is
+ * pi * Q = 0 with the entries of pi adding up to one.
+ *
+ * Convergence is checked every checkInterval iterations on the relative
+ * residual ||pi * Q||_1 / max(-q(j,j)). Gauss-Seidel, SOR and Jacobi divide
+ * by the diagonal of Q, so they fall back to the power method when the chain
+ * has absorbing states.
+ *
+ * Jacobi is damped by default: undamped, it swaps the probability back and
+ * forth between the two halves of a periodic chain and never converges.
+ */
+public class SparseSteadyStateSolver {
+
+    public enum Method {
+        GAUSS_SEIDEL("Gauss-Seidel"),
+        SOR("SOR"),
+        POWER("Power iteration"),
+        JACOBI("Parallel Jacobi");
+
+        private final String name;
+
+        Method(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private Method method = Method.GAUSS_SEIDEL;
+    private double tolerance = 1e-10;
+    private int maxIterations = 10000;
+    private double relaxation = 1.0;
+    private double damping = 0.7;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int checkInterval = 10;
+
+    public SparseSteadyStateSolver() {
+    }
+
+    public SparseSteadyStateSolver(Method method) {
+        this.method = method;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public void setMethod(Method method) {
+        this.method = method;
+    }
+
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    public void setTolerance(double tolerance) {
+        this.tolerance = tolerance;
+    }
+
+    public int getMaxIterations() {
+        return maxIterations;
+    }
+
+    public void setMaxIterations(int maxIterations) {
+        this.maxIterations = maxIterations;
+    }
+
+    /**
+     * Relaxation factor omega used by SOR, 0 &lt; omega &lt; 2.
+     */
+    public double getRelaxation() {
+        return relaxation;
+    }
+
+    public void setRelaxation(double relaxation) {
+        if (!(relaxation > 0 && relaxation < 2)) {
+            throw new IllegalArgumentException("The relaxation must be between 0 and 2");
+        }
+        this.relaxation = relaxation;
+    }
+
+    /**
+     * Damping factor omega of the Jacobi iteration, 0 &lt; omega &lt;= 1,
+     * the weight of the new value against the one of the last iteration.
+     */
+    public double getDamping() {
+        return damping;
+    }
+
+    public void setDamping(double damping) {
+        if (!(damping > 0 && damping <= 1)) {
+            throw new IllegalArgumentException("The damping must be greater than 0 and at most 1");
+        }
+        this.damping = damping;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    public void setCheckInterval(int checkInterval) {
+        this.checkInterval = Math.max(1, checkInterval);
+    }
+
+    public SolverResult solve(GeneratorMatrix q) {
+        return solve(q, null);
+    }
+
+    /**
+     * Solves the steady state starting from the given distribution, or from
+     * the uniform distribution if initialGuess is null. A good initial guess,
+     * like the solution for nearby rates, saves many iterations.
+     */
+    public SolverResult solve(GeneratorMatrix q, double[] initialGuess) {
+        long start = System.currentTimeMillis();
+        int n = q.getStateCount();
+
+        double[] pi = new double[n];
+        if (initialGuess != null && initialGuess.length == n) {
+            System.arraycopy(initialGuess, 0, pi, 0, n);
+        } else {
+            Arrays.fill(pi, 1.0 / n);
+        }
+        normalize(pi);
+
+        Method used = method;
+        if (used != Method.POWER && q.hasAbsorbingStates()) {
+            used = Method.POWER;
+        }
+
+        double scale = Math.max(q.getMaxExitRate(), Double.MIN_NORMAL);
+        double residual = q.residual(pi) / scale;
+        int iteration = 0;
+
+        ExecutorService executor = used == Method.JACOBI && threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+        try {
+            double[] next = new double[n];
+            while (residual > tolerance && iteration < maxIterations && !Thread.currentThread().isInterrupted()) {
+                switch (used) {
+                    case GAUSS_SEIDEL:
+                        sorSweep(q, pi, 1.0);
+                        break;
+                    case SOR:
+                        sorSweep(q, pi, relaxation);
+                        break;
+                    case POWER:
+                        powerStep(q, pi, next, 1.02 * scale);
+                        double[] swap = pi;
+                        pi = next;
+                        next = swap;
+                        break;
+                    case JACOBI:
+                        jacobiStep(q, pi, next, executor);
+                        swap = pi;
+                        pi = next;
+                        next = swap;
+                        break;
+                }
+                normalize(pi);
+                iteration++;
+
+                if (iteration % checkInterval == 0 || iteration == maxIterations) {
+                    residual = q.residual(pi) / scale;
+                }
+            }
+        } finally {
+            if (executor != null) {
+                executor.shutdown();
+            }
+        }
+
+        return new SolverResult(pi, used, iteration, residual, residual <= tolerance,
+                System.currentTimeMillis() - start);
+    }
+
+    private void sorSweep(GeneratorMatrix q, double[] pi, double omega) {
+        CSRMatrix incoming = q.getIncoming();
+        for (int j = 0; j < pi.length; j++) {
+            double value = incoming.rowDot(j, pi) / q.getExitRate(j);
+            pi[j] = (1 - omega) * pi[j] + omega * value;
+        }
+    }
+
+    private void powerStep(GeneratorMatrix q, double[] pi, double[] next, double uniformization) {
+        q.multiply(pi, next);
+        for (int j = 0; j < pi.length; j++) {
+            next[j] = pi[j] + next[j] / uniformization;
+        }
+    }
+
+    private void jacobiStep(GeneratorMatrix q, double[] pi, double[] next, ExecutorService executor) {
+        if (executor == null) {
+            jacobiRows(q, pi, next, 0, pi.length);
+            return;
+        }
+
+        int chunk = (pi.length + threads - 1) / threads;
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int from = 0; from < pi.length; from += chunk) {
+            final int begin = from;
+            final int end = Math.min(pi.length, from + chunk);
+            tasks.add(() -> {
+                jacobiRows(q, pi, next, begin, end);
+                return null;
+            });
+        }
+        try {
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private void jacobiRows(GeneratorMatrix q, double[] pi, double[] next, int from, int to) {
+        CSRMatrix incoming = q.getIncoming();
+        for (int j = from; j < to; j++) {
+            double value = incoming.rowDot(j, pi) / q.getExitRate(j);
+            next[j] = (1 - damping) * pi[j] + damping * value;
+        }
+    }
+
+    private static void normalize(double[] pi) {
+        double sum = 0;
+        for (double p : pi) {
+            sum += p;
+        }
+        if (sum > 0) {
+            for (int j = 0; j < pi.length; j++) {
+                pi[j] /= sum;
+            }
+        }
+    }
+}
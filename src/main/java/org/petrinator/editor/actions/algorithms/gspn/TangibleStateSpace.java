@@ -0,0 +1,523 @@
+package org.petrinator.editor.actions.algorithms.gspn;
+
+import org.petrinator.petrinet.PetriNetException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Tangible reachability graph of a GSPN. Vanishing markings (those enabling
+ * at least one immediate transition) are eliminated on the fly, so every
+ * timed firing from a tangible state leads to a probability distribution
+ * over tangible states, called a resolution.
+ *
+ * The graph keeps the timed transition of every firing instead of a
+ * numeric rate, so the same state space can be turned into generator
+ * matrices for different timed rates (see GeneratorMatrix).
+ *
+ * Immediate transitions may fire in cycles, as long as the cycle can be
+ * left; a set of vanishing markings that cannot be left is a timeless
+ * trap.
+ */
+public class TangibleStateSpace {
+
+    public static final int DEFAULT_MAX_STATES = 1000000;
+
+    private final GSPNModel model;
+    private final int maxStates;
+
+    private final ArrayList<int[]> states = new ArrayList<>();
+    private final HashMap<MarkingKey, Integer> stateIndex = new HashMap<>();
+    private final HashMap<MarkingKey, Integer> vanishingResolutions = new HashMap<>();
+    private final HashMap<Integer, Integer> tangibleResolutions = new HashMap<>();
+    private final ArrayList<Resolution> resolutions = new ArrayList<>();
+
+    private int firingCount = 0;
+    private int[] firingState = new int[16];
+    private int[] firingTransition = new int[16];
+    private int[] firingResolution = new int[16];
+    private int[] stateFiringStart;
+
+    private int vanishingCount = 0;
+    private int initialResolution;
+
+    private TangibleStateSpace(GSPNModel model, int maxStates) {
+        this.model = model;
+        this.maxStates = maxStates;
+    }
+
+    /**
+     * Generates the tangible state space of the model.
+     *
+     * @throws PetriNetException if a timeless trap, a set of vanishing
+     * markings that cannot be left, is found or the number of
+     * tangible states exceeds maxStates.
+     */
+    public static TangibleStateSpace generate(GSPNModel model, int maxStates) throws PetriNetException {
+        TangibleStateSpace space = new TangibleStateSpace(model, maxStates);
+        space.explore();
+        return space;
+    }
+
+    public static TangibleStateSpace generate(GSPNModel model) throws PetriNetException {
+        return generate(model, DEFAULT_MAX_STATES);
+    }
+
+    private void explore() throws PetriNetException {
+        initialResolution = resolve(model.getInitialMarking());
+
+        // States are appended while exploring, so the list doubles as the BFS queue
+        ArrayList<Integer> firingStart = new ArrayList<>();
+        for (int s = 0; s < states.size(); s++) {
+            firingStart.add(firingCount);
+            int[] marking = states.get(s);
+            for (int t = 0; t < model.getTransitionCount(); t++) {
+                if (model.isTimed(t) && model.isEnabled(t, marking)) {
+                    int resolution = resolve(model.fire(t, marking));
+                    addFiring(s, t, resolution);
+                }
+            }
+        }
+        firingStart.add(firingCount);
+
+        stateFiringStart = new int[firingStart.size()];
+        for (int i = 0; i < stateFiringStart.length; i++) {
+            stateFiringStart[i] = firingStart.get(i);
+        }
+        firingState = Arrays.copyOf(firingState, firingCount);
+        firingTransition = Arrays.copyOf(firingTransition, firingCount);
+        firingResolution = Arrays.copyOf(firingResolution, firingCount);
+        vanishingResolutions.clear();
+        tangibleResolutions.clear();
+    }
+
+    private void addFiring(int state, int transition, int resolution) {
+        if (firingCount == firingState.length) {
+            int size = firingCount * 2;
+            firingState = Arrays.copyOf(firingState, size);
+            firingTransition = Arrays.copyOf(firingTransition, size);
+            firingResolution = Arrays.copyOf(firingResolution, size);
+        }
+        firingState[firingCount] = state;
+        firingTransition[firingCount] = transition;
+        firingResolution[firingCount] = resolution;
+        firingCount++;
+    }
+
+    /**
+     * Returns the index of the resolution reached from a marking, adding new
+     * tangible states to the exploration list when needed.
+     *
+     * The vanishing markings reached from it are visited without recursion,
+     * so long chains of immediate firings cannot overflow the stack, and
+     * resolved one strongly connected component at a time (Tarjan), the
+     * components found first being the ones the others lead to. A component
+     * with a cycle is solved as a small absorption system; only one that
+     * cannot be left is a timeless trap.
+     */
+    private int resolve(int[] marking) throws PetriNetException {
+        MarkingKey key = new MarkingKey(marking);
+        int known = known(key, marking);
+        if (known >= 0) {
+            return known;
+        }
+
+        HashMap<MarkingKey, Vanishing> visited = new HashMap<>();
+        ArrayList<Vanishing> path = new ArrayList<>();
+        ArrayList<Vanishing> stack = new ArrayList<>();
+        Vanishing root = new Vanishing(key, marking, 0);
+        visited.put(key, root);
+        path.add(root);
+        stack.add(root);
+
+        while (!path.isEmpty()) {
+            Vanishing v = path.get(path.size() - 1);
+            if (v.edge < v.transitions.length) {
+                int e = v.edge++;
+                int[] next = model.fire(v.transitions[e], v.marking);
+                MarkingKey nextKey = new MarkingKey(next);
+                Vanishing w = visited.get(nextKey);
+                if (w == null) {
+                    int resolution = known(nextKey, next);
+                    if (resolution >= 0) {
+                        v.resolutions[e] = resolution;
+                        continue;
+                    }
+                    w = new Vanishing(nextKey, next, visited.size());
+                    visited.put(nextKey, w);
+                    path.add(w);
+                    stack.add(w);
+                } else if (w.onStack) {
+                    v.lowLink = Math.min(v.lowLink, w.index);
+                }
+                v.successors[e] = w;
+                continue;
+            }
+
+            path.remove(path.size() - 1);
+            if (!path.isEmpty()) {
+                Vanishing parent = path.get(path.size() - 1);
+                parent.lowLink = Math.min(parent.lowLink, v.lowLink);
+            }
+            if (v.lowLink == v.index) {
+                int first = stack.lastIndexOf(v);
+                ArrayList<Vanishing> component = new ArrayList<>(stack.subList(first, stack.size()));
+                stack.subList(first, stack.size()).clear();
+                resolveComponent(component);
+            }
+        }
+        return root.resolution;
+    }
+
+    /**
+     * Returns the resolution of a tangible or already resolved marking, or
+     * -1 for a vanishing marking not resolved yet. Unknown tangible markings
+     * become new states.
+     */
+    private int known(MarkingKey key, int[] marking) throws PetriNetException {
+        Integer tangible = stateIndex.get(key);
+        if (tangible != null) {
+            return tangibleResolution(tangible);
+        }
+
+        Integer known = vanishingResolutions.get(key);
+        if (known != null) {
+            return known;
+        }
+
+        for (int t = 0; t < model.getTransitionCount(); t++) {
+            if (!model.isTimed(t) && model.isEnabled(t, marking)) {
+                return -1;
+            }
+        }
+
+        if (states.size() >= maxStates) {
+            throw new PetriNetException("The state space has more than " + maxStates + " tangible states.");
+        }
+        int index = states.size();
+        states.add(marking);
+        stateIndex.put(key, index);
+        return tangibleResolution(index);
+    }
+
+    /**
+     * Resolves a strongly connected component of vanishing markings whose
+     * firings leave it only to resolved markings. With P the probabilities
+     * of the firings inside the component, entry (i, j) of (I - P)^-1 is the
+     * expected number of visits to j starting from i, so the resolution of i
+     * adds up what every visit contributes: the firing itself and, when it
+     * leaves the component, the resolution it leads to.
+     */
+    private void resolveComponent(ArrayList<Vanishing> component) throws PetriNetException {
+        int n = component.size();
+        for (int i = 0; i < n; i++) {
+            component.get(i).component = component;
+            component.get(i).position = i;
+            component.get(i).onStack = false;
+        }
+
+        double[][] visits = new double[n][n];
+        boolean exit = false;
+        for (int i = 0; i < n; i++) {
+            Vanishing v = component.get(i);
+            visits[i][i] += 1;
+            for (int e = 0; e < v.transitions.length; e++) {
+                if (inside(v.successors[e], component)) {
+                    visits[i][v.successors[e].position] -= v.probabilities[e];
+                } else {
+                    exit = true;
+                }
+            }
+        }
+        if (!exit) {
+            throw new PetriNetException("Timeless trap found at marking " + Arrays.toString(component.get(0).marking) + ".");
+        }
+        if (n > 1 || visits[0][0] != 1) {
+            visits = invert(visits);
+        }
+
+        for (int i = 0; i < n; i++) {
+            Map<Integer, Double> targets = new LinkedHashMap<>();
+            Map<Integer, Double> immediateCounts = new LinkedHashMap<>();
+            for (int j = 0; j < n; j++) {
+                double expected = visits[i][j];
+                if (expected == 0) {
+                    continue;
+                }
+                Vanishing v = component.get(j);
+                for (int e = 0; e < v.transitions.length; e++) {
+                    double probability = expected * v.probabilities[e];
+                    immediateCounts.merge(v.transitions[e], probability, Double::sum);
+                    if (inside(v.successors[e], component)) {
+                        continue;
+                    }
+                    Resolution next = resolutions.get(v.successors[e] != null
+                            ? v.successors[e].resolution : v.resolutions[e]);
+                    for (int k = 0; k < next.targets.length; k++) {
+                        targets.merge(next.targets[k], probability * next.probabilities[k], Double::sum);
+                    }
+                    for (int k = 0; k < next.immediateTransitions.length; k++) {
+                        immediateCounts.merge(next.immediateTransitions[k], probability * next.immediateCounts[k],
+                                Double::sum);
+                    }
+                }
+            }
+            Vanishing v = component.get(i);
+            vanishingCount++;
+            v.resolution = addResolution(new Resolution(targets, immediateCounts));
+            vanishingResolutions.put(v.key, v.resolution);
+        }
+    }
+
+    private static boolean inside(Vanishing v, ArrayList<Vanishing> component) {
+        return v != null && v.component == component;
+    }
+
+    /**
+     * Inverts a matrix by Gauss-Jordan elimination with partial pivoting.
+     */
+    private static double[][] invert(double[][] a) {
+        int n = a.length;
+        double[][] inverse = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            inverse[i][i] = 1;
+        }
+        for (int c = 0; c < n; c++) {
+            int pivot = c;
+            for (int r = c + 1; r < n; r++) {
+                if (Math.abs(a[r][c]) > Math.abs(a[pivot][c])) {
+                    pivot = r;
+                }
+            }
+            double[] swap = a[c];
+            a[c] = a[pivot];
+            a[pivot] = swap;
+            swap = inverse[c];
+            inverse[c] = inverse[pivot];
+            inverse[pivot] = swap;
+
+            double scale = 1 / a[c][c];
+            for (int k = 0; k < n; k++) {
+                a[c][k] *= scale;
+                inverse[c][k] *= scale;
+            }
+            for (int r = 0; r < n; r++) {
+                double factor = a[r][c];
+                if (r == c || factor == 0) {
+                    continue;
+                }
+                for (int k = 0; k < n; k++) {
+                    a[r][k] -= factor * a[c][k];
+                    inverse[r][k] -= factor * inverse[c][k];
+                }
+            }
+        }
+        return inverse;
+    }
+
+    private int tangibleResolution(int state) {
+        Integer index = tangibleResolutions.get(state);
+        if (index == null) {
+            Map<Integer, Double> target = new LinkedHashMap<>();
+            target.put(state, 1.0);
+            index = addResolution(new Resolution(target, new LinkedHashMap<>()));
+            tangibleResolutions.put(state, index);
+        }
+        return index;
+    }
+
+    private int addResolution(Resolution resolution) {
+        resolutions.add(resolution);
+        return resolutions.size() - 1;
+    }
+
+    public GSPNModel getModel() {
+        return model;
+    }
+
+    public int getStateCount() {
+        return states.size();
+    }
+
+    /**
+     * Returns the number of vanishing markings eliminated during generation.
+     */
+    public int getVanishingCount() {
+        return vanishingCount;
+    }
+
+    public int[] getMarking(int state) {
+        return states.get(state);
+    }
+
+    /**
+     * Returns the number of timed firings, i.e. pairs of tangible state and
+     * enabled timed transition.
+     */
+    public int getFiringCount() {
+        return firingCount;
+    }
+
+    public int getFiringState(int firing) {
+        return firingState[firing];
+    }
+
+    public int getFiringTransition(int firing) {
+        return firingTransition[firing];
+    }
+
+    public Resolution getFiringResolution(int firing) {
+        return resolutions.get(firingResolution[firing]);
+    }
+
+    /**
+     * Firings of a state are stored contiguously from getFirstFiring(state)
+     * up to getFirstFiring(state + 1).
+     */
+    public int getFirstFiring(int state) {
+        return stateFiringStart[state];
+    }
+
+    /**
+     * Returns true if no timed transition is enabled in the state.
+     */
+    public boolean isAbsorbing(int state) {
+        return stateFiringStart[state] == stateFiringStart[state + 1];
+    }
+
+    /**
+     * Returns the probability distribution over tangible states reached from
+     * the initial marking.
+     */
+    public Resolution getInitialResolution() {
+        return resolutions.get(initialResolution);
+    }
+
+    public double[] getInitialDistribution() {
+        double[] distribution = new double[states.size()];
+        Resolution initial = getInitialResolution();
+        for (int i = 0; i < initial.targets.length; i++) {
+            distribution[initial.targets[i]] += initial.probabilities[i];
+        }
+        return distribution;
+    }
+
+    /**
+     * Distribution over tangible states reached after a firing, together with
+     * the expected number of immediate firings on the way.
+     */
+    public static class Resolution {
+
+        final int[] targets;
+        final double[] probabilities;
+        final int[] immediateTransitions;
+        final double[] immediateCounts;
+
+        Resolution(Map<Integer, Double> targets, Map<Integer, Double> immediateCounts) {
+            this.targets = new int[targets.size()];
+            this.probabilities = new double[targets.size()];
+            int i = 0;
+            for (Map.Entry<Integer, Double> entry : targets.entrySet()) {
+                this.targets[i] = entry.getKey();
+                this.probabilities[i] = entry.getValue();
+                i++;
+            }
+            this.immediateTransitions = new int[immediateCounts.size()];
+            this.immediateCounts = new double[immediateCounts.size()];
+            i = 0;
+            for (Map.Entry<Integer, Double> entry : immediateCounts.entrySet()) {
+                this.immediateTransitions[i] = entry.getKey();
+                this.immediateCounts[i] = entry.getValue();
+                i++;
+            }
+        }
+
+        public int size() {
+            return targets.length;
+        }
+
+        public int getTarget(int i) {
+            return targets[i];
+        }
+
+        public double getProbability(int i) {
+            return probabilities[i];
+        }
+    }
+
+    /**
+     * Vanishing marking being resolved, with its immediate firings of
+     * nonzero probability and the bookkeeping of Tarjan's algorithm.
+     */
+    private final class Vanishing {
+
+        final MarkingKey key;
+        final int[] marking;
+        final int[] transitions;
+        final double[] probabilities;
+        // Successor not resolved when it was first reached, else its resolution in resolutions
+        final Vanishing[] successors;
+        final int[] resolutions;
+        final int index;
+        int lowLink;
+        int edge;
+        boolean onStack = true;
+        ArrayList<Vanishing> component;
+        int position;
+        int resolution = -1;
+
+        Vanishing(MarkingKey key, int[] marking, int index) {
+            this.key = key;
+            this.marking = marking;
+            this.index = index;
+            this.lowLink = index;
+
+            double totalWeight = 0;
+            ArrayList<Integer> enabledImmediate = new ArrayList<>();
+            for (int t = 0; t < model.getTransitionCount(); t++) {
+                if (!model.isTimed(t) && model.isEnabled(t, marking)) {
+                    enabledImmediate.add(t);
+                    totalWeight += model.getRate(t);
+                }
+            }
+            int count = 0;
+            int[] transitions = new int[enabledImmediate.size()];
+            double[] probabilities = new double[enabledImmediate.size()];
+            for (int t : enabledImmediate) {
+                double probability = totalWeight > 0 ? model.getRate(t) / totalWeight : 1.0 / enabledImmediate.size();
+                if (probability != 0) {
+                    transitions[count] = t;
+                    probabilities[count++] = probability;
+                }
+            }
+            this.transitions = Arrays.copyOf(transitions, count);
+            this.probabilities = Arrays.copyOf(probabilities, count);
+            this.successors = new Vanishing[count];
+            this.resolutions = new int[count];
+        }
+    }
+
+    private static final class MarkingKey {
+
+        private final int[] marking;
+        private final int hash;
+
+        MarkingKey(int[] marking) {
+            this.marking = marking;
+            this.hash = Arrays.hashCode(marking);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof MarkingKey && Arrays.equals(marking, ((MarkingKey) obj).marking);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package org.petrinator.editor.actions.algorithms.gspn;
+
+/**
+ * Transient distributions of a CTMC at a batch of time points.
+ */
+public class TransientResult {
+
+    private final double[] times;
+    private final double[][] distributions;
+    private final int steps;
+    private final long elapsedMillis;
+
+    TransientResult(double[] times, double[][] distributions, int steps, long elapsedMillis) {
+        this.times = times;
+        this.distributions = distributions;
+        this.steps = steps;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public int size() {
+        return times.length;
+    }
+
+    public double getTime(int i) {
+        return times[i];
+    }
+
+    /**
+     * Returns the probability of every tangible state at the i-th time point.
+     */
+    public double[] getDistribution(int i) {
+        return distributions[i];
+    }
+
+    /**
+     * Returns the number of matrix-vector products performed for the whole
+     * batch.
+     */
+    public int getSteps() {
+        return steps;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+}
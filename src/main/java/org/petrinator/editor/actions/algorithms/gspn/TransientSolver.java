@@ -0,0 +1,178 @@
+package org.petrinator.editor.actions.algorithms.gspn;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Transient solver for the CTMC of a GSPN based on uniformization:
+ *
+ *   pi(t) = sum_k Poisson(Lambda t, k) * pi(0) P^k,   P = I + Q / Lambda
+ *
+ * The Poisson weights come from Fox-Glynn. All the requested time points are
+ * solved in a single pass: the vectors pi(0) P^k are computed once, up to the
+ * largest right truncation point, and each one is added to every time point
+ * whose window contains k. The matrix-vector product is split among a pool
+ * of threads.
+ */
+public class TransientSolver {
+
+    private double epsilon = 1e-8;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private double steadyStateTolerance = 1e-12;
+    private int maxSteps = 10000000;
+
+    public double getEpsilon() {
+        return epsilon;
+    }
+
+    /**
+     * Sets the maximum probability mass neglected by the Poisson truncation.
+     */
+    public void setEpsilon(double epsilon) {
+        this.epsilon = epsilon;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public double getSteadyStateTolerance() {
+        return steadyStateTolerance;
+    }
+
+    /**
+     * Sets the L1 difference between two consecutive vectors below which the
+     * chain is considered stationary and the iteration stops early. Zero
+     * disables the detection.
+     */
+    public void setSteadyStateTolerance(double steadyStateTolerance) {
+        this.steadyStateTolerance = steadyStateTolerance;
+    }
+
+    public int getMaxSteps() {
+        return maxSteps;
+    }
+
+    public void setMaxSteps(int maxSteps) {
+        this.maxSteps = maxSteps;
+    }
+
+    /**
+     * Solves the chain from the initial distribution of its state space.
+     */
+    public TransientResult solve(GeneratorMatrix q, double[] times) {
+        return solve(q, q.getStateSpace().getInitialDistribution(), times);
+    }
+
+    /**
+     * Computes the state distribution at every time point.
+     *
+     * @param q the generator of the chain
+     * @param initial the distribution at time zero
+     * @param times non-negative time points, in any order
+     */
+    public TransientResult solve(GeneratorMatrix q, double[] initial, double[] times) {
+        long start = System.currentTimeMillis();
+        int n = q.getStateCount();
+        for (double time : times) {
+            if (time < 0 || Double.isNaN(time) || Double.isInfinite(time)) {
+                throw new IllegalArgumentException("Invalid time point: " + time);
+            }
+        }
+
+        double[][] results = new double[times.length][n];
+        double lambda = 1.02 * q.getMaxExitRate();
+        if (lambda == 0) {
+            // No timed transition can fire: the chain never leaves its initial distribution
+            for (double[] result : results) {
+                System.arraycopy(initial, 0, result, 0, n);
+            }
+            return new TransientResult(times.clone(), results, 0, System.currentTimeMillis() - start);
+        }
+
+        FoxGlynn[] poisson = new FoxGlynn[times.length];
+        double[] accumulated = new double[times.length];
+        int lastStep = 0;
+        for (int j = 0; j < times.length; j++) {
+            poisson[j] = new FoxGlynn(lambda * times[j], epsilon);
+            lastStep = Math.max(lastStep, poisson[j].getRight());
+        }
+        if (lastStep > maxSteps) {
+            throw new IllegalArgumentException("Uniformization needs " + lastStep
+                    + " steps, more than the limit of " + maxSteps);
+        }
+
+        double[] v = initial.clone();
+        double[] next = new double[n];
+        int chunks = Math.max(1, Math.min(threads, n / 1000));
+        ExecutorService executor = chunks > 1 ? Executors.newFixedThreadPool(chunks) : null;
+
+        int k = 0;
+        try {
+            while (true) {
+                for (int j = 0; j < times.length; j++) {
+                    double weight = poisson[j].getWeight(k);
+                    if (weight > 0) {
+                        addScaled(results[j], v, weight);
+                        accumulated[j] += weight;
+                    }
+                }
+                if (k == lastStep || Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+
+                // next = v P = v + (v Q) / lambda
+                q.multiply(v, next, executor, chunks);
+                double change = 0;
+                for (int i = 0; i < n; i++) {
+                    double delta = next[i] / lambda;
+                    next[i] = v[i] + delta;
+                    change += Math.abs(delta);
+                }
+                double[] swap = v;
+                v = next;
+                next = swap;
+                k++;
+
+                if (change < steadyStateTolerance) {
+                    // Every later vector is the same, so it takes the remaining Poisson mass
+                    for (int j = 0; j < times.length; j++) {
+                        if (accumulated[j] < 1) {
+                            addScaled(results[j], v, 1 - accumulated[j]);
+                        }
+                    }
+                    break;
+                }
+            }
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+
+        for (double[] result : results) {
+            normalize(result);
+        }
+        return new TransientResult(times.clone(), results, k, System.currentTimeMillis() - start);
+    }
+
+    private static void addScaled(double[] target, double[] v, double factor) {
+        for (int i = 0; i < target.length; i++) {
+            target[i] += factor * v[i];
+        }
+    }
+
+    private static void normalize(double[] distribution) {
+        double sum = Arrays.stream(distribution).sum();
+        if (sum > 0) {
+            for (int i = 0; i < distribution.length; i++) {
+                distribution[i] /= sum;
+            }
+        }
+    }
+}
@@ -16,6 +16,8 @@
  */
 package org.petrinator.petrinet;
 
+import org.petrinator.simulation.PlaceHistory;
+
 import java.util.ArrayList;
 import java.util.List;
 
@@ -27,7 +29,8 @@ import java.util.List;
 public class Place extends PlaceNode implements Cloneable {
 
     private boolean isStatic = false;
-    List<Double> values = new ArrayList<Double>();
+    private transient PlaceHistory history;
+    private List<Double> addedValues = new ArrayList<Double>();
 
     @Override
     public boolean isStatic() {
@@ -39,28 +42,74 @@ public class Place extends PlaceNode implements Cloneable {
         this.isStatic = isStatic;
     }
 
+    /**
+     * Returns the history of this place in the last simulation, or null.
+     */
+    public PlaceHistory getHistory() {
+        return history;
+    }
+
+    public void setHistory(PlaceHistory history) {
+        this.history = history;
+        addedValues.clear();
+    }
+
+    /**
+     * @deprecated the simulation records the history of the place, see
+     * getHistory()
+     */
+    @Deprecated
     public void addValue(int value)
     {
-        values.add(new Double(value));
+        addedValues.add(new Double(value));
     }
 
+    /**
+     * @deprecated use getHistory()
+     */
+    @Deprecated
     public void printValues()
     {
         System.out.print("[ ");
-        for(int i = 0; i<values.size(); i++)
+        for(Double value : getValues())
         {
-            System.out.print(values.get(i) + " ");
+            System.out.print(value + " ");
         }
         System.out.println("]");
     }
 
+    /**
+     * @deprecated use setHistory(null)
+     */
+    @Deprecated
     public void clearValues()
     {
-        values.clear();
+        setHistory(null);
     }
 
+    /**
+     * Returns the tokens of the place at the start of the last simulation
+     * and after every change, followed by the values added with addValue().
+     * The list is a copy built from the history, and the times of the
+     * changes are lost.
+     *
+     * @deprecated use getHistory(), which has the simulated time of every
+     * change
+     */
+    @Deprecated
     public List<Double> getValues()
     {
+        List<Double> values = new ArrayList<Double>();
+        if(history != null)
+        {
+            PlaceHistory.Reader reader = history.reader();
+            values.add(new Double(reader.getTokens()));
+            while(reader.next())
+            {
+                values.add(new Double(reader.getTokens()));
+            }
+        }
+        values.addAll(addedValues);
         return values;
     }
 }
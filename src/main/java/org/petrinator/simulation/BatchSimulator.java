@@ -0,0 +1,529 @@
+package org.petrinator.simulation;
+
+import org.petrinator.simulation.sampling.Ziggurat;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Simulates many independent runs of a net at once, for Monte Carlo
+ * studies that need thousands of replications.
+ *
+ * The markings of the K runs (lanes) are kept in a single place major
+ * array, the tokens of place p in lane k at p * K + k, and every step
+ * advances all the lanes by one firing. Enabling is tested one arc at a
+ * time for all the lanes, and each transition chosen in some lane is
+ * applied to all of them through its columns of the pre and post incidence
+ * matrices (the input and output arcs of the CompiledNet), multiplied by a
+ * 0/1 selector per lane. The inner loops run over contiguous lanes with no
+ * branches and no indirection, so the JIT can unroll and vectorize them,
+ * instead of the scattered per place updates of one engine per run.
+ *
+ * Timed transitions must be exponential, which makes the runs continuous
+ * time Markov chains: in a lane where no immediate transition is enabled
+ * the next transition is chosen with probability proportional to its rate
+ * and the time advances by an exponential delay with the total rate, as a
+ * SimulationEngine would do with its race of clocks. Immediate transitions
+ * fire first, in zero time; enabled automatic ones before the others, and
+ * among the same kind one is chosen uniformly at random. So the results
+ * follow the same distribution as the engine with the random conflict
+ * policy, but are not the same run by run. Guards keep the value they
+ * start with in the engine, false.
+ *
+ * Token means are weighted by simulated time, or by firings for nets
+ * without timed transitions, as in RunStatistics.
+ */
+public class BatchSimulator {
+
+    private static final int TIMED = 0;
+    private static final int IMMEDIATE = 1;
+    private static final int AUTOMATIC = 2;
+
+    private final CompiledNet net;
+    private final int lanes;
+    private final int places;
+    private final int transitions;
+    private final RandomStream[] streams;
+    private final boolean timedNet;
+
+    // Per transition
+    private final int[] level;
+    private final double[] weight;
+    private final boolean[] allowed;
+
+    // Place major, [p * lanes + k]
+    private final int[] marking;
+    private final double[] area;
+    // Transition major, [t * lanes + k]
+    private final int[] enabled;
+    private final long[] firings;
+
+    // Per lane
+    private final double[] time;
+    private final long[] laneFirings;
+    private final int[] active;
+    private final int[] laneLevel;
+    private final int[] automaticCount;
+    private final int[] immediateCount;
+    private final double[] total;
+    private final double[] target;
+    private final double[] cumulative;
+    private final int[] chosen;
+    private final int[] lastLive;
+    private final double[] delta;
+    private final int[] selected;
+
+    private int activeLanes;
+    private long maxFirings;
+    private double maxTime;
+
+    /**
+     * Creates the lanes, all in the initial marking, each one drawing from
+     * a stream split from the given one.
+     *
+     * @throws IllegalArgumentException if some timed transition is not exponential
+     */
+    public BatchSimulator(CompiledNet net, int lanes, RandomStream random) {
+        this(net, split(random, lanes));
+    }
+
+    /**
+     * Creates one lane per stream, all in the initial marking.
+     *
+     * @throws IllegalArgumentException if some timed transition is not exponential
+     */
+    public BatchSimulator(CompiledNet net, RandomStream[] streams) {
+        if (streams.length < 1) {
+            throw new IllegalArgumentException("At least one lane is needed");
+        }
+        for (int t = 0; t < net.getTransitionCount(); t++) {
+            if (net.isTimed(t) && net.getDistribution(t) != CompiledNet.EXPONENTIAL) {
+                throw new IllegalArgumentException("Only exponential timed transitions can be batched: "
+                        + net.getTransitionLabel(t));
+            }
+        }
+        this.net = net;
+        this.lanes = streams.length;
+        this.places = net.getPlaceCount();
+        this.transitions = net.getTransitionCount();
+        this.streams = streams.clone();
+        this.timedNet = net.anyTimed();
+
+        level = new int[transitions];
+        weight = new double[transitions];
+        allowed = new boolean[transitions];
+        GuardTable guards = net.getGuards();
+        BitSet values = net.getInitialGuards();
+        for (int t = 0; t < transitions; t++) {
+            if (net.isTimed(t)) {
+                level[t] = TIMED;
+                weight[t] = net.getRate(t);
+            } else {
+                level[t] = net.isAutomatic(t) ? AUTOMATIC : IMMEDIATE;
+                weight[t] = 1;
+            }
+            allowed[t] = guards.allows(t, values) && weight[t] > 0;
+        }
+
+        marking = new int[places * lanes];
+        area = new double[places * lanes];
+        enabled = new int[transitions * lanes];
+        firings = new long[transitions * lanes];
+        time = new double[lanes];
+        laneFirings = new long[lanes];
+        active = new int[lanes];
+        laneLevel = new int[lanes];
+        automaticCount = new int[lanes];
+        immediateCount = new int[lanes];
+        total = new double[lanes];
+        target = new double[lanes];
+        cumulative = new double[lanes];
+        chosen = new int[lanes];
+        lastLive = new int[lanes];
+        delta = new double[lanes];
+        selected = new int[lanes];
+        reset();
+    }
+
+    private static RandomStream[] split(RandomStream random, int lanes) {
+        if (lanes < 1) {
+            throw new IllegalArgumentException("At least one lane is needed");
+        }
+        RandomStream[] streams = new RandomStream[lanes];
+        for (int k = 0; k < lanes; k++) {
+            streams[k] = random.split();
+        }
+        return streams;
+    }
+
+    /**
+     * Returns true if the net can be batched, i.e. all its timed
+     * transitions are exponential.
+     */
+    public static boolean supports(CompiledNet net) {
+        for (int t = 0; t < net.getTransitionCount(); t++) {
+            if (net.isTimed(t) && net.getDistribution(t) != CompiledNet.EXPONENTIAL) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Puts every lane back in the initial marking at time 0.
+     */
+    public void reset() {
+        int[] initial = net.getInitialMarking();
+        for (int p = 0; p < places; p++) {
+            Arrays.fill(marking, p * lanes, (p + 1) * lanes, initial[p]);
+        }
+        Arrays.fill(area, 0);
+        Arrays.fill(firings, 0);
+        Arrays.fill(time, 0);
+        Arrays.fill(laneFirings, 0);
+    }
+
+    /**
+     * Runs every lane until it has fired the given number of transitions,
+     * its simulated time passes maxTime or it is blocked.
+     *
+     * @return the number of transitions fired, in all the lanes
+     */
+    public long run(long maxFirings, double maxTime) {
+        this.maxFirings = maxFirings;
+        this.maxTime = maxTime;
+        activeLanes = 0;
+        for (int k = 0; k < lanes; k++) {
+            active[k] = laneFirings[k] < maxFirings && time[k] < maxTime ? 1 : 0;
+            activeLanes += active[k];
+        }
+        long before = getFirings();
+        long steps = 0;
+        while (activeLanes > 0) {
+            step();
+            // Checked now and then so that a run can be cancelled from another thread
+            if ((++steps & 0x3ff) == 0 && Thread.currentThread().isInterrupted()) {
+                break;
+            }
+        }
+        return getFirings() - before;
+    }
+
+    /**
+     * Advances every active lane by one firing.
+     */
+    private void step() {
+        computeEnabled();
+        computeLevels();
+        draw();
+        select();
+        accumulate();
+        for (int t = 0; t < transitions; t++) {
+            apply(t);
+        }
+    }
+
+    /**
+     * Tests every transition in all the lanes, arc by arc, into the 0/1
+     * rows of enabled.
+     */
+    private void computeEnabled() {
+        final int[] m = marking;
+        final int[] e = enabled;
+        final int n = lanes;
+        for (int t = 0; t < transitions; t++) {
+            int row = t * n;
+            Arrays.fill(e, row, row + n, allowed[t] ? 1 : 0);
+            if (!allowed[t]) {
+                continue;
+            }
+            for (int a = net.inputStart[t]; a < net.inputStart[t + 1]; a++) {
+                int column = net.inputPlace[a] * n;
+                int w = net.inputWeight[a];
+                for (int k = 0; k < n; k++) {
+                    // 1 if m >= w, 0 if not
+                    e[row + k] &= 1 + ((m[column + k] - w) >> 31);
+                }
+            }
+            for (int a = net.readerStart[t]; a < net.readerStart[t + 1]; a++) {
+                int column = net.readerPlace[a] * n;
+                int w = net.readerWeight[a];
+                for (int k = 0; k < n; k++) {
+                    e[row + k] &= 1 + ((m[column + k] - w) >> 31);
+                }
+            }
+            for (int a = net.inhibitorStart[t]; a < net.inhibitorStart[t + 1]; a++) {
+                int column = net.inhibitorPlace[a] * n;
+                int w = net.inhibitorWeight[a];
+                for (int k = 0; k < n; k++) {
+                    // 1 if m < w, 0 if not
+                    e[row + k] &= -((m[column + k] - w) >> 31);
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the kind of transition that fires next in every lane and the
+     * total weight of the enabled ones of that kind.
+     */
+    private void computeLevels() {
+        final int[] e = enabled;
+        final int n = lanes;
+        Arrays.fill(automaticCount, 0);
+        Arrays.fill(immediateCount, 0);
+        for (int t = 0; t < transitions; t++) {
+            int[] count = level[t] == AUTOMATIC ? automaticCount : level[t] == IMMEDIATE ? immediateCount : null;
+            if (count == null || !allowed[t]) {
+                continue;
+            }
+            int row = t * n;
+            for (int k = 0; k < n; k++) {
+                count[k] += e[row + k];
+            }
+        }
+        for (int k = 0; k < n; k++) {
+            laneLevel[k] = automaticCount[k] > 0 ? AUTOMATIC : immediateCount[k] > 0 ? IMMEDIATE : TIMED;
+        }
+        Arrays.fill(total, 0);
+        for (int t = 0; t < transitions; t++) {
+            if (!allowed[t]) {
+                continue;
+            }
+            int row = t * n;
+            int l = level[t];
+            double w = weight[t];
+            for (int k = 0; k < n; k++) {
+                total[k] += (laneLevel[k] == l ? e[row + k] : 0) * w;
+            }
+        }
+    }
+
+    /**
+     * Draws, for every active lane, the delay to the next firing and the
+     * point of the total weight that chooses the transition. Lanes that are
+     * blocked or would pass maxFirings or maxTime finish here.
+     */
+    private void draw() {
+        for (int k = 0; k < lanes; k++) {
+            chosen[k] = -1;
+            lastLive[k] = -1;
+            delta[k] = 0;
+            if (active[k] == 0) {
+                target[k] = Double.POSITIVE_INFINITY;
+                continue;
+            }
+            RandomStream random = streams[k];
+            if (total[k] == 0) {
+                // Blocked; a run limited by time still lasts until maxTime
+                if (timedNet && maxTime != Double.POSITIVE_INFINITY) {
+                    delta[k] = maxTime - time[k];
+                }
+                finish(k);
+                continue;
+            }
+            if (laneLevel[k] == TIMED) {
+                double delay = Ziggurat.exponential(random) / total[k];
+                if (time[k] + delay > maxTime) {
+                    delta[k] = maxTime - time[k];
+                    finish(k);
+                    continue;
+                }
+                delta[k] = delay;
+            } else if (!timedNet) {
+                delta[k] = 1;
+            }
+            target[k] = random.nextDouble() * total[k];
+        }
+    }
+
+    private void finish(int k) {
+        active[k] = 0;
+        activeLanes--;
+        target[k] = Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Walks the enabled transitions of every lane adding their weights,
+     * and chooses the one where the sum passes the target.
+     */
+    private void select() {
+        final int[] e = enabled;
+        final int n = lanes;
+        Arrays.fill(cumulative, 0);
+        for (int t = 0; t < transitions; t++) {
+            if (!allowed[t]) {
+                continue;
+            }
+            int row = t * n;
+            int l = level[t];
+            double w = weight[t];
+            for (int k = 0; k < n; k++) {
+                int live = laneLevel[k] == l ? e[row + k] : 0;
+                cumulative[k] += live * w;
+                lastLive[k] = live != 0 ? t : lastLive[k];
+                chosen[k] = chosen[k] < 0 && cumulative[k] > target[k] ? t : chosen[k];
+            }
+        }
+        for (int k = 0; k < n; k++) {
+            // The sum may fall short of the target by rounding
+            if (chosen[k] < 0 && target[k] != Double.POSITIVE_INFINITY) {
+                chosen[k] = lastLive[k];
+            }
+        }
+    }
+
+    /**
+     * Adds the marking weighted by the time it lasted to the areas, and
+     * advances the clocks.
+     */
+    private void accumulate() {
+        final int[] m = marking;
+        final double[] a = area;
+        final double[] d = delta;
+        final int n = lanes;
+        for (int p = 0; p < places; p++) {
+            int column = p * n;
+            for (int k = 0; k < n; k++) {
+                a[column + k] += m[column + k] * d[k];
+            }
+        }
+        for (int k = 0; k < n; k++) {
+            time[k] += d[k];
+        }
+    }
+
+    /**
+     * Fires a transition in every lane that chose it: its columns of the
+     * incidence matrices are added to all the lanes times the selector.
+     */
+    private void apply(int t) {
+        final int[] m = marking;
+        final int[] s = selected;
+        final int n = lanes;
+        int count = 0;
+        for (int k = 0; k < n; k++) {
+            s[k] = chosen[k] == t ? 1 : 0;
+            count += s[k];
+        }
+        if (count == 0) {
+            return;
+        }
+        for (int a = net.inputStart[t]; a < net.inputStart[t + 1]; a++) {
+            int column = net.inputPlace[a] * n;
+            int w = net.inputWeight[a];
+            for (int k = 0; k < n; k++) {
+                m[column + k] -= w * s[k];
+            }
+        }
+        for (int a = net.resetStart[t]; a < net.resetStart[t + 1]; a++) {
+            int column = net.resetPlace[a] * n;
+            for (int k = 0; k < n; k++) {
+                m[column + k] *= 1 - s[k];
+            }
+        }
+        for (int a = net.outputStart[t]; a < net.outputStart[t + 1]; a++) {
+            int column = net.outputPlace[a] * n;
+            int w = net.outputWeight[a];
+            for (int k = 0; k < n; k++) {
+                m[column + k] += w * s[k];
+            }
+        }
+        int row = t * n;
+        for (int k = 0; k < n; k++) {
+            firings[row + k] += s[k];
+        }
+        for (int k = 0; k < n; k++) {
+            if (s[k] != 0 && ++laneFirings[k] >= maxFirings) {
+                finish(k);
+            }
+        }
+    }
+
+    public CompiledNet getNet() {
+        return net;
+    }
+
+    public int getLanes() {
+        return lanes;
+    }
+
+    public int getTokens(int place, int lane) {
+        return marking[place * lanes + lane];
+    }
+
+    public double getTime(int lane) {
+        return time[lane];
+    }
+
+    public long getFirings(int transition, int lane) {
+        return firings[transition * lanes + lane];
+    }
+
+    public long getFirings(int lane) {
+        return laneFirings[lane];
+    }
+
+    /**
+     * Returns the firings of all the lanes.
+     */
+    public long getFirings() {
+        long sum = 0;
+        for (long f : laneFirings) {
+            sum += f;
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the simulated duration of a lane, 0 for nets without timed
+     * transitions.
+     */
+    public double getDuration(int lane) {
+        return timedNet ? time[lane] : 0;
+    }
+
+    /**
+     * Returns the time averaged number of tokens of every place in a lane,
+     * or the firing averaged one for nets without timed transitions.
+     */
+    public double[] getMeanTokens(int lane) {
+        double[] mean = new double[places];
+        // For untimed nets the clock counts firings
+        double duration = time[lane];
+        for (int p = 0; p < places; p++) {
+            mean[p] = duration > 0 ? area[p * lanes + lane] / duration : marking[p * lanes + lane];
+        }
+        return mean;
+    }
+
+    /**
+     * Returns the firings per second of simulated time of every transition
+     * in a lane, or the fraction of the firings for nets without timed
+     * transitions.
+     */
+    public double[] getThroughput(int lane) {
+        double[] throughput = new double[transitions];
+        double duration = time[lane];
+        for (int t = 0; t < transitions; t++) {
+            throughput[t] = duration > 0 ? firings[t * lanes + lane] / duration : 0;
+        }
+        return throughput;
+    }
+
+    /**
+     * Aggregates the lanes as independent replications.
+     */
+    public ReplicationResult getResult(double confidence, long seed, long elapsedMillis) {
+        double[][] tokens = new double[lanes][];
+        double[][] rates = new double[lanes][];
+        double duration = 0;
+        for (int k = 0; k < lanes; k++) {
+            tokens[k] = getMeanTokens(k);
+            rates[k] = getThroughput(k);
+            duration += getDuration(k);
+        }
+        return new ReplicationResult(net, tokens, rates, getFirings(), duration / lanes,
+                confidence, seed, elapsedMillis);
+    }
+}
@@ -0,0 +1,392 @@
+package org.petrinator.simulation;
+
+import org.petrinator.simulation.policy.ConflictPolicies;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * State of a single run, saved now and then so that a long simulation can
+ * be resumed after a crash or a stop: the engine snapshot (marking, time,
+ * firings, guards and clocks), the state of the random streams of the
+ * delays and of the conflict policy, the accumulators, and how much of the
+ * trace was written.
+ *
+ * The file is binary, about twenty bytes per place and transition plus
+ * the accumulators. It is written to a temporary file, synced and then
+ * renamed over the last checkpoint, so a crash while writing leaves the
+ * previous one intact.
+ *
+ * A resumed run draws the same delays and makes the same choices as the
+ * run that was saved, since the state of the conflict policy, such as the
+ * order of the enabled transitions or the last one chosen, is saved too.
+ *
+ * A checkpoint is only resumed with the net it was taken from: the same
+ * places, transitions, arcs and weights, delays and guards, and the same
+ * initial marking, since statistics of runs from another one would be
+ * mixed up.
+ */
+public class Checkpoint {
+
+    private static final int MAGIC = 0x50435054;
+    private static final int VERSION = 3;
+
+    private final long net;
+    private final int[] initialMarking;
+    private final EngineState state;
+    private final long[] random;
+    private final long[] policyRandom;
+    private final long[] policyState;
+    private long seed;
+    private String policy = ConflictPolicies.RANDOM;
+    private long maxFirings = Long.MAX_VALUE;
+    private double maxTime = Double.POSITIVE_INFINITY;
+    private byte[] statistics;
+    private byte[] summary;
+    private long traceOffset;
+
+    /**
+     * Takes the state of an engine between steps and of its streams.
+     *
+     * @param random       stream of the delays of the timed transitions
+     * @param policyRandom stream of the conflict policy
+     */
+    public Checkpoint(SimulationEngine engine, RandomStream random, RandomStream policyRandom) {
+        this(fingerprint(engine.getNet()), engine.getNet().getInitialMarking(), engine.getState(),
+                random.getState(), policyRandom.getState(), engine.getConflictPolicy().getState());
+    }
+
+    private Checkpoint(long net, int[] initialMarking, EngineState state, long[] random, long[] policyRandom,
+                       long[] policyState) {
+        this.net = net;
+        this.initialMarking = initialMarking;
+        this.state = state;
+        this.random = random;
+        this.policyRandom = policyRandom;
+        this.policyState = policyState;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Sets the seed the run started from, to be reported when resumed.
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public String getPolicy() {
+        return policy;
+    }
+
+    public void setPolicy(String policy) {
+        this.policy = policy;
+    }
+
+    public long getMaxFirings() {
+        return maxFirings;
+    }
+
+    public double getMaxTime() {
+        return maxTime;
+    }
+
+    /**
+     * Sets the limits of the run, so that a resumed run stops where the
+     * original one would have.
+     */
+    public void setLimits(long maxFirings, double maxTime) {
+        this.maxFirings = maxFirings;
+        this.maxTime = maxTime;
+    }
+
+    /**
+     * Saves the token and firing statistics of the run as they are now.
+     */
+    public void setStatistics(RunStatistics statistics) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            statistics.write(out);
+        }
+        this.statistics = bytes.toByteArray();
+    }
+
+    /**
+     * Saves the online accumulators of the run as they are now.
+     */
+    public void setSummary(RunAccumulators summary) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            summary.write(out);
+        }
+        this.summary = bytes.toByteArray();
+    }
+
+    public long getTraceOffset() {
+        return traceOffset;
+    }
+
+    /**
+     * Sets how much of the trace belongs to the run until now, in bytes of
+     * a trace file or in events, so a resumed run can drop what was
+     * written after the checkpoint.
+     */
+    public void setTraceOffset(long traceOffset) {
+        this.traceOffset = traceOffset;
+    }
+
+    /**
+     * Returns the marking the run started from.
+     */
+    public int[] getInitialMarking() {
+        return initialMarking.clone();
+    }
+
+    public double getTime() {
+        return state.time;
+    }
+
+    public long getFirings() {
+        return state.firings;
+    }
+
+    /**
+     * Puts an engine of the same net, and the streams it was created with,
+     * back in the saved state.
+     *
+     * @throws IllegalArgumentException if the engine is of another net or
+     *                                  starts from another marking
+     */
+    public void restore(SimulationEngine engine, RandomStream random, RandomStream policyRandom) {
+        if (fingerprint(engine.getNet()) != net) {
+            throw new IllegalArgumentException("The checkpoint is of another net");
+        }
+        if (!Arrays.equals(engine.getNet().getInitialMarking(), initialMarking)) {
+            throw new IllegalArgumentException("The checkpoint is of a run from another initial marking");
+        }
+        // Restoring the engine draws nothing, but creating it did, so the streams go last
+        engine.setState(state);
+        engine.getConflictPolicy().setState(policyState);
+        random.setState(this.random);
+        policyRandom.setState(this.policyRandom);
+    }
+
+    /**
+     * Puts the statistics back in the saved state.
+     *
+     * @return false if none were saved
+     */
+    public boolean restore(RunStatistics statistics) throws IOException {
+        if (this.statistics == null) {
+            return false;
+        }
+        statistics.read(new DataInputStream(new ByteArrayInputStream(this.statistics)));
+        return true;
+    }
+
+    /**
+     * Puts the accumulators back in the saved state.
+     *
+     * @return false if none were saved
+     */
+    public boolean restore(RunAccumulators summary) throws IOException {
+        if (this.summary == null) {
+            return false;
+        }
+        summary.read(new DataInputStream(new ByteArrayInputStream(this.summary)));
+        return true;
+    }
+
+    /**
+     * Writes the checkpoint, replacing the file only once it is complete.
+     */
+    public void write(File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(net);
+            writeInts(out, initialMarking);
+            out.writeLong(seed);
+            out.writeUTF(policy);
+            out.writeLong(maxFirings);
+            out.writeDouble(maxTime);
+            out.writeLong(random[0]);
+            out.writeLong(random[1]);
+            out.writeLong(policyRandom[0]);
+            out.writeLong(policyRandom[1]);
+            writeLongs(out, policyState);
+            out.writeDouble(state.time);
+            out.writeLong(state.firings);
+            writeInts(out, state.marking);
+            writeInts(out, state.clocks);
+            writeDoubles(out, state.clockTimes);
+            writeInts(out, state.held);
+            writeDoubles(out, state.heldTimes);
+            writeLongs(out, state.guards);
+            writeBytes(out, statistics);
+            writeBytes(out, summary);
+            out.writeLong(traceOffset);
+            out.flush();
+            stream.getFD().sync();
+        }
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    public static Checkpoint read(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " is not a checkpoint");
+            }
+            if (in.readInt() != VERSION) {
+                throw new IOException("Unsupported version of checkpoint in " + file);
+            }
+            long net = in.readLong();
+            int[] initialMarking = readInts(in);
+            long seed = in.readLong();
+            String policy = in.readUTF();
+            long maxFirings = in.readLong();
+            double maxTime = in.readDouble();
+            long[] random = {in.readLong(), in.readLong()};
+            long[] policyRandom = {in.readLong(), in.readLong()};
+            long[] policyState = readLongs(in);
+            double time = in.readDouble();
+            long firings = in.readLong();
+            int[] marking = readInts(in);
+            int[] clocks = readInts(in);
+            double[] clockTimes = readDoubles(in);
+            int[] held = readInts(in);
+            double[] heldTimes = readDoubles(in);
+            long[] guards = readLongs(in);
+            EngineState state = new EngineState(marking, time, firings, clocks, clockTimes, held, heldTimes, guards);
+
+            Checkpoint checkpoint = new Checkpoint(net, initialMarking, state, random, policyRandom, policyState);
+            checkpoint.seed = seed;
+            checkpoint.policy = policy;
+            checkpoint.maxFirings = maxFirings;
+            checkpoint.maxTime = maxTime;
+            checkpoint.statistics = readBytes(in);
+            checkpoint.summary = readBytes(in);
+            checkpoint.traceOffset = in.readLong();
+            return checkpoint;
+        }
+    }
+
+    /**
+     * Hash of everything that makes a net behave as it does, to tell if a
+     * checkpoint belongs to it: labels, arcs with their weights, delays and
+     * guards. The initial marking is kept apart.
+     */
+    private static long fingerprint(CompiledNet net) {
+        long h = 1125899906842597L;
+        h = 31 * h + net.getPlaceCount();
+        h = 31 * h + net.getTransitionCount();
+        for (int p = 0; p < net.getPlaceCount(); p++) {
+            h = 31 * h + net.getPlaceLabel(p).hashCode();
+        }
+        for (int[] arcs : new int[][]{net.inputStart, net.inputPlace, net.inputWeight, net.inhibitorStart,
+                net.inhibitorPlace, net.inhibitorWeight, net.readerStart, net.readerPlace, net.readerWeight,
+                net.resetStart, net.resetPlace, net.outputStart, net.outputPlace, net.outputWeight}) {
+            h = 31 * h + Arrays.hashCode(arcs);
+        }
+        GuardTable guards = net.getGuards();
+        for (int t = 0; t < net.getTransitionCount(); t++) {
+            h = 31 * h + net.getTransitionLabel(t).hashCode();
+            h = 31 * h + net.getDistribution(t);
+            h = 31 * h + (net.isTimed(t) ? 1 : 0);
+            h = 31 * h + (net.isAutomatic(t) ? 1 : 0);
+            h = 31 * h + Double.hashCode(net.getRate(t));
+            h = 31 * h + Double.hashCode(net.getVar1(t));
+            h = 31 * h + Double.hashCode(net.getVar2(t));
+            h = 31 * h + Objects.hashCode(guards.getBehavior(t));
+        }
+        return h;
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        out.writeInt(values.length);
+        for (int v : values) {
+            out.writeInt(v);
+        }
+    }
+
+    private static int[] readInts(DataInputStream in) throws IOException {
+        int[] values = new int[in.readInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readInt();
+        }
+        return values;
+    }
+
+    private static void writeLongs(DataOutputStream out, long[] values) throws IOException {
+        out.writeInt(values.length);
+        for (long v : values) {
+            out.writeLong(v);
+        }
+    }
+
+    private static long[] readLongs(DataInputStream in) throws IOException {
+        long[] values = new long[in.readInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readLong();
+        }
+        return values;
+    }
+
+    private static void writeDoubles(DataOutputStream out, double[] values) throws IOException {
+        out.writeInt(values.length);
+        for (double v : values) {
+            out.writeDouble(v);
+        }
+    }
+
+    private static double[] readDoubles(DataInputStream in) throws IOException {
+        double[] values = new double[in.readInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readDouble();
+        }
+        return values;
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes == null ? -1 : bytes.length);
+        if (bytes != null) {
+            out.write(bytes);
+        }
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,90 @@
+package org.petrinator.simulation;
+
+import java.io.IOException;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Runs an engine in slices of firings and takes a checkpoint between two
+ * slices whenever the interval has passed since the last one, and once
+ * more when the run ends, stopped or not. A run resumed from the last
+ * checkpoint of a finished run, with larger limits, goes on from where it
+ * ended. What goes in a checkpoint is up to the Saver, which is called
+ * between steps, when the engine state can be taken.
+ */
+public class Checkpointer {
+
+    /** Wall clock time between checkpoints, in milliseconds */
+    public static final long DEFAULT_INTERVAL = 60000;
+    // Firings between two looks at the clock and the stop request
+    private static final long SLICE = 1 << 14;
+
+    /**
+     * Takes and writes a checkpoint.
+     */
+    public interface Saver {
+        void save() throws IOException;
+    }
+
+    private final Saver saver;
+    private long interval = DEFAULT_INTERVAL;
+    private int saved;
+
+    public Checkpointer(Saver saver) {
+        this.saver = saver;
+    }
+
+    public long getInterval() {
+        return interval;
+    }
+
+    public void setInterval(long interval) {
+        if (interval < 0) {
+            throw new IllegalArgumentException("The interval cannot be negative");
+        }
+        this.interval = interval;
+    }
+
+    /**
+     * Returns the checkpoints taken so far.
+     */
+    public int getSaved() {
+        return saved;
+    }
+
+    /**
+     * Fires transitions until the engine has done maxFirings since its
+     * reset, counting those before a resume, the simulated time passes
+     * maxTime, the net is blocked or stop returns true. The thread being
+     * interrupted is a stop too.
+     *
+     * @return true if the run reached its limits or the net blocked,
+     * false if it was stopped
+     */
+    public boolean run(SimulationEngine engine, long maxFirings, double maxTime, BooleanSupplier stop)
+            throws IOException {
+        long last = System.currentTimeMillis();
+        boolean ended = true;
+        while (engine.getFirings() < maxFirings) {
+            if (stop.getAsBoolean() || Thread.currentThread().isInterrupted()) {
+                ended = false;
+                break;
+            }
+            long slice = Math.min(SLICE, maxFirings - engine.getFirings());
+            if (engine.run(slice, maxTime) < slice) {
+                break;
+            }
+            long now = System.currentTimeMillis();
+            if (now - last >= interval) {
+                save();
+                last = now;
+            }
+        }
+        save();
+        return ended;
+    }
+
+    private void save() throws IOException {
+        saver.save();
+        saved++;
+    }
+}
@@ -0,0 +1,493 @@
+package org.petrinator.simulation;
+
+import org.petrinator.petrinet.Marking;
+import org.petrinator.petrinet.Node;
+import org.petrinator.petrinet.PetriNet;
+import org.petrinator.petrinet.TransitionNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Immutable, array based form of a Petri net for the simulation engines.
+ *
+ * Places and transitions are numbered in the order of
+ * PetriNet.getSortedPlaces() and PetriNet.getSortedTransitions(). The arcs of
+ * every transition are stored in compressed rows (start offsets plus parallel
+ * place and weight arrays), so testing and firing a transition only touches
+ * its own arcs. getAffected(t) lists the transitions whose enabling may
+ * change when t fires, i.e. the ones with an input, inhibitor or read arc
+ * from a place that t modifies; it always contains t itself.
+ *
+ * Firing follows Marking.fire(): input tokens are consumed, reset places are
+ * emptied and then output tokens are added.
+ *
+ * isEnabled() only tests tokens. The behaviors of the transitions, with
+ * their guards, are compiled into the GuardTable of the net; engines keep
+ * the guard values and combine both tests. Guards start false unless the
+ * net gives them other initial values.
+ */
+public class CompiledNet {
+
+    /** Distribution codes, the same indexes as TransitionNode.getIndexDistribution() */
+    public static final int EXPONENTIAL = 0;
+    public static final int NORMAL = 1;
+    public static final int CAUCHY = 2;
+    public static final int UNIFORM = 3;
+
+    private final int placeCount;
+    private final int transitionCount;
+
+    final int[] inputStart;
+    final int[] inputPlace;
+    final int[] inputWeight;
+    final int[] inhibitorStart;
+    final int[] inhibitorPlace;
+    final int[] inhibitorWeight;
+    final int[] readerStart;
+    final int[] readerPlace;
+    final int[] readerWeight;
+    final int[] resetStart;
+    final int[] resetPlace;
+    final int[] outputStart;
+    final int[] outputPlace;
+    final int[] outputWeight;
+    final int[] affectedStart;
+    final int[] affected;
+
+    private final boolean[] timed;
+    private final boolean[] automatic;
+    private final int[] distribution;
+    private final double[] rate;
+    private final double[] var1;
+    private final double[] var2;
+    private final int[] initialMarking;
+    private final String[] placeLabels;
+    private final String[] transitionLabels;
+    private final String[] transitionIds;
+    private final GuardTable guards;
+    private final BitSet initialGuards;
+
+    /**
+     * Builds a net without guards from [place][transition] matrices, as
+     * returned by PetriNet.
+     */
+    public CompiledNet(int[][] iMinus, int[][] iPlus, int[][] inhibition, int[][] reset, int[][] reader,
+                       int[] initialMarking, boolean[] timed, boolean[] automatic, int[] distribution,
+                       double[] rate, double[] var1, double[] var2,
+                       String[] placeLabels, String[] transitionLabels, String[] transitionIds) {
+        this(iMinus, iPlus, inhibition, reset, reader, initialMarking, timed, automatic, distribution,
+                rate, var1, var2, placeLabels, transitionLabels, transitionIds, GuardTable.unguarded(timed.length));
+    }
+
+    /**
+     * Builds a net from [place][transition] matrices, as returned by PetriNet.
+     */
+    public CompiledNet(int[][] iMinus, int[][] iPlus, int[][] inhibition, int[][] reset, int[][] reader,
+                       int[] initialMarking, boolean[] timed, boolean[] automatic, int[] distribution,
+                       double[] rate, double[] var1, double[] var2,
+                       String[] placeLabels, String[] transitionLabels, String[] transitionIds,
+                       GuardTable guards) {
+        if (guards.getTransitionCount() != timed.length) {
+            throw new IllegalArgumentException("The guard table is for another net");
+        }
+        this.guards = guards;
+        this.initialGuards = new BitSet();
+        this.placeCount = initialMarking.length;
+        this.transitionCount = timed.length;
+        this.initialMarking = initialMarking.clone();
+        this.timed = timed.clone();
+        this.automatic = automatic.clone();
+        this.distribution = distribution.clone();
+        this.rate = rate.clone();
+        this.var1 = var1.clone();
+        this.var2 = var2.clone();
+        this.placeLabels = placeLabels.clone();
+        this.transitionLabels = transitionLabels.clone();
+        this.transitionIds = transitionIds.clone();
+
+        inputStart = new int[transitionCount + 1];
+        inputPlace = columns(iMinus, inputStart);
+        inputWeight = weights(iMinus, inputStart, inputPlace);
+        inhibitorStart = new int[transitionCount + 1];
+        inhibitorPlace = columns(inhibition, inhibitorStart);
+        inhibitorWeight = weights(inhibition, inhibitorStart, inhibitorPlace);
+        readerStart = new int[transitionCount + 1];
+        readerPlace = columns(reader, readerStart);
+        readerWeight = weights(reader, readerStart, readerPlace);
+        resetStart = new int[transitionCount + 1];
+        resetPlace = columns(reset, resetStart);
+        outputStart = new int[transitionCount + 1];
+        outputPlace = columns(iPlus, outputStart);
+        outputWeight = weights(iPlus, outputStart, outputPlace);
+
+        // Transitions that test each place
+        ArrayList<ArrayList<Integer>> testers = new ArrayList<>();
+        for (int p = 0; p < placeCount; p++) {
+            testers.add(new ArrayList<>());
+        }
+        for (int t = 0; t < transitionCount; t++) {
+            for (int p = 0; p < placeCount; p++) {
+                if (iMinus[p][t] != 0 || inhibition[p][t] != 0 || reader[p][t] != 0) {
+                    testers.get(p).add(t);
+                }
+            }
+        }
+
+        affectedStart = new int[transitionCount + 1];
+        int[] buffer = new int[transitionCount];
+        int[] seen = new int[transitionCount];
+        Arrays.fill(seen, -1);
+        ArrayList<int[]> rows = new ArrayList<>();
+        for (int t = 0; t < transitionCount; t++) {
+            int count = 0;
+            buffer[count++] = t;
+            seen[t] = t;
+            for (int p = 0; p < placeCount; p++) {
+                if (iMinus[p][t] != 0 || iPlus[p][t] != 0 || reset[p][t] != 0) {
+                    for (int u : testers.get(p)) {
+                        if (seen[u] != t) {
+                            seen[u] = t;
+                            buffer[count++] = u;
+                        }
+                    }
+                }
+            }
+            int[] row = Arrays.copyOf(buffer, count);
+            Arrays.sort(row);
+            rows.add(row);
+            affectedStart[t + 1] = affectedStart[t] + count;
+        }
+        affected = new int[affectedStart[transitionCount]];
+        for (int t = 0; t < transitionCount; t++) {
+            System.arraycopy(rows.get(t), 0, affected, affectedStart[t], rows.get(t).length);
+        }
+    }
+
+    private CompiledNet(CompiledNet net, int[] initialMarking, BitSet initialGuards) {
+        this.placeCount = net.placeCount;
+        this.transitionCount = net.transitionCount;
+        this.inputStart = net.inputStart;
+        this.inputPlace = net.inputPlace;
+        this.inputWeight = net.inputWeight;
+        this.inhibitorStart = net.inhibitorStart;
+        this.inhibitorPlace = net.inhibitorPlace;
+        this.inhibitorWeight = net.inhibitorWeight;
+        this.readerStart = net.readerStart;
+        this.readerPlace = net.readerPlace;
+        this.readerWeight = net.readerWeight;
+        this.resetStart = net.resetStart;
+        this.resetPlace = net.resetPlace;
+        this.outputStart = net.outputStart;
+        this.outputPlace = net.outputPlace;
+        this.outputWeight = net.outputWeight;
+        this.affectedStart = net.affectedStart;
+        this.affected = net.affected;
+        this.timed = net.timed;
+        this.automatic = net.automatic;
+        this.distribution = net.distribution;
+        this.rate = net.rate;
+        this.var1 = net.var1;
+        this.var2 = net.var2;
+        this.initialMarking = initialMarking.clone();
+        this.placeLabels = net.placeLabels;
+        this.transitionLabels = net.transitionLabels;
+        this.transitionIds = net.transitionIds;
+        this.guards = net.guards;
+        this.initialGuards = (BitSet) initialGuards.clone();
+    }
+
+    /**
+     * Returns the same net with another initial marking. Nothing is copied
+     * but the marking.
+     *
+     * @throws IllegalArgumentException if the marking is not of this net
+     */
+    public CompiledNet withInitialMarking(int[] marking) {
+        if (marking.length != placeCount) {
+            throw new IllegalArgumentException("The marking has " + marking.length + " places, the net "
+                    + placeCount);
+        }
+        return new CompiledNet(this, marking, initialGuards);
+    }
+
+    /**
+     * Returns the same net with the given guards true at the start and the
+     * others false. Nothing is copied but the marking and the guards.
+     *
+     * @param names names of the guards, as in the behaviors
+     * @throws IllegalArgumentException if no transition has one of the guards
+     */
+    public CompiledNet withInitialGuards(Iterable<String> names) {
+        BitSet values = new BitSet();
+        for (String name : names) {
+            int guard = guards.indexOfGuard(name);
+            if (guard < 0) {
+                throw new IllegalArgumentException("Unknown guard " + name);
+            }
+            values.set(guard);
+        }
+        return new CompiledNet(this, initialMarking, values);
+    }
+
+    /**
+     * Compiles the net being edited, taking its current marking as the
+     * initial one.
+     */
+    public static CompiledNet compile(PetriNet petriNet) {
+        ArrayList<Node> transitions = petriNet.getSortedTransitions();
+        int n = transitions.size();
+        boolean[] timed = new boolean[n];
+        boolean[] automatic = new boolean[n];
+        int[] distribution = new int[n];
+        double[] rate = new double[n];
+        double[] var1 = new double[n];
+        double[] var2 = new double[n];
+        String[] ids = new String[n];
+        String[] behaviors = new String[n];
+        for (int t = 0; t < n; t++) {
+            TransitionNode transition = (TransitionNode) transitions.get(t);
+            timed[t] = transition.isTimed();
+            automatic[t] = transition.isAutomatic();
+            distribution[t] = transition.getIndexDistribution();
+            rate[t] = transition.getRate();
+            var1[t] = transition.getVar1();
+            var2[t] = transition.getVar2();
+            ids[t] = transition.getId();
+            behaviors[t] = transition.getBehavior();
+        }
+        String[] transitionLabels = petriNet.getSortedTransitionsNames().toArray(new String[0]);
+
+        return new CompiledNet(
+                petriNet.getBackwardsIMatrix(),
+                petriNet.getForwardIMatrix(),
+                petriNet.getInhibitionMatrix(),
+                petriNet.getResetMatrix(),
+                petriNet.getReaderMatrix(),
+                petriNet.getInitialMarking().getMarkingAsArray()[Marking.CURRENT],
+                timed, automatic, distribution, rate, var1, var2,
+                petriNet.getSortedPlacesNames().toArray(new String[0]),
+                transitionLabels,
+                ids,
+                GuardTable.compile(transitionLabels, behaviors));
+    }
+
+    private int[] columns(int[][] matrix, int[] start) {
+        int count = 0;
+        for (int t = 0; t < transitionCount; t++) {
+            for (int p = 0; p < placeCount; p++) {
+                if (matrix[p][t] != 0) {
+                    count++;
+                }
+            }
+            start[t + 1] = count;
+        }
+        int[] places = new int[count];
+        int k = 0;
+        for (int t = 0; t < transitionCount; t++) {
+            for (int p = 0; p < placeCount; p++) {
+                if (matrix[p][t] != 0) {
+                    places[k++] = p;
+                }
+            }
+        }
+        return places;
+    }
+
+    private int[] weights(int[][] matrix, int[] start, int[] places) {
+        int[] weights = new int[places.length];
+        for (int t = 0; t < transitionCount; t++) {
+            for (int k = start[t]; k < start[t + 1]; k++) {
+                weights[k] = matrix[places[k]][t];
+            }
+        }
+        return weights;
+    }
+
+    /**
+     * Determines if a transition is enabled by the tokens of a marking:
+     * regular and read arcs need their weight, inhibitor arcs need fewer
+     * tokens than their weight.
+     */
+    public boolean isEnabled(int transition, int[] marking) {
+        for (int k = inputStart[transition]; k < inputStart[transition + 1]; k++) {
+            if (marking[inputPlace[k]] < inputWeight[k]) {
+                return false;
+            }
+        }
+        for (int k = readerStart[transition]; k < readerStart[transition + 1]; k++) {
+            if (marking[readerPlace[k]] < readerWeight[k]) {
+                return false;
+            }
+        }
+        for (int k = inhibitorStart[transition]; k < inhibitorStart[transition + 1]; k++) {
+            if (marking[inhibitorPlace[k]] >= inhibitorWeight[k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Fires a transition in place. The transition is assumed to be enabled.
+     */
+    public void fire(int transition, int[] marking) {
+        for (int k = inputStart[transition]; k < inputStart[transition + 1]; k++) {
+            marking[inputPlace[k]] -= inputWeight[k];
+        }
+        for (int k = resetStart[transition]; k < resetStart[transition + 1]; k++) {
+            marking[resetPlace[k]] = 0;
+        }
+        for (int k = outputStart[transition]; k < outputStart[transition + 1]; k++) {
+            marking[outputPlace[k]] += outputWeight[k];
+        }
+    }
+
+    public int getAffectedStart(int transition) {
+        return affectedStart[transition];
+    }
+
+    public int getAffectedEnd(int transition) {
+        return affectedStart[transition + 1];
+    }
+
+    /**
+     * Returns the k-th entry of the flattened affected lists, for k between
+     * getAffectedStart(t) and getAffectedEnd(t).
+     */
+    public int getAffected(int k) {
+        return affected[k];
+    }
+
+    public int getPlaceCount() {
+        return placeCount;
+    }
+
+    public int getTransitionCount() {
+        return transitionCount;
+    }
+
+    public boolean isTimed(int transition) {
+        return timed[transition];
+    }
+
+    public boolean isAutomatic(int transition) {
+        return automatic[transition];
+    }
+
+    public GuardTable getGuards() {
+        return guards;
+    }
+
+    public boolean anyTimed() {
+        for (boolean t : timed) {
+            if (t) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int getDistribution(int transition) {
+        return distribution[transition];
+    }
+
+    public double getRate(int transition) {
+        return rate[transition];
+    }
+
+    public double getVar1(int transition) {
+        return var1[transition];
+    }
+
+    public double getVar2(int transition) {
+        return var2[transition];
+    }
+
+    public int[] getInitialMarking() {
+        return initialMarking.clone();
+    }
+
+    /**
+     * Returns the values of the guards at the start, indexed as in
+     * getGuards().
+     */
+    public BitSet getInitialGuards() {
+        return (BitSet) initialGuards.clone();
+    }
+
+    /**
+     * Returns the names of the guards that are false at the start and that
+     * some transition needs true. Nothing sets guards while the engines
+     * run, so those transitions never fire.
+     */
+    public List<String> getUnsetGuards() {
+        List<String> unset = new ArrayList<>();
+        for (int g = 0; g < guards.getGuardCount(); g++) {
+            if (initialGuards.get(g)) {
+                continue;
+            }
+            for (int k = guards.getReferencesStart(g); k < guards.getReferencesEnd(g); k++) {
+                if (!guards.isNegated(guards.getReference(k))) {
+                    unset.add(guards.getGuardName(g));
+                    break;
+                }
+            }
+        }
+        return unset;
+    }
+
+    public String getPlaceLabel(int place) {
+        return placeLabels[place];
+    }
+
+    public String getTransitionLabel(int transition) {
+        return transitionLabels[transition];
+    }
+
+    /**
+     * Returns the id of the transition in the editor, the one used by
+     * Subnet.getTransition(id) and by the monitor event lists.
+     */
+    public String getTransitionId(int transition) {
+        return transitionIds[transition];
+    }
+
+    /**
+     * Returns the index of the transition with the given id, or -1.
+     */
+    public int indexOfTransitionId(String id) {
+        for (int t = 0; t < transitionCount; t++) {
+            if (transitionIds[t].equals(id)) {
+                return t;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of the first transition with the given label, or -1.
+     */
+    public int indexOfTransition(String label) {
+        for (int t = 0; t < transitionCount; t++) {
+            if (transitionLabels[t].equals(label)) {
+                return t;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of the place with the given label, or -1.
+     */
+    public int indexOfPlace(String label) {
+        for (int p = 0; p < placeCount; p++) {
+            if (placeLabels[p].equals(label)) {
+                return p;
+            }
+        }
+        return -1;
+    }
+}
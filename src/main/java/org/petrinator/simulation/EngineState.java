@@ -0,0 +1,58 @@
+package org.petrinator.simulation;
+
+/**
+ * Snapshot of a SimulationEngine between two steps, taken with
+ * SimulationEngine.getState() and given back to setState().
+ *
+ * It holds what the marking alone does not tell: the simulated time, the
+ * firings so far, the guard values and the clocks of the timed
+ * transitions, which are kept sparse since few transitions are usually
+ * enabled. Exponential transitions that were preempted keep their
+ * remaining time too. The random streams and the conflict policy are not
+ * part of it, so the same engine can go on from a snapshot with new random
+ * numbers, which is how trajectories are cloned for importance splitting.
+ */
+public final class EngineState {
+
+    final int[] marking;
+    final double time;
+    final long firings;
+    // Enabled timed transitions and their absolute firing times, infinite if never
+    final int[] clocks;
+    final double[] clockTimes;
+    // Preempted exponential transitions and their remaining times
+    final int[] held;
+    final double[] heldTimes;
+    final long[] guards;
+
+    EngineState(int[] marking, double time, long firings, int[] clocks, double[] clockTimes,
+                int[] held, double[] heldTimes, long[] guards) {
+        this.marking = marking;
+        this.time = time;
+        this.firings = firings;
+        this.clocks = clocks;
+        this.clockTimes = clockTimes;
+        this.held = held;
+        this.heldTimes = heldTimes;
+        this.guards = guards;
+    }
+
+    /**
+     * Returns a copy of the marking.
+     */
+    public int[] getMarking() {
+        return marking.clone();
+    }
+
+    public int getTokens(int place) {
+        return marking[place];
+    }
+
+    public double getTime() {
+        return time;
+    }
+
+    public long getFirings() {
+        return firings;
+    }
+}
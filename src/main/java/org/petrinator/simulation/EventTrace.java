@@ -0,0 +1,293 @@
+package org.petrinator.simulation;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+
+/**
+ * Sequence of firings of a simulation, kept as primitives: the index of
+ * the transition in the CompiledNet and the absolute simulated time.
+ *
+ * Events are stored in chunks of CHUNK_SIZE parallel int and double
+ * arrays, 12 bytes per event and no object per event. When the chunks in
+ * memory reach the configured limit the oldest one is written to a spill
+ * file, so a trace can be longer than the heap; the file is deleted by
+ * close(). Cursors read the events in order, spilled ones included, into
+ * buffers of their own, so iterating does not allocate either.
+ *
+ * A trace is not thread safe: it is written by the simulation and read
+ * afterwards.
+ */
+public class EventTrace implements SimulationListener, Closeable {
+
+    public static final int CHUNK_SIZE = 1 << 16;
+    private static final int CHUNK_BYTES = CHUNK_SIZE * (Integer.BYTES + Double.BYTES);
+
+    private final int maxChunksInMemory;
+    private final File spillFile;
+
+    // Chunks still in memory, oldest first; the last one is being written
+    private final ArrayDeque<Chunk> chunks = new ArrayDeque<>();
+    // Full chunks no longer in use, reused instead of allocated
+    private final ArrayDeque<Chunk> free = new ArrayDeque<>();
+    private File spillPath;
+    private FileChannel spill;
+    private ByteBuffer spillBuffer;
+    private long spilledChunks;
+    private long size;
+
+    /**
+     * Creates a trace that keeps up to 64 chunks (about 4 million events)
+     * in memory and spills the rest to a temporary file.
+     */
+    public EventTrace() {
+        this(64, null);
+    }
+
+    /**
+     * @param maxChunksInMemory chunks kept in memory, at least 1
+     * @param spillFile         file for the spilled chunks, null for a
+     *                          temporary one
+     */
+    public EventTrace(int maxChunksInMemory, File spillFile) {
+        if (maxChunksInMemory < 1) {
+            throw new IllegalArgumentException("At least one chunk must be kept in memory");
+        }
+        this.maxChunksInMemory = maxChunksInMemory;
+        this.spillFile = spillFile;
+    }
+
+    @Override
+    public void transitionFired(int transition, double time, int[] marking) {
+        add(transition, time);
+    }
+
+    public void add(int transition, double time) {
+        Chunk last = chunks.peekLast();
+        if (last == null || last.count == CHUNK_SIZE) {
+            if (chunks.size() == maxChunksInMemory) {
+                Chunk oldest = chunks.pollFirst();
+                writeSpill(oldest);
+                oldest.count = 0;
+                free.add(oldest);
+            }
+            last = free.isEmpty() ? new Chunk() : free.poll();
+            chunks.addLast(last);
+        }
+        last.transitions[last.count] = transition;
+        last.times[last.count] = time;
+        last.count++;
+        size++;
+    }
+
+    private void writeSpill(Chunk chunk) {
+        try {
+            if (spill == null) {
+                spillPath = spillFile != null ? spillFile : File.createTempFile("petrinator-trace", ".bin");
+                spillPath.deleteOnExit();
+                spill = FileChannel.open(spillPath.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                spillBuffer = ByteBuffer.allocateDirect(CHUNK_BYTES);
+            }
+            spillBuffer.clear();
+            spillBuffer.asIntBuffer().put(chunk.transitions);
+            spillBuffer.position(CHUNK_SIZE * Integer.BYTES);
+            spillBuffer.asDoubleBuffer().put(chunk.times);
+            spillBuffer.position(0);
+            long position = spilledChunks * CHUNK_BYTES;
+            while (spillBuffer.hasRemaining()) {
+                position += spill.write(spillBuffer, position);
+            }
+            spilledChunks++;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not spill the event trace", e);
+        }
+    }
+
+    /**
+     * Returns the number of events.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of events that were moved to the spill file.
+     */
+    public long getSpilledCount() {
+        return spilledChunks * CHUNK_SIZE;
+    }
+
+    /**
+     * Returns the time of the last event, or 0 if there are none.
+     */
+    public double getLastTime() {
+        Chunk last = chunks.peekLast();
+        return last == null ? 0 : last.times[last.count - 1];
+    }
+
+    /**
+     * Removes every event. The spill file is kept and overwritten.
+     */
+    public void clear() {
+        while (!chunks.isEmpty()) {
+            Chunk chunk = chunks.poll();
+            chunk.count = 0;
+            free.add(chunk);
+        }
+        spilledChunks = 0;
+        size = 0;
+    }
+
+    /**
+     * Returns a cursor before the first event.
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Releases the spill file, if any. The events are lost.
+     */
+    @Override
+    public void close() {
+        clear();
+        free.clear();
+        if (spill != null) {
+            try {
+                spill.close();
+            } catch (IOException e) {
+                // Nothing left to do with it
+            }
+            spill = null;
+            spillBuffer = null;
+            spillPath.delete();
+        }
+    }
+
+    private static class Chunk {
+        final int[] transitions = new int[CHUNK_SIZE];
+        final double[] times = new double[CHUNK_SIZE];
+        int count;
+    }
+
+    /**
+     * Reads a trace forward, one event at a time:
+     *
+     *   EventTrace.Cursor c = trace.cursor();
+     *   while (c.next()) { use c.getTransition() and c.getTime() }
+     *
+     * The trace must not be modified while a cursor is in use.
+     */
+    public class Cursor {
+
+        private long index = -1;
+        // Events of the current chunk, either a chunk in memory or one read back from the spill file
+        private int[] transitions;
+        private double[] times;
+        private int offset;
+        private int count;
+        private ByteBuffer readBuffer;
+        private int[] spilledTransitions;
+        private double[] spilledTimes;
+
+        private Cursor() {
+        }
+
+        /**
+         * Moves to the next event.
+         *
+         * @return false if there are no more events
+         */
+        public boolean next() {
+            if (index + 1 >= size) {
+                return false;
+            }
+            index++;
+            if (transitions != null && offset + 1 < count) {
+                offset++;
+            } else {
+                load(index);
+            }
+            return true;
+        }
+
+        /**
+         * Moves so that the next call to next() returns the event with the
+         * given index.
+         */
+        public void seek(long event) {
+            if (event < 0 || event > size) {
+                throw new IndexOutOfBoundsException("Event " + event + " of " + size);
+            }
+            index = event - 1;
+            transitions = null;
+        }
+
+        /**
+         * Returns the index of the current event, -1 before the first one.
+         */
+        public long getIndex() {
+            return index;
+        }
+
+        public int getTransition() {
+            return transitions[offset];
+        }
+
+        public double getTime() {
+            return times[offset];
+        }
+
+        private void load(long event) {
+            long chunk = event / CHUNK_SIZE;
+            offset = (int) (event - chunk * CHUNK_SIZE);
+            if (chunk < spilledChunks) {
+                readSpill(chunk);
+                count = CHUNK_SIZE;
+            } else {
+                long k = spilledChunks;
+                for (Chunk c : chunks) {
+                    if (k++ == chunk) {
+                        transitions = c.transitions;
+                        times = c.times;
+                        count = c.count;
+                        break;
+                    }
+                }
+            }
+        }
+
+        private void readSpill(long chunk) {
+            if (readBuffer == null) {
+                readBuffer = ByteBuffer.allocateDirect(CHUNK_BYTES);
+                spilledTransitions = new int[CHUNK_SIZE];
+                spilledTimes = new double[CHUNK_SIZE];
+            }
+            transitions = spilledTransitions;
+            times = spilledTimes;
+            try {
+                readBuffer.clear();
+                long position = chunk * CHUNK_BYTES;
+                while (readBuffer.hasRemaining()) {
+                    int read = spill.read(readBuffer, position);
+                    if (read < 0) {
+                        throw new IOException("Truncated spill file");
+                    }
+                    position += read;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not read the event trace", e);
+            }
+            readBuffer.position(0);
+            readBuffer.asIntBuffer().get(transitions);
+            readBuffer.position(CHUNK_SIZE * Integer.BYTES);
+            readBuffer.asDoubleBuffer().get(times);
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package org.petrinator.simulation;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The behaviors of the transitions of a net, parsed once.
+ *
+ * A behavior is the string kept by TransitionNode, &lt;A|F,I|N,(guard)&gt;:
+ * automatic or fired, informed or not, and the name of the guard, which
+ * may be negated with ! or ~. It is compiled into a set of flags, the index
+ * of the guard in this table and a negation bit. A transition is allowed by
+ * its guard when the value of the guard differs from the negation bit, so
+ * "(!none)" allows it while the guard none is false, as guards are at the
+ * start.
+ *
+ * The table is immutable; guard values belong to whoever simulates, as a
+ * BitSet indexed by guard. For every guard it lists the transitions that
+ * reference it, so a change of a guard only looks at those.
+ */
+public final class GuardTable {
+
+    public static final int AUTOMATIC = 1;
+    public static final int INFORMED = 2;
+
+    private static final Pattern BEHAVIOR = Pattern.compile(
+            "\\s*<\\s*([AaFf])\\s*,\\s*([IiNn])\\s*,\\s*\\(\\s*([!~]?)\\s*([^()]*?)\\s*\\)\\s*>\\s*");
+
+    private final int[] flags;
+    // Guard of every transition, -1 if it has none
+    private final int[] guard;
+    private final BitSet negated;
+    private final String[] names;
+    private final int[] referenceStart;
+    private final int[] references;
+
+    private GuardTable(int[] flags, int[] guard, BitSet negated, String[] names) {
+        this.flags = flags;
+        this.guard = guard;
+        this.negated = negated;
+        this.names = names;
+
+        referenceStart = new int[names.length + 1];
+        for (int g : guard) {
+            if (g >= 0) {
+                referenceStart[g + 1]++;
+            }
+        }
+        for (int g = 0; g < names.length; g++) {
+            referenceStart[g + 1] += referenceStart[g];
+        }
+        references = new int[referenceStart[names.length]];
+        int[] next = referenceStart.clone();
+        for (int t = 0; t < guard.length; t++) {
+            if (guard[t] >= 0) {
+                references[next[guard[t]]++] = t;
+            }
+        }
+    }
+
+    /**
+     * Returns a table of transitions that are not automatic, are informed
+     * and have no guard.
+     */
+    public static GuardTable unguarded(int transitions) {
+        int[] flags = new int[transitions];
+        int[] guard = new int[transitions];
+        for (int t = 0; t < transitions; t++) {
+            flags[t] = INFORMED;
+            guard[t] = -1;
+        }
+        return new GuardTable(flags, guard, new BitSet(), new String[0]);
+    }
+
+    /**
+     * Parses the behaviors of the transitions. A null or empty behavior
+     * means no guard.
+     *
+     * @param labels labels of the transitions, for the errors
+     * @throws IllegalArgumentException if a behavior is malformed
+     */
+    public static GuardTable compile(String[] labels, String[] behaviors) {
+        int n = behaviors.length;
+        int[] flags = new int[n];
+        int[] guard = new int[n];
+        BitSet negated = new BitSet(n);
+        Map<String, Integer> indexes = new HashMap<>();
+        List<String> names = new ArrayList<>();
+
+        for (int t = 0; t < n; t++) {
+            String behavior = behaviors[t];
+            if (behavior == null || behavior.trim().isEmpty()) {
+                flags[t] = INFORMED;
+                guard[t] = -1;
+                continue;
+            }
+            Matcher m = BEHAVIOR.matcher(behavior);
+            if (!m.matches() || m.group(4).isEmpty()) {
+                throw new IllegalArgumentException(labels[t] + ": invalid behavior " + behavior);
+            }
+            if (Character.toUpperCase(m.group(1).charAt(0)) == 'A') {
+                flags[t] |= AUTOMATIC;
+            }
+            if (Character.toUpperCase(m.group(2).charAt(0)) == 'I') {
+                flags[t] |= INFORMED;
+            }
+            negated.set(t, !m.group(3).isEmpty());
+            String name = m.group(4);
+            Integer g = indexes.get(name);
+            if (g == null) {
+                g = names.size();
+                indexes.put(name, g);
+                names.add(name);
+            }
+            guard[t] = g;
+        }
+        return new GuardTable(flags, guard, negated, names.toArray(new String[0]));
+    }
+
+    public int getTransitionCount() {
+        return flags.length;
+    }
+
+    public int getGuardCount() {
+        return names.length;
+    }
+
+    public String getGuardName(int guard) {
+        return names[guard];
+    }
+
+    /**
+     * Returns the index of the guard with the given name, or -1.
+     */
+    public int indexOfGuard(String name) {
+        for (int g = 0; g < names.length; g++) {
+            if (names[g].equals(name)) {
+                return g;
+            }
+        }
+        return -1;
+    }
+
+    public int getFlags(int transition) {
+        return flags[transition];
+    }
+
+    public boolean isAutomatic(int transition) {
+        return (flags[transition] & AUTOMATIC) != 0;
+    }
+
+    public boolean isInformed(int transition) {
+        return (flags[transition] & INFORMED) != 0;
+    }
+
+    /**
+     * Returns the guard of a transition, or -1 if it has none.
+     */
+    public int getGuard(int transition) {
+        return guard[transition];
+    }
+
+    public boolean isNegated(int transition) {
+        return negated.get(transition);
+    }
+
+    /**
+     * Returns the behavior string of a transition, as TransitionNode keeps
+     * it, or null if it has no guard.
+     */
+    public String getBehavior(int transition) {
+        if (guard[transition] < 0) {
+            return null;
+        }
+        return "<" + (isAutomatic(transition) ? "A" : "F") + "," + (isInformed(transition) ? "I" : "N") + ",("
+                + (isNegated(transition) ? "!" : "") + names[guard[transition]] + ")>";
+    }
+
+    /**
+     * Determines if the guard of a transition allows it for the given
+     * guard values.
+     */
+    public boolean allows(int transition, BitSet values) {
+        int g = guard[transition];
+        return g < 0 || values.get(g) != negated.get(transition);
+    }
+
+    /**
+     * Sets in the mask the bit of every transition its guard allows, for
+     * the given guard values, and clears the others.
+     */
+    public void computeMask(BitSet values, BitSet mask) {
+        mask.clear();
+        for (int t = 0; t < flags.length; t++) {
+            if (allows(t, values)) {
+                mask.set(t);
+            }
+        }
+    }
+
+    public int getReferencesStart(int guard) {
+        return referenceStart[guard];
+    }
+
+    public int getReferencesEnd(int guard) {
+        return referenceStart[guard + 1];
+    }
+
+    /**
+     * Returns the k-th entry of the flattened lists of transitions that
+     * reference each guard, for k between getReferencesStart(g) and
+     * getReferencesEnd(g).
+     */
+    public int getReference(int k) {
+        return references[k];
+    }
+}
@@ -0,0 +1,184 @@
+package org.petrinator.simulation;
+
+import java.util.Arrays;
+
+/**
+ * Reduces a PlaceHistory to a number of points a chart can draw, in time
+ * proportional to the number of changes and without loading them all.
+ *
+ * Points are the vertices of a step function: from the x of a point on,
+ * the place has the tokens given by its y, until the next point.
+ *
+ * minMax() splits the time range in buckets (usually one per pixel column)
+ * and keeps the first, lowest, highest and last values of every bucket, so
+ * no peak is lost. lttb() (Largest Triangle Three Buckets, Steinarsson
+ * 2013) then keeps the points that best preserve the visual shape, for a
+ * smoother chart with fewer points.
+ */
+public final class HistoryDownsampler {
+
+    private HistoryDownsampler() {
+    }
+
+    /**
+     * Points of a history between two times, at most four per bucket.
+     */
+    public static final class Points {
+        private double[] x;
+        private double[] y;
+        private int size;
+
+        public Points(int capacity) {
+            x = new double[Math.max(2, capacity)];
+            y = new double[x.length];
+        }
+
+        void add(double px, double py) {
+            if (size == x.length) {
+                x = Arrays.copyOf(x, size * 2);
+                y = Arrays.copyOf(y, size * 2);
+            }
+            x[size] = px;
+            y[size] = py;
+            size++;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public double getX(int i) {
+            return x[i];
+        }
+
+        public double getY(int i) {
+            return y[i];
+        }
+    }
+
+    /**
+     * Reduces the history in [from, to] to the first, lowest, highest and
+     * last values of each of the given number of buckets. The first point is
+     * the value at from and the last one the value at to.
+     */
+    public static Points minMax(PlaceHistory history, double from, double to, int buckets) {
+        Points points = new Points(4 * buckets + 2);
+        double width = (to - from) / Math.max(1, buckets);
+        PlaceHistory.Reader reader = history.reader();
+
+        int tokens = history.getInitialTokens();
+        boolean pending = reader.next();
+        // Value at the start of the range
+        while (pending && reader.getTime() <= from) {
+            tokens = reader.getTokens();
+            pending = reader.next();
+        }
+        points.add(from, tokens);
+
+        int bucket = -1;
+        double firstX = 0, minX = 0, maxX = 0, lastX = 0;
+        int first = 0, min = 0, max = 0, last = 0;
+        while (pending && reader.getTime() <= to) {
+            double t = reader.getTime();
+            int v = reader.getTokens();
+            int b = width > 0 ? Math.min(buckets - 1, (int) ((t - from) / width)) : 0;
+            if (b != bucket) {
+                if (bucket >= 0) {
+                    flush(points, firstX, first, minX, min, maxX, max, lastX, last);
+                }
+                bucket = b;
+                firstX = minX = maxX = lastX = t;
+                first = min = max = last = v;
+            } else {
+                if (v < min) {
+                    min = v;
+                    minX = t;
+                }
+                if (v > max) {
+                    max = v;
+                    maxX = t;
+                }
+                last = v;
+                lastX = t;
+            }
+            tokens = v;
+            pending = reader.next();
+        }
+        if (bucket >= 0) {
+            flush(points, firstX, first, minX, min, maxX, max, lastX, last);
+        }
+        points.add(to, tokens);
+        return points;
+    }
+
+    private static void flush(Points points, double firstX, int first, double minX, int min,
+                              double maxX, int max, double lastX, int last) {
+        points.add(firstX, first);
+        // The extremes in the order they happened
+        if (minX <= maxX) {
+            addIfNew(points, minX, min);
+            addIfNew(points, maxX, max);
+        } else {
+            addIfNew(points, maxX, max);
+            addIfNew(points, minX, min);
+        }
+        addIfNew(points, lastX, last);
+    }
+
+    private static void addIfNew(Points points, double x, double y) {
+        int n = points.size();
+        if (points.getX(n - 1) != x || points.getY(n - 1) != y) {
+            points.add(x, y);
+        }
+    }
+
+    /**
+     * Largest Triangle Three Buckets: keeps threshold points, always the
+     * first and the last, picking in every bucket the one that forms the
+     * largest triangle with the point kept before and the mean of the next
+     * bucket.
+     */
+    public static Points lttb(Points in, int threshold) {
+        int n = in.size();
+        if (threshold >= n || threshold < 3) {
+            return in;
+        }
+        Points out = new Points(threshold);
+        out.add(in.getX(0), in.getY(0));
+
+        double every = (double) (n - 2) / (threshold - 2);
+        int a = 0;
+        for (int i = 0; i < threshold - 2; i++) {
+            int nextStart = (int) Math.floor((i + 1) * every) + 1;
+            int nextEnd = Math.min(n, (int) Math.floor((i + 2) * every) + 1);
+            double meanX = 0;
+            double meanY = 0;
+            for (int j = nextStart; j < nextEnd; j++) {
+                meanX += in.getX(j);
+                meanY += in.getY(j);
+            }
+            int length = Math.max(1, nextEnd - nextStart);
+            meanX /= length;
+            meanY /= length;
+
+            int start = (int) Math.floor(i * every) + 1;
+            int end = (int) Math.floor((i + 1) * every) + 1;
+            double ax = in.getX(a);
+            double ay = in.getY(a);
+            double largest = -1;
+            int chosen = start;
+            for (int j = start; j < end; j++) {
+                double area = Math.abs((ax - meanX) * (in.getY(j) - ay) - (ax - in.getX(j)) * (meanY - ay));
+                if (area > largest) {
+                    largest = area;
+                    chosen = j;
+                }
+            }
+            out.add(in.getX(chosen), in.getY(chosen));
+            a = chosen;
+        }
+
+        out.add(in.getX(n - 1), in.getY(n - 1));
+        return out;
+    }
+}
@@ -0,0 +1,167 @@
+package org.petrinator.simulation;
+
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Importance of a marking for rare event simulation: a weighted sum of the
+ * tokens of some places, plus a constant, which should grow as the
+ * marking gets closer to the rare event. It is written as an expression
+ * over place labels such as
+ *
+ *   2*Failed + Queue - 0.5*Idle
+ *
+ * Only the places with a weight are visited, so evaluating it after every
+ * firing is cheap.
+ */
+public final class ImportanceFunction {
+
+    // A decimal number, with an optional exponent
+    private static final Pattern NUMBER = Pattern.compile("(\\d+\\.?\\d*|\\.\\d+)([eE][+-]?\\d+)?");
+
+    private final int[] places;
+    private final double[] weights;
+    private final double constant;
+    private final String expression;
+
+    /**
+     * @param weights  weight of the tokens of every place, zero for the places left out
+     * @param constant value added to the sum
+     */
+    public ImportanceFunction(double[] weights, double constant) {
+        this(weights, constant, null);
+    }
+
+    private ImportanceFunction(double[] weights, double constant, String expression) {
+        int count = 0;
+        for (double w : weights) {
+            if (w != 0) {
+                count++;
+            }
+        }
+        places = new int[count];
+        this.weights = new double[count];
+        count = 0;
+        for (int p = 0; p < weights.length; p++) {
+            if (weights[p] != 0) {
+                places[count] = p;
+                this.weights[count++] = weights[p];
+            }
+        }
+        this.constant = constant;
+        this.expression = expression;
+    }
+
+    /**
+     * Parses an expression over the place labels of a net: terms joined by
+     * + and -, each a number, a label or a number times a label. Labels are
+     * matched against those of the net, the longest one first, so they may
+     * contain signs, like Buffer-1, and numbers may have an exponent, like
+     * 1e-3.
+     *
+     * @throws IllegalArgumentException if a term is not a number, a place
+     *                                  label or a number times a label
+     */
+    public static ImportanceFunction parse(String expression, CompiledNet net) {
+        double[] weights = new double[net.getPlaceCount()];
+        double constant = 0;
+        Matcher number = NUMBER.matcher(expression);
+        int at = skipSpaces(expression, 0);
+        boolean first = true;
+        while (at < expression.length() || first) {
+            double sign = 1;
+            if (at < expression.length() && (expression.charAt(at) == '+' || expression.charAt(at) == '-')) {
+                sign = expression.charAt(at) == '-' ? -1 : 1;
+                at = skipSpaces(expression, at + 1);
+            } else if (!first) {
+                throw new IllegalArgumentException("Expected + or - at " + expression.substring(at));
+            }
+            first = false;
+
+            // A factor is a place or a number, whichever match is longer
+            int place = longestPlace(expression, at, net);
+            int placeEnd = place < 0 ? at : at + net.getPlaceLabel(place).length();
+            int numberEnd = number.region(at, expression.length()).lookingAt() ? number.end() : at;
+            if (at == expression.length()) {
+                throw new IllegalArgumentException("Missing a term in " + expression);
+            }
+            if (placeEnd == at && numberEnd == at) {
+                throw new IllegalArgumentException("No place or number at " + expression.substring(at));
+            }
+            int next = skipSpaces(expression, Math.max(placeEnd, numberEnd));
+            if (next < expression.length() && expression.charAt(next) == '*') {
+                int right = skipSpaces(expression, next + 1);
+                int rightPlace = longestPlace(expression, right, net);
+                int rightPlaceEnd = rightPlace < 0 ? right : right + net.getPlaceLabel(rightPlace).length();
+                int rightNumberEnd = number.region(right, expression.length()).lookingAt() ? number.end() : right;
+                if (numberEnd >= placeEnd && rightPlaceEnd > right && rightPlaceEnd >= rightNumberEnd) {
+                    // A number times a place
+                    weights[rightPlace] += sign * Double.parseDouble(expression.substring(at, numberEnd));
+                    at = rightPlaceEnd;
+                } else if (placeEnd > at && rightNumberEnd > right) {
+                    // A place times a number
+                    weights[place] += sign * Double.parseDouble(expression.substring(right, rightNumberEnd));
+                    at = rightNumberEnd;
+                } else {
+                    throw new IllegalArgumentException("No place in " + expression.substring(at).trim());
+                }
+            } else if (placeEnd >= numberEnd) {
+                weights[place] += sign;
+                at = placeEnd;
+            } else {
+                constant += sign * Double.parseDouble(expression.substring(at, numberEnd));
+                at = numberEnd;
+            }
+            at = skipSpaces(expression, at);
+        }
+        return new ImportanceFunction(weights, constant, expression.trim());
+    }
+
+    /**
+     * Returns the place with the longest label found at the given position
+     * of the text, -1 if there is none.
+     */
+    private static int longestPlace(String text, int at, CompiledNet net) {
+        int longest = -1;
+        int length = 0;
+        for (int p = 0; p < net.getPlaceCount(); p++) {
+            String label = net.getPlaceLabel(p);
+            if (label.length() > length && text.startsWith(label, at)) {
+                longest = p;
+                length = label.length();
+            }
+        }
+        return longest;
+    }
+
+    private static int skipSpaces(String text, int at) {
+        while (at < text.length() && Character.isWhitespace(text.charAt(at))) {
+            at++;
+        }
+        return at;
+    }
+
+    /**
+     * Returns the importance of a marking.
+     */
+    public double of(int[] marking) {
+        double value = constant;
+        for (int k = 0; k < places.length; k++) {
+            value += weights[k] * marking[places[k]];
+        }
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        if (expression != null) {
+            return expression;
+        }
+        StringBuilder s = new StringBuilder(String.format(Locale.ROOT, "%g", constant));
+        for (int k = 0; k < places.length; k++) {
+            s.append(String.format(Locale.ROOT, " + %g*p%d", weights[k], places[k]));
+        }
+        return s.toString();
+    }
+}
@@ -0,0 +1,158 @@
+package org.petrinator.simulation;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap over the items 0..capacity-1, each one with a double key.
+ * Besides the heap it keeps the position of every item, so the key of any
+ * item can be changed, or the item removed, in O(log n) without searching,
+ * and the minimum is found in O(1). This is the indexed priority queue of
+ * the Gibson-Bruck next reaction method.
+ */
+public class IndexedPriorityQueue {
+
+    private final int[] heap;
+    private final int[] position;
+    private final double[] keys;
+    private int size;
+
+    public IndexedPriorityQueue(int capacity) {
+        heap = new int[capacity];
+        position = new int[capacity];
+        keys = new double[capacity];
+        Arrays.fill(position, -1);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean contains(int item) {
+        return position[item] >= 0;
+    }
+
+    /**
+     * Returns the key of an item in the queue.
+     */
+    public double getKey(int item) {
+        return keys[item];
+    }
+
+    /**
+     * Inserts an item, or changes its key if it is already in the queue.
+     */
+    public void set(int item, double key) {
+        int i = position[item];
+        if (i < 0) {
+            i = size++;
+            heap[i] = item;
+            position[item] = i;
+            keys[item] = key;
+            siftUp(i);
+        } else {
+            double old = keys[item];
+            keys[item] = key;
+            if (key < old) {
+                siftUp(i);
+            } else {
+                siftDown(i);
+            }
+        }
+    }
+
+    /**
+     * Removes an item, doing nothing if it is not in the queue.
+     */
+    public void remove(int item) {
+        int i = position[item];
+        if (i < 0) {
+            return;
+        }
+        position[item] = -1;
+        size--;
+        if (i < size) {
+            int last = heap[size];
+            heap[i] = last;
+            position[last] = i;
+            siftUp(i);
+            siftDown(position[last]);
+        }
+    }
+
+    /**
+     * Returns the item with the smallest key, or -1 if the queue is empty.
+     */
+    public int peek() {
+        return size == 0 ? -1 : heap[0];
+    }
+
+    /**
+     * Returns the smallest key, or +infinity if the queue is empty.
+     */
+    public double peekKey() {
+        return size == 0 ? Double.POSITIVE_INFINITY : keys[heap[0]];
+    }
+
+    /**
+     * Removes and returns the item with the smallest key, or -1.
+     */
+    public int poll() {
+        if (size == 0) {
+            return -1;
+        }
+        int item = heap[0];
+        remove(item);
+        return item;
+    }
+
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            position[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    private void siftUp(int i) {
+        int item = heap[i];
+        double key = keys[item];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            int parentItem = heap[parent];
+            if (keys[parentItem] <= key) {
+                break;
+            }
+            heap[i] = parentItem;
+            position[parentItem] = i;
+            i = parent;
+        }
+        heap[i] = item;
+        position[item] = i;
+    }
+
+    private void siftDown(int i) {
+        int item = heap[i];
+        double key = keys[item];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && keys[heap[child + 1]] < keys[heap[child]]) {
+                child++;
+            }
+            int childItem = heap[child];
+            if (keys[childItem] >= key) {
+                break;
+            }
+            heap[i] = childItem;
+            position[childItem] = i;
+            i = child;
+        }
+        heap[i] = item;
+        position[item] = i;
+    }
+}
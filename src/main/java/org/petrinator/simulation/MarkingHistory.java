@@ -0,0 +1,237 @@
+package org.petrinator.simulation;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+
+/**
+ * History of the marking of a simulation, one PlaceHistory per place of
+ * the CompiledNet, recorded at the firings that change it and stamped with
+ * simulated time. After a firing only the places the transition touches
+ * are looked at.
+ *
+ * Memory is capped: once the blocks in memory take more than the given
+ * number of bytes, the oldest full blocks are moved to a spill file, which
+ * close() deletes.
+ */
+public class MarkingHistory implements SimulationListener, Closeable {
+
+    public static final long DEFAULT_MAX_BYTES = 64L << 20;
+    static final int BLOCK_SIZE = 4096;
+
+    private final CompiledNet net;
+    private final PlaceHistory[] places;
+    private final long maxBytes;
+    private final File spillFile;
+
+    // Full blocks still in memory, oldest first
+    private final ArrayDeque<PlaceHistory.Block> full = new ArrayDeque<>();
+    private long bytesInMemory;
+    private File spillPath;
+    private FileChannel spill;
+    private long spillLength;
+    private ByteBuffer buffer;
+    private double endTime;
+
+    /**
+     * Creates a history starting at time 0 from the initial marking of the
+     * net, with the default memory cap and a temporary spill file.
+     */
+    public MarkingHistory(CompiledNet net) {
+        this(net, DEFAULT_MAX_BYTES, null);
+    }
+
+    /**
+     * @param maxBytes  bytes of changes kept in memory before spilling
+     * @param spillFile file for the spilled blocks, null for a temporary one
+     */
+    public MarkingHistory(CompiledNet net, long maxBytes, File spillFile) {
+        this.net = net;
+        this.maxBytes = maxBytes;
+        this.spillFile = spillFile;
+        this.places = new PlaceHistory[net.getPlaceCount()];
+        for (int p = 0; p < places.length; p++) {
+            places[p] = new PlaceHistory(this, net.getPlaceLabel(p));
+        }
+        start(0, net.getInitialMarking());
+    }
+
+    /**
+     * Forgets everything and starts again from the given marking.
+     */
+    public void start(double time, int[] marking) {
+        full.clear();
+        bytesInMemory = 0;
+        spillLength = 0;
+        endTime = time;
+        for (int p = 0; p < places.length; p++) {
+            places[p].start(time, marking[p]);
+        }
+    }
+
+    @Override
+    public void transitionFired(int transition, double time, int[] marking) {
+        for (int k = net.inputStart[transition]; k < net.inputStart[transition + 1]; k++) {
+            places[net.inputPlace[k]].record(time, marking[net.inputPlace[k]]);
+        }
+        for (int k = net.resetStart[transition]; k < net.resetStart[transition + 1]; k++) {
+            places[net.resetPlace[k]].record(time, marking[net.resetPlace[k]]);
+        }
+        for (int k = net.outputStart[transition]; k < net.outputStart[transition + 1]; k++) {
+            places[net.outputPlace[k]].record(time, marking[net.outputPlace[k]]);
+        }
+        endTime = time;
+    }
+
+    /**
+     * Records a whole marking, for changes that did not come from a firing.
+     */
+    public void record(double time, int[] marking) {
+        for (int p = 0; p < places.length; p++) {
+            places[p].record(time, marking[p]);
+        }
+        endTime = time;
+    }
+
+    public CompiledNet getNet() {
+        return net;
+    }
+
+    public int getPlaceCount() {
+        return places.length;
+    }
+
+    public PlaceHistory getPlace(int place) {
+        return places[place];
+    }
+
+    /**
+     * Returns the history of the place with the given label, or null.
+     */
+    public PlaceHistory getPlace(String label) {
+        int p = net.indexOfPlace(label);
+        return p < 0 ? null : places[p];
+    }
+
+    /**
+     * Returns the time of the last recorded change, or the end given to
+     * setEndTime() if it is later.
+     */
+    public double getEndTime() {
+        return endTime;
+    }
+
+    /**
+     * Extends the history up to the given time, e.g. when a run ends after
+     * its last firing.
+     */
+    public void setEndTime(double time) {
+        endTime = Math.max(endTime, time);
+    }
+
+    public long getChangeCount() {
+        long count = 0;
+        for (PlaceHistory place : places) {
+            count += place.getChangeCount();
+        }
+        return count;
+    }
+
+    public long getBytesInMemory() {
+        return bytesInMemory;
+    }
+
+    public long getSpilledBytes() {
+        return spillLength;
+    }
+
+    void blockStarted(PlaceHistory.Block block) {
+        bytesInMemory += block.bytes();
+    }
+
+    void bytesAdded(int bytes) {
+        bytesInMemory += bytes;
+    }
+
+    void blockFilled(PlaceHistory.Block block) {
+        full.addLast(block);
+        while (bytesInMemory > maxBytes && !full.isEmpty()) {
+            spill(full.pollFirst());
+        }
+    }
+
+    private void spill(PlaceHistory.Block block) {
+        int length = block.count * Double.BYTES + block.deltaLength;
+        try {
+            if (spill == null) {
+                spillPath = spillFile != null ? spillFile : File.createTempFile("petrinator-history", ".bin");
+                spillPath.deleteOnExit();
+                spill = FileChannel.open(spillPath.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                buffer = ByteBuffer.allocateDirect(BLOCK_SIZE * (Double.BYTES + 5));
+            }
+            buffer.clear();
+            buffer.asDoubleBuffer().put(block.times, 0, block.count);
+            buffer.position(block.count * Double.BYTES);
+            buffer.put(block.deltas, 0, block.deltaLength);
+            buffer.flip();
+            long position = spillLength;
+            while (buffer.hasRemaining()) {
+                position += spill.write(buffer, position);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not spill the marking history", e);
+        }
+        bytesInMemory -= block.bytes();
+        block.fileOffset = spillLength;
+        block.times = null;
+        block.deltas = null;
+        spillLength += length;
+    }
+
+    /**
+     * Reads a spilled block into the given arrays.
+     */
+    void readSpilled(PlaceHistory.Block block, double[] times, byte[] deltas) {
+        int length = block.count * Double.BYTES + block.deltaLength;
+        ByteBuffer in = ByteBuffer.allocate(length);
+        try {
+            long position = block.fileOffset;
+            while (in.hasRemaining()) {
+                int read = spill.read(in, position);
+                if (read < 0) {
+                    throw new IOException("Truncated spill file");
+                }
+                position += read;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read the marking history", e);
+        }
+        in.flip();
+        in.asDoubleBuffer().get(times, 0, block.count);
+        in.position(block.count * Double.BYTES);
+        in.get(deltas, 0, block.deltaLength);
+    }
+
+    /**
+     * Deletes the spill file, if any. The spilled changes are lost.
+     */
+    @Override
+    public void close() {
+        if (spill != null) {
+            try {
+                spill.close();
+            } catch (IOException e) {
+                // Nothing left to do with it
+            }
+            spill = null;
+            buffer = null;
+            spillPath.delete();
+        }
+    }
+}
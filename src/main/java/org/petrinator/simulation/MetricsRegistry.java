@@ -0,0 +1,114 @@
+package org.petrinator.simulation;
+
+import com.google.gson.GsonBuilder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Named SimulationMetrics, published as MBeans of the platform MBean
+ * server under org.petrinator:type=Simulation,name=NAME, so JConsole or
+ * VisualVM can watch a long run while it goes, and dumped together as
+ * JSON.
+ *
+ * Registering a name again replaces the metrics of the previous run.
+ */
+public final class MetricsRegistry {
+
+    public static final String DOMAIN = "org.petrinator";
+
+    private static final MetricsRegistry SHARED = new MetricsRegistry(ManagementFactory.getPlatformMBeanServer());
+
+    private final MBeanServer server;
+    private final Map<String, SimulationMetrics> metrics = new LinkedHashMap<>();
+
+    /**
+     * @param server where the metrics are published, null for none
+     */
+    public MetricsRegistry(MBeanServer server) {
+        this.server = server;
+    }
+
+    /**
+     * Returns the registry of the editor and the command line runner,
+     * published in the platform MBean server.
+     */
+    public static MetricsRegistry getShared() {
+        return SHARED;
+    }
+
+    /**
+     * @throws IllegalStateException if the MBean server refuses the metrics
+     */
+    public synchronized void register(String name, SimulationMetrics metrics) {
+        unregister(name);
+        if (server != null) {
+            try {
+                server.registerMBean(metrics, objectName(name));
+            } catch (JMException e) {
+                throw new IllegalStateException("Could not publish the metrics " + name, e);
+            }
+        }
+        this.metrics.put(name, metrics);
+    }
+
+    public synchronized void unregister(String name) {
+        if (metrics.remove(name) == null || server == null) {
+            return;
+        }
+        try {
+            server.unregisterMBean(objectName(name));
+        } catch (JMException e) {
+            // Already gone from the server
+        }
+    }
+
+    public synchronized SimulationMetrics get(String name) {
+        return metrics.get(name);
+    }
+
+    public synchronized List<String> getNames() {
+        return new ArrayList<>(metrics.keySet());
+    }
+
+    public static ObjectName objectName(String name) throws JMException {
+        return new ObjectName(DOMAIN + ":type=Simulation,name=" + ObjectName.quote(name));
+    }
+
+    /**
+     * Returns the metrics of every name as a JSON object.
+     */
+    public synchronized String toJson() {
+        Map<String, SimulationMetrics.Snapshot> snapshots = new LinkedHashMap<>();
+        for (Map.Entry<String, SimulationMetrics> entry : metrics.entrySet()) {
+            snapshots.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        return new GsonBuilder().setPrettyPrinting().serializeSpecialFloatingPointValues().create()
+                .toJson(snapshots);
+    }
+
+    /**
+     * Writes toJson() to a file.
+     */
+    public void writeJson(File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            out.write(toJson());
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package org.petrinator.simulation;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Plain description of a CompiledNet, with public fields only, to send it
+ * as JSON and build it again on the other side.
+ *
+ * Arcs are listed as {transition, place, weight} triples, reset arcs as
+ * {transition, place} pairs.
+ */
+public class NetSpec {
+
+    public String[] places;
+    public int[] marking;
+
+    public String[] transitions;
+    public String[] ids;
+    public boolean[] timed;
+    public boolean[] automatic;
+    public int[] distribution;
+    public double[] rate;
+    public double[] var1;
+    public double[] var2;
+    public String[] behaviors;
+    // Guards true at the start, the others are false
+    public String[] initialGuards;
+
+    public int[][] inputs;
+    public int[][] outputs;
+    public int[][] inhibitors;
+    public int[][] readers;
+    public int[][] resets;
+
+    public static NetSpec of(CompiledNet net) {
+        int n = net.getTransitionCount();
+        NetSpec spec = new NetSpec();
+        spec.places = new String[net.getPlaceCount()];
+        for (int p = 0; p < spec.places.length; p++) {
+            spec.places[p] = net.getPlaceLabel(p);
+        }
+        spec.marking = net.getInitialMarking();
+
+        spec.transitions = new String[n];
+        spec.ids = new String[n];
+        spec.timed = new boolean[n];
+        spec.automatic = new boolean[n];
+        spec.distribution = new int[n];
+        spec.rate = new double[n];
+        spec.var1 = new double[n];
+        spec.var2 = new double[n];
+        spec.behaviors = new String[n];
+        for (int t = 0; t < n; t++) {
+            spec.transitions[t] = net.getTransitionLabel(t);
+            spec.ids[t] = net.getTransitionId(t);
+            spec.timed[t] = net.isTimed(t);
+            spec.automatic[t] = net.isAutomatic(t);
+            spec.distribution[t] = net.getDistribution(t);
+            spec.rate[t] = net.getRate(t);
+            spec.var1[t] = net.getVar1(t);
+            spec.var2[t] = net.getVar2(t);
+            spec.behaviors[t] = net.getGuards().getBehavior(t);
+        }
+        BitSet values = net.getInitialGuards();
+        spec.initialGuards = new String[values.cardinality()];
+        for (int g = values.nextSetBit(0), k = 0; g >= 0; g = values.nextSetBit(g + 1)) {
+            spec.initialGuards[k++] = net.getGuards().getGuardName(g);
+        }
+
+        spec.inputs = arcs(net.inputStart, net.inputPlace, net.inputWeight);
+        spec.outputs = arcs(net.outputStart, net.outputPlace, net.outputWeight);
+        spec.inhibitors = arcs(net.inhibitorStart, net.inhibitorPlace, net.inhibitorWeight);
+        spec.readers = arcs(net.readerStart, net.readerPlace, net.readerWeight);
+        spec.resets = arcs(net.resetStart, net.resetPlace, null);
+        return spec;
+    }
+
+    private static int[][] arcs(int[] start, int[] place, int[] weight) {
+        int[][] arcs = new int[place.length][];
+        for (int t = 0; t + 1 < start.length; t++) {
+            for (int k = start[t]; k < start[t + 1]; k++) {
+                arcs[k] = weight != null ? new int[]{t, place[k], weight[k]} : new int[]{t, place[k]};
+            }
+        }
+        return arcs;
+    }
+
+    /**
+     * Builds the net again.
+     *
+     * @throws IllegalArgumentException if the description is incomplete or
+     *                                  inconsistent
+     */
+    public CompiledNet compile() {
+        if (places == null || marking == null || transitions == null || timed == null || automatic == null
+                || distribution == null || rate == null || var1 == null || var2 == null) {
+            throw new IllegalArgumentException("Incomplete net description");
+        }
+        int pCount = places.length;
+        int n = transitions.length;
+        if (marking.length != pCount || timed.length != n || automatic.length != n || distribution.length != n
+                || rate.length != n || var1.length != n || var2.length != n
+                || (ids != null && ids.length != n) || (behaviors != null && behaviors.length != n)) {
+            throw new IllegalArgumentException("The arrays of the net description differ in length");
+        }
+
+        int[][] iMinus = matrix(inputs, pCount, n, "input");
+        int[][] iPlus = matrix(outputs, pCount, n, "output");
+        int[][] inhibition = matrix(inhibitors, pCount, n, "inhibitor");
+        int[][] reader = matrix(readers, pCount, n, "read");
+        int[][] reset = matrix(resets, pCount, n, "reset");
+        String[] transitionIds = ids != null ? ids : transitions;
+        GuardTable guards = behaviors != null ? GuardTable.compile(transitions, behaviors) : GuardTable.unguarded(n);
+        CompiledNet net = new CompiledNet(iMinus, iPlus, inhibition, reset, reader, marking, timed, automatic,
+                distribution, rate, var1, var2, places, transitions, transitionIds, guards);
+        return initialGuards != null ? net.withInitialGuards(Arrays.asList(initialGuards)) : net;
+    }
+
+    private static int[][] matrix(int[][] arcs, int places, int transitions, String kind) {
+        int[][] matrix = new int[places][transitions];
+        if (arcs == null) {
+            return matrix;
+        }
+        for (int[] arc : arcs) {
+            if (arc == null || arc.length < 2 || arc[0] < 0 || arc[0] >= transitions || arc[1] < 0 || arc[1] >= places) {
+                throw new IllegalArgumentException("Invalid " + kind + " arc");
+            }
+            int weight = arc.length > 2 ? arc[2] : 1;
+            if (weight < 1) {
+                throw new IllegalArgumentException("Invalid weight of " + kind + " arc");
+            }
+            matrix[arc[1]][arc[0]] = weight;
+        }
+        return matrix;
+    }
+}
@@ -0,0 +1,231 @@
+package org.petrinator.simulation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Token count of one place over simulated time, recorded only when it
+ * changes.
+ *
+ * Changes are kept in blocks of MarkingHistory.BLOCK_SIZE: the times as
+ * doubles and the token differences as zigzag varints, which take a single
+ * byte for the usual firings that move a few tokens. Old blocks may be
+ * moved to the spill file of the MarkingHistory when it reaches its memory
+ * cap; readers load them back transparently.
+ */
+public class PlaceHistory {
+
+    private final MarkingHistory owner;
+    private final String label;
+    private final ArrayList<Block> blocks = new ArrayList<>();
+    private double startTime;
+    private int initialTokens;
+    private int lastTokens;
+    private int minTokens;
+    private int maxTokens;
+    private long count;
+
+    PlaceHistory(MarkingHistory owner, String label) {
+        this.owner = owner;
+        this.label = label;
+    }
+
+    void start(double time, int tokens) {
+        blocks.clear();
+        startTime = time;
+        initialTokens = tokens;
+        lastTokens = tokens;
+        minTokens = tokens;
+        maxTokens = tokens;
+        count = 0;
+    }
+
+    void record(double time, int tokens) {
+        if (tokens == lastTokens) {
+            return;
+        }
+        Block block = blocks.isEmpty() ? null : blocks.get(blocks.size() - 1);
+        if (block == null || block.count == MarkingHistory.BLOCK_SIZE) {
+            block = new Block(lastTokens);
+            blocks.add(block);
+            owner.blockStarted(block);
+        }
+        int before = block.bytes();
+        block.append(time, tokens - lastTokens);
+        owner.bytesAdded(block.bytes() - before);
+        if (block.count == MarkingHistory.BLOCK_SIZE) {
+            owner.blockFilled(block);
+        }
+
+        lastTokens = tokens;
+        minTokens = Math.min(minTokens, tokens);
+        maxTokens = Math.max(maxTokens, tokens);
+        count++;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public double getStartTime() {
+        return startTime;
+    }
+
+    public int getInitialTokens() {
+        return initialTokens;
+    }
+
+    public int getLastTokens() {
+        return lastTokens;
+    }
+
+    public int getMinTokens() {
+        return minTokens;
+    }
+
+    public int getMaxTokens() {
+        return maxTokens;
+    }
+
+    /**
+     * Returns the number of recorded changes.
+     */
+    public long getChangeCount() {
+        return count;
+    }
+
+    /**
+     * Returns a reader positioned before the first change.
+     */
+    public Reader reader() {
+        return new Reader();
+    }
+
+    /**
+     * Changes of one block. When spilled, the arrays are dropped and
+     * fileOffset tells where they are.
+     */
+    static class Block {
+        final int baseTokens;
+        double[] times = new double[MarkingHistory.BLOCK_SIZE];
+        byte[] deltas = new byte[MarkingHistory.BLOCK_SIZE];
+        int count;
+        int deltaLength;
+        long fileOffset = -1;
+
+        Block(int baseTokens) {
+            this.baseTokens = baseTokens;
+        }
+
+        void append(double time, int delta) {
+            times[count++] = time;
+            // Zigzag, so small negative differences are small too
+            int value = (delta << 1) ^ (delta >> 31);
+            if (deltaLength + 5 > deltas.length) {
+                deltas = Arrays.copyOf(deltas, Math.max(deltas.length * 2, deltaLength + 5));
+            }
+            while ((value & ~0x7f) != 0) {
+                deltas[deltaLength++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            deltas[deltaLength++] = (byte) value;
+        }
+
+        /**
+         * Bytes taken in memory by the arrays.
+         */
+        int bytes() {
+            return times == null ? 0 : times.length * Double.BYTES + deltas.length;
+        }
+
+        boolean isSpilled() {
+            return fileOffset >= 0;
+        }
+    }
+
+    /**
+     * Reads the changes in order:
+     *
+     *   PlaceHistory.Reader r = history.reader();
+     *   while (r.next()) { use r.getTime() and r.getTokens() }
+     *
+     * A reader allocates its buffers once, so reading does not allocate per
+     * change. The history must not be written while it is being read.
+     */
+    public class Reader {
+
+        private int blockIndex = -1;
+        private double[] times;
+        private byte[] deltas;
+        private int count;
+        private int index;
+        private int deltaPosition;
+        private double time;
+        private int tokens = initialTokens;
+        private double[] spilledTimes;
+        private byte[] spilledDeltas;
+
+        private Reader() {
+        }
+
+        /**
+         * Moves to the next change.
+         *
+         * @return false if there are no more changes
+         */
+        public boolean next() {
+            while (times == null || index + 1 >= count) {
+                if (blockIndex + 1 >= blocks.size()) {
+                    return false;
+                }
+                load(blocks.get(++blockIndex));
+            }
+            index++;
+            time = times[index];
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = deltas[deltaPosition++];
+                value |= (b & 0x7f) << shift;
+                shift += 7;
+            } while (b < 0);
+            tokens += (value >>> 1) ^ -(value & 1);
+            return true;
+        }
+
+        /**
+         * Returns the time of the current change.
+         */
+        public double getTime() {
+            return time;
+        }
+
+        /**
+         * Returns the tokens of the place from the current change on, or the
+         * initial tokens before the first call to next().
+         */
+        public int getTokens() {
+            return tokens;
+        }
+
+        private void load(Block block) {
+            index = -1;
+            deltaPosition = 0;
+            count = block.count;
+            tokens = block.baseTokens;
+            if (block.isSpilled()) {
+                if (spilledTimes == null) {
+                    spilledTimes = new double[MarkingHistory.BLOCK_SIZE];
+                    spilledDeltas = new byte[MarkingHistory.BLOCK_SIZE * 5];
+                }
+                owner.readSpilled(block, spilledTimes, spilledDeltas);
+                times = spilledTimes;
+                deltas = spilledDeltas;
+            } else {
+                times = block.times;
+                deltas = block.deltas;
+            }
+        }
+    }
+}
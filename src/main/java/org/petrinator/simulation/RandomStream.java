@@ -0,0 +1,120 @@
+package org.petrinator.simulation;
+
+/**
+ * Splittable pseudo random generator (SplitMix64, the algorithm behind
+ * java.util.SplittableRandom). Unlike SplittableRandom its state can be
+ * read and restored, so a simulation can be checkpointed and resumed with
+ * the very same random sequence, and split() derives statistically
+ * independent streams for parallel replications from a single seed.
+ *
+ * Instances are not thread safe; every thread must use its own stream.
+ */
+public final class RandomStream {
+
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+    private static final double DOUBLE_UNIT = 0x1.0p-53;
+
+    private long seed;
+    private long gamma;
+
+    public RandomStream(long seed) {
+        this(seed, GOLDEN_GAMMA);
+    }
+
+    private RandomStream(long seed, long gamma) {
+        this.seed = seed;
+        this.gamma = gamma;
+    }
+
+    /**
+     * Recreates a stream from the values returned by getState().
+     */
+    public static RandomStream fromState(long[] state) {
+        if (state.length != 2 || (state[1] & 1) == 0) {
+            throw new IllegalArgumentException("Not a random stream state");
+        }
+        return new RandomStream(state[0], state[1]);
+    }
+
+    /**
+     * Returns the whole state of the stream, {seed, gamma}.
+     */
+    public long[] getState() {
+        return new long[]{seed, gamma};
+    }
+
+    /**
+     * Goes back to the values returned by getState(), for the streams
+     * already handed to samplers and policies.
+     */
+    public void setState(long[] state) {
+        if (state.length != 2 || (state[1] & 1) == 0) {
+            throw new IllegalArgumentException("Not a random stream state");
+        }
+        seed = state[0];
+        gamma = state[1];
+    }
+
+    /**
+     * Returns a new stream, independent of this one, and advances this one.
+     */
+    public RandomStream split() {
+        return new RandomStream(mix64(nextSeed()), mixGamma(nextSeed()));
+    }
+
+    public long nextLong() {
+        return mix64(nextSeed());
+    }
+
+    /**
+     * Returns a uniform double in [0, 1).
+     */
+    public double nextDouble() {
+        return (mix64(nextSeed()) >>> 11) * DOUBLE_UNIT;
+    }
+
+    /**
+     * Returns a uniform double in (0, 1], safe to pass to Math.log.
+     */
+    public double nextDoubleNonZero() {
+        return ((mix64(nextSeed()) >>> 11) + 1) * DOUBLE_UNIT;
+    }
+
+    /**
+     * Returns a uniform int in [0, bound).
+     */
+    public int nextInt(int bound) {
+        if (bound <= 0) {
+            throw new IllegalArgumentException("bound must be positive");
+        }
+        // Lemire's multiply and reject, unbiased and usually without division
+        long m = (nextLong() >>> 32) * bound;
+        long low = m & 0xffffffffL;
+        if (low < bound) {
+            long threshold = (0x100000000L - bound) % bound;
+            while (low < threshold) {
+                m = (nextLong() >>> 32) * bound;
+                low = m & 0xffffffffL;
+            }
+        }
+        return (int) (m >>> 32);
+    }
+
+    private long nextSeed() {
+        return seed += gamma;
+    }
+
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    private static long mixGamma(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        z = (z ^ (z >>> 33)) | 1L;
+        int n = Long.bitCount(z ^ (z >>> 1));
+        return (n < 24) ? z ^ 0xaaaaaaaaaaaaaaaaL : z;
+    }
+}
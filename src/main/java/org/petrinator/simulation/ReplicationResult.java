@@ -0,0 +1,190 @@
+package org.petrinator.simulation;
+
+import org.apache.commons.math3.distribution.TDistribution;
+
+import java.util.List;
+
+/**
+ * Statistics aggregated over independent replications. For every place and
+ * transition it gives the mean over the replications and the half width of
+ * its Student t confidence interval.
+ */
+public class ReplicationResult {
+
+    private final CompiledNet net;
+    private final int replications;
+    private int requested;
+    private final double confidence;
+    private final long seed;
+    private final long elapsedMillis;
+    private final long totalFirings;
+
+    private final double[] meanTokens;
+    private final double[] meanTokensHalfWidth;
+    private final double[] throughput;
+    private final double[] throughputHalfWidth;
+    private final double meanDuration;
+
+    ReplicationResult(CompiledNet net, List<RunStatistics> runs, double confidence, long seed, long elapsedMillis) {
+        this(net, tokensOf(runs), throughputsOf(runs), firingsOf(runs), durationOf(runs),
+                confidence, seed, elapsedMillis);
+    }
+
+    /**
+     * @param tokens       mean tokens of every place, one row per replication
+     * @param rates        throughput of every transition, one row per replication
+     * @param meanDuration simulated duration of a replication, averaged
+     */
+    ReplicationResult(CompiledNet net, double[][] tokens, double[][] rates, long totalFirings, double meanDuration,
+                      double confidence, long seed, long elapsedMillis) {
+        this.net = net;
+        this.replications = tokens.length;
+        this.requested = replications;
+        this.confidence = confidence;
+        this.seed = seed;
+        this.elapsedMillis = elapsedMillis;
+        this.totalFirings = totalFirings;
+        this.meanDuration = meanDuration;
+
+        int places = net.getPlaceCount();
+        int transitions = net.getTransitionCount();
+        double quantile = replications > 1
+                ? new TDistribution(replications - 1).inverseCumulativeProbability(0.5 + confidence / 2)
+                : Double.NaN;
+        meanTokens = new double[places];
+        meanTokensHalfWidth = new double[places];
+        for (int p = 0; p < places; p++) {
+            summarize(tokens, p, quantile, meanTokens, meanTokensHalfWidth);
+        }
+        throughput = new double[transitions];
+        throughputHalfWidth = new double[transitions];
+        for (int t = 0; t < transitions; t++) {
+            summarize(rates, t, quantile, throughput, throughputHalfWidth);
+        }
+    }
+
+    private static double[][] tokensOf(List<RunStatistics> runs) {
+        double[][] tokens = new double[runs.size()][];
+        for (int i = 0; i < tokens.length; i++) {
+            tokens[i] = runs.get(i).getMeanTokens();
+        }
+        return tokens;
+    }
+
+    private static double[][] throughputsOf(List<RunStatistics> runs) {
+        double[][] rates = new double[runs.size()][];
+        for (int i = 0; i < rates.length; i++) {
+            rates[i] = runs.get(i).getThroughput();
+        }
+        return rates;
+    }
+
+    private static long firingsOf(List<RunStatistics> runs) {
+        long firings = 0;
+        for (RunStatistics run : runs) {
+            firings += run.getFirings();
+        }
+        return firings;
+    }
+
+    private static double durationOf(List<RunStatistics> runs) {
+        double duration = 0;
+        for (RunStatistics run : runs) {
+            duration += run.getDuration();
+        }
+        return runs.isEmpty() ? 0 : duration / runs.size();
+    }
+
+    private void summarize(double[][] samples, int column, double quantile, double[] mean, double[] halfWidth) {
+        int n = samples.length;
+        double sum = 0;
+        for (double[] sample : samples) {
+            sum += sample[column];
+        }
+        double average = n > 0 ? sum / n : Double.NaN;
+        double squares = 0;
+        for (double[] sample : samples) {
+            double d = sample[column] - average;
+            squares += d * d;
+        }
+        mean[column] = average;
+        halfWidth[column] = n > 1 ? quantile * Math.sqrt(squares / (n - 1) / n) : Double.NaN;
+    }
+
+    public CompiledNet getNet() {
+        return net;
+    }
+
+    /**
+     * Returns the number of replications that completed and were
+     * aggregated.
+     */
+    public int getReplications() {
+        return replications;
+    }
+
+    /**
+     * Returns the number of replications that were asked for, more than
+     * getReplications() if the run was interrupted.
+     */
+    public int getRequestedReplications() {
+        return requested;
+    }
+
+    void setRequestedReplications(int requested) {
+        this.requested = requested;
+    }
+
+    /**
+     * Tells if every requested replication completed.
+     */
+    public boolean isComplete() {
+        return replications == requested;
+    }
+
+    public double getConfidence() {
+        return confidence;
+    }
+
+    /**
+     * Returns the master seed, which reproduces these results.
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public long getTotalFirings() {
+        return totalFirings;
+    }
+
+    /**
+     * Returns the simulated duration of a replication, averaged.
+     */
+    public double getMeanDuration() {
+        return meanDuration;
+    }
+
+    public double getMeanTokens(int place) {
+        return meanTokens[place];
+    }
+
+    /**
+     * Returns the half width of the confidence interval of the mean tokens,
+     * NaN with a single replication.
+     */
+    public double getMeanTokensHalfWidth(int place) {
+        return meanTokensHalfWidth[place];
+    }
+
+    public double getThroughput(int transition) {
+        return throughput[transition];
+    }
+
+    public double getThroughputHalfWidth(int transition) {
+        return throughputHalfWidth[transition];
+    }
+}
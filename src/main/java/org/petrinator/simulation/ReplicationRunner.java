@@ -0,0 +1,290 @@
+package org.petrinator.simulation;
+
+import org.petrinator.simulation.policy.ConflictPolicies;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Runs independent replications of a simulation in parallel.
+ *
+ * Every replication has its own engine, marking and random stream. The
+ * streams are split from a master stream in replication order before any
+ * run starts, so the results only depend on the master seed and never on
+ * the number of threads or on scheduling.
+ *
+ * With a batch size, replications of nets whose timed transitions are all
+ * exponential run in groups of that many lanes of a BatchSimulator, one
+ * group per task, which gives much higher throughput when thousands of
+ * replications are needed. Batches only support the random conflict
+ * policy; other nets and policies run one engine per replication.
+ *
+ * If the run is interrupted, only the replications that completed are
+ * aggregated; the result tells how many of the requested ones they are.
+ * The threads are kept between runs and released by shutdown().
+ */
+public class ReplicationRunner {
+
+    private final CompiledNet net;
+
+    private int replications = 10;
+    private long maxFirings = 10000;
+    private double maxTime = Double.POSITIVE_INFINITY;
+    private long seed = System.nanoTime();
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private double confidence = 0.95;
+    private String conflictPolicy = ConflictPolicies.RANDOM;
+    private int batchSize = 0;
+    private ExecutorService executor;
+
+    public ReplicationRunner(CompiledNet net) {
+        this.net = net;
+    }
+
+    public int getReplications() {
+        return replications;
+    }
+
+    public void setReplications(int replications) {
+        if (replications < 1) {
+            throw new IllegalArgumentException("At least one replication is needed");
+        }
+        this.replications = replications;
+    }
+
+    public long getMaxFirings() {
+        return maxFirings;
+    }
+
+    /**
+     * Sets the number of firings after which every run stops.
+     */
+    public void setMaxFirings(long maxFirings) {
+        this.maxFirings = maxFirings;
+    }
+
+    public double getMaxTime() {
+        return maxTime;
+    }
+
+    /**
+     * Sets the simulated time, in seconds, after which every run stops.
+     */
+    public void setMaxTime(double maxTime) {
+        this.maxTime = maxTime;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public String getConflictPolicy() {
+        return conflictPolicy;
+    }
+
+    /**
+     * Sets the policy for conflicts among immediate transitions, one of
+     * ConflictPolicies.NAMES.
+     */
+    public void setConflictPolicy(String conflictPolicy) {
+        if (!Arrays.asList(ConflictPolicies.NAMES).contains(conflictPolicy)) {
+            throw new IllegalArgumentException("Unknown conflict policy " + conflictPolicy);
+        }
+        this.conflictPolicy = conflictPolicy;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Sets the number of replications simulated together by a
+     * BatchSimulator, 0 to run one engine per replication.
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 0) {
+            throw new IllegalArgumentException("Negative batch size");
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Tells if run() will use batches: a batch size was set, the net is
+     * supported by BatchSimulator and the conflict policy is random.
+     */
+    public boolean isBatched() {
+        return batchSize > 0 && ConflictPolicies.RANDOM.equals(conflictPolicy) && BatchSimulator.supports(net);
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public synchronized void setThreads(int threads) {
+        if (threads != this.threads) {
+            shutdown();
+        }
+        this.threads = threads;
+    }
+
+    public double getConfidence() {
+        return confidence;
+    }
+
+    /**
+     * Sets the confidence level of the intervals, e.g. 0.95.
+     */
+    public void setConfidence(double confidence) {
+        this.confidence = confidence;
+    }
+
+    /**
+     * Runs all the replications and aggregates their statistics.
+     */
+    public ReplicationResult run() {
+        long start = System.currentTimeMillis();
+        RandomStream master = new RandomStream(seed);
+        final RandomStream[] streams = new RandomStream[replications];
+        for (int i = 0; i < replications; i++) {
+            streams[i] = master.split();
+        }
+
+        if (isBatched()) {
+            return runBatches(streams, start);
+        }
+
+        List<Callable<RunStatistics>> tasks = new ArrayList<>();
+        for (int i = 0; i < replications; i++) {
+            final RandomStream stream = streams[i];
+            tasks.add(() -> runOne(stream));
+        }
+        List<RunStatistics> finished = execute(tasks);
+
+        ReplicationResult result = new ReplicationResult(net, finished, confidence, seed,
+                System.currentTimeMillis() - start);
+        result.setRequestedReplications(replications);
+        return result;
+    }
+
+    private ReplicationResult runBatches(final RandomStream[] streams, long start) {
+        List<Callable<BatchSimulator>> tasks = new ArrayList<>();
+        for (int i = 0; i < replications; i += batchSize) {
+            final RandomStream[] lanes = Arrays.copyOfRange(streams, i, Math.min(i + batchSize, replications));
+            tasks.add(() -> {
+                BatchSimulator batch = new BatchSimulator(net, lanes);
+                batch.run(maxFirings, maxTime);
+                return batch;
+            });
+        }
+        List<BatchSimulator> batches = execute(tasks);
+
+        int finished = 0;
+        for (BatchSimulator batch : batches) {
+            finished += batch.getLanes();
+        }
+        double[][] tokens = new double[finished][];
+        double[][] rates = new double[finished][];
+        double duration = 0;
+        long total = 0;
+        int i = 0;
+        for (BatchSimulator batch : batches) {
+            for (int k = 0; k < batch.getLanes(); k++, i++) {
+                tokens[i] = batch.getMeanTokens(k);
+                rates[i] = batch.getThroughput(k);
+                duration += batch.getDuration(k);
+                total += batch.getFirings(k);
+            }
+        }
+        ReplicationResult result = new ReplicationResult(net, tokens, rates, total,
+                finished > 0 ? duration / finished : 0, confidence, seed, System.currentTimeMillis() - start);
+        result.setRequestedReplications(replications);
+        return result;
+    }
+
+    /**
+     * Runs the tasks in the pool and returns the results of those that
+     * completed, in task order. If the calling thread is interrupted, the
+     * tasks still running are cancelled and their partial runs dropped.
+     */
+    private <T> List<T> execute(List<Callable<T>> tasks) {
+        ExecutorService executor = executor();
+        List<Future<T>> futures = new ArrayList<>();
+        try {
+            for (Callable<T> task : tasks) {
+                futures.add(executor.submit(task));
+            }
+            for (Future<T> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            for (Future<T> future : futures) {
+                future.cancel(true);
+            }
+        }
+
+        // A cancelled task never counts, even if its engine stopped on its own
+        List<T> completed = new ArrayList<>();
+        for (Future<T> future : futures) {
+            if (future.isDone() && !future.isCancelled()) {
+                try {
+                    completed.add(future.get());
+                } catch (InterruptedException | ExecutionException e) {
+                    // Only completed tasks are left, they do not block nor fail
+                }
+            }
+        }
+        return completed;
+    }
+
+    private synchronized ExecutorService executor() {
+        if (executor == null) {
+            ThreadFactory daemons = task -> {
+                Thread thread = Executors.defaultThreadFactory().newThread(task);
+                thread.setDaemon(true);
+                return thread;
+            };
+            executor = Executors.newFixedThreadPool(Math.max(1, threads), daemons);
+        }
+        return executor;
+    }
+
+    /**
+     * Stops the threads of the runner. It can still run again, which starts
+     * new ones.
+     */
+    public synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    private RunStatistics runOne(RandomStream stream) {
+        SimulationEngine engine = new SimulationEngine(net, stream,
+                ConflictPolicies.create(conflictPolicy, stream.split()));
+        RunStatistics statistics = new RunStatistics(net);
+        statistics.start(engine.getTime(), engine.getMarking());
+        engine.addListener(statistics);
+        engine.run(maxFirings, maxTime);
+        statistics.finish(engine.getTime());
+        return statistics;
+    }
+}
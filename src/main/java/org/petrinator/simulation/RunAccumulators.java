@@ -0,0 +1,220 @@
+package org.petrinator.simulation;
+
+import org.petrinator.simulation.stats.P2Quantile;
+import org.petrinator.simulation.stats.TimeWeighted;
+import org.petrinator.simulation.stats.Welford;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Online statistics of one run, in memory independent of its length.
+ *
+ * For every place, the time weighted mean, standard deviation, minimum
+ * and maximum of its tokens. For every transition, the mean, standard
+ * deviation, minimum and maximum of the time between its firings, and
+ * P-square estimates of its median and 95th percentile. As in
+ * RunStatistics, only the places the fired transition touches are
+ * updated, and nets without timed transitions use the number of firings
+ * as their clock.
+ */
+public class RunAccumulators implements SimulationListener {
+
+    public static final double[] QUANTILES = {0.5, 0.95};
+
+    private final CompiledNet net;
+    private final boolean timed;
+    private final TimeWeighted[] tokens;
+    private final Welford[] intervals;
+    private final P2Quantile[][] quantiles;
+    private final double[] lastFiring;
+    private long events;
+
+    public RunAccumulators(CompiledNet net) {
+        this.net = net;
+        this.timed = net.anyTimed();
+        tokens = new TimeWeighted[net.getPlaceCount()];
+        for (int p = 0; p < tokens.length; p++) {
+            tokens[p] = new TimeWeighted();
+        }
+        intervals = new Welford[net.getTransitionCount()];
+        quantiles = new P2Quantile[intervals.length][QUANTILES.length];
+        for (int t = 0; t < intervals.length; t++) {
+            intervals[t] = new Welford();
+            for (int q = 0; q < QUANTILES.length; q++) {
+                quantiles[t][q] = new P2Quantile(QUANTILES[q]);
+            }
+        }
+        lastFiring = new double[intervals.length];
+    }
+
+    /**
+     * Starts collecting from the given marking and time.
+     */
+    public void start(double time, int[] marking) {
+        events = 0;
+        double clock = timed ? time : 0;
+        for (int p = 0; p < tokens.length; p++) {
+            tokens[p].start(clock, marking[p]);
+        }
+        for (int t = 0; t < intervals.length; t++) {
+            intervals[t].clear();
+            for (P2Quantile quantile : quantiles[t]) {
+                quantile.clear();
+            }
+        }
+        // The first interval of a transition counts from the start
+        Arrays.fill(lastFiring, clock);
+    }
+
+    @Override
+    public void transitionFired(int transition, double time, int[] marking) {
+        double clock = timed ? time : ++events;
+        update(net.inputPlace, net.inputStart, transition, clock, marking);
+        update(net.resetPlace, net.resetStart, transition, clock, marking);
+        update(net.outputPlace, net.outputStart, transition, clock, marking);
+
+        double interval = clock - lastFiring[transition];
+        lastFiring[transition] = clock;
+        intervals[transition].add(interval);
+        for (P2Quantile quantile : quantiles[transition]) {
+            quantile.add(interval);
+        }
+    }
+
+    private void update(int[] places, int[] start, int transition, double clock, int[] marking) {
+        for (int k = start[transition]; k < start[transition + 1]; k++) {
+            int p = places[k];
+            if (marking[p] != tokens[p].getValue()) {
+                tokens[p].update(clock, marking[p]);
+            }
+        }
+    }
+
+    /**
+     * Closes the run at the given time, which may be later than the last
+     * firing when the run was limited by time.
+     */
+    public void finish(double time) {
+        double clock = timed ? time : events;
+        for (TimeWeighted place : tokens) {
+            place.finish(clock);
+        }
+    }
+
+    /**
+     * Writes the state of all the accumulators, for a checkpoint.
+     */
+    void write(DataOutput out) throws IOException {
+        out.writeLong(events);
+        for (TimeWeighted place : tokens) {
+            place.write(out);
+        }
+        for (int t = 0; t < intervals.length; t++) {
+            out.writeDouble(lastFiring[t]);
+            intervals[t].write(out);
+            for (P2Quantile quantile : quantiles[t]) {
+                quantile.write(out);
+            }
+        }
+    }
+
+    /**
+     * Goes back to the state written by write(), instead of start().
+     */
+    void read(DataInput in) throws IOException {
+        events = in.readLong();
+        for (TimeWeighted place : tokens) {
+            place.read(in);
+        }
+        for (int t = 0; t < intervals.length; t++) {
+            lastFiring[t] = in.readDouble();
+            intervals[t].read(in);
+            for (P2Quantile quantile : quantiles[t]) {
+                quantile.read(in);
+            }
+        }
+    }
+
+    public CompiledNet getNet() {
+        return net;
+    }
+
+    public TimeWeighted getTokens(int place) {
+        return tokens[place];
+    }
+
+    /**
+     * Returns the times between firings of a transition, the first one
+     * counted from the start of the run.
+     */
+    public Welford getIntervals(int transition) {
+        return intervals[transition];
+    }
+
+    /**
+     * Returns the estimate of QUANTILES[q] of the times between firings of
+     * a transition.
+     */
+    public P2Quantile getQuantile(int transition, int q) {
+        return quantiles[transition][q];
+    }
+
+    /**
+     * Tells if the clock is simulated time, or the number of firings for
+     * nets without timed transitions.
+     */
+    public boolean isTimed() {
+        return timed;
+    }
+
+    /**
+     * Writes the statistics as CSV: one row per place, then one row per
+     * transition. Columns that do not apply to an element are left empty.
+     */
+    public void writeCsv(Writer writer) {
+        PrintWriter out = new PrintWriter(writer);
+        out.print("element,label,count,mean,std dev,min,max");
+        for (double q : QUANTILES) {
+            out.print(",p" + Math.round(q * 100));
+        }
+        out.println();
+        for (int p = 0; p < tokens.length; p++) {
+            TimeWeighted place = tokens[p];
+            out.print("place," + quote(net.getPlaceLabel(p)) + ",," + number(place.getMean()) + ","
+                    + number(place.getStandardDeviation()) + "," + number(place.getMin()) + ","
+                    + number(place.getMax()));
+            for (int q = 0; q < QUANTILES.length; q++) {
+                out.print(",");
+            }
+            out.println();
+        }
+        for (int t = 0; t < intervals.length; t++) {
+            Welford interval = intervals[t];
+            out.print("transition," + quote(net.getTransitionLabel(t)) + "," + interval.getCount() + ","
+                    + number(interval.getMean()) + "," + number(interval.getStandardDeviation()) + ","
+                    + number(interval.getMin()) + "," + number(interval.getMax()));
+            for (P2Quantile quantile : quantiles[t]) {
+                out.print("," + number(quantile.getQuantile()));
+            }
+            out.println();
+        }
+        out.flush();
+    }
+
+    private static String number(double x) {
+        return x == x ? String.format(Locale.ROOT, "%.6g", x) : "";
+    }
+
+    private static String quote(String label) {
+        if (label.indexOf(',') < 0 && label.indexOf('"') < 0) {
+            return label;
+        }
+        return '"' + label.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,181 @@
+package org.petrinator.simulation;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Collects the statistics of one simulation run: firings of every
+ * transition and the mean number of tokens of every place.
+ *
+ * Token means are weighted by simulated time. Only the places touched by
+ * the fired transition are updated, each one keeping the time of its last
+ * change, so a firing costs the same whatever the size of the net. For nets
+ * without timed transitions simulated time never advances; the means are
+ * then weighted by firings instead, every marking a firing happens in
+ * counting once.
+ */
+public class RunStatistics implements SimulationListener {
+
+    private final CompiledNet net;
+    private final long[] firings;
+    private final int[] tokens;
+    private final double[] area;
+    private final double[] lastChange;
+    private final double[] eventArea;
+    private final long[] lastChangeEvent;
+
+    private double startTime;
+    private double endTime;
+    private long events;
+
+    public RunStatistics(CompiledNet net) {
+        this.net = net;
+        this.firings = new long[net.getTransitionCount()];
+        this.tokens = new int[net.getPlaceCount()];
+        this.area = new double[net.getPlaceCount()];
+        this.lastChange = new double[net.getPlaceCount()];
+        this.eventArea = new double[net.getPlaceCount()];
+        this.lastChangeEvent = new long[net.getPlaceCount()];
+    }
+
+    /**
+     * Starts collecting from the given marking and time.
+     */
+    public void start(double time, int[] marking) {
+        startTime = time;
+        endTime = time;
+        events = 0;
+        System.arraycopy(marking, 0, tokens, 0, tokens.length);
+        Arrays.fill(firings, 0);
+        Arrays.fill(area, 0);
+        Arrays.fill(eventArea, 0);
+        Arrays.fill(lastChange, time);
+        Arrays.fill(lastChangeEvent, 0);
+    }
+
+    @Override
+    public void transitionFired(int transition, double time, int[] marking) {
+        firings[transition]++;
+        events++;
+        endTime = time;
+        update(net.inputPlace, net.inputStart, transition, time, marking);
+        update(net.resetPlace, net.resetStart, transition, time, marking);
+        update(net.outputPlace, net.outputStart, transition, time, marking);
+    }
+
+    private void update(int[] places, int[] start, int transition, double time, int[] marking) {
+        for (int k = start[transition]; k < start[transition + 1]; k++) {
+            int p = places[k];
+            if (marking[p] != tokens[p]) {
+                area[p] += tokens[p] * (time - lastChange[p]);
+                lastChange[p] = time;
+                eventArea[p] += tokens[p] * (double) (events - lastChangeEvent[p]);
+                lastChangeEvent[p] = events;
+                tokens[p] = marking[p];
+            }
+        }
+    }
+
+    /**
+     * Closes the run at the given time, which may be later than the last
+     * firing when the run was limited by time.
+     */
+    public void finish(double time) {
+        endTime = Math.max(endTime, time);
+        for (int p = 0; p < tokens.length; p++) {
+            area[p] += tokens[p] * (endTime - lastChange[p]);
+            lastChange[p] = endTime;
+            eventArea[p] += tokens[p] * (double) (events - lastChangeEvent[p]);
+            lastChangeEvent[p] = events;
+        }
+    }
+
+    /**
+     * Writes the state of an unfinished run, for a checkpoint.
+     */
+    void write(DataOutput out) throws IOException {
+        out.writeDouble(startTime);
+        out.writeDouble(endTime);
+        out.writeLong(events);
+        for (long f : firings) {
+            out.writeLong(f);
+        }
+        for (int p = 0; p < tokens.length; p++) {
+            out.writeInt(tokens[p]);
+            out.writeDouble(area[p]);
+            out.writeDouble(lastChange[p]);
+            out.writeDouble(eventArea[p]);
+            out.writeLong(lastChangeEvent[p]);
+        }
+    }
+
+    /**
+     * Goes back to the state written by write(), instead of start().
+     */
+    void read(DataInput in) throws IOException {
+        startTime = in.readDouble();
+        endTime = in.readDouble();
+        events = in.readLong();
+        for (int t = 0; t < firings.length; t++) {
+            firings[t] = in.readLong();
+        }
+        for (int p = 0; p < tokens.length; p++) {
+            tokens[p] = in.readInt();
+            area[p] = in.readDouble();
+            lastChange[p] = in.readDouble();
+            eventArea[p] = in.readDouble();
+            lastChangeEvent[p] = in.readLong();
+        }
+    }
+
+    /**
+     * Returns the simulated duration of the run.
+     */
+    public double getDuration() {
+        return endTime - startTime;
+    }
+
+    public long getFirings() {
+        return events;
+    }
+
+    public long getFirings(int transition) {
+        return firings[transition];
+    }
+
+    /**
+     * Returns the time averaged number of tokens of every place, or the
+     * firing averaged one if no simulated time passed.
+     */
+    public double[] getMeanTokens() {
+        double[] mean = new double[tokens.length];
+        double duration = getDuration();
+        for (int p = 0; p < mean.length; p++) {
+            if (duration > 0) {
+                mean[p] = area[p] / duration;
+            } else {
+                mean[p] = events > 0 ? eventArea[p] / events : tokens[p];
+            }
+        }
+        return mean;
+    }
+
+    /**
+     * Returns the firings per second of simulated time of every transition,
+     * or the fraction of the firings of each one if no simulated time passed.
+     */
+    public double[] getThroughput() {
+        double[] throughput = new double[firings.length];
+        double duration = getDuration();
+        for (int t = 0; t < throughput.length; t++) {
+            if (duration > 0) {
+                throughput[t] = firings[t] / duration;
+            } else {
+                throughput[t] = events > 0 ? (double) firings[t] / events : 0;
+            }
+        }
+        return throughput;
+    }
+}
@@ -0,0 +1,614 @@
+package org.petrinator.simulation;
+
+import org.petrinator.simulation.policy.ConflictPolicy;
+import org.petrinator.simulation.policy.UniformPolicy;
+import org.petrinator.simulation.sampling.Sampler;
+import org.petrinator.simulation.sampling.Samplers;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Single threaded discrete event simulator of a compiled Petri net.
+ *
+ * Immediate (not timed) transitions fire as soon as they are enabled, in
+ * zero time; when several are enabled a ConflictPolicy chooses one, at
+ * random unless told otherwise. The policy draws from its own stream, so
+ * with the same seed a run is always the same, and changing the policy
+ * does not change the delays drawn for the timed transitions. A timed
+ * transition gets a firing delay from its distribution when it becomes
+ * enabled and its absolute firing time (its clock) is kept in an indexed
+ * priority queue; the clock is dropped if it gets disabled first (enabling
+ * memory). Simulated time, in seconds, jumps from one firing to the next,
+ * so it has nothing to do with wall clock time.
+ *
+ * Exponential transitions follow the Gibson-Bruck next reaction method:
+ * a clock is only drawn again for the transition that fired, and when an
+ * exponential transition is disabled its remaining time is kept and reused
+ * when it is enabled again. Since rates are constant and the distribution
+ * is memoryless this is exact, and it saves one random number per
+ * disabling.
+ *
+ * After every firing only the transitions in CompiledNet.getAffected() are
+ * tested again, so the cost of a step depends on the neighbourhood of the
+ * fired transition and not on the size of the net.
+ *
+ * Automatic immediate transitions are not left to the conflict policy:
+ * after every firing the engine computes the closure, firing the enabled
+ * automatic transitions from a FIFO worklist, in zero time, until none is
+ * enabled. A closure longer than getMaxClosureSteps() is taken as a
+ * livelock and stops the run with an IllegalStateException.
+ *
+ * Guards start with the initial values of the net, false unless set.
+ * Their values are kept in a BitSet, and a mask with one bit per
+ * transition tells which ones their guard allows, so testing a transition
+ * is a bit test plus the token test. Setting a guard only tests
+ * again the transitions that reference it.
+ *
+ * With setMetrics() the engine counts its firings, conflicts and enabled
+ * transitions and times some of its steps; without metrics all this costs
+ * a null test per step.
+ */
+public class SimulationEngine {
+
+    public static final int DEFAULT_MAX_CLOSURE_STEPS = 100000;
+
+    private final CompiledNet net;
+    private final Sampler[] samplers;
+    private final int[] marking;
+    private final boolean[] enabled;
+    private final GuardTable guards;
+    private final BitSet guardValues = new BitSet();
+    // Transitions allowed by their guards
+    private final BitSet guardMask = new BitSet();
+    private final IndexedPriorityQueue queue;
+    // Remaining time of disabled exponential transitions, NaN if none
+    private final double[] remaining;
+
+    // Keeps the enabled immediate transitions
+    private final ConflictPolicy policy;
+
+    // Automatic immediate transitions that got enabled, each one at most once
+    private final int[] worklist;
+    private final boolean[] queued;
+    private int worklistHead;
+    private int worklistSize;
+    private int maxClosureSteps = DEFAULT_MAX_CLOSURE_STEPS;
+    private int lastClosureSteps;
+    private int longestClosure;
+    private long closureFirings;
+
+    private SimulationListener[] listeners = new SimulationListener[0];
+    private double time;
+    private long firings;
+    private int enabledCount;
+
+    private SimulationMetrics metrics;
+    // The current step is timed, and the time taken by its listeners so far
+    private boolean timing;
+    private long listenerNanos;
+
+    /**
+     * Creates an engine that resolves conflicts uniformly at random, with a
+     * stream split from the given one.
+     */
+    public SimulationEngine(CompiledNet net, RandomStream random) {
+        this(net, random, new UniformPolicy(random.split()));
+    }
+
+    /**
+     * @param random stream for the delays of timed transitions
+     * @param policy chooses among enabled immediate transitions
+     */
+    public SimulationEngine(CompiledNet net, RandomStream random, ConflictPolicy policy) {
+        this.net = net;
+        this.policy = policy;
+        this.samplers = new Sampler[net.getTransitionCount()];
+        for (int t = 0; t < samplers.length; t++) {
+            if (net.isTimed(t)) {
+                samplers[t] = Samplers.forTransition(random, net, t);
+            }
+        }
+        this.guards = net.getGuards();
+        this.marking = new int[net.getPlaceCount()];
+        this.enabled = new boolean[net.getTransitionCount()];
+        this.queue = new IndexedPriorityQueue(net.getTransitionCount());
+        this.remaining = new double[net.getTransitionCount()];
+        this.worklist = new int[net.getTransitionCount()];
+        this.queued = new boolean[net.getTransitionCount()];
+        reset();
+    }
+
+    public void addListener(SimulationListener listener) {
+        listeners = Arrays.copyOf(listeners, listeners.length + 1);
+        listeners[listeners.length - 1] = listener;
+    }
+
+    /**
+     * Goes back to the initial marking at time zero.
+     */
+    public void reset() {
+        reset(net.getInitialMarking(), 0);
+    }
+
+    /**
+     * Starts again from the given marking and time, with the initial guard
+     * values of the net.
+     * Timed transitions enabled in it get new delays.
+     */
+    public void reset(int[] startMarking, double startTime) {
+        clear(startMarking, startTime, 0);
+        guardValues.clear();
+        guardValues.or(net.getInitialGuards());
+        guards.computeMask(guardValues, guardMask);
+        for (int t = 0; t < net.getTransitionCount(); t++) {
+            if (canFire(t)) {
+                enable(t);
+            }
+        }
+    }
+
+    private void clear(int[] startMarking, double startTime, long startFirings) {
+        System.arraycopy(startMarking, 0, marking, 0, marking.length);
+        time = startTime;
+        firings = startFirings;
+        queue.clear();
+        Arrays.fill(remaining, Double.NaN);
+        policy.reset(net);
+        Arrays.fill(queued, false);
+        worklistHead = 0;
+        worklistSize = 0;
+        lastClosureSteps = 0;
+        longestClosure = 0;
+        closureFirings = 0;
+        Arrays.fill(enabled, false);
+        enabledCount = 0;
+        timing = false;
+    }
+
+    /**
+     * Takes a snapshot of the marking, time, firings, guards and clocks,
+     * to go back to it later with setState(). It must be taken between
+     * steps, not from a listener.
+     */
+    public EngineState getState() {
+        int timed = 0;
+        int preempted = 0;
+        for (int t = 0; t < enabled.length; t++) {
+            if (enabled[t] && net.isTimed(t)) {
+                timed++;
+            }
+            if (remaining[t] == remaining[t]) {
+                preempted++;
+            }
+        }
+        int[] clocks = new int[timed];
+        double[] clockTimes = new double[timed];
+        int[] held = new int[preempted];
+        double[] heldTimes = new double[preempted];
+        timed = 0;
+        preempted = 0;
+        for (int t = 0; t < enabled.length; t++) {
+            if (enabled[t] && net.isTimed(t)) {
+                clocks[timed] = t;
+                clockTimes[timed++] = queue.contains(t) ? queue.getKey(t) : Double.POSITIVE_INFINITY;
+            }
+            if (remaining[t] == remaining[t]) {
+                held[preempted] = t;
+                heldTimes[preempted++] = remaining[t];
+            }
+        }
+        return new EngineState(marking.clone(), time, firings, clocks, clockTimes, held, heldTimes,
+                guardValues.toLongArray());
+    }
+
+    /**
+     * Goes back to a snapshot taken with getState(), from this engine or
+     * another one of the same net. Listeners are not told. The conflict
+     * policy starts again from the enabled transitions, in index order,
+     * unless its own state is set afterwards.
+     */
+    public void setState(EngineState state) {
+        setState(state, false);
+    }
+
+    /**
+     * Goes back to a snapshot, optionally drawing new clocks for the
+     * exponential transitions. Since they are memoryless this gives a
+     * trajectory with the same law as going on from the snapshot, but one
+     * that does not share their firing times with other trajectories
+     * started from it. Clocks of the other distributions are kept.
+     */
+    public void setState(EngineState state, boolean redrawExponential) {
+        clear(state.marking, state.time, state.firings);
+        guardValues.clear();
+        guardValues.or(BitSet.valueOf(state.guards));
+        guards.computeMask(guardValues, guardMask);
+        if (!redrawExponential) {
+            for (int k = 0; k < state.held.length; k++) {
+                remaining[state.held[k]] = state.heldTimes[k];
+            }
+        }
+        int k = 0;
+        for (int t = 0; t < net.getTransitionCount(); t++) {
+            while (k < state.clocks.length && state.clocks[k] < t) {
+                k++;
+            }
+            if (!canFire(t)) {
+                continue;
+            }
+            boolean kept = k < state.clocks.length && state.clocks[k] == t
+                    && !(redrawExponential && net.getDistribution(t) == CompiledNet.EXPONENTIAL);
+            if (kept) {
+                enabled[t] = true;
+                enabledCount++;
+                if (state.clockTimes[k] != Double.POSITIVE_INFINITY) {
+                    queue.set(t, state.clockTimes[k]);
+                }
+            } else {
+                enable(t);
+            }
+        }
+    }
+
+    /**
+     * Fires the next transition.
+     *
+     * @return false if no transition can fire anymore
+     */
+    public boolean step() {
+        return step(Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Fires the next transition if it happens no later than maxTime, and
+     * then the closure of automatic transitions. When the next timed firing
+     * is later, the clock is moved to maxTime and nothing fires.
+     *
+     * Automatic transitions enabled by a reset or a guard are fired first,
+     * as a closure of their own.
+     *
+     * @return false if nothing was fired
+     * @throws IllegalStateException if the closure does not end
+     */
+    public boolean step(double maxTime) {
+        if (worklistSize > 0 && closure(-1) > 0) {
+            return true;
+        }
+        int candidates = policy.size();
+        // A blocked net has no clock, and nothing to fire even without a time limit
+        if (candidates == 0 && (queue.isEmpty() || queue.peekKey() > maxTime)) {
+            if (maxTime != Double.POSITIVE_INFINITY) {
+                time = maxTime;
+            }
+            return false;
+        }
+        long start = 0;
+        if (metrics != null) {
+            // The enabled set before the choice, the chosen transition included
+            timing = metrics.stepped(candidates, enabledCount);
+            start = timing ? System.nanoTime() : 0;
+        }
+
+        int transition;
+        if (candidates > 0) {
+            transition = policy.select();
+        } else {
+            time = queue.peekKey();
+            transition = queue.poll();
+        }
+        if (!timing) {
+            fire(transition);
+            closure(transition);
+            return true;
+        }
+
+        long selected = System.nanoTime();
+        listenerNanos = 0;
+        fire(transition);
+        long fired = System.nanoTime();
+        long fireListeners = listenerNanos;
+        listenerNanos = 0;
+        // Reading the clock costs more than an empty closure
+        boolean closing = worklistSize > 0;
+        closure(transition);
+        long closed = closing ? System.nanoTime() : fired;
+        timing = false;
+        metrics.timed(selected - start, fired - selected, closed - fired, fireListeners, listenerNanos);
+        return true;
+    }
+
+    /**
+     * Fires enabled automatic transitions until there are none.
+     *
+     * @param cause the transition fired before, or -1
+     * @return the number of transitions fired
+     */
+    private int closure(int cause) {
+        int steps = 0;
+        while (worklistSize > 0) {
+            int t = worklist[worklistHead];
+            worklistHead = worklistHead + 1 == worklist.length ? 0 : worklistHead + 1;
+            worklistSize--;
+            queued[t] = false;
+            if (!enabled[t]) {
+                continue;
+            }
+            if (++steps > maxClosureSteps) {
+                throw new IllegalStateException("Livelock: more than " + maxClosureSteps
+                        + " automatic firings in a row" + (cause >= 0 ? " after " + net.getTransitionLabel(cause) : "")
+                        + " at time " + time);
+            }
+            fire(t);
+        }
+        lastClosureSteps = steps;
+        longestClosure = Math.max(longestClosure, steps);
+        closureFirings += steps;
+        return steps;
+    }
+
+    /**
+     * Fires transitions until the given number of firings is reached or
+     * the net is blocked.
+     *
+     * @return the number of transitions fired
+     */
+    public long run(long maxFirings) {
+        return run(maxFirings, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Fires transitions until the given number of firings is reached, the
+     * simulated time passes maxTime or the net is blocked. The closure of
+     * the last step is always completed, so a few more firings than asked
+     * may be done.
+     *
+     * @return the number of transitions fired
+     */
+    public long run(long maxFirings, double maxTime) {
+        long start = firings;
+        long startNanos = metrics != null ? System.nanoTime() : 0;
+        long steps = 0;
+        try {
+            while (firings - start < maxFirings && step(maxTime)) {
+                // Checked now and then so that a run can be cancelled from another thread
+                if ((++steps & 0xffff) == 0 && Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+            }
+        } finally {
+            if (metrics != null) {
+                metrics.ran(System.nanoTime() - startNanos);
+            }
+        }
+        return firings - start;
+    }
+
+    private void fire(int transition) {
+        disable(transition);
+        net.fire(transition, marking);
+        firings++;
+        if (metrics != null) {
+            metrics.fired(transition);
+        }
+
+        for (int k = net.getAffectedStart(transition); k < net.getAffectedEnd(transition); k++) {
+            int u = net.getAffected(k);
+            boolean now = canFire(u);
+            if (now && !enabled[u]) {
+                enable(u);
+            } else if (!now && enabled[u]) {
+                disable(u);
+            }
+        }
+
+        if (timing && listeners.length > 0) {
+            long start = System.nanoTime();
+            notifyListeners(transition);
+            listenerNanos += System.nanoTime() - start;
+        } else {
+            notifyListeners(transition);
+        }
+    }
+
+    private void notifyListeners(int transition) {
+        for (SimulationListener listener : listeners) {
+            listener.transitionFired(transition, time, marking);
+        }
+    }
+
+    private boolean canFire(int transition) {
+        return guardMask.get(transition) && net.isEnabled(transition, marking);
+    }
+
+    /**
+     * Sets the value of a guard, enabling or disabling the transitions that
+     * reference it as needed.
+     */
+    public void setGuard(int guard, boolean value) {
+        if (guardValues.get(guard) == value) {
+            return;
+        }
+        guardValues.set(guard, value);
+        for (int k = guards.getReferencesStart(guard); k < guards.getReferencesEnd(guard); k++) {
+            int t = guards.getReference(k);
+            guardMask.set(t, value != guards.isNegated(t));
+            boolean now = canFire(t);
+            if (now && !enabled[t]) {
+                enable(t);
+            } else if (!now && enabled[t]) {
+                disable(t);
+            }
+        }
+    }
+
+    /**
+     * Sets the value of the guard with the given name.
+     *
+     * @throws IllegalArgumentException if no transition has that guard
+     */
+    public void setGuard(String name, boolean value) {
+        int guard = guards.indexOfGuard(name);
+        if (guard < 0) {
+            throw new IllegalArgumentException("Unknown guard " + name);
+        }
+        setGuard(guard, value);
+    }
+
+    public boolean getGuard(int guard) {
+        return guardValues.get(guard);
+    }
+
+    private void enable(int transition) {
+        enabled[transition] = true;
+        enabledCount++;
+        if (net.isTimed(transition)) {
+            double delay = remaining[transition];
+            if (delay == delay) {
+                remaining[transition] = Double.NaN;
+            } else {
+                delay = sampleDelay(transition);
+            }
+            // A zero rate never fires, the transition just stays enabled
+            if (delay != Double.POSITIVE_INFINITY) {
+                queue.set(transition, time + delay);
+            }
+        } else if (net.isAutomatic(transition)) {
+            if (!queued[transition]) {
+                queued[transition] = true;
+                int tail = worklistHead + worklistSize;
+                worklist[tail >= worklist.length ? tail - worklist.length : tail] = transition;
+                worklistSize++;
+            }
+        } else {
+            policy.enabled(transition);
+        }
+    }
+
+    private void disable(int transition) {
+        if (!enabled[transition]) {
+            return;
+        }
+        enabled[transition] = false;
+        enabledCount--;
+        if (net.isTimed(transition)) {
+            // The fired transition was already polled, so only preempted clocks are kept
+            if (net.getDistribution(transition) == CompiledNet.EXPONENTIAL && queue.contains(transition)) {
+                remaining[transition] = queue.getKey(transition) - time;
+            }
+            queue.remove(transition);
+        } else if (!net.isAutomatic(transition)) {
+            // Disabled automatic transitions are skipped when they come out of the worklist
+            policy.disabled(transition);
+        }
+    }
+
+    /**
+     * Draws a firing delay for a timed transition, using the parameters of
+     * the behavior dialog. Delays are never negative.
+     */
+    double sampleDelay(int transition) {
+        double delay = samplers[transition].nextSample();
+        return delay > 0 ? delay : 0;
+    }
+
+    public CompiledNet getNet() {
+        return net;
+    }
+
+    ConflictPolicy getConflictPolicy() {
+        return policy;
+    }
+
+    public ConflictPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Sets the metrics the engine updates from now on, null for none.
+     */
+    public void setMetrics(SimulationMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public SimulationMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the number of enabled transitions, timed, immediate and
+     * automatic.
+     */
+    public int getEnabledCount() {
+        return enabledCount;
+    }
+
+    /**
+     * Returns a copy of the current marking.
+     */
+    public int[] getMarking() {
+        return marking.clone();
+    }
+
+    public int getTokens(int place) {
+        return marking[place];
+    }
+
+    public double getTime() {
+        return time;
+    }
+
+    /**
+     * Returns the number of firings since the last reset.
+     */
+    public long getFirings() {
+        return firings;
+    }
+
+    /**
+     * Sets how many automatic firings in a row are allowed before a
+     * closure is taken as a livelock.
+     */
+    public void setMaxClosureSteps(int maxClosureSteps) {
+        if (maxClosureSteps < 1) {
+            throw new IllegalArgumentException("The closure bound must be positive");
+        }
+        this.maxClosureSteps = maxClosureSteps;
+    }
+
+    public int getMaxClosureSteps() {
+        return maxClosureSteps;
+    }
+
+    /**
+     * Returns the automatic firings of the closure of the last step.
+     */
+    public int getLastClosureSteps() {
+        return lastClosureSteps;
+    }
+
+    /**
+     * Returns the most automatic firings a closure took since the reset.
+     */
+    public int getLongestClosure() {
+        return longestClosure;
+    }
+
+    /**
+     * Returns the firings done by closures since the reset.
+     */
+    public long getClosureFirings() {
+        return closureFirings;
+    }
+
+    public boolean isEnabled(int transition) {
+        return enabled[transition];
+    }
+
+    /**
+     * Determines if no transition can fire anymore.
+     */
+    public boolean isBlocked() {
+        return policy.size() == 0 && worklistSize == 0 && queue.peek() < 0;
+    }
+}
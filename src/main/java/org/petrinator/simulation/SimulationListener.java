@@ -0,0 +1,16 @@
+package org.petrinator.simulation;
+
+/**
+ * Receives every firing of a simulation engine. Listeners run on the
+ * simulation thread, right after the marking was updated, so they must be
+ * quick and must not keep a reference to the marking array.
+ */
+public interface SimulationListener {
+
+    /**
+     * @param transition index of the fired transition in the compiled net
+     * @param time simulated time of the firing, in seconds
+     * @param marking the marking after the firing
+     */
+    void transitionFired(int transition, double time, int[] marking);
+}
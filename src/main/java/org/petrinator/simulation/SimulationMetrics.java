@@ -0,0 +1,338 @@
+package org.petrinator.simulation;
+
+import com.google.gson.GsonBuilder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counters of a SimulationEngine, set with SimulationEngine.setMetrics():
+ * firings of every transition, size of the enabled set and conflicts at
+ * every step, where the wall time goes and how many firings per second the
+ * engine makes.
+ *
+ * Counting costs an increment or two per step. Reading the clock costs
+ * more than a step of a small net, so only one step in SAMPLE_INTERVAL is
+ * timed, and the wall time of SimulationEngine.run() is split among the
+ * phases in proportion to the sampled times; it is an estimate. The firing
+ * rate is measured over windows of about one second of wall time, and the
+ * histogram counts the windows by rate, in powers of two.
+ *
+ * The engine updates the counters without locking; a JMX client reading
+ * them from another thread may see values of consecutive steps mixed.
+ */
+public class SimulationMetrics implements SimulationMetricsMBean {
+
+    /** One step in this many is timed, a power of two */
+    public static final int SAMPLE_INTERVAL = 64;
+    /** Bucket b of the rate histogram counts windows of [2^b, 2^(b+1)) firings per second */
+    public static final int RATE_BUCKETS = 40;
+
+    private static final long WINDOW_NANOS = 1000000000L;
+
+    private final String[] labels;
+    private final long[] transitionFirings;
+    private long firings;
+    private long steps;
+    private long conflicts;
+    private long enabledSum;
+    private int maxEnabled;
+
+    private long sampledSelect;
+    private long sampledFire;
+    private long sampledClosure;
+    private long sampledListeners;
+    private long runNanos;
+
+    private final long[] rateHistogram = new long[RATE_BUCKETS];
+    private long startNanos;
+    private long windowStart;
+    private long windowFirings;
+    private double lastRate;
+
+    public SimulationMetrics(CompiledNet net) {
+        labels = new String[net.getTransitionCount()];
+        for (int t = 0; t < labels.length; t++) {
+            labels[t] = net.getTransitionLabel(t);
+        }
+        transitionFirings = new long[labels.length];
+        reset();
+    }
+
+    @Override
+    public void reset() {
+        Arrays.fill(transitionFirings, 0);
+        firings = 0;
+        steps = 0;
+        conflicts = 0;
+        enabledSum = 0;
+        maxEnabled = 0;
+        sampledSelect = 0;
+        sampledFire = 0;
+        sampledClosure = 0;
+        sampledListeners = 0;
+        runNanos = 0;
+        Arrays.fill(rateHistogram, 0);
+        startNanos = System.nanoTime();
+        windowStart = startNanos;
+        windowFirings = 0;
+        lastRate = 0;
+    }
+
+    /**
+     * Counts a step that chose a transition.
+     *
+     * @param candidates enabled immediate transitions the policy chose among
+     * @param enabled    all the enabled transitions
+     * @return true if this step should be timed
+     */
+    boolean stepped(int candidates, int enabled) {
+        if (candidates > 1) {
+            conflicts++;
+        }
+        enabledSum += enabled;
+        if (enabled > maxEnabled) {
+            maxEnabled = enabled;
+        }
+        return (steps++ & (SAMPLE_INTERVAL - 1)) == 0;
+    }
+
+    void fired(int transition) {
+        transitionFirings[transition]++;
+        firings++;
+        windowFirings++;
+        if ((firings & (SAMPLE_INTERVAL - 1)) == 0) {
+            long now = System.nanoTime();
+            if (now - windowStart >= WINDOW_NANOS) {
+                lastRate = windowFirings * 1e9 / (now - windowStart);
+                rateHistogram[bucket(lastRate)]++;
+                windowStart = now;
+                windowFirings = 0;
+            }
+        }
+    }
+
+    private static int bucket(double rate) {
+        int b = rate < 2 ? 0 : 63 - Long.numberOfLeadingZeros((long) rate);
+        return Math.min(b, RATE_BUCKETS - 1);
+    }
+
+    /**
+     * Adds the nanoseconds of a timed step. The listeners run within the
+     * firings, so their time is taken out of the other phases.
+     */
+    void timed(long select, long fire, long closure, long fireListeners, long closureListeners) {
+        sampledSelect += select;
+        sampledFire += fire - fireListeners;
+        sampledClosure += closure - closureListeners;
+        sampledListeners += fireListeners + closureListeners;
+    }
+
+    /**
+     * Adds the wall time of a call to SimulationEngine.run().
+     */
+    void ran(long nanos) {
+        runNanos += nanos;
+    }
+
+    /**
+     * Scales a sampled time to the wall time of the runs or, if the engine
+     * was only stepped, to all the steps.
+     */
+    private long estimate(long sampled) {
+        long total = sampledSelect + sampledFire + sampledClosure + sampledListeners;
+        if (runNanos > 0 && total > 0) {
+            return (long) ((double) sampled / total * runNanos);
+        }
+        return sampled * SAMPLE_INTERVAL;
+    }
+
+    @Override
+    public long getFirings() {
+        return firings;
+    }
+
+    /**
+     * Returns the steps that chose a transition, without the automatic
+     * firings of their closures.
+     */
+    @Override
+    public long getSteps() {
+        return steps;
+    }
+
+    /**
+     * Returns the steps where the conflict policy chose among more than
+     * one enabled immediate transition.
+     */
+    @Override
+    public long getConflicts() {
+        return conflicts;
+    }
+
+    @Override
+    public double getConflictRatio() {
+        return steps > 0 ? (double) conflicts / steps : 0;
+    }
+
+    /**
+     * Returns the number of enabled transitions, averaged over the steps.
+     */
+    @Override
+    public double getMeanEnabled() {
+        return steps > 0 ? (double) enabledSum / steps : 0;
+    }
+
+    @Override
+    public int getMaxEnabled() {
+        return maxEnabled;
+    }
+
+    @Override
+    public String[] getTransitionLabels() {
+        return labels.clone();
+    }
+
+    @Override
+    public long[] getTransitionFirings() {
+        return transitionFirings.clone();
+    }
+
+    /**
+     * Returns the estimated nanoseconds spent choosing the transitions to
+     * fire, in the conflict policy or the queue of timed transitions.
+     */
+    @Override
+    public long getSelectNanos() {
+        return estimate(sampledSelect);
+    }
+
+    /**
+     * Returns the estimated nanoseconds spent firing the chosen
+     * transitions and updating the enabled set.
+     */
+    @Override
+    public long getFireNanos() {
+        return estimate(sampledFire);
+    }
+
+    /**
+     * Returns the estimated nanoseconds spent in closures of automatic
+     * transitions.
+     */
+    @Override
+    public long getClosureNanos() {
+        return estimate(sampledClosure);
+    }
+
+    /**
+     * Returns the estimated nanoseconds spent in the listeners of the
+     * engine: statistics, traces and histories.
+     */
+    @Override
+    public long getListenerNanos() {
+        return estimate(sampledListeners);
+    }
+
+    /**
+     * Returns the wall time since the metrics were created or reset.
+     */
+    @Override
+    public long getElapsedMillis() {
+        return (System.nanoTime() - startNanos) / 1000000;
+    }
+
+    /**
+     * Returns the rate of the last window of about a second, 0 before the
+     * first one ends.
+     */
+    @Override
+    public double getFiringsPerSecond() {
+        return lastRate;
+    }
+
+    @Override
+    public double getMeanFiringsPerSecond() {
+        long nanos = System.nanoTime() - startNanos;
+        return nanos > 0 ? firings * 1e9 / nanos : 0;
+    }
+
+    @Override
+    public long[] getRateHistogram() {
+        return rateHistogram.clone();
+    }
+
+    /**
+     * Returns all the counters as a JSON object.
+     */
+    @Override
+    public String toJson() {
+        return new GsonBuilder().setPrettyPrinting().serializeSpecialFloatingPointValues().create()
+                .toJson(snapshot());
+    }
+
+    Snapshot snapshot() {
+        Snapshot s = new Snapshot();
+        s.elapsedMillis = getElapsedMillis();
+        s.firings = firings;
+        s.steps = steps;
+        s.conflicts = conflicts;
+        s.conflictRatio = getConflictRatio();
+        s.meanEnabled = getMeanEnabled();
+        s.maxEnabled = maxEnabled;
+        s.firingsPerSecond = lastRate;
+        s.meanFiringsPerSecond = getMeanFiringsPerSecond();
+        s.timeNanos = new LinkedHashMap<>();
+        s.timeNanos.put("select", getSelectNanos());
+        s.timeNanos.put("fire", getFireNanos());
+        s.timeNanos.put("closure", getClosureNanos());
+        s.timeNanos.put("listeners", getListenerNanos());
+        s.transitionFirings = new LinkedHashMap<>();
+        for (int t = 0; t < labels.length; t++) {
+            s.transitionFirings.put(labels[t], transitionFirings[t]);
+        }
+        s.rateHistogram = new ArrayList<>();
+        for (int b = 0; b < RATE_BUCKETS; b++) {
+            if (rateHistogram[b] > 0) {
+                s.rateHistogram.add(new Bucket(b == 0 ? 0 : 1L << b, 1L << (b + 1), rateHistogram[b]));
+            }
+        }
+        return s;
+    }
+
+    /**
+     * The counters at one moment, as serialized to JSON.
+     */
+    static class Snapshot {
+        long elapsedMillis;
+        long firings;
+        long steps;
+        long conflicts;
+        double conflictRatio;
+        double meanEnabled;
+        int maxEnabled;
+        double firingsPerSecond;
+        double meanFiringsPerSecond;
+        Map<String, Long> timeNanos;
+        Map<String, Long> transitionFirings;
+        List<Bucket> rateHistogram;
+    }
+
+    /**
+     * Windows whose rate, in firings per second, was in [from, to).
+     */
+    static class Bucket {
+        final long from;
+        final long to;
+        final long windows;
+
+        Bucket(long from, long to, long windows) {
+            this.from = from;
+            this.to = to;
+            this.windows = windows;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package org.petrinator.simulation;
+
+/**
+ * Management interface of SimulationMetrics, as seen in JConsole or any
+ * other JMX client once registered by MetricsRegistry.
+ */
+public interface SimulationMetricsMBean {
+
+    long getFirings();
+
+    long getSteps();
+
+    long getConflicts();
+
+    double getConflictRatio();
+
+    double getMeanEnabled();
+
+    int getMaxEnabled();
+
+    String[] getTransitionLabels();
+
+    long[] getTransitionFirings();
+
+    long getSelectNanos();
+
+    long getFireNanos();
+
+    long getClosureNanos();
+
+    long getListenerNanos();
+
+    long getElapsedMillis();
+
+    double getFiringsPerSecond();
+
+    double getMeanFiringsPerSecond();
+
+    long[] getRateHistogram();
+
+    void reset();
+
+    String toJson();
+}
@@ -0,0 +1,124 @@
+package org.petrinator.simulation;
+
+/**
+ * Estimate of the probability of a rare event by importance splitting,
+ * with the fraction of trials that reached every level.
+ *
+ * The relative error is the usual approximation for fixed effort
+ * splitting, which takes the stages as independent:
+ *
+ *   RE^2 = sum over the levels of (1 - p_k) / (N p_k)
+ *
+ * with p_k the fraction of the N trials of stage k that reached level k.
+ * It is optimistic when the entrance states of a level come from a few
+ * ancestors, so more trials per level, or levels reached more often, give
+ * a more reliable error.
+ */
+public class SplittingResult {
+
+    private final ImportanceFunction importance;
+    private final double[] levels;
+    private final int trials;
+    private final int[] successes;
+    private final boolean cancelled;
+    private final long firings;
+    private final long seed;
+    private final long elapsedMillis;
+
+    SplittingResult(ImportanceFunction importance, double[] levels, int trials, int[] successes, boolean cancelled,
+                    long firings, long seed, long elapsedMillis) {
+        this.importance = importance;
+        this.levels = levels.clone();
+        this.trials = trials;
+        this.successes = successes;
+        this.cancelled = cancelled;
+        this.firings = firings;
+        this.seed = seed;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    /**
+     * Returns the estimated probability, zero if a level was never
+     * reached and NaN if the run was cancelled before the last level.
+     */
+    public double getProbability() {
+        double probability = 1;
+        for (int k = 0; k < successes.length; k++) {
+            probability *= getLevelProbability(k);
+        }
+        if (probability > 0 && successes.length < levels.length) {
+            return Double.NaN;
+        }
+        return probability;
+    }
+
+    /**
+     * Returns the relative error of the estimate, its standard deviation
+     * over its value, NaN when it is zero or not known.
+     */
+    public double getRelativeError() {
+        if (!(getProbability() > 0)) {
+            return Double.NaN;
+        }
+        double sum = 0;
+        for (int k = 0; k < successes.length; k++) {
+            double p = getLevelProbability(k);
+            sum += (1 - p) / (trials * p);
+        }
+        return Math.sqrt(sum);
+    }
+
+    public ImportanceFunction getImportance() {
+        return importance;
+    }
+
+    public double[] getLevels() {
+        return levels.clone();
+    }
+
+    /**
+     * Returns the number of stages run; fewer than the levels if one was
+     * never reached or the run was cancelled.
+     */
+    public int getStages() {
+        return successes.length;
+    }
+
+    public int getTrials() {
+        return trials;
+    }
+
+    /**
+     * Returns the trials of stage k that reached level k.
+     */
+    public int getSuccesses(int k) {
+        return successes[k];
+    }
+
+    /**
+     * Returns the fraction of the trials of stage k that reached level k,
+     * the probability of reaching it from the level before.
+     */
+    public double getLevelProbability(int k) {
+        return (double) successes[k] / trials;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Returns the firings of all the trials.
+     */
+    public long getFirings() {
+        return firings;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+}
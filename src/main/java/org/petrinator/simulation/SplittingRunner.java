@@ -0,0 +1,168 @@
+package org.petrinator.simulation;
+
+import org.petrinator.simulation.policy.ConflictPolicies;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Estimates the probability of a rare event, a marking whose importance
+ * reaches a given level before a horizon, by fixed effort splitting.
+ *
+ * The range of the importance function is cut by increasing levels, the
+ * last one being the rare event. Stage k runs a fixed number of trials
+ * from the states where the trials of stage k - 1 first reached level
+ * k - 1, taken in turn, and each trial either reaches level k, and its
+ * state is kept for the next stage, or fails: the horizon passes or the
+ * net blocks first. The product of the fractions of trials that reached
+ * each level estimates the probability without bias, with far fewer
+ * firings than plain Monte Carlo when every level is reached often
+ * enough.
+ *
+ * Trajectories are cloned with EngineState snapshots of a single engine,
+ * drawing new exponential clocks so that the clones part at once. The
+ * horizon counts from the initial marking, since the time and firings of
+ * a trajectory are part of its state. The importance is tested after
+ * every firing, including the firings of a closure of automatic
+ * transitions, but the state kept is the one after the whole step.
+ */
+public class SplittingRunner {
+
+    private final CompiledNet net;
+    private final ImportanceFunction importance;
+
+    private double[] levels = new double[0];
+    private int trials = 1000;
+    private long maxFirings = Long.MAX_VALUE;
+    private double maxTime = Double.POSITIVE_INFINITY;
+    private long seed = System.nanoTime();
+    private String conflictPolicy = ConflictPolicies.RANDOM;
+
+    // Highest importance since the trial started or the engine was set
+    private double reached;
+
+    public SplittingRunner(CompiledNet net, ImportanceFunction importance) {
+        this.net = net;
+        this.importance = importance;
+    }
+
+    public double[] getLevels() {
+        return levels.clone();
+    }
+
+    /**
+     * Sets the increasing importance levels; the rare event is reaching
+     * the last one.
+     */
+    public void setLevels(double[] levels) {
+        if (levels.length == 0) {
+            throw new IllegalArgumentException("At least one level is needed");
+        }
+        for (int k = 1; k < levels.length; k++) {
+            if (!(levels[k] > levels[k - 1])) {
+                throw new IllegalArgumentException("The levels must be increasing");
+            }
+        }
+        this.levels = levels.clone();
+    }
+
+    public int getTrials() {
+        return trials;
+    }
+
+    /**
+     * Sets the trials run from every level.
+     */
+    public void setTrials(int trials) {
+        if (trials < 1) {
+            throw new IllegalArgumentException("There must be at least one trial");
+        }
+        this.trials = trials;
+    }
+
+    /**
+     * Sets the firings after which a trajectory fails.
+     */
+    public void setMaxFirings(long maxFirings) {
+        this.maxFirings = maxFirings;
+    }
+
+    /**
+     * Sets the simulated time after which a trajectory fails.
+     */
+    public void setMaxTime(double maxTime) {
+        this.maxTime = maxTime;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public void setConflictPolicy(String conflictPolicy) {
+        if (!Arrays.asList(ConflictPolicies.NAMES).contains(conflictPolicy)) {
+            throw new IllegalArgumentException("Unknown conflict policy " + conflictPolicy);
+        }
+        this.conflictPolicy = conflictPolicy;
+    }
+
+    /**
+     * Runs the stages until the last level, or until no trial reaches a
+     * level, in which case the estimate is zero. When the thread is
+     * interrupted the stages done so far are returned.
+     */
+    public SplittingResult run() {
+        if (levels.length == 0) {
+            throw new IllegalStateException("No levels were set");
+        }
+        long start = System.currentTimeMillis();
+        RandomStream random = new RandomStream(seed);
+        SimulationEngine engine = new SimulationEngine(net, random,
+                ConflictPolicies.create(conflictPolicy, random.split()));
+        engine.addListener((transition, time, marking) -> {
+            double value = importance.of(marking);
+            if (value > reached) {
+                reached = value;
+            }
+        });
+
+        List<EngineState> starts = new ArrayList<>();
+        starts.add(engine.getState());
+        int[] successes = new int[levels.length];
+        int stages = 0;
+        long firings = 0;
+        boolean cancelled = false;
+
+        for (int k = 0; k < levels.length && !starts.isEmpty() && !cancelled; k++) {
+            List<EngineState> entrances = new ArrayList<>();
+            for (int i = 0; i < trials; i++) {
+                if (Thread.currentThread().isInterrupted()) {
+                    cancelled = true;
+                    break;
+                }
+                EngineState from = starts.get(i % starts.size());
+                engine.setState(from, true);
+                reached = importance.of(from.marking);
+                while (reached < levels[k] && engine.getFirings() < maxFirings && engine.step(maxTime)) {
+                    // Fired, and the listener updated the importance reached
+                }
+                firings += engine.getFirings() - from.firings;
+                if (reached >= levels[k]) {
+                    successes[k]++;
+                    entrances.add(engine.getState());
+                }
+            }
+            if (!cancelled) {
+                stages++;
+            }
+            starts = entrances;
+        }
+
+        return new SplittingResult(importance, levels, trials, Arrays.copyOf(successes, stages), cancelled,
+                firings, seed, System.currentTimeMillis() - start);
+    }
+}
@@ -0,0 +1,131 @@
+package org.petrinator.simulation;
+
+/**
+ * Outcome of a SteadyStateRunner: why the run stopped, where its warm-up
+ * ended and the batch means intervals of every measure.
+ */
+public class SteadyStateResult {
+
+    public enum Stop {
+        /** The target reached the relative precision */
+        PRECISE,
+        /** The firings or time limit was reached first */
+        LIMIT,
+        /** No transition could fire anymore */
+        BLOCKED
+    }
+
+    private final CompiledNet net;
+    private final Stop stop;
+    private final ReplicationResult batches;
+    private final int targetPlace;
+    private final int targetTransition;
+    private final double warmup;
+    private final int observations;
+    private final double interval;
+    private final long firings;
+    private final double time;
+    private final long elapsedMillis;
+
+    SteadyStateResult(CompiledNet net, Stop stop, ReplicationResult batches, int targetPlace, int targetTransition,
+                      double warmup, int observations, double interval, long firings, double time,
+                      long elapsedMillis) {
+        this.net = net;
+        this.stop = stop;
+        this.batches = batches;
+        this.targetPlace = targetPlace;
+        this.targetTransition = targetTransition;
+        this.warmup = warmup;
+        this.observations = observations;
+        this.interval = interval;
+        this.firings = firings;
+        this.time = time;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public CompiledNet getNet() {
+        return net;
+    }
+
+    public Stop getStop() {
+        return stop;
+    }
+
+    /**
+     * Returns the means and half widths of all the measures, with one
+     * "replication" per batch, or null if the warm-up was not found or
+     * there were too few observations after it.
+     */
+    public ReplicationResult getBatches() {
+        return batches;
+    }
+
+    /**
+     * Returns the place whose mean tokens decided when to stop, or -1 if
+     * it was a transition.
+     */
+    public int getTargetPlace() {
+        return targetPlace;
+    }
+
+    /**
+     * Returns the transition whose throughput decided when to stop, or -1
+     * if it was a place.
+     */
+    public int getTargetTransition() {
+        return targetTransition;
+    }
+
+    public String getTargetLabel() {
+        return targetPlace >= 0 ? net.getPlaceLabel(targetPlace) : net.getTransitionLabel(targetTransition);
+    }
+
+    public double getTargetMean() {
+        if (batches == null) {
+            return Double.NaN;
+        }
+        return targetPlace >= 0 ? batches.getMeanTokens(targetPlace) : batches.getThroughput(targetTransition);
+    }
+
+    public double getTargetHalfWidth() {
+        if (batches == null) {
+            return Double.NaN;
+        }
+        return targetPlace >= 0 ? batches.getMeanTokensHalfWidth(targetPlace)
+                : batches.getThroughputHalfWidth(targetTransition);
+    }
+
+    /**
+     * Returns the end of the warm-up detected by MSER-5, in simulated time
+     * (firings for nets without timed transitions), or NaN if not found.
+     */
+    public double getWarmup() {
+        return warmup;
+    }
+
+    /**
+     * Returns the number of observations kept at the end.
+     */
+    public int getObservations() {
+        return observations;
+    }
+
+    /**
+     * Returns the length of an observation at the end.
+     */
+    public double getInterval() {
+        return interval;
+    }
+
+    public long getFirings() {
+        return firings;
+    }
+
+    public double getTime() {
+        return time;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+}
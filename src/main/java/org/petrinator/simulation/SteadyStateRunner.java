@@ -0,0 +1,253 @@
+package org.petrinator.simulation;
+
+import org.petrinator.simulation.policy.ConflictPolicies;
+import org.petrinator.simulation.stats.BatchMeans;
+import org.petrinator.simulation.stats.Mser;
+
+import java.util.Arrays;
+
+/**
+ * Estimates steady state measures from a single long run, which is
+ * stopped as soon as they are precise enough.
+ *
+ * The run is cut in intervals of equal length, and the mean tokens of every
+ * place and the throughput of every transition over each interval are the
+ * observations. From time to time MSER-5 looks for the end of the warm-up
+ * in the series of the target measure; once found, the observations after
+ * it are split in batches and the run stops when the confidence interval
+ * of the batch means of the target is narrower than the relative
+ * precision. The same truncation point and batches give the intervals of
+ * all the other measures.
+ *
+ * At most 2 * MAX_OBSERVATIONS are kept: when full, pairs of consecutive
+ * observations are merged and the intervals get twice as long, so memory
+ * stays bounded however long the run takes. For nets without timed
+ * transitions intervals are counted in firings.
+ */
+public class SteadyStateRunner {
+
+    public static final int MAX_OBSERVATIONS = 2048;
+    // Observations before the warm-up is looked for
+    private static final int MIN_OBSERVATIONS = 100;
+
+    private final CompiledNet net;
+
+    private int targetPlace = 0;
+    private int targetTransition = -1;
+    private double interval = 1;
+    private double relativePrecision = 0.05;
+    private double confidence = 0.95;
+    private int batches = 20;
+    private long maxFirings = Long.MAX_VALUE;
+    private double maxTime = Double.POSITIVE_INFINITY;
+    private long seed = System.nanoTime();
+    private String conflictPolicy = ConflictPolicies.RANDOM;
+
+    public SteadyStateRunner(CompiledNet net) {
+        this.net = net;
+    }
+
+    /**
+     * Makes the mean tokens of a place the measure that decides when to
+     * stop.
+     */
+    public void setTargetPlace(int place) {
+        if (place < 0 || place >= net.getPlaceCount()) {
+            throw new IllegalArgumentException("No place " + place);
+        }
+        this.targetPlace = place;
+        this.targetTransition = -1;
+    }
+
+    /**
+     * Makes the throughput of a transition the measure that decides when
+     * to stop.
+     */
+    public void setTargetTransition(int transition) {
+        if (transition < 0 || transition >= net.getTransitionCount()) {
+            throw new IllegalArgumentException("No transition " + transition);
+        }
+        this.targetTransition = transition;
+        this.targetPlace = -1;
+    }
+
+    public double getInterval() {
+        return interval;
+    }
+
+    /**
+     * Sets the length of the first observation intervals: simulated time,
+     * or firings for nets without timed transitions.
+     */
+    public void setInterval(double interval) {
+        if (!(interval > 0)) {
+            throw new IllegalArgumentException("The interval must be positive");
+        }
+        this.interval = interval;
+    }
+
+    public double getRelativePrecision() {
+        return relativePrecision;
+    }
+
+    /**
+     * Sets the largest half width of the interval of the target, as a
+     * fraction of its mean, e.g. 0.05.
+     */
+    public void setRelativePrecision(double relativePrecision) {
+        if (!(relativePrecision > 0)) {
+            throw new IllegalArgumentException("The precision must be positive");
+        }
+        this.relativePrecision = relativePrecision;
+    }
+
+    public double getConfidence() {
+        return confidence;
+    }
+
+    public void setConfidence(double confidence) {
+        this.confidence = confidence;
+    }
+
+    public int getBatches() {
+        return batches;
+    }
+
+    public void setBatches(int batches) {
+        if (batches < 2 || batches > MIN_OBSERVATIONS / 2) {
+            throw new IllegalArgumentException("The batches must be between 2 and " + MIN_OBSERVATIONS / 2);
+        }
+        this.batches = batches;
+    }
+
+    /**
+     * Sets the firings after which the run stops, precise or not.
+     */
+    public void setMaxFirings(long maxFirings) {
+        this.maxFirings = maxFirings;
+    }
+
+    /**
+     * Sets the simulated time after which the run stops, precise or not.
+     */
+    public void setMaxTime(double maxTime) {
+        this.maxTime = maxTime;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public void setConflictPolicy(String conflictPolicy) {
+        if (!Arrays.asList(ConflictPolicies.NAMES).contains(conflictPolicy)) {
+            throw new IllegalArgumentException("Unknown conflict policy " + conflictPolicy);
+        }
+        this.conflictPolicy = conflictPolicy;
+    }
+
+    /**
+     * Runs until the target is precise enough, the limits are reached or
+     * the net is blocked.
+     */
+    public SteadyStateResult run() {
+        long start = System.currentTimeMillis();
+        RandomStream random = new RandomStream(seed);
+        SimulationEngine engine = new SimulationEngine(net, random,
+                ConflictPolicies.create(conflictPolicy, random.split()));
+        RunStatistics statistics = new RunStatistics(net);
+        engine.addListener(statistics);
+
+        boolean timed = net.anyTimed();
+        int places = net.getPlaceCount();
+        int measures = places + net.getTransitionCount();
+        int target = targetPlace >= 0 ? targetPlace : places + targetTransition;
+        // [measure][observation]
+        double[][] series = new double[measures][2 * MAX_OBSERVATIONS];
+        int count = 0;
+        double length = interval;
+        int nextCheck = MIN_OBSERVATIONS;
+        SteadyStateResult.Stop stop = null;
+
+        while (stop == null) {
+            double startTime = engine.getTime();
+            long before = engine.getFirings();
+            statistics.start(startTime, engine.getMarking());
+            if (timed) {
+                engine.run(maxFirings - before, Math.min(startTime + length, maxTime));
+            } else {
+                engine.run(Math.min((long) length, maxFirings - before));
+            }
+            statistics.finish(engine.getTime());
+            // Cut short by the limits or a blocked untimed net, not an observation of the same length
+            boolean partial = timed ? engine.getTime() < startTime + length
+                    : engine.getFirings() - before < (long) length;
+            if (!partial) {
+                double[] tokens = statistics.getMeanTokens();
+                double[] throughput = statistics.getThroughput();
+                for (int p = 0; p < places; p++) {
+                    series[p][count] = tokens[p];
+                }
+                for (int t = 0; t < throughput.length; t++) {
+                    series[places + t][count] = throughput[t];
+                }
+                count++;
+            }
+
+            if (count == 2 * MAX_OBSERVATIONS) {
+                for (double[] s : series) {
+                    for (int i = 0; i < MAX_OBSERVATIONS; i++) {
+                        s[i] = (s[2 * i] + s[2 * i + 1]) / 2;
+                    }
+                }
+                count = MAX_OBSERVATIONS;
+                length *= 2;
+                nextCheck = Math.min(nextCheck, count);
+            }
+
+            if (count >= nextCheck) {
+                nextCheck = count + Math.max(10, count / 10);
+                int truncation = Mser.truncation(series[target], count);
+                if (truncation >= 0 && count - truncation >= batches
+                        && new BatchMeans(series[target], truncation, count, batches, confidence)
+                        .isPrecise(relativePrecision)) {
+                    stop = SteadyStateResult.Stop.PRECISE;
+                }
+            }
+            if (stop == null) {
+                if (engine.isBlocked()) {
+                    stop = SteadyStateResult.Stop.BLOCKED;
+                } else if (partial || engine.getFirings() >= maxFirings || engine.getTime() >= maxTime
+                        || Thread.currentThread().isInterrupted()) {
+                    stop = SteadyStateResult.Stop.LIMIT;
+                }
+            }
+        }
+
+        // All the measures, over the same batches as the target
+        int truncation = Mser.truncation(series[target], count);
+        ReplicationResult result = null;
+        if (truncation >= 0 && count - truncation >= batches) {
+            double[][] tokens = new double[batches][places];
+            double[][] rates = new double[batches][net.getTransitionCount()];
+            for (int m = 0; m < measures; m++) {
+                double[] means = BatchMeans.means(series[m], truncation, count, batches);
+                for (int b = 0; b < batches; b++) {
+                    if (m < places) {
+                        tokens[b][m] = means[b];
+                    } else {
+                        rates[b][m - places] = means[b];
+                    }
+                }
+            }
+            result = new ReplicationResult(net, tokens, rates, engine.getFirings(), engine.getTime(),
+                    confidence, seed, System.currentTimeMillis() - start);
+        }
+        return new SteadyStateResult(net, stop, result, targetPlace, targetTransition,
+                truncation < 0 ? Double.NaN : truncation * length, count, length, engine.getFirings(),
+                engine.getTime(), System.currentTimeMillis() - start);
+    }
+}
@@ -0,0 +1,218 @@
+package org.petrinator.simulation;
+
+import java.util.Arrays;
+
+/**
+ * Random access replay of an EventTrace.
+ *
+ * The trace is scanned once when the replay is created, storing the
+ * marking every getInterval() events. Seeking to any event copies the
+ * closest checkpoint before it and fires the few transitions in between on
+ * the CompiledNet, so going anywhere in a trace of millions of events
+ * costs at most one interval of firings. The memory taken by the
+ * checkpoints is places * 4 bytes per interval of events.
+ *
+ * The replay reads the trace through its own cursor; the trace must not
+ * change while it is used.
+ */
+public class TraceReplay {
+
+    public static final int DEFAULT_INTERVAL = 4096;
+
+    private final CompiledNet net;
+    private final EventTrace trace;
+    private final int interval;
+    private final int[] initialMarking;
+
+    // Marking and time after checkpoint k * interval events
+    private int[][] checkpoints;
+    private double[] checkpointTimes;
+
+    private final int[] marking;
+    private final EventTrace.Cursor cursor;
+    // The cursor is on an event read ahead by advanceTo() but not applied yet
+    private boolean pending;
+    private long position;
+    private double time;
+    private int lastTransition = -1;
+
+    public TraceReplay(CompiledNet net, EventTrace trace) {
+        this(net, net.getInitialMarking(), trace, DEFAULT_INTERVAL);
+    }
+
+    /**
+     * @param initialMarking marking before the first event of the trace
+     * @param interval       events between checkpoints
+     */
+    public TraceReplay(CompiledNet net, int[] initialMarking, EventTrace trace, int interval) {
+        if (interval < 1) {
+            throw new IllegalArgumentException("The interval must be positive");
+        }
+        this.net = net;
+        this.trace = trace;
+        this.interval = interval;
+        this.initialMarking = initialMarking.clone();
+        this.marking = initialMarking.clone();
+        this.cursor = trace.cursor();
+        buildCheckpoints();
+        seek(0);
+    }
+
+    private void buildCheckpoints() {
+        int count = (int) (trace.size() / interval) + 1;
+        checkpoints = new int[count][];
+        checkpointTimes = new double[count];
+        checkpoints[0] = initialMarking.clone();
+
+        int[] m = initialMarking.clone();
+        EventTrace.Cursor scan = trace.cursor();
+        long events = 0;
+        while (scan.next()) {
+            net.fire(scan.getTransition(), m);
+            events++;
+            if (events % interval == 0) {
+                int k = (int) (events / interval);
+                checkpoints[k] = m.clone();
+                checkpointTimes[k] = scan.getTime();
+            }
+        }
+    }
+
+    /**
+     * Moves to the state after the given number of events, from 0 (the
+     * initial marking) to getEventCount().
+     */
+    public void seek(long events) {
+        if (events < 0 || events > trace.size()) {
+            throw new IndexOutOfBoundsException("Event " + events + " of " + trace.size());
+        }
+        // Going forward within the interval is cheaper than restoring a checkpoint
+        if (events < position || events - position > interval) {
+            int k = (int) (events / interval);
+            System.arraycopy(checkpoints[k], 0, marking, 0, marking.length);
+            position = (long) k * interval;
+            time = checkpointTimes[k];
+            lastTransition = -1;
+            cursor.seek(position);
+            pending = false;
+        }
+        while (position < events) {
+            step();
+        }
+    }
+
+    /**
+     * Moves to the state after the last event that happens no later than
+     * the given time.
+     */
+    public void seekTime(double target) {
+        // Any checkpoint not after the target will do, then forward
+        int k = Arrays.binarySearch(checkpointTimes, target);
+        if (k < 0) {
+            k = -k - 2;
+        }
+        seek((long) Math.max(0, k) * interval);
+        advanceTo(target);
+    }
+
+    /**
+     * Applies the events that happen no later than the given time, from the
+     * current position on.
+     *
+     * @return the number of events applied
+     */
+    public long advanceTo(double target) {
+        long applied = 0;
+        while (true) {
+            if (!pending) {
+                if (!cursor.next()) {
+                    break;
+                }
+                pending = true;
+            }
+            if (cursor.getTime() > target) {
+                break;
+            }
+            apply();
+            applied++;
+        }
+        return applied;
+    }
+
+    /**
+     * Applies the next event.
+     *
+     * @return false if the replay is at the end of the trace
+     */
+    public boolean step() {
+        if (!pending && !cursor.next()) {
+            return false;
+        }
+        apply();
+        return true;
+    }
+
+    private void apply() {
+        pending = false;
+        lastTransition = cursor.getTransition();
+        net.fire(lastTransition, marking);
+        time = cursor.getTime();
+        position++;
+    }
+
+    public CompiledNet getNet() {
+        return net;
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    /**
+     * Returns the number of events already applied.
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    public long getEventCount() {
+        return trace.size();
+    }
+
+    public boolean isAtEnd() {
+        return position == trace.size();
+    }
+
+    /**
+     * Returns the time of the last applied event.
+     */
+    public double getTime() {
+        return time;
+    }
+
+    /**
+     * Returns the simulated time at which the trace ends.
+     */
+    public double getEndTime() {
+        return trace.getLastTime();
+    }
+
+    /**
+     * Returns the transition of the last applied event, or -1 right after a
+     * seek that restored a checkpoint.
+     */
+    public int getLastTransition() {
+        return lastTransition;
+    }
+
+    public int getTokens(int place) {
+        return marking[place];
+    }
+
+    /**
+     * Returns a copy of the current marking.
+     */
+    public int[] getMarking() {
+        return marking.clone();
+    }
+}
@@ -0,0 +1,164 @@
+package org.petrinator.simulation.policy;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Sequence of the choices made by a ConflictPolicy, enough to replay a run
+ * exactly together with the seed of the delays.
+ *
+ * Only real choices are recorded, those made with more than one immediate
+ * transition enabled, as varints of the transition index: one byte each
+ * for nets with up to 128 transitions. The log also keeps the seed and the
+ * name of the policy of the run, so a file says how it was made.
+ */
+public class ChoiceLog {
+
+    private static final int MAGIC = 0x50434c47;
+    private static final int VERSION = 1;
+
+    private final long seed;
+    private final String policy;
+    private final int transitionCount;
+    private byte[] bytes = new byte[256];
+    private int length;
+    private long count;
+
+    /**
+     * @param seed            seed of the run, for the record
+     * @param policy          name of the policy that makes the choices
+     * @param transitionCount transitions of the net the log belongs to
+     */
+    public ChoiceLog(long seed, String policy, int transitionCount) {
+        this.seed = seed;
+        this.policy = policy;
+        this.transitionCount = transitionCount;
+    }
+
+    public void add(int transition) {
+        if (length + 5 > bytes.length) {
+            bytes = Arrays.copyOf(bytes, bytes.length * 2);
+        }
+        int value = transition;
+        while ((value & ~0x7f) != 0) {
+            bytes[length++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        bytes[length++] = (byte) value;
+        count++;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public String getPolicy() {
+        return policy;
+    }
+
+    public int getTransitionCount() {
+        return transitionCount;
+    }
+
+    /**
+     * Returns the number of recorded choices.
+     */
+    public long size() {
+        return count;
+    }
+
+    /**
+     * Returns the bytes taken by the choices.
+     */
+    public int getByteCount() {
+        return length;
+    }
+
+    /**
+     * Returns a reader positioned before the first choice.
+     */
+    public Reader reader() {
+        return new Reader();
+    }
+
+    public void write(File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(seed);
+            out.writeUTF(policy);
+            out.writeInt(transitionCount);
+            out.writeLong(count);
+            out.writeInt(length);
+            out.write(bytes, 0, length);
+        }
+    }
+
+    public static ChoiceLog read(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " is not a choice log");
+            }
+            if (in.readInt() != VERSION) {
+                throw new IOException("Unsupported version of choice log in " + file);
+            }
+            ChoiceLog log = new ChoiceLog(in.readLong(), in.readUTF(), in.readInt());
+            log.count = in.readLong();
+            log.length = in.readInt();
+            log.bytes = new byte[Math.max(log.length, 1)];
+            in.readFully(log.bytes, 0, log.length);
+            return log;
+        }
+    }
+
+    /**
+     * Reads the choices in order. Adding choices while reading is fine.
+     */
+    public class Reader {
+
+        private int position;
+        private long index;
+
+        private Reader() {
+        }
+
+        public boolean hasNext() {
+            return index < count;
+        }
+
+        /**
+         * Returns the next choice.
+         *
+         * @throws IllegalStateException if there are no more choices
+         */
+        public int next() {
+            if (index == count) {
+                throw new IllegalStateException("The log has only " + count + " choices");
+            }
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes[position++];
+                value |= (b & 0x7f) << shift;
+                shift += 7;
+            } while (b < 0);
+            index++;
+            return value;
+        }
+
+        /**
+         * Returns the number of choices already read.
+         */
+        public long getIndex() {
+            return index;
+        }
+    }
+}
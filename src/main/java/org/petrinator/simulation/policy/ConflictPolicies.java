@@ -0,0 +1,38 @@
+package org.petrinator.simulation.policy;
+
+import org.petrinator.simulation.RandomStream;
+
+/**
+ * Creates the conflict policies by name, as offered in the simulation
+ * dialog.
+ */
+public final class ConflictPolicies {
+
+    public static final String RANDOM = "Random";
+    public static final String WEIGHTED = "Weighted random";
+    public static final String PRIORITY = "Priority";
+    public static final String ROUND_ROBIN = "Round-robin";
+
+    public static final String[] NAMES = {RANDOM, WEIGHTED, PRIORITY, ROUND_ROBIN};
+
+    private ConflictPolicies() {
+    }
+
+    /**
+     * @param random stream for the choices of randomized policies
+     */
+    public static ConflictPolicy create(String name, RandomStream random) {
+        switch (name) {
+            case RANDOM:
+                return new UniformPolicy(random);
+            case WEIGHTED:
+                return new WeightedPolicy(random);
+            case PRIORITY:
+                return new PriorityPolicy(random);
+            case ROUND_ROBIN:
+                return new RoundRobinPolicy();
+            default:
+                throw new IllegalArgumentException("Unknown conflict policy " + name);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package org.petrinator.simulation.policy;
+
+import org.petrinator.simulation.CompiledNet;
+
+/**
+ * Chooses which enabled immediate transition fires when several are
+ * enabled at once.
+ *
+ * The engine keeps the policy up to date, calling enabled() and disabled()
+ * as the immediate transitions change state, so a policy can maintain its
+ * own structure incrementally instead of looking at every transition on
+ * each choice. Randomized policies get their RandomStream when created,
+ * which keeps their choices apart from the delays drawn by the engine.
+ */
+public interface ConflictPolicy {
+
+    /**
+     * Prepares the policy for a net, with no transition enabled. Called by
+     * the engine before the first use and on every reset.
+     */
+    void reset(CompiledNet net);
+
+    /**
+     * An immediate transition became enabled.
+     */
+    void enabled(int transition);
+
+    /**
+     * An enabled immediate transition got disabled or fired.
+     */
+    void disabled(int transition);
+
+    /**
+     * Returns the number of enabled immediate transitions.
+     */
+    int size();
+
+    /**
+     * Returns the transition to fire. Only called when size() > 0.
+     */
+    int select();
+
+    /**
+     * Returns what the choices depend on besides the enabled transitions
+     * and the random stream, like the order in which the transitions were
+     * enabled or the last one chosen, so that a run resumed from a
+     * checkpoint chooses as the saved run would have.
+     */
+    long[] getState();
+
+    /**
+     * Goes back to a state returned by getState(), once the transitions
+     * that were enabled then are enabled again.
+     */
+    void setState(long[] state);
+}
@@ -0,0 +1,88 @@
+package org.petrinator.simulation.policy;
+
+import java.util.Arrays;
+
+/**
+ * Binary indexed tree of non negative values: changing a value, a prefix
+ * sum and finding the index where the prefix sums reach a given amount all
+ * take O(log n).
+ */
+class FenwickTree {
+
+    private final double[] tree;
+    private final int highestBit;
+    private double total;
+
+    FenwickTree(int size) {
+        tree = new double[size + 1];
+        highestBit = size == 0 ? 0 : Integer.highestOneBit(size);
+    }
+
+    int size() {
+        return tree.length - 1;
+    }
+
+    void clear() {
+        Arrays.fill(tree, 0);
+        total = 0;
+    }
+
+    void add(int index, double delta) {
+        for (int i = index + 1; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+        total += delta;
+    }
+
+    /**
+     * Returns the sum of the values from 0 to index, both included.
+     */
+    double prefix(int index) {
+        double sum = 0;
+        for (int i = index + 1; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    double total() {
+        return total;
+    }
+
+    /**
+     * Returns the bits of the total and of every node, since sums that were
+     * updated many times differ in rounding from sums built anew.
+     */
+    long[] getState() {
+        long[] state = new long[tree.length];
+        state[0] = Double.doubleToRawLongBits(total);
+        for (int i = 1; i < tree.length; i++) {
+            state[i] = Double.doubleToRawLongBits(tree[i]);
+        }
+        return state;
+    }
+
+    void setState(long[] state) {
+        total = Double.longBitsToDouble(state[0]);
+        for (int i = 1; i < tree.length; i++) {
+            tree[i] = Double.longBitsToDouble(state[i]);
+        }
+    }
+
+    /**
+     * Returns the smallest index whose prefix sum is greater than the given
+     * amount, or size() if there is none. Going down from the highest power
+     * of two, it reads a single node per level.
+     */
+    int find(double amount) {
+        int position = 0;
+        for (int bit = highestBit; bit > 0; bit >>= 1) {
+            int next = position + bit;
+            if (next < tree.length && tree[next] <= amount) {
+                position = next;
+                amount -= tree[next];
+            }
+        }
+        return position;
+    }
+}
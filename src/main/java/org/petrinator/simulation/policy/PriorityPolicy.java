@@ -0,0 +1,139 @@
+package org.petrinator.simulation.policy;
+
+import org.petrinator.simulation.CompiledNet;
+import org.petrinator.simulation.RandomStream;
+
+import java.util.Arrays;
+
+/**
+ * Fires the enabled immediate transition with the highest priority,
+ * choosing at random among those with the same one.
+ *
+ * Priorities are ranked into levels and the enabled transitions kept in a
+ * bucket queue, one dense set per level, with the highest level that may
+ * be non empty. It only goes up when a transition is enabled and down when
+ * choosing finds its bucket empty, so every operation is O(1) amortized.
+ *
+ * The editor has no priority attribute, so unless priorities are given the
+ * weight of immediate transitions (their rate, as in GSPN analysis) is
+ * used: the higher the weight, the higher the priority.
+ */
+public class PriorityPolicy implements ConflictPolicy {
+
+    private final RandomStream random;
+    private final double[] givenPriorities;
+
+    // Priority level of every transition, 0 the lowest
+    private int[] level = new int[0];
+    private int[][] buckets = new int[0][];
+    private int[] bucketSize = new int[0];
+    private int[] position = new int[0];
+    private int size;
+    private int top;
+
+    /**
+     * Uses the weights of the transitions as priorities.
+     */
+    public PriorityPolicy(RandomStream random) {
+        this(random, null);
+    }
+
+    /**
+     * @param priorities the priority of every transition, higher first
+     */
+    public PriorityPolicy(RandomStream random, double[] priorities) {
+        this.random = random;
+        this.givenPriorities = priorities == null ? null : priorities.clone();
+    }
+
+    @Override
+    public void reset(CompiledNet net) {
+        int n = net.getTransitionCount();
+        double[] priorities = givenPriorities;
+        if (priorities == null) {
+            priorities = new double[n];
+            for (int t = 0; t < n; t++) {
+                priorities[t] = net.getRate(t);
+            }
+        }
+
+        // Distinct priorities, ranked
+        double[] distinct = Arrays.stream(priorities).distinct().sorted().toArray();
+        level = new int[n];
+        int[] count = new int[distinct.length];
+        for (int t = 0; t < n; t++) {
+            level[t] = Arrays.binarySearch(distinct, priorities[t]);
+            count[level[t]]++;
+        }
+        buckets = new int[distinct.length][];
+        for (int l = 0; l < distinct.length; l++) {
+            buckets[l] = new int[count[l]];
+        }
+        bucketSize = new int[distinct.length];
+        position = new int[n];
+        size = 0;
+        top = 0;
+    }
+
+    @Override
+    public void enabled(int transition) {
+        int l = level[transition];
+        position[transition] = bucketSize[l];
+        buckets[l][bucketSize[l]++] = transition;
+        size++;
+        if (l > top) {
+            top = l;
+        }
+    }
+
+    @Override
+    public void disabled(int transition) {
+        int l = level[transition];
+        int p = position[transition];
+        int last = buckets[l][--bucketSize[l]];
+        buckets[l][p] = last;
+        position[last] = p;
+        size--;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int select() {
+        while (bucketSize[top] == 0) {
+            top--;
+        }
+        int count = bucketSize[top];
+        return buckets[top][count == 1 ? 0 : random.nextInt(count)];
+    }
+
+    /**
+     * Returns the highest level that may be non empty, then the enabled
+     * transitions level by level, in the order they are chosen from.
+     */
+    @Override
+    public long[] getState() {
+        long[] state = new long[1 + size];
+        state[0] = top;
+        int k = 1;
+        for (int l = 0; l < buckets.length; l++) {
+            for (int i = 0; i < bucketSize[l]; i++) {
+                state[k++] = buckets[l][i];
+            }
+        }
+        return state;
+    }
+
+    @Override
+    public void setState(long[] state) {
+        Arrays.fill(bucketSize, 0);
+        size = 0;
+        for (int k = 1; k < state.length; k++) {
+            enabled((int) state[k]);
+        }
+        top = (int) state[0];
+    }
+}
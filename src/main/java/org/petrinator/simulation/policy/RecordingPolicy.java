@@ -0,0 +1,64 @@
+package org.petrinator.simulation.policy;
+
+import org.petrinator.simulation.CompiledNet;
+
+/**
+ * Wraps a policy to record its choices in a ChoiceLog.
+ */
+public class RecordingPolicy implements ConflictPolicy {
+
+    private final ConflictPolicy policy;
+    private final ChoiceLog log;
+
+    public RecordingPolicy(ConflictPolicy policy, ChoiceLog log) {
+        this.policy = policy;
+        this.log = log;
+    }
+
+    @Override
+    public void reset(CompiledNet net) {
+        if (net.getTransitionCount() != log.getTransitionCount()) {
+            throw new IllegalArgumentException("The choice log is for a net with "
+                    + log.getTransitionCount() + " transitions");
+        }
+        policy.reset(net);
+    }
+
+    @Override
+    public void enabled(int transition) {
+        policy.enabled(transition);
+    }
+
+    @Override
+    public void disabled(int transition) {
+        policy.disabled(transition);
+    }
+
+    @Override
+    public int size() {
+        return policy.size();
+    }
+
+    @Override
+    public int select() {
+        int transition = policy.select();
+        if (policy.size() > 1) {
+            log.add(transition);
+        }
+        return transition;
+    }
+
+    @Override
+    public long[] getState() {
+        return policy.getState();
+    }
+
+    @Override
+    public void setState(long[] state) {
+        policy.setState(state);
+    }
+
+    public ChoiceLog getLog() {
+        return log;
+    }
+}
@@ -0,0 +1,101 @@
+package org.petrinator.simulation.policy;
+
+import org.petrinator.simulation.CompiledNet;
+
+/**
+ * Makes again the choices of a ChoiceLog, so that a run with the same
+ * seed goes exactly as the recorded one, whatever policy recorded it.
+ *
+ * Every choice is checked to be enabled; if it is not, or the log runs
+ * out, the run is not the one recorded (another net or seed, or a change
+ * in the engine) and an IllegalStateException tells at which choice.
+ */
+public class ReplayPolicy implements ConflictPolicy {
+
+    private final ChoiceLog log;
+    private ChoiceLog.Reader reader;
+    private boolean[] enabled = new boolean[0];
+    private int size;
+    // Any enabled transition, which is the only one when size is 1
+    private int any;
+
+    public ReplayPolicy(ChoiceLog log) {
+        this.log = log;
+    }
+
+    @Override
+    public void reset(CompiledNet net) {
+        if (net.getTransitionCount() != log.getTransitionCount()) {
+            throw new IllegalArgumentException("The choice log is for a net with "
+                    + log.getTransitionCount() + " transitions");
+        }
+        enabled = new boolean[net.getTransitionCount()];
+        size = 0;
+        reader = log.reader();
+    }
+
+    @Override
+    public void enabled(int transition) {
+        enabled[transition] = true;
+        size++;
+        any = transition;
+    }
+
+    @Override
+    public void disabled(int transition) {
+        enabled[transition] = false;
+        size--;
+        if (size == 1 && !enabled[any]) {
+            for (int t = 0; t < enabled.length; t++) {
+                if (enabled[t]) {
+                    any = t;
+                    break;
+                }
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int select() {
+        if (size == 1) {
+            return any;
+        }
+        if (!reader.hasNext()) {
+            throw new IllegalStateException("The run goes on after the " + log.size() + " recorded choices");
+        }
+        int transition = reader.next();
+        if (transition >= enabled.length || !enabled[transition]) {
+            throw new IllegalStateException("Choice " + reader.getIndex() + " of the log, transition "
+                    + transition + ", is not enabled: the run differs from the recorded one");
+        }
+        return transition;
+    }
+
+    /**
+     * Returns the number of choices made so far.
+     */
+    @Override
+    public long[] getState() {
+        return new long[]{reader.getIndex()};
+    }
+
+    @Override
+    public void setState(long[] state) {
+        reader = log.reader();
+        while (reader.getIndex() < state[0]) {
+            reader.next();
+        }
+    }
+
+    /**
+     * Tells if all the recorded choices have been made.
+     */
+    public boolean isFinished() {
+        return !reader.hasNext();
+    }
+}
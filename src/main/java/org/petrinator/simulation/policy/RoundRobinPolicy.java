@@ -0,0 +1,64 @@
+package org.petrinator.simulation.policy;
+
+import org.petrinator.simulation.CompiledNet;
+
+/**
+ * Fires the enabled immediate transitions in turns: the first enabled one
+ * after the last that fired, in the order of the net, wrapping around. It
+ * uses no random numbers at all.
+ *
+ * The enabled transitions are counted in a Fenwick tree, so the next one
+ * is found in O(log n) by counting those up to the last that fired, instead
+ * of scanning the disabled ones in between.
+ */
+public class RoundRobinPolicy implements ConflictPolicy {
+
+    private FenwickTree counts = new FenwickTree(0);
+    private int size;
+    private int last;
+
+    @Override
+    public void reset(CompiledNet net) {
+        counts = new FenwickTree(net.getTransitionCount());
+        size = 0;
+        last = -1;
+    }
+
+    @Override
+    public void enabled(int transition) {
+        counts.add(transition, 1);
+        size++;
+    }
+
+    @Override
+    public void disabled(int transition) {
+        counts.add(transition, -1);
+        size--;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int select() {
+        // Enabled transitions up to the last one, the next is the one after them
+        int before = last < 0 ? 0 : (int) counts.prefix(last);
+        last = counts.find(before < size ? before : 0);
+        return last;
+    }
+
+    /**
+     * Returns the last transition that fired, -1 if none did.
+     */
+    @Override
+    public long[] getState() {
+        return new long[]{last};
+    }
+
+    @Override
+    public void setState(long[] state) {
+        last = (int) state[0];
+    }
+}
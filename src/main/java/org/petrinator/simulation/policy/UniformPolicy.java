@@ -0,0 +1,88 @@
+package org.petrinator.simulation.policy;
+
+import org.petrinator.simulation.CompiledNet;
+import org.petrinator.simulation.RandomStream;
+
+/**
+ * Chooses uniformly at random among the enabled immediate transitions.
+ * They are kept as a dense set with the position of every member, so
+ * adding, removing and choosing are all O(1).
+ */
+public class UniformPolicy implements ConflictPolicy {
+
+    private final RandomStream random;
+    private int[] members = new int[0];
+    private int[] position = new int[0];
+    private int size;
+
+    public UniformPolicy(RandomStream random) {
+        this.random = random;
+    }
+
+    @Override
+    public void reset(CompiledNet net) {
+        if (members.length != net.getTransitionCount()) {
+            members = new int[net.getTransitionCount()];
+            position = new int[net.getTransitionCount()];
+        }
+        size = 0;
+    }
+
+    @Override
+    public void enabled(int transition) {
+        position[transition] = size;
+        members[size++] = transition;
+    }
+
+    @Override
+    public void disabled(int transition) {
+        int p = position[transition];
+        int last = members[--size];
+        members[p] = last;
+        position[last] = p;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the enabled transition at the given position, from 0 to
+     * size() - 1, in no particular order.
+     */
+    int get(int index) {
+        return members[index];
+    }
+
+    boolean contains(int transition) {
+        int p = position[transition];
+        return p < size && members[p] == transition;
+    }
+
+    @Override
+    public int select() {
+        return members[size == 1 ? 0 : random.nextInt(size)];
+    }
+
+    /**
+     * Returns the enabled transitions in the order they are chosen from.
+     */
+    @Override
+    public long[] getState() {
+        long[] state = new long[size];
+        for (int k = 0; k < size; k++) {
+            state[k] = members[k];
+        }
+        return state;
+    }
+
+    @Override
+    public void setState(long[] state) {
+        size = state.length;
+        for (int k = 0; k < size; k++) {
+            members[k] = (int) state[k];
+            position[members[k]] = k;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package org.petrinator.simulation.policy;
+
+import org.petrinator.simulation.CompiledNet;
+import org.petrinator.simulation.RandomStream;
+
+import java.util.Arrays;
+
+/**
+ * Chooses among the enabled immediate transitions with probability
+ * proportional to their weights, as in GSPN: unless weights are given, the
+ * rate of an immediate transition is its weight.
+ *
+ * The weights of the enabled transitions are kept in a Fenwick tree, so
+ * enabling, disabling and choosing take O(log n). Sums are updated by
+ * adding and subtracting, and the tree is rebuilt now and then so rounding
+ * errors do not pile up. If all the enabled transitions weigh zero, one of
+ * them is chosen uniformly.
+ */
+public class WeightedPolicy implements ConflictPolicy {
+
+    // Updates between rebuilds of the tree
+    private static final int REBUILD_INTERVAL = 1 << 20;
+
+    private final RandomStream random;
+    private final double[] givenWeights;
+
+    private double[] weight = new double[0];
+    private FenwickTree tree = new FenwickTree(0);
+    private final UniformPolicy enabled;
+    private int updates;
+
+    /**
+     * Uses the rates of the transitions as weights.
+     */
+    public WeightedPolicy(RandomStream random) {
+        this(random, null);
+    }
+
+    /**
+     * @param weights the weight of every transition, not negative
+     */
+    public WeightedPolicy(RandomStream random, double[] weights) {
+        this.random = random;
+        this.givenWeights = weights == null ? null : weights.clone();
+        this.enabled = new UniformPolicy(random);
+    }
+
+    @Override
+    public void reset(CompiledNet net) {
+        int n = net.getTransitionCount();
+        weight = new double[n];
+        for (int t = 0; t < n; t++) {
+            weight[t] = givenWeights != null ? givenWeights[t] : net.getRate(t);
+            if (!(weight[t] >= 0) || weight[t] == Double.POSITIVE_INFINITY) {
+                throw new IllegalArgumentException(net.getTransitionLabel(t) + ": invalid weight " + weight[t]);
+            }
+        }
+        tree = new FenwickTree(n);
+        enabled.reset(net);
+        updates = 0;
+    }
+
+    @Override
+    public void enabled(int transition) {
+        enabled.enabled(transition);
+        update(transition, weight[transition]);
+    }
+
+    @Override
+    public void disabled(int transition) {
+        enabled.disabled(transition);
+        update(transition, -weight[transition]);
+    }
+
+    private void update(int transition, double delta) {
+        if (delta == 0) {
+            return;
+        }
+        tree.add(transition, delta);
+        if (++updates == REBUILD_INTERVAL) {
+            rebuild();
+        }
+    }
+
+    private void rebuild() {
+        tree.clear();
+        for (int k = 0; k < enabled.size(); k++) {
+            int t = enabled.get(k);
+            tree.add(t, weight[t]);
+        }
+        updates = 0;
+    }
+
+    @Override
+    public int size() {
+        return enabled.size();
+    }
+
+    @Override
+    public int select() {
+        if (enabled.size() == 1) {
+            return enabled.get(0);
+        }
+        int t = choose();
+        if (t < 0) {
+            // Rounding may land past the last enabled weight, or they all weigh zero
+            rebuild();
+            t = choose();
+        }
+        return t >= 0 ? t : enabled.select();
+    }
+
+    /**
+     * Returns the updates since the last rebuild, the sums of the tree and
+     * the enabled transitions in the order they are chosen from when the
+     * weights are all zero.
+     */
+    @Override
+    public long[] getState() {
+        long[] sums = tree.getState();
+        long[] members = enabled.getState();
+        long[] state = new long[1 + sums.length + members.length];
+        state[0] = updates;
+        System.arraycopy(sums, 0, state, 1, sums.length);
+        System.arraycopy(members, 0, state, 1 + sums.length, members.length);
+        return state;
+    }
+
+    @Override
+    public void setState(long[] state) {
+        int sums = tree.size() + 1;
+        updates = (int) state[0];
+        tree.setState(Arrays.copyOfRange(state, 1, 1 + sums));
+        enabled.setState(Arrays.copyOfRange(state, 1 + sums, state.length));
+    }
+
+    /**
+     * Returns a transition chosen from the tree, or -1 if the sums are off.
+     */
+    private int choose() {
+        double total = tree.total();
+        if (total <= 0) {
+            return -1;
+        }
+        int t = tree.find(random.nextDouble() * total);
+        return t < weight.length && weight[t] > 0 && enabled.contains(t) ? t : -1;
+    }
+}
@@ -0,0 +1,89 @@
+package org.petrinator.simulation.sampling;
+
+import org.petrinator.simulation.RandomStream;
+
+/**
+ * Walker's alias method (Vose's construction) for choosing an index with
+ * fixed weights, e.g. among the transitions of a conflict with constant
+ * weights. Building the table is O(n); every choice is O(1), one random
+ * double, whatever the number of alternatives.
+ */
+public class AliasTable {
+
+    private final RandomStream random;
+    private final double[] probability;
+    private final int[] alias;
+
+    /**
+     * @param weights non negative weights, at least one of them positive
+     */
+    public AliasTable(RandomStream random, double[] weights) {
+        int n = weights.length;
+        double total = 0;
+        for (double w : weights) {
+            if (w < 0 || Double.isNaN(w) || Double.isInfinite(w)) {
+                throw new IllegalArgumentException("Invalid weight: " + w);
+            }
+            total += w;
+        }
+        if (total <= 0) {
+            throw new IllegalArgumentException("At least one weight must be positive");
+        }
+
+        this.random = random;
+        this.probability = new double[n];
+        this.alias = new int[n];
+
+        double[] scaled = new double[n];
+        int[] small = new int[n];
+        int[] large = new int[n];
+        int smallCount = 0;
+        int largeCount = 0;
+        for (int i = 0; i < n; i++) {
+            scaled[i] = weights[i] * n / total;
+            if (scaled[i] < 1) {
+                small[smallCount++] = i;
+            } else {
+                large[largeCount++] = i;
+            }
+        }
+        while (smallCount > 0 && largeCount > 0) {
+            int s = small[--smallCount];
+            int l = large[--largeCount];
+            probability[s] = scaled[s];
+            alias[s] = l;
+            scaled[l] = (scaled[l] + scaled[s]) - 1;
+            if (scaled[l] < 1) {
+                small[smallCount++] = l;
+            } else {
+                large[largeCount++] = l;
+            }
+        }
+        // What is left is 1 up to rounding
+        while (largeCount > 0) {
+            int l = large[--largeCount];
+            probability[l] = 1;
+            alias[l] = l;
+        }
+        while (smallCount > 0) {
+            int s = small[--smallCount];
+            probability[s] = 1;
+            alias[s] = s;
+        }
+    }
+
+    public int size() {
+        return probability.length;
+    }
+
+    /**
+     * Returns an index with probability proportional to its weight. The
+     * integer part of u * n picks the column and the fraction is compared
+     * with its threshold, which leaves it 53 - log2(n) bits of precision.
+     */
+    public int nextIndex() {
+        double u = random.nextDouble() * probability.length;
+        int column = (int) u;
+        return u - column < probability[column] ? column : alias[column];
+    }
+}
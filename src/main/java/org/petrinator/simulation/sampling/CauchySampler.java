@@ -0,0 +1,27 @@
+package org.petrinator.simulation.sampling;
+
+import org.petrinator.simulation.RandomStream;
+
+/**
+ * Cauchy values by inversion of the distribution function.
+ */
+public class CauchySampler implements Sampler {
+
+    private final RandomStream random;
+    private final double location;
+    private final double scale;
+
+    public CauchySampler(RandomStream random, double location, double scale) {
+        if (scale < 0) {
+            throw new IllegalArgumentException("Negative scale: " + scale);
+        }
+        this.random = random;
+        this.location = location;
+        this.scale = scale;
+    }
+
+    @Override
+    public double nextSample() {
+        return location + scale * Math.tan(Math.PI * (random.nextDouble() - 0.5));
+    }
+}
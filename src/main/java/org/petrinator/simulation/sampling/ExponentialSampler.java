@@ -0,0 +1,27 @@
+package org.petrinator.simulation.sampling;
+
+import org.petrinator.simulation.RandomStream;
+
+/**
+ * Exponential delays with the given rate; a zero rate never fires and
+ * gives an infinite delay.
+ */
+public class ExponentialSampler implements Sampler {
+
+    private final RandomStream random;
+    private final double mean;
+
+    public ExponentialSampler(RandomStream random, double rate) {
+        if (rate < 0) {
+            throw new IllegalArgumentException("Negative rate: " + rate);
+        }
+        this.random = random;
+        this.mean = 1 / rate;
+    }
+
+    @Override
+    public double nextSample() {
+        // Checked so that a zero rate does not give 0 * infinity
+        return mean == Double.POSITIVE_INFINITY ? mean : Ziggurat.exponential(random) * mean;
+    }
+}
@@ -0,0 +1,28 @@
+package org.petrinator.simulation.sampling;
+
+import org.petrinator.simulation.RandomStream;
+
+/**
+ * Normal values. As in the behavior dialog, the second parameter is the
+ * variance and not the standard deviation.
+ */
+public class NormalSampler implements Sampler {
+
+    private final RandomStream random;
+    private final double mean;
+    private final double deviation;
+
+    public NormalSampler(RandomStream random, double mean, double variance) {
+        if (variance < 0) {
+            throw new IllegalArgumentException("Negative variance: " + variance);
+        }
+        this.random = random;
+        this.mean = mean;
+        this.deviation = Math.sqrt(variance);
+    }
+
+    @Override
+    public double nextSample() {
+        return mean + deviation * Ziggurat.normal(random);
+    }
+}
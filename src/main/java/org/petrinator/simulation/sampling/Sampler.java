@@ -0,0 +1,11 @@
+package org.petrinator.simulation.sampling;
+
+/**
+ * Source of random values of one distribution. Implementations are bound
+ * to a RandomStream when created and nextSample() does not allocate, so it
+ * can be called for every firing of a long simulation.
+ */
+public interface Sampler {
+
+    double nextSample();
+}
@@ -0,0 +1,47 @@
+package org.petrinator.simulation.sampling;
+
+import org.petrinator.simulation.CompiledNet;
+import org.petrinator.simulation.RandomStream;
+
+/**
+ * Creates the sampler for the firing delays of a transition, following the
+ * parameters of the behavior dialog:
+ *
+ *   Exponential   rate (var1)
+ *   Normal        mean (var1) and variance (var2)
+ *   Cauchy        location (var1) and scale (var2)
+ *   Uniform       lower (var1) and upper (var2) bounds
+ */
+public final class Samplers {
+
+    private Samplers() {
+    }
+
+    public static Sampler create(RandomStream random, int distribution, double rate, double var1, double var2) {
+        switch (distribution) {
+            case CompiledNet.NORMAL:
+                return new NormalSampler(random, var1, var2);
+            case CompiledNet.CAUCHY:
+                return new CauchySampler(random, var1, var2);
+            case CompiledNet.UNIFORM:
+                return new UniformSampler(random, var1, var2);
+            default:
+                return new ExponentialSampler(random, rate);
+        }
+    }
+
+    /**
+     * Creates the sampler of a transition of a compiled net.
+     *
+     * @throws IllegalArgumentException if the parameters of the transition
+     *                                  are not valid for its distribution
+     */
+    public static Sampler forTransition(RandomStream random, CompiledNet net, int transition) {
+        try {
+            return create(random, net.getDistribution(transition), net.getRate(transition),
+                    net.getVar1(transition), net.getVar2(transition));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(net.getTransitionLabel(transition) + ": " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package org.petrinator.simulation.sampling;
+
+import org.petrinator.simulation.RandomStream;
+
+/**
+ * Uniform values in [lower, upper).
+ */
+public class UniformSampler implements Sampler {
+
+    private final RandomStream random;
+    private final double lower;
+    private final double width;
+
+    public UniformSampler(RandomStream random, double lower, double upper) {
+        if (upper < lower) {
+            throw new IllegalArgumentException("Upper bound " + upper + " below lower bound " + lower);
+        }
+        this.random = random;
+        this.lower = lower;
+        this.width = upper - lower;
+    }
+
+    @Override
+    public double nextSample() {
+        return lower + width * random.nextDouble();
+    }
+}
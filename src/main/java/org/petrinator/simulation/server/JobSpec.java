@@ -0,0 +1,58 @@
+package org.petrinator.simulation.server;
+
+import org.petrinator.simulation.NetSpec;
+import org.petrinator.simulation.ReplicationRunner;
+import org.petrinator.simulation.policy.ConflictPolicies;
+
+/**
+ * A simulation asked to the server: the net and how to run it. Missing
+ * fields take the defaults of ReplicationRunner.
+ */
+public class JobSpec {
+
+    public NetSpec net;
+    public Long firings;
+    public Double time;
+    public Integer replications;
+    public Long seed;
+    public String policy;
+    public Double confidence;
+    public Integer batch;
+
+    /**
+     * Creates a runner for the job.
+     *
+     * @param threads threads the replications may use
+     * @throws IllegalArgumentException if the job is not valid
+     */
+    ReplicationRunner toRunner(int threads) {
+        if (net == null) {
+            throw new IllegalArgumentException("No net given");
+        }
+        ReplicationRunner runner = new ReplicationRunner(net.compile());
+        runner.setThreads(threads);
+        if (firings != null) {
+            runner.setMaxFirings(firings);
+        }
+        if (time != null) {
+            runner.setMaxTime(time);
+            if (firings == null) {
+                runner.setMaxFirings(Long.MAX_VALUE);
+            }
+        }
+        if (replications != null) {
+            runner.setReplications(replications);
+        }
+        if (seed != null) {
+            runner.setSeed(seed);
+        }
+        runner.setConflictPolicy(policy != null ? policy : ConflictPolicies.RANDOM);
+        if (confidence != null) {
+            runner.setConfidence(confidence);
+        }
+        if (batch != null) {
+            runner.setBatchSize(batch);
+        }
+        return runner;
+    }
+}
@@ -0,0 +1,60 @@
+package org.petrinator.simulation.server;
+
+import org.petrinator.simulation.CompiledNet;
+import org.petrinator.simulation.ReplicationResult;
+
+/**
+ * The statistics of a set of replications, with public fields only, as the
+ * server sends them.
+ */
+public class ResultSpec {
+
+    public int replications;
+    public int requested;
+    public long seed;
+    public double confidence;
+    public long elapsedMillis;
+    public long totalFirings;
+    public double meanDuration;
+    public Measure[] places;
+    public Measure[] transitions;
+
+    /**
+     * Mean over the replications of the tokens of a place or the
+     * throughput of a transition, with the half width of its confidence
+     * interval.
+     */
+    public static class Measure {
+        public String label;
+        public double mean;
+        public double halfWidth;
+
+        Measure(String label, double mean, double halfWidth) {
+            this.label = label;
+            this.mean = mean;
+            this.halfWidth = halfWidth;
+        }
+    }
+
+    public static ResultSpec of(ReplicationResult result) {
+        CompiledNet net = result.getNet();
+        ResultSpec spec = new ResultSpec();
+        spec.replications = result.getReplications();
+        spec.requested = result.getRequestedReplications();
+        spec.seed = result.getSeed();
+        spec.confidence = result.getConfidence();
+        spec.elapsedMillis = result.getElapsedMillis();
+        spec.totalFirings = result.getTotalFirings();
+        spec.meanDuration = result.getMeanDuration();
+        spec.places = new Measure[net.getPlaceCount()];
+        for (int p = 0; p < spec.places.length; p++) {
+            spec.places[p] = new Measure(net.getPlaceLabel(p), result.getMeanTokens(p), result.getMeanTokensHalfWidth(p));
+        }
+        spec.transitions = new Measure[net.getTransitionCount()];
+        for (int t = 0; t < spec.transitions.length; t++) {
+            spec.transitions[t] = new Measure(net.getTransitionLabel(t), result.getThroughput(t),
+                    result.getThroughputHalfWidth(t));
+        }
+        return spec;
+    }
+}
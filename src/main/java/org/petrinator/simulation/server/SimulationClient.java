@@ -0,0 +1,104 @@
+package org.petrinator.simulation.server;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Runs jobs on a SimulationServer: submits them and polls until they end.
+ */
+public class SimulationClient {
+
+    private static final Gson GSON = new GsonBuilder().serializeSpecialFloatingPointValues().create();
+    private static final long POLL_MILLIS = 200;
+
+    private final String url;
+
+    /**
+     * @param url address of the server, e.g. http://localhost:8080
+     */
+    public SimulationClient(String url) {
+        this.url = url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+
+    /**
+     * Runs a job and waits for its result.
+     *
+     * @throws IOException if the server cannot be reached or the job fails
+     */
+    public ResultSpec run(JobSpec job) throws IOException {
+        JsonObject submitted = request("POST", "/jobs", GSON.toJson(job));
+        long id = submitted.get("id").getAsLong();
+        try {
+            while (true) {
+                JsonObject state = request("GET", "/jobs/" + id, null);
+                switch (state.get("state").getAsString()) {
+                    case "DONE":
+                        return GSON.fromJson(state.get("result"), ResultSpec.class);
+                    case "FAILED":
+                        throw new IOException("The job failed: " + state.get("error").getAsString());
+                    case "CANCELLED":
+                        throw new IOException("The job was cancelled");
+                    default:
+                        Thread.sleep(POLL_MILLIS);
+                }
+            }
+        } catch (InterruptedException e) {
+            request("DELETE", "/jobs/" + id, null);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for job " + id);
+        }
+    }
+
+    private JsonObject request(String method, String path, String body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url + path).openConnection();
+        try {
+            connection.setRequestMethod(method);
+            if (body != null) {
+                connection.setDoOutput(true);
+                connection.setRequestProperty("Content-Type", "application/json; charset=utf-8");
+                try (OutputStream out = connection.getOutputStream()) {
+                    out.write(body.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            int code = connection.getResponseCode();
+            InputStream in = code < 400 ? connection.getInputStream() : connection.getErrorStream();
+            String text = in == null ? "" : read(in);
+            JsonObject json;
+            try {
+                json = GSON.fromJson(text, JsonObject.class);
+            } catch (JsonParseException e) {
+                throw new IOException("Unexpected answer from " + url + ": " + text);
+            }
+            if (code >= 400) {
+                String error = json != null && json.has("error") ? json.get("error").getAsString() : "HTTP " + code;
+                throw new IOException(error);
+            }
+            return json;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static String read(InputStream in) throws IOException {
+        try (InputStream input = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = input.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
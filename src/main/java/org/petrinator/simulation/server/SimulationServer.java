@@ -0,0 +1,334 @@
+package org.petrinator.simulation.server;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.petrinator.simulation.ReplicationRunner;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local simulation server: takes nets over HTTP and simulates them with the
+ * built-in engine on the cores of this machine.
+ *
+ *   java -Djava.awt.headless=true -cp petrinator.jar org.petrinator.simulation.server.SimulationServer
+ *        [--port 8080] [--bind 127.0.0.1] [--threads N]
+ *
+ * Requests and responses are JSON:
+ *
+ *   GET    /status      server version, cores and jobs
+ *   POST   /jobs        JobSpec, answers 202 with the id of the job
+ *   GET    /jobs/{id}   state of the job and, once done, its ResultSpec
+ *   DELETE /jobs/{id}   cancels the job
+ *   POST   /simulate    JobSpec, waits and answers the ResultSpec
+ *
+ * Jobs are queued and run one at a time, each one spreading its
+ * replications over all the threads, so a batch of jobs keeps every core
+ * busy without them competing with each other. Finished jobs are kept until
+ * there are more than MAX_FINISHED_JOBS.
+ */
+public class SimulationServer {
+
+    public static final String VERSION = "1";
+    public static final int DEFAULT_PORT = 8080;
+    static final int MAX_FINISHED_JOBS = 1000;
+
+    private static final Gson GSON = new GsonBuilder().serializeSpecialFloatingPointValues().create();
+
+    private final HttpServer http;
+    private final int threads;
+    private final ExecutorService jobExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "simulation-jobs");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final Map<Long, Job> jobs = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    enum State {
+        QUEUED, RUNNING, DONE, FAILED, CANCELLED
+    }
+
+    /**
+     * What GET /jobs/{id} answers.
+     */
+    static class Job {
+        final long id;
+        volatile State state = State.QUEUED;
+        volatile String error;
+        volatile ResultSpec result;
+        transient volatile Future<?> future;
+
+        Job(long id) {
+            this.id = id;
+        }
+
+        /**
+         * Moves the job to another state if it is still in the expected
+         * one, so a cancel and the end of the run cannot overwrite each
+         * other.
+         */
+        synchronized boolean changeState(State expected, State next) {
+            if (state != expected) {
+                return false;
+            }
+            state = next;
+            return true;
+        }
+
+        synchronized boolean finish(ResultSpec result) {
+            if (state != State.RUNNING) {
+                return false;
+            }
+            this.result = result;
+            state = State.DONE;
+            return true;
+        }
+
+        synchronized boolean fail(String error) {
+            if (state != State.RUNNING) {
+                return false;
+            }
+            this.error = error;
+            state = State.FAILED;
+            return true;
+        }
+    }
+
+    /**
+     * @param address where to listen
+     * @param threads threads for the replications of a job
+     */
+    public SimulationServer(InetSocketAddress address, int threads) throws IOException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread is needed");
+        }
+        this.threads = threads;
+        http = HttpServer.create(address, 0);
+        http.createContext("/status", this::status);
+        http.createContext("/jobs", this::jobs);
+        http.createContext("/simulate", this::simulate);
+        http.setExecutor(Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "simulation-http");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    public void start() {
+        http.start();
+    }
+
+    /**
+     * Stops listening and cancels the jobs.
+     */
+    public void stop() {
+        http.stop(0);
+        jobExecutor.shutdownNow();
+    }
+
+    /**
+     * Returns the port the server listens on, useful when created on port 0.
+     */
+    public int getPort() {
+        return http.getAddress().getPort();
+    }
+
+    private void status(HttpExchange exchange) throws IOException {
+        if (!"GET".equals(exchange.getRequestMethod())) {
+            error(exchange, 405, "Use GET");
+            return;
+        }
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("version", VERSION);
+        status.put("threads", threads);
+        Map<State, Integer> counts = new LinkedHashMap<>();
+        synchronized (jobs) {
+            for (Job job : jobs.values()) {
+                counts.merge(job.state, 1, Integer::sum);
+            }
+        }
+        status.put("jobs", counts);
+        send(exchange, 200, status);
+    }
+
+    private void jobs(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        String method = exchange.getRequestMethod();
+        if (path.equals("/jobs") || path.equals("/jobs/")) {
+            if (!"POST".equals(method)) {
+                error(exchange, 405, "Use POST to submit a job");
+                return;
+            }
+            ReplicationRunner runner = parse(exchange);
+            if (runner != null) {
+                send(exchange, 202, submit(runner));
+            }
+            return;
+        }
+
+        Job job;
+        try {
+            job = jobs.get(Long.parseLong(path.substring("/jobs/".length())));
+        } catch (NumberFormatException e) {
+            job = null;
+        }
+        if (job == null) {
+            error(exchange, 404, "No such job");
+            return;
+        }
+        if ("GET".equals(method)) {
+            send(exchange, 200, job);
+        } else if ("DELETE".equals(method)) {
+            if (job.changeState(State.QUEUED, State.CANCELLED) || job.changeState(State.RUNNING, State.CANCELLED)) {
+                Future<?> future = job.future;
+                if (future != null) {
+                    future.cancel(true);
+                }
+            }
+            send(exchange, 200, job);
+        } else {
+            error(exchange, 405, "Use GET or DELETE");
+        }
+    }
+
+    private void simulate(HttpExchange exchange) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            error(exchange, 405, "Use POST");
+            return;
+        }
+        ReplicationRunner runner = parse(exchange);
+        if (runner == null) {
+            return;
+        }
+        Job job = submit(runner);
+        try {
+            job.future.get();
+        } catch (Exception e) {
+            // The state of the job tells what happened
+        }
+        if (job.state == State.DONE) {
+            send(exchange, 200, job.result);
+        } else {
+            error(exchange, 500, job.error != null ? job.error : "The job was " + job.state.name().toLowerCase());
+        }
+    }
+
+    /**
+     * Reads a JobSpec, answering 400 if it is not valid.
+     *
+     * @return the runner for it, or null
+     */
+    private ReplicationRunner parse(HttpExchange exchange) throws IOException {
+        try (Reader in = new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8)) {
+            JobSpec spec = GSON.fromJson(in, JobSpec.class);
+            if (spec == null) {
+                throw new IllegalArgumentException("Empty request");
+            }
+            return spec.toRunner(threads);
+        } catch (JsonParseException | IllegalArgumentException e) {
+            error(exchange, 400, e.getMessage());
+            return null;
+        }
+    }
+
+    private Job submit(ReplicationRunner runner) {
+        Job job = new Job(nextId.getAndIncrement());
+        synchronized (jobs) {
+            jobs.put(job.id, job);
+            int finished = 0;
+            for (Job j : jobs.values()) {
+                if (j.state != State.QUEUED && j.state != State.RUNNING) {
+                    finished++;
+                }
+            }
+            for (Iterator<Job> it = jobs.values().iterator(); it.hasNext() && finished > MAX_FINISHED_JOBS; ) {
+                Job old = it.next();
+                if (old.state != State.QUEUED && old.state != State.RUNNING) {
+                    it.remove();
+                    finished--;
+                }
+            }
+        }
+        job.future = jobExecutor.submit(() -> {
+            // A job cancelled while queued does not run
+            if (!job.changeState(State.QUEUED, State.RUNNING)) {
+                return;
+            }
+            try {
+                ResultSpec result = ResultSpec.of(runner.run());
+                // An interrupted run is only partial, and the job is cancelled then unless it is already
+                if (Thread.currentThread().isInterrupted()) {
+                    job.changeState(State.RUNNING, State.CANCELLED);
+                } else {
+                    job.finish(result);
+                }
+            } catch (RuntimeException e) {
+                job.fail(e.getMessage());
+            } finally {
+                runner.shutdown();
+            }
+        });
+        return job;
+    }
+
+    private static void error(HttpExchange exchange, int code, String message) throws IOException {
+        send(exchange, code, Collections.singletonMap("error", message));
+    }
+
+    private static void send(HttpExchange exchange, int code, Object body) throws IOException {
+        byte[] bytes = GSON.toJson(body).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(code, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = DEFAULT_PORT;
+        String bind = "127.0.0.1";
+        int threads = Runtime.getRuntime().availableProcessors();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--port":
+                        port = Integer.parseInt(args[++i]);
+                        break;
+                    case "--bind":
+                        bind = args[++i];
+                        break;
+                    case "--threads":
+                        threads = Integer.parseInt(args[++i]);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unexpected argument " + args[i]);
+                }
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println(e.getMessage() != null ? e.getMessage() : "Missing value");
+            System.err.println("Usage: SimulationServer [--port N] [--bind ADDRESS] [--threads N]");
+            System.exit(2);
+        }
+
+        SimulationServer server = new SimulationServer(new InetSocketAddress(bind, port), threads);
+        server.start();
+        System.out.println("Simulation server listening on http://" + bind + ":" + server.getPort()
+                + " with " + threads + " threads");
+    }
+}
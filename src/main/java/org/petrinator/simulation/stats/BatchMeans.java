@@ -0,0 +1,102 @@
+package org.petrinator.simulation.stats;
+
+import org.apache.commons.math3.distribution.TDistribution;
+
+/**
+ * Confidence interval of the steady state mean of a single long run, by
+ * the method of nonoverlapping batch means.
+ *
+ * The observations after the warm-up are split in a fixed number of
+ * batches of consecutive observations. When the batches are long enough
+ * their means are nearly independent and normal, so a Student t interval
+ * over them is valid, although the observations themselves are
+ * correlated. A run is long enough, for the stopping rule of
+ * isPrecise(), when the half width is below a fraction of the mean.
+ */
+public class BatchMeans {
+
+    private final double[] means;
+    private final double mean;
+    private final double halfWidth;
+
+    /**
+     * @param series     the observations
+     * @param from       index of the first one after the warm-up
+     * @param to         index after the last one
+     * @param batches    number of batches, at least 2
+     * @param confidence confidence level of the interval, e.g. 0.95
+     */
+    public BatchMeans(double[] series, int from, int to, int batches, double confidence) {
+        means = means(series, from, to, batches);
+        Welford w = new Welford();
+        for (double m : means) {
+            w.add(m);
+        }
+        mean = w.getMean();
+        halfWidth = halfWidth(w, confidence);
+    }
+
+    /**
+     * Returns the means of the given number of batches of equal size over
+     * series[from, to). The observations that do not fill a batch are
+     * dropped from the beginning, the part closest to the warm-up.
+     *
+     * @throws IllegalArgumentException if there are fewer observations than batches
+     */
+    public static double[] means(double[] series, int from, int to, int batches) {
+        if (batches < 2) {
+            throw new IllegalArgumentException("At least two batches are needed");
+        }
+        int size = (to - from) / batches;
+        if (size < 1) {
+            throw new IllegalArgumentException("Fewer observations than batches");
+        }
+        int start = to - size * batches;
+        double[] means = new double[batches];
+        for (int b = 0; b < batches; b++) {
+            double sum = 0;
+            for (int i = start + b * size; i < start + (b + 1) * size; i++) {
+                sum += series[i];
+            }
+            means[b] = sum / size;
+        }
+        return means;
+    }
+
+    /**
+     * Returns the half width of the Student t interval of the mean of the
+     * observations of an accumulator.
+     */
+    public static double halfWidth(Welford w, double confidence) {
+        long n = w.getCount();
+        if (n < 2) {
+            return Double.NaN;
+        }
+        double t = new TDistribution(n - 1).inverseCumulativeProbability(0.5 + confidence / 2);
+        return t * Math.sqrt(w.getVariance() / n);
+    }
+
+    public double[] getMeans() {
+        return means.clone();
+    }
+
+    public int getBatches() {
+        return means.length;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public double getHalfWidth() {
+        return halfWidth;
+    }
+
+    /**
+     * Tells if the half width is at most the given fraction of the mean;
+     * a mean of zero is precise only if all the batches are zero.
+     */
+    public boolean isPrecise(double relativePrecision) {
+        return halfWidth <= relativePrecision * Math.abs(mean);
+    }
+}
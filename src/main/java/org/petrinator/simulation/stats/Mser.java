@@ -0,0 +1,63 @@
+package org.petrinator.simulation.stats;
+
+/**
+ * MSER-5 truncation point of the warm-up of a simulation output series
+ * (White 1997; Franklin and White 2008).
+ *
+ * The series is grouped in means of BATCH observations, and the point d
+ * that minimizes the marginal standard error of the rest,
+ *
+ *   MSER(d) = sum over i > d of (Y_i - mean of Y after d)^2 / (n - d)^2
+ *
+ * is taken as the end of the warm-up. Only d up to half of the batches is
+ * searched: a minimum in the second half means the run is still too short
+ * to tell, and truncation() returns -1.
+ */
+public final class Mser {
+
+    public static final int BATCH = 5;
+
+    private Mser() {
+    }
+
+    /**
+     * Returns the number of leading observations to drop, or -1 if the
+     * series is too short to find the end of its warm-up.
+     */
+    public static int truncation(double[] series, int length) {
+        int n = length / BATCH;
+        if (n < 4) {
+            return -1;
+        }
+        double[] means = new double[n];
+        for (int i = 0; i < n; i++) {
+            double sum = 0;
+            for (int j = i * BATCH; j < (i + 1) * BATCH; j++) {
+                sum += series[j];
+            }
+            means[i] = sum / BATCH;
+        }
+
+        // Suffix sums of the batch means and of their squares, from the end
+        double sum = 0;
+        double squares = 0;
+        double best = Double.POSITIVE_INFINITY;
+        int bestD = -1;
+        double[] mser = new double[n];
+        for (int d = n - 1; d >= 0; d--) {
+            sum += means[d];
+            squares += means[d] * means[d];
+            int m = n - d;
+            // Sum of squared differences from the mean of the m values left
+            double ss = Math.max(0, squares - sum * sum / m);
+            mser[d] = ss / ((double) m * m);
+        }
+        for (int d = 0; d < n - 1; d++) {
+            if (mser[d] < best) {
+                best = mser[d];
+                bestD = d;
+            }
+        }
+        return bestD <= n / 2 ? bestD * BATCH : -1;
+    }
+}
@@ -0,0 +1,132 @@
+package org.petrinator.simulation.stats;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Mean, variance, minimum and maximum of a piecewise constant signal, such
+ * as the tokens of a place, weighted by the time each value lasts.
+ *
+ * Every value counts from the time it is set until the next update, so
+ * update() takes the new value and the time it starts at. Updating with
+ * the same value or at the same time is harmless.
+ */
+public class TimeWeighted {
+
+    private double startTime;
+    private double lastTime;
+    private double value;
+    private double area;
+    private double squares;
+    private double min;
+    private double max;
+
+    public TimeWeighted() {
+        start(0, 0);
+    }
+
+    /**
+     * Starts again with the given value at the given time.
+     */
+    public void start(double time, double value) {
+        startTime = time;
+        lastTime = time;
+        this.value = value;
+        area = 0;
+        squares = 0;
+        min = value;
+        max = value;
+    }
+
+    /**
+     * Sets a new value from the given time on, not earlier than the last
+     * update.
+     */
+    public void update(double time, double value) {
+        double d = time - lastTime;
+        area += this.value * d;
+        squares += this.value * this.value * d;
+        lastTime = time;
+        this.value = value;
+        if (value < min) {
+            min = value;
+        }
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    /**
+     * Closes the signal at the given time, keeping its value.
+     */
+    public void finish(double time) {
+        update(time, value);
+    }
+
+    /**
+     * Writes the state, to be read back with read() when a run is
+     * resumed from a checkpoint.
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeDouble(startTime);
+        out.writeDouble(lastTime);
+        out.writeDouble(value);
+        out.writeDouble(area);
+        out.writeDouble(squares);
+        out.writeDouble(min);
+        out.writeDouble(max);
+    }
+
+    public void read(DataInput in) throws IOException {
+        startTime = in.readDouble();
+        lastTime = in.readDouble();
+        value = in.readDouble();
+        area = in.readDouble();
+        squares = in.readDouble();
+        min = in.readDouble();
+        max = in.readDouble();
+    }
+
+    public double getDuration() {
+        return lastTime - startTime;
+    }
+
+    public double getValue() {
+        return value;
+    }
+
+    /**
+     * Returns the time weighted mean until the last update, the current
+     * value if no time passed.
+     */
+    public double getMean() {
+        double duration = getDuration();
+        return duration > 0 ? area / duration : value;
+    }
+
+    /**
+     * Returns the time weighted variance until the last update.
+     */
+    public double getVariance() {
+        double duration = getDuration();
+        if (duration <= 0) {
+            return 0;
+        }
+        double mean = area / duration;
+        // Rounding may leave a tiny negative number for a constant signal
+        return Math.max(0, squares / duration - mean * mean);
+    }
+
+    public double getStandardDeviation() {
+        return Math.sqrt(getVariance());
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+}
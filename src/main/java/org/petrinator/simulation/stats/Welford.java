@@ -0,0 +1,116 @@
+package org.petrinator.simulation.stats;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Running mean, variance, minimum and maximum of a series of observations,
+ * in constant memory.
+ *
+ * Welford's update keeps the mean and the sum of squared differences from
+ * it, so the variance does not suffer the cancellation of the textbook
+ * sum of squares formula when the mean is large compared to the spread.
+ */
+public class Welford {
+
+    private long count;
+    private double mean;
+    private double squares;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    public void add(double x) {
+        count++;
+        double d = x - mean;
+        mean += d / count;
+        squares += d * (x - mean);
+        if (x < min) {
+            min = x;
+        }
+        if (x > max) {
+            max = x;
+        }
+    }
+
+    /**
+     * Adds all the observations of another accumulator, as if they had
+     * been added one by one (Chan et al.).
+     */
+    public void merge(Welford other) {
+        if (other.count == 0) {
+            return;
+        }
+        long n = count + other.count;
+        double d = other.mean - mean;
+        mean += d * other.count / n;
+        squares += other.squares + d * d * ((double) count * other.count / n);
+        count = n;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    public void clear() {
+        count = 0;
+        mean = 0;
+        squares = 0;
+        min = Double.POSITIVE_INFINITY;
+        max = Double.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * Writes the state, to be read back with read() when a run is
+     * resumed from a checkpoint.
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeLong(count);
+        out.writeDouble(mean);
+        out.writeDouble(squares);
+        out.writeDouble(min);
+        out.writeDouble(max);
+    }
+
+    public void read(DataInput in) throws IOException {
+        count = in.readLong();
+        mean = in.readDouble();
+        squares = in.readDouble();
+        min = in.readDouble();
+        max = in.readDouble();
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the mean, NaN without observations.
+     */
+    public double getMean() {
+        return count > 0 ? mean : Double.NaN;
+    }
+
+    /**
+     * Returns the sample variance, NaN with fewer than two observations.
+     */
+    public double getVariance() {
+        return count > 1 ? squares / (count - 1) : Double.NaN;
+    }
+
+    public double getStandardDeviation() {
+        return Math.sqrt(getVariance());
+    }
+
+    /**
+     * Returns the smallest observation, NaN without observations.
+     */
+    public double getMin() {
+        return count > 0 ? min : Double.NaN;
+    }
+
+    /**
+     * Returns the largest observation, NaN without observations.
+     */
+    public double getMax() {
+        return count > 0 ? max : Double.NaN;
+    }
+}
@@ -0,0 +1,103 @@
+package misc;
+
+import org.apache.commons.math3.distribution.CauchyDistribution;
+import org.apache.commons.math3.distribution.ExponentialDistribution;
+import org.apache.commons.math3.distribution.NormalDistribution;
+import org.apache.commons.math3.distribution.UniformRealDistribution;
+import org.petrinator.simulation.RandomStream;
+import org.petrinator.simulation.sampling.AliasTable;
+import org.petrinator.simulation.sampling.CauchySampler;
+import org.petrinator.simulation.sampling.ExponentialSampler;
+import org.petrinator.simulation.sampling.NormalSampler;
+import org.petrinator.simulation.sampling.Sampler;
+import org.petrinator.simulation.sampling.UniformSampler;
+
+import java.util.Locale;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Micro benchmark of the samplers of org.petrinator.simulation.sampling
+ * against commons-math3, the library TransitionNode already depends on,
+ * and against the textbook inversion and Box-Muller methods.
+ *
+ * Every case is warmed up and then timed over several rounds; the sum of
+ * the samples is printed so the JIT cannot drop the loops. Besides the
+ * time, the mean and variance of the samples are printed as a sanity check.
+ *
+ * It lives with the test sources so it is not part of the application jar.
+ * Run it after mvn test-compile with target/classes, target/test-classes
+ * and commons-math3 on the class path.
+ *
+ * Usage: SamplerBenchmark [samples per round]
+ */
+public class SamplerBenchmark {
+
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        int samples = args.length > 0 ? Integer.parseInt(args[0]) : 10000000;
+        final RandomStream random = new RandomStream(42);
+
+        System.out.println(String.format(Locale.ROOT, "%-32s %10s %12s %12s", "case", "ns/sample", "mean", "variance"));
+
+        run("exponential ziggurat", samples, sampler(new ExponentialSampler(random, 2)));
+        run("exponential inversion", samples, () -> -Math.log(random.nextDoubleNonZero()) / 2);
+        run("exponential commons-math3", samples, new ExponentialDistribution(0.5)::sample);
+
+        run("normal ziggurat", samples, sampler(new NormalSampler(random, 1, 4)));
+        run("normal box-muller", samples, () -> 1 + 2 * Math.sqrt(-2 * Math.log(random.nextDoubleNonZero()))
+                * Math.cos(2 * Math.PI * random.nextDouble()));
+        run("normal commons-math3", samples, new NormalDistribution(1, 2)::sample);
+
+        run("cauchy inversion", samples, sampler(new CauchySampler(random, 0, 1)));
+        run("cauchy commons-math3", samples, new CauchyDistribution(0, 1)::sample);
+
+        run("uniform", samples, sampler(new UniformSampler(random, 1, 3)));
+        run("uniform commons-math3", samples, new UniformRealDistribution(1, 3)::sample);
+
+        final double[] weights = new double[64];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = i + 1;
+        }
+        final AliasTable alias = new AliasTable(random, weights);
+        run("choice of 64, alias table", samples, alias::nextIndex);
+        final double total = weights.length * (weights.length + 1) / 2.0;
+        run("choice of 64, linear scan", samples, () -> {
+            double u = random.nextDouble() * total;
+            int i = 0;
+            while (i < weights.length - 1 && (u -= weights[i]) >= 0) {
+                i++;
+            }
+            return i;
+        });
+    }
+
+    private static DoubleSupplier sampler(Sampler sampler) {
+        return sampler::nextSample;
+    }
+
+    private static void run(String name, int samples, DoubleSupplier supplier) {
+        // Warm up
+        for (int i = 0; i < samples / 10; i++) {
+            supplier.getAsDouble();
+        }
+
+        long best = Long.MAX_VALUE;
+        double sum = 0;
+        double squares = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            sum = 0;
+            squares = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < samples; i++) {
+                double x = supplier.getAsDouble();
+                sum += x;
+                squares += x * x;
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        double mean = sum / samples;
+        System.out.println(String.format(Locale.ROOT, "%-32s %10.2f %12.5f %12.5f",
+                name, (double) best / samples, mean, squares / samples - mean * mean));
+    }
+}
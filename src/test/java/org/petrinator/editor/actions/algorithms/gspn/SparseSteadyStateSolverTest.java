@@ -0,0 +1,79 @@
+package org.petrinator.editor.actions.algorithms.gspn;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SparseSteadyStateSolverTest {
+
+    private static final int K = 5;
+
+    /**
+     * M/M/1/K queue with arrival rate 1 and service rate 2: place Q holds
+     * the customers, place F the free slots.
+     */
+    private static GeneratorMatrix queue() throws Exception {
+        int[][] inhibitors = new int[2][2];
+        GSPNModel model = new GSPNModel(new int[][]{{0, 1}, {1, 0}}, new int[][]{{1, -1}, {-1, 1}},
+                inhibitors, inhibitors, inhibitors, new int[]{0, K}, new boolean[]{true, true},
+                new double[]{1, 2}, new String[]{"Q", "F"}, new String[]{"arrive", "serve"});
+        return new GeneratorMatrix(TangibleStateSpace.generate(model));
+    }
+
+    @Test
+    public void everyMethodSolvesTheQueue() throws Exception {
+        GeneratorMatrix q = queue();
+        double rho = 0.5;
+        double mean = 0;
+        double norm = 0;
+        for (int n = 0; n <= K; n++) {
+            mean += n * Math.pow(rho, n);
+            norm += Math.pow(rho, n);
+        }
+        mean /= norm;
+        double throughput = 1 - Math.pow(rho, K) / norm;
+
+        for (SparseSteadyStateSolver.Method method : SparseSteadyStateSolver.Method.values()) {
+            SolverResult result = new SparseSteadyStateSolver(method).solve(q);
+            assertTrue(method + " did not converge", result.hasConverged());
+            GSPNMeasures measures = new GSPNMeasures(q, result.getDistribution());
+            assertEquals(method.toString(), mean, measures.getMeanTokens()[0], 1e-7);
+            assertEquals(method.toString(), throughput, measures.getThroughput()[0], 1e-7);
+            assertEquals(method.toString(), throughput, measures.getThroughput()[1], 1e-7);
+        }
+    }
+
+    @Test
+    public void dampedJacobiConvergesOnAPeriodicChain() throws Exception {
+        // A token going round three places: plain Jacobi oscillates forever on this chain
+        int[][] zero = new int[3][3];
+        GSPNModel model = new GSPNModel(new int[][]{{1, 0, 0}, {0, 1, 0}, {0, 0, 1}},
+                new int[][]{{-1, 0, 1}, {1, -1, 0}, {0, 1, -1}}, zero, zero, zero, new int[]{1, 0, 0},
+                new boolean[]{true, true, true}, new double[]{1, 1, 1}, new String[]{"a", "b", "c"},
+                new String[]{"t0", "t1", "t2"});
+        GeneratorMatrix q = new GeneratorMatrix(TangibleStateSpace.generate(model));
+        double[] guess = {0.8, 0.1, 0.1};
+
+        SparseSteadyStateSolver solver = new SparseSteadyStateSolver(SparseSteadyStateSolver.Method.JACOBI);
+        SolverResult result = solver.solve(q, guess.clone());
+        assertTrue(result.hasConverged());
+        for (double p : result.getDistribution()) {
+            assertEquals(1.0 / 3, p, 1e-8);
+        }
+
+        solver.setDamping(1);
+        solver.setMaxIterations(1000);
+        assertTrue(!solver.solve(q, guess.clone()).hasConverged());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOverRelaxationOfTwo() {
+        new SparseSteadyStateSolver(SparseSteadyStateSolver.Method.SOR).setRelaxation(2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsZeroDamping() {
+        new SparseSteadyStateSolver(SparseSteadyStateSolver.Method.JACOBI).setDamping(0);
+    }
+}
@@ -0,0 +1,70 @@
+package org.petrinator.editor.actions.algorithms.gspn;
+
+import org.junit.Test;
+import org.petrinator.petrinet.PetriNetException;
+
+import static org.junit.Assert.assertEquals;
+
+public class TangibleStateSpaceTest {
+
+    /**
+     * Places p0, v1, v2 and p3. T0 (timed) moves the token from p0 to v1,
+     * i1 from v1 to v2 and i2 back from v2 to v1 with weight 2, so v1 and
+     * v2 form a cycle of vanishing markings, left by i3 to p0 and by i4 to
+     * p3. T5 (timed) moves it from p3 to p0.
+     */
+    private static GSPNModel cycle(double exitWeight) {
+        int[][] arcs = {{0, 0, 1}, {1, 1, 2}, {2, 2, 1}, {3, 2, 0}, {4, 2, 3}, {5, 3, 0}};
+        int[][] input = new int[4][6];
+        int[][] incidence = new int[4][6];
+        for (int[] arc : arcs) {
+            input[arc[1]][arc[0]]++;
+            incidence[arc[1]][arc[0]]--;
+            incidence[arc[2]][arc[0]]++;
+        }
+        return new GSPNModel(input, incidence, new int[4][6], new int[4][6], new int[4][6], new int[]{1, 0, 0, 0},
+                new boolean[]{true, false, false, false, false, true},
+                new double[]{1, 1, 2, exitWeight, exitWeight, 1},
+                new String[]{"p0", "v1", "v2", "p3"}, new String[]{"T0", "i1", "i2", "i3", "i4", "T5"});
+    }
+
+    @Test
+    public void absorbsACycleOfVanishingMarkings() throws Exception {
+        TangibleStateSpace stateSpace = TangibleStateSpace.generate(cycle(1));
+        assertEquals(2, stateSpace.getStateCount());
+
+        GeneratorMatrix q = new GeneratorMatrix(stateSpace);
+        double[] pi = new SparseSteadyStateSolver().solve(q).getDistribution();
+        assertEquals(2.0 / 3, pi[0], 1e-9);
+        assertEquals(1.0 / 3, pi[1], 1e-9);
+
+        double[] throughput = new GSPNMeasures(q, pi).getThroughput();
+        double[] expected = {2.0 / 3, 4.0 / 3, 2.0 / 3, 1.0 / 3, 1.0 / 3, 1.0 / 3};
+        for (int t = 0; t < expected.length; t++) {
+            assertEquals("transition " + t, expected[t], throughput[t], 1e-9);
+        }
+    }
+
+    @Test(expected = PetriNetException.class)
+    public void rejectsACycleWithNoWayOut() throws Exception {
+        TangibleStateSpace.generate(cycle(0));
+    }
+
+    @Test
+    public void resolvesLongChainsOfVanishingMarkings() throws Exception {
+        // T puts N tokens in c, and the immediate i takes them one by one while s is marked
+        int n = 200000;
+        int[][] zero = new int[2][2];
+        GSPNModel model = new GSPNModel(new int[][]{{0, 1}, {1, 0}}, new int[][]{{n, -1}, {0, 0}}, zero, zero, zero,
+                new int[]{0, 1}, new boolean[]{true, false}, new double[]{1, 1}, new String[]{"c", "s"},
+                new String[]{"T", "i"});
+        TangibleStateSpace stateSpace = TangibleStateSpace.generate(model);
+        assertEquals(n, stateSpace.getVanishingCount());
+
+        GeneratorMatrix q = new GeneratorMatrix(stateSpace);
+        double[] throughput = new GSPNMeasures(q, new SparseSteadyStateSolver().solve(q).getDistribution())
+                .getThroughput();
+        assertEquals(1, throughput[0], 1e-9);
+        assertEquals(n, throughput[1], 1e-9 * n);
+    }
+}
@@ -0,0 +1,53 @@
+package org.petrinator.editor.actions.algorithms.gspn;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TransientSolverTest {
+
+    @Test
+    public void foxGlynnWeightsArePoissonProbabilities() {
+        double lambda = 10;
+        FoxGlynn weights = new FoxGlynn(lambda, 1e-10);
+        double sum = 0;
+        double poisson = Math.exp(-lambda);
+        for (int k = 0; k <= weights.getRight(); k++) {
+            if (k > 0) {
+                poisson *= lambda / k;
+            }
+            sum += weights.getWeight(k);
+            if (k >= weights.getLeft()) {
+                assertEquals("k = " + k, poisson, weights.getWeight(k), 1e-9);
+            }
+        }
+        assertEquals(1, sum, 1e-12);
+        assertEquals(0, weights.getWeight(weights.getRight() + 1), 0);
+    }
+
+    @Test
+    public void foxGlynnHandlesLargeRates() {
+        FoxGlynn weights = new FoxGlynn(1e6, 1e-10);
+        assertTrue(weights.getLeft() > 0);
+        double sum = 0;
+        for (int k = weights.getLeft(); k <= weights.getRight(); k++) {
+            sum += weights.getWeight(k);
+        }
+        assertEquals(1, sum, 1e-9);
+    }
+
+    @Test
+    public void singleExponentialDelay() throws Exception {
+        int[][] zero = new int[2][1];
+        GSPNModel model = new GSPNModel(new int[][]{{1}, {0}}, new int[][]{{-1}, {1}}, zero, zero, zero,
+                new int[]{1, 0}, new boolean[]{true}, new double[]{1}, new String[]{"A", "B"}, new String[]{"t"});
+        GeneratorMatrix q = new GeneratorMatrix(TangibleStateSpace.generate(model));
+        double[] times = {0, 0.5, 1, 3, 10};
+        TransientResult result = new TransientSolver().solve(q, times);
+        for (int i = 0; i < times.length; i++) {
+            double b = new GSPNMeasures(q, result.getDistribution(i)).getMeanTokens()[1];
+            assertEquals("t = " + times[i], 1 - Math.exp(-times[i]), b, 1e-8);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package org.petrinator.simulation;
+
+import org.junit.Test;
+import org.petrinator.simulation.policy.ConflictPolicies;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class CheckpointTest {
+
+    private static final long FIRINGS = 5000;
+
+    /**
+     * Four places in a ring, every place enabling two immediate transitions
+     * that move its token one or two places further, so every firing is a
+     * choice of the conflict policy.
+     */
+    private static CompiledNet ring() {
+        int[][] iMinus = new int[4][8];
+        int[][] iPlus = new int[4][8];
+        int[][] zero = new int[4][8];
+        String[] labels = new String[8];
+        for (int p = 0; p < 4; p++) {
+            iMinus[p][p] = 1;
+            iPlus[(p + 1) % 4][p] = 1;
+            iMinus[p][4 + p] = 1;
+            iPlus[(p + 2) % 4][4 + p] = 1;
+        }
+        for (int t = 0; t < 8; t++) {
+            labels[t] = "t" + t;
+        }
+        return new CompiledNet(iMinus, iPlus, zero, zero, zero, new int[]{2, 1, 0, 1}, new boolean[8],
+                new boolean[8], new int[8], new double[]{1, 2, 3, 4, 5, 6, 7, 8}, new double[8], new double[8],
+                new String[]{"a", "b", "c", "d"}, labels, labels);
+    }
+
+    /**
+     * Two timed transitions moving the token between a and b, the second
+     * one putting weight tokens back in a.
+     */
+    private static CompiledNet pair(int weight, double rate, int marking) {
+        int[][] zero = new int[2][2];
+        String[] labels = {"t0", "t1"};
+        return new CompiledNet(new int[][]{{1, 0}, {0, 1}}, new int[][]{{0, weight}, {1, 0}}, zero, zero, zero,
+                new int[]{marking, 0}, new boolean[]{true, true}, new boolean[2], new int[2],
+                new double[]{rate, 2}, new double[2], new double[2], new String[]{"a", "b"}, labels, labels);
+    }
+
+    /**
+     * Runs up to the given number of firings, from the checkpoint if resume
+     * is set, and returns the transitions fired. Without resume the final
+     * state is saved in the checkpoint.
+     */
+    private static List<Integer> run(String policy, long until, File checkpoint, boolean resume) throws Exception {
+        RandomStream random = new RandomStream(42);
+        RandomStream policyRandom = random.split();
+        SimulationEngine engine = new SimulationEngine(ring(), random, ConflictPolicies.create(policy, policyRandom));
+        if (resume) {
+            Checkpoint.read(checkpoint).restore(engine, random, policyRandom);
+        }
+        List<Integer> fired = new ArrayList<>();
+        engine.addListener((transition, time, marking) -> fired.add(transition));
+        engine.run(until - engine.getFirings(), Double.POSITIVE_INFINITY);
+        if (checkpoint != null && !resume) {
+            new Checkpoint(engine, random, policyRandom).write(checkpoint);
+        }
+        return fired;
+    }
+
+    private static File temporaryFile() throws Exception {
+        File file = File.createTempFile("checkpoint", ".bin");
+        file.deleteOnExit();
+        return file;
+    }
+
+    @Test
+    public void resumedRunsFireTheSameTransitions() throws Exception {
+        File checkpoint = temporaryFile();
+        for (String policy : ConflictPolicies.NAMES) {
+            List<Integer> whole = run(policy, FIRINGS, null, false);
+            assertEquals(FIRINGS, whole.size());
+            for (long split = 3; split < FIRINGS; split += 997) {
+                List<Integer> resumed = run(policy, split, checkpoint, false);
+                resumed.addAll(run(policy, FIRINGS, checkpoint, true));
+                assertEquals(policy + " split at " + split, whole, resumed);
+            }
+        }
+    }
+
+    @Test
+    public void rejectsAnotherNet() throws Exception {
+        File checkpoint = temporaryFile();
+        RandomStream random = new RandomStream(1);
+        RandomStream policyRandom = random.split();
+        SimulationEngine engine = new SimulationEngine(pair(1, 1, 3), random,
+                ConflictPolicies.create(ConflictPolicies.RANDOM, policyRandom));
+        engine.run(100, Double.POSITIVE_INFINITY);
+        new Checkpoint(engine, random, policyRandom).write(checkpoint);
+
+        assertResumes(pair(1, 1, 3), checkpoint, true);
+        assertResumes(pair(2, 1, 3), checkpoint, false);
+        assertResumes(pair(1, 1.5, 3), checkpoint, false);
+        assertResumes(pair(1, 1, 4), checkpoint, false);
+        // Starting it from the saved marking again gives back the same net
+        assertResumes(pair(1, 1, 4).withInitialMarking(new int[]{3, 0}), checkpoint, true);
+    }
+
+    private static void assertResumes(CompiledNet net, File checkpoint, boolean expected) throws Exception {
+        RandomStream random = new RandomStream(1);
+        RandomStream policyRandom = random.split();
+        SimulationEngine engine = new SimulationEngine(net, random,
+                ConflictPolicies.create(ConflictPolicies.RANDOM, policyRandom));
+        try {
+            Checkpoint.read(checkpoint).restore(engine, random, policyRandom);
+            if (!expected) {
+                fail("Resumed a checkpoint of another net");
+            }
+        } catch (IllegalArgumentException e) {
+            if (expected) {
+                throw e;
+            }
+        }
+    }
+}
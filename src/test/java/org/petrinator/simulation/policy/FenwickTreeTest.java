@@ -0,0 +1,64 @@
+package org.petrinator.simulation.policy;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FenwickTreeTest {
+
+    private static final double[] VALUES = {3, 0, 1.5, 0, 0, 2, 4.5, 1, 0, 2.5, 1};
+
+    private static FenwickTree tree() {
+        FenwickTree tree = new FenwickTree(VALUES.length);
+        for (int i = 0; i < VALUES.length; i++) {
+            tree.add(i, VALUES[i]);
+        }
+        return tree;
+    }
+
+    @Test
+    public void prefixSums() {
+        FenwickTree tree = tree();
+        double sum = 0;
+        for (int i = 0; i < VALUES.length; i++) {
+            sum += VALUES[i];
+            assertEquals(sum, tree.prefix(i), 0);
+        }
+        assertEquals(sum, tree.total(), 0);
+    }
+
+    @Test
+    public void findSkipsZeroValues() {
+        FenwickTree tree = tree();
+        for (double amount = 0; amount < tree.total(); amount += 0.25) {
+            int expected = 0;
+            while (tree.prefix(expected) <= amount) {
+                expected++;
+            }
+            assertEquals("amount " + amount, expected, tree.find(amount));
+            assertTrue(VALUES[expected] > 0);
+        }
+        assertEquals(VALUES.length, tree.find(tree.total()));
+    }
+
+    @Test
+    public void updatesAndState() {
+        FenwickTree tree = tree();
+        tree.add(6, -4.5);
+        tree.add(1, 2);
+        assertEquals(5, tree.prefix(1), 0);
+        assertEquals(1, tree.find(4.99));
+        assertEquals(2, tree.find(5));
+
+        FenwickTree copy = new FenwickTree(VALUES.length);
+        copy.setState(tree.getState());
+        assertArrayEquals(tree.getState(), copy.getState());
+        assertEquals(tree.find(7.3), copy.find(7.3));
+
+        tree.clear();
+        assertEquals(0, tree.total(), 0);
+        assertEquals(VALUES.length, tree.find(0));
+    }
+}
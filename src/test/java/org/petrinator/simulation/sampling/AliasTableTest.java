@@ -0,0 +1,43 @@
+package org.petrinator.simulation.sampling;
+
+import org.junit.Test;
+import org.petrinator.simulation.RandomStream;
+
+import static org.junit.Assert.assertEquals;
+
+public class AliasTableTest {
+
+    @Test
+    public void drawsInProportionToTheWeights() {
+        double[] weights = {1, 0, 3, 6, 0.5};
+        AliasTable table = new AliasTable(new RandomStream(7), weights);
+        assertEquals(weights.length, table.size());
+
+        int draws = 1000000;
+        int[] counts = new int[weights.length];
+        for (int i = 0; i < draws; i++) {
+            counts[table.nextIndex()]++;
+        }
+        assertEquals(0, counts[1]);
+        for (int i = 0; i < weights.length; i++) {
+            double p = weights[i] / 10.5;
+            // Five standard deviations of the binomial count
+            assertEquals(p * draws, counts[i], 5 * Math.sqrt(draws * p * (1 - p)) + 1e-9);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNegativeWeights() {
+        new AliasTable(new RandomStream(1), new double[]{1, -1});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNaN() {
+        new AliasTable(new RandomStream(1), new double[]{1, Double.NaN});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAllZeroWeights() {
+        new AliasTable(new RandomStream(1), new double[]{0, 0});
+    }
+}
@@ -0,0 +1,40 @@
+package org.petrinator.simulation.stats;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class MserTest {
+
+    @Test
+    public void findsTheEndOfALinearWarmUp() {
+        // Rises from 0 to 10 over the first 100 observations, then stays at 10
+        double[] series = new double[1000];
+        for (int i = 0; i < series.length; i++) {
+            series[i] = i < 100 ? i / 10.0 : 10 + (i % 2 == 0 ? 0.1 : -0.1);
+        }
+        int truncation = Mser.truncation(series, series.length);
+        assertEquals(0, truncation % Mser.BATCH);
+        assertEquals(100, truncation, 2 * Mser.BATCH);
+    }
+
+    @Test
+    public void keepsAStationarySeries() {
+        double[] series = new double[500];
+        for (int i = 0; i < series.length; i++) {
+            series[i] = i % 2 == 0 ? 1 : -1;
+        }
+        assertEquals(0, Mser.truncation(series, series.length));
+    }
+
+    @Test
+    public void tooShortOrStillWarmingUp() {
+        assertEquals(-1, Mser.truncation(new double[19], 19));
+
+        double[] rising = new double[500];
+        for (int i = 0; i < rising.length; i++) {
+            rising[i] = i;
+        }
+        assertEquals(-1, Mser.truncation(rising, rising.length));
+    }
+}
@@ -0,0 +1,55 @@
+package org.petrinator.simulation.stats;
+
+import org.junit.Test;
+import org.petrinator.simulation.RandomStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class P2QuantileTest {
+
+    @Test
+    public void exactWithFewObservations() {
+        P2Quantile median = new P2Quantile(0.5);
+        assertTrue(Double.isNaN(median.getQuantile()));
+        median.add(4);
+        median.add(1);
+        median.add(3);
+        assertEquals(3, median.getCount());
+        assertEquals(3, median.getQuantile(), 0);
+    }
+
+    @Test
+    public void quantilesOfAUniformSample() {
+        RandomStream random = new RandomStream(3);
+        double[] ps = {0.1, 0.5, 0.9, 0.99};
+        P2Quantile[] estimators = new P2Quantile[ps.length];
+        for (int i = 0; i < ps.length; i++) {
+            estimators[i] = new P2Quantile(ps[i]);
+        }
+        for (int n = 0; n < 100000; n++) {
+            double x = random.nextDouble();
+            for (P2Quantile estimator : estimators) {
+                estimator.add(x);
+            }
+        }
+        for (int i = 0; i < ps.length; i++) {
+            assertEquals("p = " + ps[i], ps[i], estimators[i].getQuantile(), 0.01);
+        }
+    }
+
+    @Test
+    public void medianOfAnExponentialSample() {
+        RandomStream random = new RandomStream(5);
+        P2Quantile median = new P2Quantile(0.5);
+        for (int n = 0; n < 100000; n++) {
+            median.add(-Math.log(random.nextDoubleNonZero()));
+        }
+        assertEquals(Math.log(2), median.getQuantile(), 0.02);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsProbabilityOne() {
+        new P2Quantile(1);
+    }
+}